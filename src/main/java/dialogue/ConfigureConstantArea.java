@@ -1,11 +1,14 @@
 package dialogue;
 
+import dialogue.core.protocol.Frame;
 import dialogue.utils.IOUtils;
 import dialogue.utils.ProgressEvent;
+import dialogue.utils.ThreadUtils;
 import dialogue.utils.loggerFormatter.LogFormatter;
 import dialogue.utils.progressEvent.ProgressFileNumber;
 
 import java.io.*;
+import java.nio.charset.Charset;
 import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -24,7 +27,7 @@ public final class ConfigureConstantArea {
      * <p>
      * The version code x.xx of this library represents the x.x.x version. Different versions have different compatibility effects
      */
-    public final static float VERSION = 1.05f;
+    public final static float VERSION = 1.06f;
 
     /**
      * 配置文件目录
@@ -63,6 +66,168 @@ public final class ConfigureConstantArea {
      * Directory where the file runs on the remote host
      */
     public final static String REMOTE_RUNNING_DIRECTORY = "./exe/";
+    /**
+     * 被控会话执行命令的工作线程数量，所有主控连接的命令都会被提交到这个有界线程池中执行。没有配置的时候，平台线程默认是 CPU 核心数的两倍，Java 21 及以上版本中的虚拟线程默认是 256。
+     * <p>
+     * The number of worker threads used by the controlled session to execute commands. Commands from all master connections are submitted to this bounded pool. When not configured, it defaults to twice the number of CPU cores for platform threads, and to 256 for the virtual threads used on Java 21 and above.
+     */
+    public final static int CONTROLLED_WORKER_THREADS;
+    /**
+     * 被控会话工作线程池的等待队列长度，队列满时新的命令会被直接拒绝并告知主控。
+     * <p>
+     * The length of the waiting queue of the controlled worker pool. When the queue is full, new commands are rejected and the master is told so.
+     */
+    public final static int CONTROLLED_WORKER_QUEUE_SIZE;
+    /**
+     * 一个主控连接中最多同时执行的命令数量，同一个连接中的命令会并发执行并按照完成的顺序返回结果，设置为1时会按照接收顺序依次执行。
+     * <p>
+     * The maximum number of commands executed at the same time for one master connection. Commands of the same connection are executed concurrently and their results are returned in completion order. When set to 1, they are executed one by one in the order received.
+     */
+    public final static int CONTROLLED_CONNECTION_PARALLELISM;
+    /**
+     * 是否启用多路复用模式，启用之后文件数据与持久会话数据会作为逻辑数据流在主控发起的连接中传输，被控不再需要反向连接主控的文件端口与持久会话端口。
+     * <p>
+     * Whether to enable the multiplexed mode. When enabled, file data and persistent session data are transferred as logical streams over the connection initiated by the master, and the controlled end no longer needs to connect back to the file port and persistent session port of the master.
+     */
+    public final static boolean MULTIPLEX_ENABLE;
+    /**
+     * 多路复用模式中每一个逻辑数据流的接收窗口字节数，发送方最多只能发送这么多未被读取的数据，不能小于协议的初始窗口 262144。
+     * <p>
+     * The receiving window in bytes of each logical stream in the multiplexed mode. The sender can send at most this much unread data. It cannot be smaller than the initial window of the protocol, 262144.
+     */
+    public final static int MULTIPLEX_STREAM_WINDOW;
+    /**
+     * 文件传输时允许使用的压缩算法名称，按照优先级排列，接收方会将它们提供给发送方，发送方选择第一个双方都支持的算法，空数组代表不压缩。
+     * <p>
+     * Names of the compression codecs allowed in file transfers, in order of preference. The receiver offers them to the sender, and the sender picks the first one both sides support. An empty array means no compression.
+     */
+    public final static String[] FILE_COMPRESSION;
+    /**
+     * 文件传输时的压缩级别，0~9，数值越大压缩率越高但是越慢。
+     * <p>
+     * The compression level used in file transfers, 0 to 9. Higher values compress better but slower.
+     */
+    public final static int FILE_COMPRESSION_LEVEL;
+    /**
+     * 多文件传输时允许发送但尚未被确认的最大文件数量，设置为1时每一个文件都需要等待对方确认之后才会发送下一个文件。
+     * <p>
+     * The maximum number of files in a multi-file transfer that may be sent without being acknowledged yet. When set to 1, every file waits for the peer's acknowledgement before the next file is sent.
+     */
+    public final static int FILE_WINDOW_SIZE;
+    /**
+     * 多文件发送时读取线程最多提前准备好的文件数量，较小的文件会被提前读取到缓冲区中，因此它也决定了预读占用的缓冲区数量。
+     * <p>
+     * The maximum number of files the reader thread prepares in advance in multi-file sends. Small files are read into buffers in advance, so it also decides the number of buffers used by read-ahead.
+     */
+    public final static int FILE_READ_AHEAD;
+    /**
+     * 缓冲区池中最多保留的字节数量，超出这个大小的缓冲区在归还之后会被直接丢弃。
+     * <p>
+     * The maximum number of bytes kept in the buffer pool. Buffers beyond this size are dropped when they are given back.
+     */
+    public final static long BUFFER_POOL_MAX_SIZE;
+    /**
+     * 文件传输时是否在发送数据的同时计算 CRC32C 校验和，接收方会在接收完毕之后进行校验。
+     * <p>
+     * Whether the CRC32C checksum is computed while sending file data in file transfers. The receiver verifies it after receiving.
+     */
+    public final static boolean FILE_CHECKSUM;
+    /**
+     * 本机所有文件传输共用的带宽上限，单位是字节每秒，0 代表不限制，可以通过 limit 命令在运行中修改。
+     * <p>
+     * The bandwidth limit shared by all file transfers of this host in bytes per second, 0 means unlimited. It can be changed at runtime through the limit command.
+     */
+    public final static long TRANSFER_HOST_RATE;
+    /**
+     * 每一个文件传输的带宽上限，单位是字节每秒，0 代表不限制，可以通过 limit 命令在运行中修改。
+     * <p>
+     * The bandwidth limit of each file transfer in bytes per second, 0 means unlimited. It can be changed at runtime through the limit command.
+     */
+    public final static long TRANSFER_RATE;
+    /**
+     * 本机同时进行的文件传输数量上限，超出的传输会等待，0 代表不限制，可以通过 limit 命令在运行中修改。
+     * <p>
+     * The maximum number of file transfers running at the same time on this host. Further transfers wait, 0 means unlimited. It can be changed at runtime through the limit command.
+     */
+    public final static int TRANSFER_MAX_CONCURRENT;
+    /**
+     * 主控异步执行传输命令的线程池中最多的线程数量，没有配置的时候平台线程默认是 64，Java 21 及以上版本中的虚拟线程默认是 256。
+     * <p>
+     * The maximum number of threads in the pool with which the master runs transfer commands asynchronously. When not configured, it defaults to 64 for platform threads, and to 256 for the virtual threads used on Java 21 and above.
+     */
+    public final static int TRANSFER_EXECUTOR_THREADS;
+    /**
+     * 主控异步执行传输命令的线程池的等待队列长度，线程与队列都满的时候新的传输命令会直接失败。
+     * <p>
+     * The length of the waiting queue of the pool with which the master runs transfer commands asynchronously. When both the threads and the queue are full, new transfer commands fail immediately.
+     */
+    public final static int TRANSFER_EXECUTOR_QUEUE_SIZE;
+    /**
+     * 主控为每一个流式命令缓存的输出字节数量上限，读取输出的速度跟不上的时候，最早的输出会被丢弃。
+     * <p>
+     * The maximum number of output bytes the master buffers for each streaming command. When the output is not read fast enough, the oldest output is dropped.
+     */
+    public final static int CONSOLE_STREAM_BUFFER_SIZE;
+    /**
+     * 命令帧与结果帧等控制帧中数据体的最大字节数量，超出上限的帧会被拒绝，发出这种帧的连接会被关闭，避免损坏或者恶意的帧使得接收方分配过多内存。
+     * <p>
+     * The maximum number of payload bytes of control frames such as command and result frames. Larger frames are rejected and the connection sending them is closed, so a corrupt or hostile frame cannot make the receiver allocate too much memory.
+     */
+    public final static int MAX_FRAME_SIZE;
+    /**
+     * 被控常驻 shell 进程池的大小，命令行会话会将命令交给池中的 shell 执行，避免每一个命令都创建一次进程，0 代表不使用进程池。
+     * <p>
+     * Size of the pool of long-lived shell processes on the controlled end. The console session hands commands to the shells of the pool instead of creating a process for every command, 0 means the pool is not used.
+     */
+    public final static int CONSOLE_SHELL_POOL_SIZE;
+    /**
+     * 常驻 shell 进程池使用的 shell 程序路径。
+     * <p>
+     * Path of the shell program used by the pool of long-lived shell processes.
+     */
+    public final static String CONSOLE_SHELL_PATH;
+    /**
+     * 查看目录时一页最多包含的文件数量，超出的文件需要通过返回的继续标记读取，0 代表一次读取全部文件。
+     * <p>
+     * The maximum number of files in a page when viewing a directory. The remaining files are read with the returned continuation token, 0 means all files are read at once.
+     */
+    public final static int SEE_DIR_PAGE_SIZE;
+    /**
+     * 被控目录列表缓存可以使用的字节数量上限，缓存中的目录通过文件系统的变化通知失效，0 代表不使用缓存。
+     * <p>
+     * Maximum number of bytes the directory listing cache of the controlled end can use. Cached directories are invalidated through the change notifications of the file system, 0 means the cache is not used.
+     */
+    public final static long SEE_DIR_CACHE_SIZE;
+    /**
+     * 主控端目录列表缓存的有效毫秒数，有效期内重复查看同一个目录时直接使用本地的结果，0 代表不使用缓存。
+     * <p>
+     * Number of milliseconds a directory listing cached by the master stays valid. Viewing the same directory again within it uses the local result, 0 means the cache is not used.
+     */
+    public final static long SEE_DIR_MASTER_CACHE_TTL;
+    /**
+     * 主控查看一个目录之后在后台提前查看的子目录数量上限，只在启用主控端缓存的时候生效，0 代表不提前查看。
+     * <p>
+     * Maximum number of subdirectories the master views in the background in advance after viewing a directory. It only takes effect when the master cache is enabled, 0 means nothing is viewed in advance.
+     */
+    public final static int SEE_DIR_PREFETCH;
+    /**
+     * 被控搜索文件内容时并行工作的线程数量，默认是 CPU 核心数。
+     * <p>
+     * Number of threads working in parallel when the controlled end searches file contents, the number of CPU cores by default.
+     */
+    public final static int SEARCH_PARALLELISM;
+    /**
+     * 一次搜索默认最多返回的匹配行数，可以在命令中通过 -m 修改。
+     * <p>
+     * The default maximum number of matching lines returned by a search, it can be changed with -m in the command.
+     */
+    public final static int SEARCH_MAX_MATCHES;
+    /**
+     * 通过控制台跟踪文件并且没有指定 -t 时跟踪的秒数，到达之后命令结束并显示收到的数据。
+     * <p>
+     * Number of seconds a file is followed when following it through the console without -t. After that the command ends and the received data is displayed.
+     */
+    public final static int FOLLOW_TIMEOUT;
     /**
      * 工具全局日志界别对象
      */
@@ -79,6 +244,10 @@ public final class ConfigureConstantArea {
      * 文件传输端口，默认是10002
      */
     public static int FILE_PORT;
+    /**
+     * 通信文字编码对应的编码集对象，在编码集被设置的时候同步更新，避免每一次编解码都根据名称查找编码集
+     */
+    private static Charset charset;
 
     static {
         LOGGER.setUseParentHandlers(false);
@@ -105,11 +274,40 @@ public final class ConfigureConstantArea {
             TCP_BUFFER_MAX_SIZE = Integer.parseInt(properties.getProperty("tcp.buffer.max.size", "65535"));
             FILE_PORT = Integer.parseInt(properties.getProperty("tcp.file.port", "10002"));
             CHARSET = properties.getProperty("charset", "utf-8");
+            charset = Charset.forName(CHARSET);
             PROGRESS_REFRESH_THRESHOLD = Integer.parseInt(properties.getProperty("progress.refresh.threshold", "256"));
             PROGRESS_COMPATIBILITY_MODE = Boolean.parseBoolean(properties.getProperty("progress.compatibility.mode", "false"));
             FILE_PROGRESS_STRING = properties.getProperty("file.progress.event", "percentage");
             PROGRESS_COLOR_DISPLAY = Boolean.parseBoolean(properties.getProperty("progress.color.display", "true"));
             PERSISTENT_SESSION_CHANNEL_PORT = Integer.parseInt(properties.getProperty("persistent.session.channel.port", "10003"));
+            CONTROLLED_WORKER_THREADS = Integer.parseInt(properties.getProperty("controlled.worker.threads", String.valueOf(ThreadUtils.isVirtual() ? 256 : Runtime.getRuntime().availableProcessors() << 1)));
+            CONTROLLED_WORKER_QUEUE_SIZE = Integer.parseInt(properties.getProperty("controlled.worker.queue.size", "1024"));
+            CONTROLLED_CONNECTION_PARALLELISM = Math.max(1, Integer.parseInt(properties.getProperty("controlled.connection.parallelism", "8")));
+            MULTIPLEX_ENABLE = Boolean.parseBoolean(properties.getProperty("multiplex.enable", "true"));
+            MULTIPLEX_STREAM_WINDOW = Integer.parseInt(properties.getProperty("multiplex.stream.window", "262144"));
+            String compression = properties.getProperty("file.compression", "deflate").trim();
+            FILE_COMPRESSION = compression.isEmpty() || "null".equals(compression) ? new String[0] : compression.split("\\s*,\\s*");
+            FILE_COMPRESSION_LEVEL = Integer.parseInt(properties.getProperty("file.compression.level", "1"));
+            FILE_WINDOW_SIZE = Math.max(1, Integer.parseInt(properties.getProperty("file.window.size", "64")));
+            FILE_READ_AHEAD = Math.max(1, Integer.parseInt(properties.getProperty("file.read.ahead", "16")));
+            BUFFER_POOL_MAX_SIZE = Math.max(0, Long.parseLong(properties.getProperty("buffer.pool.max.size", "16777216")));
+            FILE_CHECKSUM = Boolean.parseBoolean(properties.getProperty("file.checksum", "true"));
+            TRANSFER_HOST_RATE = Math.max(0, Long.parseLong(properties.getProperty("transfer.host.rate", "0")));
+            TRANSFER_RATE = Math.max(0, Long.parseLong(properties.getProperty("transfer.rate", "0")));
+            TRANSFER_MAX_CONCURRENT = Math.max(0, Integer.parseInt(properties.getProperty("transfer.max.concurrent", "4")));
+            TRANSFER_EXECUTOR_THREADS = Math.max(1, Integer.parseInt(properties.getProperty("transfer.executor.threads", ThreadUtils.isVirtual() ? "256" : "64")));
+            TRANSFER_EXECUTOR_QUEUE_SIZE = Math.max(0, Integer.parseInt(properties.getProperty("transfer.executor.queue.size", "1024")));
+            CONSOLE_STREAM_BUFFER_SIZE = Math.max(1, Integer.parseInt(properties.getProperty("console.stream.buffer.size", "1048576")));
+            MAX_FRAME_SIZE = Math.max(Frame.MAX_CHUNK_SIZE, Integer.parseInt(properties.getProperty("frame.max.size", "67108864")));
+            CONSOLE_SHELL_POOL_SIZE = Math.max(0, Integer.parseInt(properties.getProperty("console.shell.pool.size", "0")));
+            CONSOLE_SHELL_PATH = properties.getProperty("console.shell.path", "/bin/sh").trim();
+            SEE_DIR_PAGE_SIZE = Math.max(0, Integer.parseInt(properties.getProperty("see.dir.page.size", "0")));
+            SEE_DIR_CACHE_SIZE = Math.max(0, Long.parseLong(properties.getProperty("see.dir.cache.size", "0")));
+            SEE_DIR_MASTER_CACHE_TTL = Math.max(0, Long.parseLong(properties.getProperty("see.dir.master.cache.ttl", "0")));
+            SEE_DIR_PREFETCH = Math.max(0, Integer.parseInt(properties.getProperty("see.dir.prefetch", "8")));
+            SEARCH_PARALLELISM = Math.max(1, Integer.parseInt(properties.getProperty("search.parallelism", String.valueOf(Runtime.getRuntime().availableProcessors()))));
+            SEARCH_MAX_MATCHES = Math.max(1, Integer.parseInt(properties.getProperty("search.max.matches", "1000")));
+            FOLLOW_TIMEOUT = Math.max(1, Integer.parseInt(properties.getProperty("follow.timeout", "10")));
         }
 
         boolean levelIsOk = false;
@@ -208,9 +406,19 @@ public final class ConfigureConstantArea {
      *                The string of the character encoding set that needs to be used.
      */
     public static void setCHARSET(String CHARSET) {
+        ConfigureConstantArea.charset = Charset.forName(CHARSET);
         ConfigureConstantArea.CHARSET = CHARSET;
     }
 
+    /**
+     * @return 当前通信过程中使用的编码集对象，与 CHARSET 对应。
+     * <p>
+     * The charset object used in the current communication process, corresponding to CHARSET.
+     */
+    public static Charset getCharset() {
+        return charset;
+    }
+
     /**
      * 设置当前通讯过程中，文件等二进制数据的收发端口，一般情况下，此参数需要保证双端相同，否则会导致无回复或无应答的情况发生。
      * <p>
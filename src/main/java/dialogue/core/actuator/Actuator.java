@@ -15,7 +15,9 @@ public interface Actuator {
      */
     String OK_1 = "ok/file1";
     String OK_2 = "ok/file2";
+    String OK_3 = "ok/file3";
     String AE_1 = "file1/AlreadyExists";
+    String DL_1 = "file1/Delta";
 
     /**
      * @return 能够调用该执行器的会话对象编号。
@@ -42,6 +44,15 @@ public interface Actuator {
      */
     boolean isRunning();
 
+    /**
+     * @return 如果返回true，代表该执行器是文件传输执行器，它的命令会交给传输调度器执行，受到传输数量与带宽的限制，并且不会阻塞交互命令。
+     * <p>
+     * If true is returned, the actuator is a file transfer actuator. Its commands are run by the transfer scheduler, limited by the transfer count and bandwidth, and never block interactive commands.
+     */
+    default boolean isTransfer() {
+        return false;
+    }
+
     /**
      * @param command 需要执行的命令参数
      *                <p>
@@ -0,0 +1,188 @@
+package dialogue.core.actuator;
+
+import dialogue.ConfigureConstantArea;
+import dialogue.Session;
+import dialogue.core.channel.DataChannel;
+import dialogue.core.controlled.ControlledSession;
+
+import dialogue.utils.ThreadUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 被控端的文件跟踪执行器，与 tail -F 类似，先发送文件的最后若干行，之后持续将文件新追加的数据分批发送给主控，直到主控关闭文件数据流或者到达指定的时间。
+ * <p>
+ * File following actuator of the controlled end, similar to tail -F. It first sends the last lines of the file, and then keeps sending the data appended to the file to the master batch by batch, until the master closes the file data stream or the given time is reached.
+ * <p>
+ * 命令格式：follow [-n 最后的行数] [-o 开始位置] [-e 过滤内容] [-F] [-i] [-t 秒数] [--] 文件，-n 默认为 10，-o 代表从指定的字节位置开始而不是最后若干行，
+ * -e 代表只发送匹配的行，-F 代表过滤内容是字面量而不是正则表达式，-i 代表忽略大小写，-t 为 0 或者没有指定时一直跟踪到主控取消。
+ * <p>
+ * Command format: follow [-n last lines] [-o start position] [-e filter] [-F] [-i] [-t seconds] [--] file. -n is 10 by default, -o starts from the given byte position instead of the last lines,
+ * -e only sends the matching lines, -F means the filter is a literal instead of a regular expression, -i ignores case, and when -t is 0 or not given the file is followed until the master cancels.
+ *
+ * @author 赵凌宇
+ */
+public class ControlledFollowActuator implements Actuator {
+
+    protected final Socket accept;
+    protected final InputStream inputStream;
+    protected final OutputStream outputStream;
+
+    public ControlledFollowActuator(Socket accept, InputStream inputStream, OutputStream outputStream) {
+        this.accept = accept;
+        this.inputStream = inputStream;
+        this.outputStream = outputStream;
+    }
+
+    /**
+     * @return 能够调用该执行器的会话对象编号。
+     * <p>
+     * The number of the session object that can call the executor.
+     */
+    @Override
+    public int getType() {
+        return Session.CONTROLLED_FILE_SESSION;
+    }
+
+    /**
+     * @return 该执行器的名称，一般是该执行器能够解析的命令标识。
+     * <p>
+     * The name of the executor is generally the command ID that the executor can resolve.
+     */
+    @Override
+    public String getName() {
+        return "follow";
+    }
+
+    /**
+     * 返回会话当前运行状态，当一个会话没有在运行的时候，该函数将返回false，一个没有运行中的会话将不具备执行命令与回显数据的能力
+     * <p>
+     * Returns the current running state of the session. When a session is not running, this function will return false. A session that is not running will not have the ability to execute commands and echo data
+     *
+     * @return 如果返回true，代表当前会话正在运行中
+     * <p>
+     * If true is returned, the current session is running
+     */
+    @Override
+    public boolean isRunning() {
+        return ActuatorManager.containControlledActuator(this.getName());
+    }
+
+    /**
+     * @param command 需要执行的命令参数
+     *                <p>
+     *                Command parameters to be executed
+     * @param matcher 命令匹配器，通过该匹配器获取到命令中的所需参数
+     *                <p>
+     *                Command matcher, through which the required parameters in the command can be obtained
+     * @return 运行之后的结果的字符串形式
+     * <p>
+     * String form of the result after running
+     * @throws IOException 异常抛出主要为当运行执行器的过程中，出现了无法提供给对方的异常信息时，异常将会被抛出。
+     *                     <p>
+     *                     Exception throwing is mainly used to throw exceptions when there is exception information that cannot be provided to the other party during the execution.
+     */
+    @Override
+    public String runActuatorCommand(String command, Matcher matcher) throws IOException {
+        // 数据与错误信息都通过文件数据流返回，主控关闭这个数据流就代表取消跟踪
+        DataChannel fileChannel = ControlledSession.openFileChannel(accept);
+        OutputStream outputStream1 = new BufferedOutputStream(fileChannel.getOutputStream(), ConfigureConstantArea.TCP_BUFFER_MAX_SIZE);
+        try {
+            String target = null;
+            String filter = null;
+            boolean literal = false;
+            boolean ignoreCase = false;
+            boolean options = true;
+            long lines = 10;
+            long offset = -1;
+            long seconds = 0;
+            while (matcher.find()) {
+                String arg = matcher.group(1);
+                if (options && "--".equals(arg)) {
+                    options = false;
+                } else if (options && "-F".equals(arg)) {
+                    literal = true;
+                } else if (options && "-i".equals(arg)) {
+                    ignoreCase = true;
+                } else if (options && "-e".equals(arg) && matcher.find()) {
+                    filter = matcher.group(1);
+                } else if (options && ("-n".equals(arg) || "-o".equals(arg) || "-t".equals(arg)) && matcher.find()) {
+                    long value;
+                    try {
+                        value = Math.max(0, Long.parseLong(matcher.group(1)));
+                    } catch (NumberFormatException e) {
+                        outputStream1.write(("Invalid number for " + arg + ": " + matcher.group(1)).getBytes(ConfigureConstantArea.CHARSET));
+                        return ControlledSession.SEND_FILE_ERROR;
+                    }
+                    if ("-n".equals(arg)) {
+                        lines = value;
+                    } else if ("-o".equals(arg)) {
+                        offset = value;
+                    } else {
+                        seconds = value;
+                    }
+                } else if (target == null) {
+                    target = arg;
+                }
+            }
+            if (target == null) {
+                outputStream1.write(("ERROR COMMAND " + command + "\nExample: follow [-n last lines] [-o start position] [-e filter] [-F] [-i] [-t seconds] [--] file").getBytes(ConfigureConstantArea.CHARSET));
+                return ControlledSession.SEND_FILE_ERROR;
+            }
+            File file = new File(target);
+            if (!file.isFile()) {
+                outputStream1.write(((file.exists() ? "Not a file: " : "No such file: ") + file.getPath()).getBytes(ConfigureConstantArea.CHARSET));
+                return ControlledSession.SEND_FILE_ERROR;
+            }
+            Pattern pattern;
+            try {
+                pattern = filter == null ? null : Pattern.compile(literal ? Pattern.quote(filter) : filter, ignoreCase ? Pattern.CASE_INSENSITIVE : 0);
+            } catch (PatternSyntaxException e) {
+                outputStream1.write(("Invalid pattern: " + e.getMessage()).getBytes(ConfigureConstantArea.CHARSET));
+                return ControlledSession.SEND_FILE_ERROR;
+            }
+            ConfigureConstantArea.LOGGER.info("follow " + file.getPath());
+            FileFollower follower = new FileFollower(file.toPath(), pattern, outputStream1);
+            // 主控不会在文件数据流中发送数据，读取到结束代表主控已经取消，文件没有变化的时候也能及时停止
+            InputStream inputStream1 = fileChannel.getInputStream();
+            ThreadUtils.start("dialogue-follow-cancel", () -> {
+                try {
+                    while (inputStream1.read() >= 0) {
+                        // 忽略主控发送的数据
+                    }
+                } catch (IOException ignored) {
+                    // 数据流已经关闭
+                }
+                follower.cancel();
+            });
+            try {
+                long start = offset >= 0 ? offset : follower.lastLines((int) Math.min(lines, Integer.MAX_VALUE));
+                follower.follow(start, seconds == 0 ? 0 : System.currentTimeMillis() + seconds * 1000);
+            } catch (IOException e) {
+                // 主控取消之后写入会失败，其它错误显示在已经发送的数据之后
+                ConfigureConstantArea.LOGGER.info("follow " + file.getPath() + " stopped: " + e);
+                try {
+                    outputStream1.write(('\n' + e.toString()).getBytes(ConfigureConstantArea.CHARSET));
+                } catch (IOException ignored) {
+                    // 主控已经关闭了文件数据流
+                }
+            }
+            return ControlledSession.SEND_TEXT;
+        } finally {
+            try {
+                outputStream1.flush();
+            } catch (IOException ignored) {
+                // 主控已经关闭了文件数据流
+            }
+            fileChannel.close();
+        }
+    }
+}
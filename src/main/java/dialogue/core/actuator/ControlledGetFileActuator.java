@@ -2,12 +2,22 @@ package dialogue.core.actuator;
 
 import dialogue.ConfigureConstantArea;
 import dialogue.Session;
+import dialogue.core.channel.CompressedTransfer;
+import dialogue.core.channel.DataChannel;
+import dialogue.core.channel.DeltaTransfer;
+import dialogue.core.channel.ResumableTransfer;
+import dialogue.core.channel.StripedTransfer;
+import dialogue.core.channel.TransferChecksum;
 import dialogue.core.controlled.ControlledSession;
 import dialogue.utils.IOUtils;
 
 import java.io.*;
 import java.net.Socket;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Matcher;
+import java.util.zip.Checksum;
 
 /**
  * get 命令执行类，与主控的get执行类相互对应，用于主控从被控设备中获取数据。
@@ -43,6 +53,11 @@ public class ControlledGetFileActuator implements Actuator {
         return "get";
     }
 
+    @Override
+    public boolean isTransfer() {
+        return true;
+    }
+
     /**
      * 返回会话当前运行状态，当一个会话没有在运行的时候，该函数将返回false，一个没有运行中的会话将不具备执行命令与回显数据的能力
      * <p>
@@ -72,35 +87,79 @@ public class ControlledGetFileActuator implements Actuator {
     @Override
     public String runActuatorCommand(String command, Matcher matcher) throws IOException {
         // get 目标文件 一样要先获取目标文件的数据
+        boolean delta = DeltaTransfer.parseOption(matcher);
+        int stripes = delta ? 1 : StripedTransfer.parseStripes(matcher);
         if (matcher.find()) {
-            Socket fileSocket = new Socket(accept.getInetAddress().getHostName(), ConfigureConstantArea.FILE_PORT);
-            DataOutputStream outputStream1 = new DataOutputStream(fileSocket.getOutputStream());
+            DataChannel fileChannel = ControlledSession.openFileChannel(accept);
+            DataOutputStream outputStream1 = new DataOutputStream(fileChannel.getOutputStream());
             ConfigureConstantArea.LOGGER.info(OK_1);
-            try {
-                FileInputStream fileInputStream = new FileInputStream(matcher.group(1));
+            boolean sizeSent = false;
+            try (FileInputStream fileInputStream = new FileInputStream(matcher.group(1))) {
+                FileChannel source = fileInputStream.getChannel();
+                long size = source.size();
                 // 将本次的发送信息状态提供给主控
-                outputStream1.writeLong(fileInputStream.available());
+                outputStream1.writeLong(size);
+                sizeSent = true;
                 ConfigureConstantArea.LOGGER.info(OK_2);
-                // 将数据发送给主控
-                IOUtils.copy(fileInputStream, outputStream1, true);
+                if (stripes > 1) {
+                    // 分片模式，告知主控实际的分片数量，然后为每一个分片打开一个数据通道同时发送
+                    int count = StripedTransfer.stripeCount(size, stripes);
+                    outputStream1.writeInt(count);
+                    outputStream1.flush();
+                    List<DataChannel> channels = new ArrayList<>(count);
+                    try {
+                        for (int i = 0; i < count; i++) {
+                            channels.add(ControlledSession.openFileChannel(accept));
+                        }
+                        StripedTransfer.send(source, size, channels);
+                    } finally {
+                        for (DataChannel channel : channels) {
+                            IOUtils.close(channel);
+                        }
+                    }
+                    return ControlledSession.SEND_FILE_BYTE;
+                }
+                outputStream1.flush();
+                if (delta) {
+                    // 增量模式，主控会发送旧文件的签名，这里只发送不同的部分
+                    DeltaTransfer.sendDelta(source, size, fileChannel.getInputStream(), outputStream1);
+                    outputStream1.close();
+                    return ControlledSession.SEND_FILE_BYTE;
+                }
+                // 主控会告知它已经拥有的数据，校验一致的时候只发送剩余的部分，然后告知它支持的压缩算法
+                DataInputStream inputStream1 = new DataInputStream(fileChannel.getInputStream());
+                long position = ResumableTransfer.accept(source, size, inputStream1);
+                byte[] offer = CompressedTransfer.readOffer(inputStream1);
+                outputStream1.writeLong(position);
+                outputStream1.flush();
+                // 将数据发送给主控，数据不适合压缩的时候由数据通道直接发送，不经过额外的缓冲区
+                source.position(position);
+                Checksum checksum = TransferChecksum.create();
+                CompressedTransfer.send(source, size - position, offer, fileChannel, null, checksum);
+                TransferChecksum.writeTrailer(outputStream1, checksum);
+                outputStream1.flush();
+                outputStream1.close();
                 // 返回成功
                 return ControlledSession.SEND_FILE_BYTE;
             } catch (IOException e) {
-                // 将错误提供给主控
-                outputStream1.writeLong(-1);
-                outputStream1.flush();
                 String s = e.toString();
                 ConfigureConstantArea.LOGGER.warning(s);
-                outputStream1.writeUTF(s);
-                outputStream1.flush();
-                outputStream1.close();
+                if (!sizeSent) {
+                    // 主控还在等待文件大小，将错误提供给主控
+                    outputStream1.writeLong(-1);
+                    outputStream1.flush();
+                    outputStream1.writeUTF(s);
+                    outputStream1.flush();
+                    outputStream1.close();
+                }
+                // 文件大小已经发送的时候主控正在读取数据，错误记录会被当作文件数据，这里只关闭数据通道，主控会发现数据不完整
                 // 返回错误
                 return ControlledSession.SEND_FILE_ERROR;
             } finally {
-                IOUtils.close(fileSocket);
+                IOUtils.close(fileChannel);
             }
         } else {
-            return "ERROR COMMAND " + command + "\nExample: get [filePath] [filePath]";
+            return "ERROR COMMAND " + command + "\nExample: get [-d | -p stripes] [filePath] [filePath]";
         }
     }
 }
@@ -1,6 +1,11 @@
 package dialogue.core.actuator;
 
 import dialogue.ConfigureConstantArea;
+import dialogue.core.channel.AckWindow;
+import dialogue.core.channel.ArchiveTransfer;
+import dialogue.core.channel.CompressedTransfer;
+import dialogue.core.channel.DataChannel;
+import dialogue.core.channel.ReadAheadSender;
 import dialogue.core.controlled.ControlledSession;
 import dialogue.utils.IOUtils;
 
@@ -39,52 +44,39 @@ public class ControlledGetsDirActuator extends ControlledGetFileActuator {
      */
     @Override
     public String runActuatorCommand(String command, Matcher matcher) throws IOException {
-        // 首先找到目录路径
+        // 首先找到递归选项与目录路径
+        boolean recursive = ArchiveTransfer.parseOption(matcher);
         if (matcher.find()) {
             String dirPath = matcher.group(1);
             ConfigureConstantArea.LOGGER.info(dirPath);
             File file = new File(dirPath);
-            Socket fileSocket = new Socket(accept.getInetAddress().getHostName(), ConfigureConstantArea.FILE_PORT);
-            DataOutputStream dataOutputStream = new DataOutputStream(fileSocket.getOutputStream());
-            DataInputStream dataInputStream = new DataInputStream(fileSocket.getInputStream());
+            DataChannel fileChannel = ControlledSession.openFileChannel(accept);
+            DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(fileChannel.getOutputStream(), IOUtils.SMALL_FILE_SIZE));
+            DataInputStream dataInputStream = new DataInputStream(fileChannel.getInputStream());
+            // 主控会先告知它支持的压缩算法，无论目录是否存在都需要读取，避免关闭通道时丢弃未读取的数据
+            byte[] offer = CompressedTransfer.readOffer(dataInputStream);
             ConfigureConstantArea.LOGGER.info(OK_1);
+            if (recursive) {
+                return sendArchive(file, fileChannel, dataOutputStream);
+            }
             if (file.exists() && file.isDirectory()) {
                 // 开始迭代每一个文件
                 File[] files = file.listFiles();
                 if (files != null) {
-                    for (File listFile : files) {
-                        if (listFile.isDirectory()) {
-                            continue;
-                        }
-                        String name = listFile.getName();
-                        if (name.length() == 0) {
-                            continue;
+                    // 主控每接收一个文件都会回复 ok_2，窗口没有满的时候不需要等待回复就可以发送下一个文件
+                    AckWindow window = new AckWindow(dataInputStream, dataOutputStream, OK_2, ConfigureConstantArea.FILE_WINDOW_SIZE);
+                    // 由读取线程提前准备好后续的文件，当前线程只负责按照顺序发送，每一个文件单独选择是否压缩，较小的文件会与相邻的文件一起发送
+                    try (ReadAheadSender sender = new ReadAheadSender(files, offer, ConfigureConstantArea.FILE_READ_AHEAD)) {
+                        while (sender.hasNext()) {
+                            window.acquire();
+                            ConfigureConstantArea.LOGGER.info(sender.sendNext(dataOutputStream, fileChannel, offer));
                         }
-                        new Thread(() -> {
-                            try {
-                                ConfigureConstantArea.LOGGER.info(name);
-                                // 获取到当前文件的大小，返回给主控
-                                dataOutputStream.writeLong(listFile.length());
-                                // 获取到当前文件的名称，返回给主控
-                                dataOutputStream.writeUTF(name);
-                                // 开始传输数据
-                                BufferedInputStream bufferedInputStream = new BufferedInputStream(new FileInputStream(listFile));
-                                IOUtils.copy(bufferedInputStream, dataOutputStream, false);
-                                dataOutputStream.flush();
-                                // 当前文件传输完毕，关闭当前文件的数据输入流
-                                IOUtils.close(bufferedInputStream);
-                            } catch (IOException e) {
-                                e.printStackTrace();
-                            }
-                        }).start();
-                        // 等待主控发送准备好接受下一次数据的指令
-                        ConfigureConstantArea.LOGGER.info(dataInputStream.readUTF());
                     }
-                    // 发送完毕，返回 -2
+                    // 发送完毕，返回 -2，然后等待主控接收完所有的文件
                     dataOutputStream.writeLong(-2);
-                    dataOutputStream.flush();
+                    window.drain();
                     dataOutputStream.close();
-                    IOUtils.close(fileSocket);
+                    IOUtils.close(fileChannel);
                     // 返回成功
                     return ControlledSession.SEND_FILE_BYTE;
                 } else {
@@ -95,7 +87,7 @@ public class ControlledGetsDirActuator extends ControlledGetFileActuator {
                     dataOutputStream.writeUTF("Access to this directory is denied. " + dirPath);
                     dataOutputStream.flush();
                     dataOutputStream.close();
-                    IOUtils.close(fileSocket);
+                    IOUtils.close(fileChannel);
                     // 返回错误
                     return ControlledSession.SEND_FILE_ERROR;
                 }
@@ -107,13 +99,37 @@ public class ControlledGetsDirActuator extends ControlledGetFileActuator {
                 dataOutputStream.writeUTF("The file directory does not exist, or the directory you specified is not a directory. " + dirPath);
                 dataOutputStream.flush();
                 dataOutputStream.close();
-                IOUtils.close(fileSocket);
+                IOUtils.close(fileChannel);
                 // 返回错误
                 return ControlledSession.SEND_FILE_ERROR;
             }
         } else {
             // 这个情况代表有错误，且无法避免
-            return "ERROR COMMAND " + command + "\nExample: gets [dirPath] [dirPath]";
+            return "ERROR COMMAND " + command + "\nExample: gets [-r] [dirPath] [dirPath]";
+        }
+    }
+
+    /**
+     * 递归模式的发送，将目录中所有的子目录与文件作为一条记录流发送给主控，每一个文件之间不需要等待主控的确认。
+     *
+     * @param file             需要发送的目录
+     * @param fileChannel      数据通道
+     * @param dataOutputStream 数据通道的输出流
+     * @return 运行之后的结果的字符串形式
+     * @throws IOException 发送数据时发生的异常
+     */
+    private String sendArchive(File file, DataChannel fileChannel, DataOutputStream dataOutputStream) throws IOException {
+        try {
+            if (!file.isDirectory()) {
+                ArchiveTransfer.sendError(dataOutputStream, "The file directory does not exist, or the directory you specified is not a directory. " + file.getPath());
+                return ControlledSession.SEND_FILE_ERROR;
+            }
+            long files = ArchiveTransfer.send(file.toPath(), fileChannel, null);
+            ConfigureConstantArea.LOGGER.info(files + " files sent.");
+            return ControlledSession.SEND_FILE_BYTE;
+        } finally {
+            IOUtils.close(dataOutputStream);
+            IOUtils.close(fileChannel);
         }
     }
 }
@@ -2,11 +2,15 @@ package dialogue.core.actuator;
 
 import dialogue.ConfigureConstantArea;
 import dialogue.Session;
+import dialogue.core.channel.CompressedTransfer;
+import dialogue.core.channel.DataChannel;
+import dialogue.core.codec.CodecManager;
 import dialogue.core.controlled.ControlledSession;
 import dialogue.utils.IOUtils;
 
 import java.io.*;
 import java.net.Socket;
+import java.nio.channels.FileChannel;
 import java.util.regex.Matcher;
 
 /**
@@ -69,21 +73,28 @@ public class ControlledLookFileActuator implements Actuator {
     @Override
     public String runActuatorCommand(String command, Matcher matcher) throws IOException {
         // look 目标文件，首先要获取到目标文件的数据，并将数据返回
-        Socket fileSocket = new Socket(accept.getInetAddress().getHostName(), ConfigureConstantArea.FILE_PORT);
+        DataChannel fileChannel = ControlledSession.openFileChannel(accept);
+        // 主控会先告知它支持的压缩算法，无论成功与否都需要读取，避免关闭通道时丢弃未读取的数据
+        byte[] offer = CompressedTransfer.readOffer(fileChannel.getInputStream());
         if (matcher.find()) {
             String filePath = matcher.group(1);
             // 这个方式不需要状态
-            OutputStream outputStream1 = fileSocket.getOutputStream();
+            OutputStream outputStream1 = fileChannel.getOutputStream();
             try {
-                IOUtils.copy(new BufferedInputStream(new FileInputStream(filePath)), outputStream1, true);
+                FileInputStream fileInputStream = new FileInputStream(filePath);
+                FileChannel source = fileInputStream.getChannel();
+                CompressedTransfer.send(source, source.size(), offer, fileChannel, null, null);
+                IOUtils.close(fileInputStream);
             } catch (IOException e) {
                 String s = e.toString();
                 ConfigureConstantArea.LOGGER.warning(s);
+                outputStream1.write(CodecManager.RAW);
                 outputStream1.write(s.getBytes(ConfigureConstantArea.CHARSET));
             }
-            IOUtils.close(fileSocket);
+            IOUtils.close(fileChannel);
         } else {
-            OutputStream outputStream = fileSocket.getOutputStream();
+            OutputStream outputStream = fileChannel.getOutputStream();
+            outputStream.write(CodecManager.RAW);
             outputStream.write(("ERROR COMMAND " + command + "\nExample: look [filePath]").getBytes(ConfigureConstantArea.CHARSET));
             IOUtils.close(outputStream);
         }
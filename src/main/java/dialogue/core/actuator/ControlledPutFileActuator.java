@@ -2,12 +2,24 @@ package dialogue.core.actuator;
 
 import dialogue.ConfigureConstantArea;
 import dialogue.Session;
+import dialogue.core.channel.CompressedTransfer;
+import dialogue.core.channel.DataChannel;
+import dialogue.core.channel.DeltaTransfer;
+import dialogue.core.channel.ResumableTransfer;
+import dialogue.core.channel.StripedTransfer;
+import dialogue.core.channel.TransferChecksum;
 import dialogue.core.controlled.ControlledSession;
 import dialogue.utils.IOUtils;
 
 import java.io.*;
 import java.net.Socket;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Matcher;
+import java.util.zip.Checksum;
 
 /**
  * 被控端的文件接受put命令执行器，在该执行器中，有着执行命令接受数据的功能。
@@ -46,6 +58,11 @@ public class ControlledPutFileActuator implements Actuator {
         return "put";
     }
 
+    @Override
+    public boolean isTransfer() {
+        return true;
+    }
+
     /**
      * 返回会话当前运行状态，当一个会话没有在运行的时候，该函数将返回false，一个没有运行中的会话将不具备执行命令与回显数据的能力
      * <p>
@@ -73,26 +90,52 @@ public class ControlledPutFileActuator implements Actuator {
      */
     @Override
     public String runActuatorCommand(String command, Matcher matcher) {
-        // 获取到文件新路径
+        // 获取到分片数量与文件新路径
+        boolean delta = DeltaTransfer.parseOption(matcher);
+        int stripes = delta ? 1 : StripedTransfer.parseStripes(matcher);
         if (matcher.find() && matcher.find()) {
             File file = new File(matcher.group(1));
             // 创建一个Socket，向主控发送接受请求
             try {
-                Socket socket = new Socket(accept.getInetAddress().getHostName(), ConfigureConstantArea.FILE_PORT);
-                DataOutputStream dataOutputStream = new DataOutputStream(socket.getOutputStream());
+                DataChannel fileChannel = ControlledSession.openFileChannel(accept);
+                DataOutputStream dataOutputStream = new DataOutputStream(fileChannel.getOutputStream());
                 ConfigureConstantArea.LOGGER.info(OK_1);
                 dataOutputStream.writeUTF(OK_1);
-                DataInputStream dataInputStream = new DataInputStream(socket.getInputStream());
+                DataInputStream dataInputStream = new DataInputStream(fileChannel.getInputStream());
                 try {
-                    // 打开文件数据流
-                    BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(new FileOutputStream(file));
-                    // 开始发送准备好的标识
-                    ConfigureConstantArea.LOGGER.info(OK_2);
-                    dataOutputStream.writeUTF(OK_2);
-                    // 开始接受数据主体
-                    IOUtils.copy(dataInputStream, bufferedOutputStream, false);
-                    bufferedOutputStream.flush();
-                    bufferedOutputStream.close();
+                    if (delta) {
+                        receiveDelta(file, OK_2, dataOutputStream, dataInputStream);
+                        ConfigureConstantArea.LOGGER.info(OK_3);
+                        dataOutputStream.writeUTF(OK_3);
+                        dataOutputStream.flush();
+                        return ControlledSession.SEND_FILE_BYTE;
+                    }
+                    if (stripes > 1) {
+                        return receiveStripes(file, dataOutputStream, dataInputStream);
+                    }
+                    // 打开临时文件，上一次中断的传输留下的数据会被保留
+                    Path target = file.toPath();
+                    Checksum checksum = TransferChecksum.create();
+                    try (FileChannel part = ResumableTransfer.openPart(target)) {
+                        // 开始发送准备好的标识，并告知主控已经拥有的数据与支持的压缩算法
+                        ConfigureConstantArea.LOGGER.info(OK_2);
+                        dataOutputStream.writeUTF(OK_2);
+                        ResumableTransfer.offer(part, Long.MAX_VALUE, dataOutputStream);
+                        CompressedTransfer.offer(dataOutputStream);
+                        // 开始接受数据主体，主控会告知文件大小与本次发送的起始位置
+                        long size = dataInputStream.readLong();
+                        long position = dataInputStream.readLong();
+                        InputStream data = CompressedTransfer.receive(dataInputStream, null, checksum);
+                        ResumableTransfer.receive(part, position, size, data, null);
+                        data.close();
+                    }
+                    // 临时文件关闭之后再校验，校验失败的临时文件不会被保留，下一次会重新传输完整的数据
+                    TransferChecksum.verify(dataInputStream, checksum, ResumableTransfer.partOf(target).toFile());
+                    // 全部接收之后再替换目标文件，并告知主控
+                    ResumableTransfer.commit(target);
+                    ConfigureConstantArea.LOGGER.info(OK_3);
+                    dataOutputStream.writeUTF(OK_3);
+                    dataOutputStream.flush();
                     return ControlledSession.SEND_FILE_BYTE;
                 } catch (IOException e) {
                     String s = e.toString();
@@ -103,14 +146,71 @@ public class ControlledPutFileActuator implements Actuator {
                 } finally {
                     IOUtils.close(dataInputStream);
                     IOUtils.close(dataOutputStream);
-                    IOUtils.close(socket);
+                    IOUtils.close(fileChannel);
                 }
             } catch (IOException e) {
                 // 发生了连接错误
                 return e.toString();
             }
         } else {
-            return "ERROR COMMAND " + command + "\nExample: put [filePath] [filePath]";
+            return "ERROR COMMAND " + command + "\nExample: put [-d | -p stripes] [filePath] [filePath]";
+        }
+    }
+
+    /**
+     * 增量模式的接收，将已经存在的旧文件的签名发送给主控，并根据主控发送的增量指令在临时文件中重建新文件，最后替换旧文件。
+     *
+     * @param file             文件新路径，文件不存在的时候主控会发送完整的数据
+     * @param status           签名之前发送给主控的状态
+     * @param dataOutputStream 数据通道的输出流
+     * @param dataInputStream  数据通道的输入流
+     * @throws IOException 接收数据、读写文件或者校验失败时发生的异常
+     */
+    protected static void receiveDelta(File file, String status, DataOutputStream dataOutputStream, DataInputStream dataInputStream) throws IOException {
+        Path target = file.toPath();
+        try (FileChannel basis = file.isFile() ? FileChannel.open(target, StandardOpenOption.READ) : null;
+             FileChannel part = FileChannel.open(ResumableTransfer.partOf(target), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ConfigureConstantArea.LOGGER.info(status);
+            dataOutputStream.writeUTF(status);
+            DeltaTransfer.sendSignature(basis, dataOutputStream);
+            DeltaTransfer.receiveDelta(basis, part, dataInputStream);
+        }
+        ResumableTransfer.commit(target);
+    }
+
+    /**
+     * 分片模式的上传，主控会告知文件大小与实际的分片数量，这里为每一个分片打开一个数据通道，同时接收所有的分片并写入到文件中对应的位置，完整性校验通过之后告知主控。
+     *
+     * @param file             文件新路径
+     * @param dataOutputStream 主数据通道的输出流
+     * @param dataInputStream  主数据通道的输入流
+     * @return 需要返回给主控的状态
+     * @throws IOException 接收分片时发生的异常
+     */
+    private String receiveStripes(File file, DataOutputStream dataOutputStream, DataInputStream dataInputStream) throws IOException {
+        FileChannel target = FileChannel.open(ResumableTransfer.partOf(file.toPath()), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ConfigureConstantArea.LOGGER.info(OK_2);
+        dataOutputStream.writeUTF(OK_2);
+        dataOutputStream.flush();
+        List<DataChannel> channels = new ArrayList<>();
+        try {
+            // 分片数量来自主控，检查通过之后才会打开数据通道
+            long size = dataInputStream.readLong();
+            int count = StripedTransfer.checkCount(size, dataInputStream.readInt());
+            for (int i = 0; i < count; i++) {
+                channels.add(ControlledSession.openFileChannel(accept));
+            }
+            StripedTransfer.receive(target, size, channels, null);
+        } finally {
+            for (DataChannel channel : channels) {
+                IOUtils.close(channel);
+            }
+            IOUtils.close(target);
         }
+        ResumableTransfer.commit(file.toPath());
+        ConfigureConstantArea.LOGGER.info(OK_3);
+        dataOutputStream.writeUTF(OK_3);
+        dataOutputStream.flush();
+        return ControlledSession.SEND_FILE_BYTE;
     }
 }
@@ -2,12 +2,17 @@ package dialogue.core.actuator;
 
 import dialogue.ConfigureConstantArea;
 import dialogue.Session;
+import dialogue.core.channel.ArchiveTransfer;
+import dialogue.core.channel.DataChannel;
+import dialogue.core.channel.PipelinedTransfer;
+import dialogue.core.channel.TransferChecksum;
 import dialogue.core.controlled.ControlledSession;
 import dialogue.utils.IOUtils;
 
 import java.io.*;
 import java.net.Socket;
 import java.util.regex.Matcher;
+import java.util.zip.Checksum;
 
 /**
  * 被控目录中所有文件的接收进程，在进行被控目录接收任务时的执行器。
@@ -71,16 +76,25 @@ public class ControlledPutsDirActuator extends ControlledPutFileActuator {
     public String runActuatorCommand(String command, Matcher matcher) {
         // 向对方发送文件接收请求
         try {
-            Socket fileSocket = new Socket(accept.getInetAddress().getHostName(), ConfigureConstantArea.FILE_PORT);
+            DataChannel fileChannel = ControlledSession.openFileChannel(accept);
+            boolean recursive = ArchiveTransfer.parseOption(matcher);
             if (matcher.find() && matcher.find()) {
                 // 获取到本地文件目录
                 String dirPath = matcher.group(1);
                 File file = new File(dirPath);
                 if (file.exists() && file.isDirectory()) {
                     ConfigureConstantArea.LOGGER.info(OK_1);
-                    DataOutputStream dataOutputStream = new DataOutputStream(fileSocket.getOutputStream());
-                    DataInputStream dataInputStream = new DataInputStream(fileSocket.getInputStream());
+                    DataOutputStream dataOutputStream = new DataOutputStream(fileChannel.getOutputStream());
+                    DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(fileChannel.getInputStream(), IOUtils.SMALL_FILE_SIZE));
                     try {
+                        if (recursive) {
+                            // 递归模式，主控会将整个目录树作为一条记录流发送，这里边接收边还原，全部写入之后告知主控
+                            dataOutputStream.writeUTF(OK_2);
+                            long files = ArchiveTransfer.receive(file.toPath(), dataInputStream, null);
+                            ConfigureConstantArea.LOGGER.info(files + " files received.");
+                            dataOutputStream.writeUTF(OK_3);
+                            return ControlledSession.SEND_FILE_BYTE;
+                        }
                         while (true) {
                             // 告知对方准备就绪
                             dataOutputStream.writeUTF(OK_2);
@@ -91,14 +105,12 @@ public class ControlledPutsDirActuator extends ControlledPutFileActuator {
                                 break;
                             } else {
                                 long fileSize = dataInputStream.readLong();
-                                // 代表有下一个文件，开始创建文件数据流
-                                BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(new FileOutputStream(dirPath + '/' + fileName));
+                                // 代表有下一个文件，开始接收文件数据
                                 ConfigureConstantArea.LOGGER.info(fileName);
-                                // 开始发送数据
-                                IOUtils.copy(fileSize, dataInputStream, bufferedOutputStream, null);
-                                // 关闭当前文件数据流
-                                bufferedOutputStream.flush();
-                                bufferedOutputStream.close();
+                                File target = new File(dirPath, fileName);
+                                Checksum checksum = TransferChecksum.create();
+                                PipelinedTransfer.receive(dataInputStream, target, fileSize, null, checksum);
+                                TransferChecksum.verify(dataInputStream, checksum, target);
                             }
                         }
                         // 文件传输完毕
@@ -110,24 +122,24 @@ public class ControlledPutsDirActuator extends ControlledPutFileActuator {
                     } finally {
                         IOUtils.close(dataInputStream);
                         IOUtils.close(dataOutputStream);
-                        IOUtils.close(fileSocket);
+                        IOUtils.close(fileChannel);
                     }
                 } else {
                     // 目标路径不是一个目录，在这里将错误信息返回出去
-                    DataOutputStream dataOutputStream = new DataOutputStream(fileSocket.getOutputStream());
+                    DataOutputStream dataOutputStream = new DataOutputStream(fileChannel.getOutputStream());
                     String error = dirPath + "  is not a directory or non-existent";
                     dataOutputStream.writeUTF(error);
                     IOUtils.close(dataOutputStream);
-                    IOUtils.close(fileSocket);
+                    IOUtils.close(fileChannel);
                     return ControlledSession.SEND_FILE_ERROR;
                 }
             } else {
                 // 语法错误
-                DataOutputStream dataOutputStream = new DataOutputStream(fileSocket.getOutputStream());
-                String error = "ERROR COMMAND " + command + "\nExample: puts [filePath] [filePath]";
+                DataOutputStream dataOutputStream = new DataOutputStream(fileChannel.getOutputStream());
+                String error = "ERROR COMMAND " + command + "\nExample: puts [-r] [filePath] [filePath]";
                 dataOutputStream.writeUTF(error);
                 IOUtils.close(dataOutputStream);
-                IOUtils.close(fileSocket);
+                IOUtils.close(fileChannel);
                 return ControlledSession.SEND_FILE_ERROR;
             }
         } catch (IOException e) {
@@ -2,12 +2,17 @@ package dialogue.core.actuator;
 
 import dialogue.ConfigureConstantArea;
 import dialogue.Session;
+import dialogue.core.channel.DataChannel;
+import dialogue.core.channel.DeltaTransfer;
+import dialogue.core.channel.PipelinedTransfer;
+import dialogue.core.channel.TransferChecksum;
 import dialogue.core.controlled.ControlledSession;
 import dialogue.utils.IOUtils;
 
 import java.io.*;
 import java.net.Socket;
 import java.util.regex.Matcher;
+import java.util.zip.Checksum;
 
 /**
  * @author 赵凌宇
@@ -67,73 +72,90 @@ public class ControlledPutsNCActuator extends ControlledPutFileActuator {
     @Override
     public String runActuatorCommand(String command, Matcher matcher) {
         // 向对方发送文件接收请求
+        boolean delta = DeltaTransfer.parseOption(matcher);
         try {
-            Socket fileSocket = new Socket(accept.getInetAddress().getHostName(), ConfigureConstantArea.FILE_PORT);
+            DataChannel fileChannel = ControlledSession.openFileChannel(accept);
             if (matcher.find() && matcher.find()) {
                 // 获取到本地文件目录
                 String dirPath = matcher.group(1);
                 File file = new File(dirPath);
                 if (file.exists() && file.isDirectory()) {
                     ConfigureConstantArea.LOGGER.info(OK_1);
-                    DataOutputStream dataOutputStream = new DataOutputStream(fileSocket.getOutputStream());
-                    DataInputStream dataInputStream = new DataInputStream(fileSocket.getInputStream());
+                    DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(fileChannel.getOutputStream()));
+                    DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(fileChannel.getInputStream(), IOUtils.SMALL_FILE_SIZE));
                     try {
+                        dataOutputStream.writeUTF(OK_2);
+                        dataOutputStream.flush();
                         while (true) {
-                            dataOutputStream.writeUTF(OK_2);
-                            // 开始接收文件名称&文件大小
-                            String fileName = dataInputStream.readUTF();
-                            if (fileName.equals(OK_2)) {
-                                // 代表文件发送结束了
+                            // 开始接收本批次的文件名称，数量为 0 代表文件传输结束了
+                            int count = dataInputStream.readInt();
+                            if (count == 0) {
+                                dataOutputStream.flush();
                                 break;
-                            } else {
-                                File file1 = new File(dirPath + '/' + fileName);
-                                if (file1.exists()) {
+                            }
+                            File[] batch = new File[count];
+                            String[] replies = new String[count];
+                            for (int i = 0; i < count; i++) {
+                                batch[i] = new File(dirPath + '/' + dataInputStream.readUTF());
+                                if (delta && batch[i].isFile()) {
+                                    // 增量模式中，已存在的文件只接收与旧文件不同的部分
+                                    replies[i] = DL_1;
+                                } else if (batch[i].exists()) {
                                     // 如果文件已存在就回复 AE_1;
-                                    dataOutputStream.writeUTF(AE_1);
-                                    continue;
+                                    replies[i] = AE_1;
                                 } else {
                                     // 如果需要接受就回复 ok_file2
-                                    dataOutputStream.writeUTF(OK_2);
-                                    ConfigureConstantArea.LOGGER.info(OK_2);
+                                    replies[i] = OK_2;
+                                }
+                                dataOutputStream.writeUTF(replies[i]);
+                            }
+                            dataOutputStream.flush();
+                            for (int i = 0; i < count; i++) {
+                                if (replies[i].equals(AE_1)) {
+                                    continue;
+                                }
+                                ConfigureConstantArea.LOGGER.info(batch[i].getName());
+                                if (replies[i].equals(DL_1)) {
+                                    receiveDelta(batch[i], DL_1, dataOutputStream, dataInputStream);
+                                    continue;
                                 }
                                 long fileSize = dataInputStream.readLong();
-                                // 代表有下一个文件，开始创建文件数据流
-                                BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(new FileOutputStream(file1));
-                                ConfigureConstantArea.LOGGER.info(fileName);
-                                // 开始发送数据
-                                IOUtils.copy(fileSize, dataInputStream, bufferedOutputStream, null);
-                                // 关闭当前文件数据流
-                                bufferedOutputStream.flush();
-                                bufferedOutputStream.close();
+                                // 代表有下一个文件，开始接收文件数据
+                                Checksum checksum = TransferChecksum.create();
+                                PipelinedTransfer.receive(dataInputStream, batch[i], fileSize, null, checksum);
+                                TransferChecksum.verify(dataInputStream, checksum, batch[i]);
                             }
+                            // 本批次的文件已经全部写入，确认会与下一批次的回复一起发送
+                            dataOutputStream.writeUTF(OK_2);
                         }
                         // 文件传输完毕
                         return ControlledSession.SEND_FILE_BYTE;
                     } catch (IOException e) {
                         // 发生文件传输错误
                         dataOutputStream.writeUTF(e.toString());
+                        dataOutputStream.flush();
                         return ControlledSession.SEND_FILE_ERROR;
                     } finally {
                         IOUtils.close(dataInputStream);
                         IOUtils.close(dataOutputStream);
-                        IOUtils.close(fileSocket);
+                        IOUtils.close(fileChannel);
                     }
                 } else {
                     // 目标路径不是一个目录，在这里将错误信息返回出去
-                    DataOutputStream dataOutputStream = new DataOutputStream(fileSocket.getOutputStream());
+                    DataOutputStream dataOutputStream = new DataOutputStream(fileChannel.getOutputStream());
                     String error = dirPath + "  is not a directory or non-existent";
                     dataOutputStream.writeUTF(error);
                     IOUtils.close(dataOutputStream);
-                    IOUtils.close(fileSocket);
+                    IOUtils.close(fileChannel);
                     return ControlledSession.SEND_FILE_ERROR;
                 }
             } else {
                 // 语法错误
-                DataOutputStream dataOutputStream = new DataOutputStream(fileSocket.getOutputStream());
-                String error = "ERROR COMMAND " + command + "\nExample: puts [filePath] [filePath]";
+                DataOutputStream dataOutputStream = new DataOutputStream(fileChannel.getOutputStream());
+                String error = "ERROR COMMAND " + command + "\nExample: puts-nc [-d] [filePath] [filePath]";
                 dataOutputStream.writeUTF(error);
                 IOUtils.close(dataOutputStream);
-                IOUtils.close(fileSocket);
+                IOUtils.close(fileChannel);
                 return ControlledSession.SEND_FILE_ERROR;
             }
         } catch (IOException e) {
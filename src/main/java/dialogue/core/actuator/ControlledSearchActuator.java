@@ -0,0 +1,173 @@
+package dialogue.core.actuator;
+
+import dialogue.ConfigureConstantArea;
+import dialogue.Session;
+import dialogue.core.channel.DataChannel;
+import dialogue.core.controlled.ControlledSession;
+import dialogue.utils.ThreadUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.regex.Matcher;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 被控端的文本搜索执行器，在被控中并行的查找文件中匹配的行，只将匹配的行通过文件数据流发送给主控，不需要传输整个文件。
+ * <p>
+ * Text search actuator of the controlled end. It looks for matching lines in the files of the controlled end in parallel and only sends the matching lines to the master through the file data stream, without transferring whole files.
+ * <p>
+ * 命令格式：search [-F] [-i] [-m 最多匹配行数] 内容 [文件或目录]，-F 代表内容是字面量而不是正则表达式，-i 代表忽略大小写，选项可以出现在任意位置，-- 之后的参数不再是选项，内容中不能包含空白，正则表达式中可以使用 \s 代替。
+ * <p>
+ * Command format: search [-F] [-i] [-m max matching lines] pattern [file or directory]. -F means the pattern is a literal instead of a regular expression, -i ignores case. Options can appear anywhere, arguments after -- are no longer options, and the pattern can not contain whitespace, \s can be used in regular expressions instead.
+ *
+ * @author 赵凌宇
+ */
+public class ControlledSearchActuator implements Actuator {
+
+    protected final Socket accept;
+    protected final InputStream inputStream;
+    protected final OutputStream outputStream;
+
+    public ControlledSearchActuator(Socket accept, InputStream inputStream, OutputStream outputStream) {
+        this.accept = accept;
+        this.inputStream = inputStream;
+        this.outputStream = outputStream;
+    }
+
+    /**
+     * @return 能够调用该执行器的会话对象编号。
+     * <p>
+     * The number of the session object that can call the executor.
+     */
+    @Override
+    public int getType() {
+        return Session.CONTROLLED_FILE_SESSION;
+    }
+
+    /**
+     * @return 该执行器的名称，一般是该执行器能够解析的命令标识。
+     * <p>
+     * The name of the executor is generally the command ID that the executor can resolve.
+     */
+    @Override
+    public String getName() {
+        return "search";
+    }
+
+    /**
+     * 返回会话当前运行状态，当一个会话没有在运行的时候，该函数将返回false，一个没有运行中的会话将不具备执行命令与回显数据的能力
+     * <p>
+     * Returns the current running state of the session. When a session is not running, this function will return false. A session that is not running will not have the ability to execute commands and echo data
+     *
+     * @return 如果返回true，代表当前会话正在运行中
+     * <p>
+     * If true is returned, the current session is running
+     */
+    @Override
+    public boolean isRunning() {
+        return ActuatorManager.containControlledActuator(this.getName());
+    }
+
+    /**
+     * @param command 需要执行的命令参数
+     *                <p>
+     *                Command parameters to be executed
+     * @param matcher 命令匹配器，通过该匹配器获取到命令中的所需参数
+     *                <p>
+     *                Command matcher, through which the required parameters in the command can be obtained
+     * @return 运行之后的结果的字符串形式
+     * <p>
+     * String form of the result after running
+     * @throws IOException 异常抛出主要为当运行执行器的过程中，出现了无法提供给对方的异常信息时，异常将会被抛出。
+     *                     <p>
+     *                     Exception throwing is mainly used to throw exceptions when there is exception information that cannot be provided to the other party during the execution.
+     */
+    @Override
+    public String runActuatorCommand(String command, Matcher matcher) throws IOException {
+        // 结果与错误信息都通过文件数据流返回，主控会一直等待这个数据流
+        DataChannel fileChannel = ControlledSession.openFileChannel(accept);
+        OutputStream outputStream1 = new BufferedOutputStream(fileChannel.getOutputStream(), ConfigureConstantArea.TCP_BUFFER_MAX_SIZE);
+        try {
+            String pattern = null;
+            String target = null;
+            boolean literal = false;
+            boolean ignoreCase = false;
+            boolean options = true;
+            int maxMatches = ConfigureConstantArea.SEARCH_MAX_MATCHES;
+            while (matcher.find()) {
+                String arg = matcher.group(1);
+                if (options && "--".equals(arg)) {
+                    // 之后的参数都不是选项，用于搜索以 - 开头的内容
+                    options = false;
+                } else if (options && "-F".equals(arg)) {
+                    literal = true;
+                } else if (options && "-i".equals(arg)) {
+                    ignoreCase = true;
+                } else if (options && "-m".equals(arg) && matcher.find()) {
+                    try {
+                        maxMatches = Math.max(1, Integer.parseInt(matcher.group(1)));
+                    } catch (NumberFormatException e) {
+                        outputStream1.write(("Invalid number of matching lines: " + matcher.group(1)).getBytes(ConfigureConstantArea.CHARSET));
+                        return ControlledSession.SEND_FILE_ERROR;
+                    }
+                } else if (pattern == null) {
+                    pattern = arg;
+                } else if (target == null) {
+                    target = arg;
+                }
+            }
+            if (pattern == null) {
+                outputStream1.write(("ERROR COMMAND " + command + "\nExample: search [-F] [-i] [-m max matching lines] [--] pattern [file or directory]").getBytes(ConfigureConstantArea.CHARSET));
+                return ControlledSession.SEND_FILE_ERROR;
+            }
+            File file = new File(target == null ? "./" : target);
+            ConfigureConstantArea.LOGGER.info("search " + pattern + " in " + file.getPath());
+            if (!file.exists()) {
+                outputStream1.write(("No files or directories: " + file.getPath()).getBytes(ConfigureConstantArea.CHARSET));
+                return ControlledSession.SEND_FILE_ERROR;
+            }
+            ParallelSearch search;
+            try {
+                search = new ParallelSearch(pattern, literal, ignoreCase, maxMatches, outputStream1);
+            } catch (PatternSyntaxException e) {
+                outputStream1.write(("Invalid pattern: " + e.getMessage()).getBytes(ConfigureConstantArea.CHARSET));
+                return ControlledSession.SEND_FILE_ERROR;
+            }
+            // 主控不会在文件数据流中发送数据，读取到结束代表主控已经取消，没有结果需要写出的时候也能及时停止
+            InputStream inputStream1 = fileChannel.getInputStream();
+            ThreadUtils.start("dialogue-search-cancel", () -> {
+                try {
+                    while (inputStream1.read() >= 0) {
+                        // 忽略主控发送的数据
+                    }
+                } catch (IOException ignored) {
+                    // 数据流已经关闭
+                }
+                search.cancel();
+            });
+            search.run(file.toPath());
+            StringBuilder summary = new StringBuilder("Number of matching lines: ").append(search.getMatches())
+                    .append(", files searched: ").append(search.getFiles());
+            if (search.getErrors() > 0) {
+                summary.append(", unreadable: ").append(search.getErrors());
+            }
+            if (search.isLimited()) {
+                summary.append("\nThe limit of ").append(maxMatches).append(" matching lines was reached, use -m to see more.");
+            }
+            outputStream1.write(summary.toString().getBytes(ConfigureConstantArea.CHARSET));
+            return ControlledSession.SEND_TEXT;
+        } finally {
+            try {
+                outputStream1.flush();
+            } catch (IOException ignored) {
+                // 主控已经关闭了文件数据流
+            }
+            // 关闭之后取消搜索的线程也会结束
+            fileChannel.close();
+        }
+    }
+}
@@ -2,10 +2,14 @@ package dialogue.core.actuator;
 
 import dialogue.ConfigureConstantArea;
 import dialogue.Session;
+import dialogue.core.channel.DataChannel;
 import dialogue.core.controlled.ControlledSession;
+import dialogue.core.result.DirectoryListing;
 
 import java.io.*;
 import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.regex.Matcher;
 
 /**
@@ -53,32 +57,90 @@ public class ControlledSeeDirActuator implements Actuator {
         this.outputStream = outputStream;
     }
 
-    protected boolean resolveDirectory(File file, String path, OutputStream outputStream) throws IOException {
-        File[] files = file.listFiles();
-        if (files == null) {
+    /**
+     * 将目录中的一页文件写入数据流，目录通过目录流逐个读取，每一个文件的属性只读取一次，每一批文件写入之后刷新一次数据流。
+     * <p>
+     * Write a page of files of the directory into the stream. The directory is read entry by entry through a directory stream, the attributes of each file are read only once, and the stream is flushed once per batch of files.
+     *
+     * @param file         需要查看的目录
+     * @param path         显示在结果中的目录路径
+     * @param outputStream 结果需要写入的数据流
+     * @param pageSize     一页最多包含的文件数量，0 代表读取全部文件
+     * @param token        上一页结果中的继续标记，为 null 代表从第一页开始
+     * @param binary       如果为true，使用 {@link ListingFormat} 中的二进制格式写入，由主控解码之后再显示
+     * @return 如果返回true，代表目录无法读取
+     * @throws IOException 读取目录或者写入数据流时发生的异常
+     */
+    protected boolean resolveDirectory(File file, String path, OutputStream outputStream, int pageSize, String token, boolean binary) throws IOException {
+        Path directory = file.toPath();
+        if (!Files.isReadable(directory)) {
             return true;
-        } else {
-            outputStream.write(FILE_PATH);
-            outputStream.write((path + '\n').getBytes(ConfigureConstantArea.CHARSET));
-            outputStream.write(SPLIT);
-            for (File listFile : files) {
-                outputStream.write(FILE_WRITABLE);
-                outputStream.write((listFile.canWrite() + "\t").getBytes(ConfigureConstantArea.CHARSET));
-                outputStream.write(FILE_TYPE);
-                outputStream.write(listFile.isDirectory() ? DIR : FILE);
-                outputStream.write(FILE_SIZE);
-                outputStream.write((listFile.length() + " byte\t").getBytes(ConfigureConstantArea.CHARSET));
-                outputStream.write(FILE_NAME);
-                outputStream.write((listFile.getName() + '\n').getBytes(ConfigureConstantArea.CHARSET));
-                outputStream.flush();
+        }
+        if (binary) {
+            // 二进制格式中每一个文件只有一个标志字节、两个变长整数与名称，不需要拼接说明文字
+            boolean namesOnly = isNamesOnly();
+            ListingFormat.writeHeader(outputStream, path, namesOnly);
+            try {
+                DirectoryLister.Page page = DirectoryLister.list(directory, pageSize, token, !namesOnly, entry -> ListingFormat.writeEntry(outputStream, entry, namesOnly), outputStream);
+                ListingFormat.writeEnd(outputStream, page.count, pageSize, page.nextToken);
+            } catch (IOException e) {
+                ListingFormat.writeError(outputStream, e.toString());
             }
-            outputStream.write(SPLIT);
-            outputStream.write(("Number of files read: " + files.length).getBytes(ConfigureConstantArea.CHARSET));
             outputStream.flush();
+            return false;
+        }
+        outputStream.write(FILE_PATH);
+        outputStream.write((path + '\n').getBytes(ConfigureConstantArea.CHARSET));
+        outputStream.write(getSplit());
+        DirectoryLister.Page page = DirectoryLister.list(directory, pageSize, token, !isNamesOnly(), entry -> writeEntry(entry, outputStream), outputStream);
+        outputStream.write(getSplit());
+        outputStream.write(("Number of files read: " + page.count).getBytes(ConfigureConstantArea.CHARSET));
+        if (page.nextToken != null) {
+            // 目录中还有文件，给出读取下一页的完整命令
+            outputStream.write(("\nNext page: " + getName() + ' ' + path + " -n " + pageSize + " -c " + page.nextToken).getBytes(ConfigureConstantArea.CHARSET));
         }
+        outputStream.flush();
+        return false;
+    }
+
+    /**
+     * 将目录中一个文件的信息写入数据流。
+     * <p>
+     * Write the information of a file of the directory into the stream.
+     *
+     * @param entry        目录中的文件
+     * @param outputStream 结果需要写入的数据流
+     * @throws IOException 写入数据流时发生的异常
+     */
+    protected void writeEntry(DirectoryListing.Entry entry, OutputStream outputStream) throws IOException {
+        outputStream.write(FILE_WRITABLE);
+        outputStream.write((entry.isWritable() + "\t").getBytes(ConfigureConstantArea.CHARSET));
+        outputStream.write(FILE_TYPE);
+        outputStream.write(entry.isDirectory() ? DIR : FILE);
+        outputStream.write(FILE_SIZE);
+        outputStream.write((entry.getSize() + " byte\t").getBytes(ConfigureConstantArea.CHARSET));
+        outputStream.write(FILE_NAME);
+        outputStream.write((entry.getName() + '\n').getBytes(ConfigureConstantArea.CHARSET));
+    }
+
+    /**
+     * @return 如果返回true，代表结果中只包含文件的名称与类型。
+     * <p>
+     * If true is returned, the result only contains the names and types of the files.
+     */
+    protected boolean isNamesOnly() {
         return false;
     }
 
+    /**
+     * @return 结果中文件列表前后的分隔行。
+     * <p>
+     * The separator line before and after the file list in the result.
+     */
+    protected byte[] getSplit() {
+        return SPLIT;
+    }
+
     /**
      * @return 能够调用该执行器的会话对象编号。
      * <p>
@@ -129,18 +191,49 @@ public class ControlledSeeDirActuator implements Actuator {
      */
     @Override
     public String runActuatorCommand(String command, Matcher matcher) throws IOException {
+        // 解析目录与分页参数：see-dir [目录] [-n 每页数量] [-c 继续标记] [-b]，see-dir -cache 查看目录列表缓存的统计信息
+        String target = null;
+        String token = null;
+        boolean binary = false;
+        boolean statistics = false;
+        int pageSize = ConfigureConstantArea.SEE_DIR_PAGE_SIZE;
+        while (matcher.find()) {
+            String arg = matcher.group(1);
+            if ("-n".equals(arg) && matcher.find()) {
+                try {
+                    pageSize = Math.max(0, Integer.parseInt(matcher.group(1)));
+                } catch (NumberFormatException e) {
+                    return "Invalid page size: " + matcher.group(1);
+                }
+            } else if ("-c".equals(arg) && matcher.find()) {
+                token = matcher.group(1);
+            } else if (ListingFormat.OPTION.equals(arg)) {
+                binary = true;
+            } else if ("-cache".equals(arg)) {
+                statistics = true;
+            } else if (target == null) {
+                target = arg;
+            }
+        }
         // look 目标文件，首先要获取到目标文件的数据，并将数据返回
-        Socket fileSocket = new Socket(accept.getInetAddress().getHostName(), ConfigureConstantArea.FILE_PORT);
-        OutputStream outputStream1 = fileSocket.getOutputStream();
-        // 获取到下一个目录
-        if (matcher.find()) {
-            File file = new File(matcher.group());
+        DataChannel fileChannel = ControlledSession.openFileChannel(accept);
+        // 目录中每一个文件的信息都是由多次很小的写入组成的，使用缓冲流合并之后再发送
+        OutputStream outputStream1 = new BufferedOutputStream(fileChannel.getOutputStream(), ConfigureConstantArea.TCP_BUFFER_MAX_SIZE);
+        if (statistics) {
+            outputStream1.write(DirectoryCache.getStatistics().getBytes(ConfigureConstantArea.CHARSET));
+            outputStream1.close();
+            fileChannel.close();
+            return ControlledSession.SEND_TEXT;
+        }
+        if (target != null) {
+            // 获取到下一个目录
+            File file = new File(target);
             String path = file.getPath();
             ConfigureConstantArea.LOGGER.info(path);
             if (file.exists()) {
                 if (file.isDirectory()) {
                     // 获取到目录中所有文件的数据，并添加到缓冲区中
-                    if (ex(fileSocket, outputStream1, file, path)) return ControlledSession.SEND_TEXT;
+                    if (ex(fileChannel, outputStream1, file, path, pageSize, token, binary)) return ControlledSession.SEND_TEXT;
                 } else {
                     outputStream1.write(("The target is a file, not a directory: " + path).getBytes(ConfigureConstantArea.CHARSET));
                 }
@@ -153,23 +246,23 @@ public class ControlledSeeDirActuator implements Actuator {
             String path = file.getAbsolutePath();
             ConfigureConstantArea.LOGGER.info(path);
             // 获取到目录中所有文件的数据，并添加到缓冲区中
-            if (ex(fileSocket, outputStream1, file, path)) return ControlledSession.SEND_TEXT;
+            if (ex(fileChannel, outputStream1, file, path, pageSize, token, binary)) return ControlledSession.SEND_TEXT;
         }
         outputStream1.flush();
         outputStream1.close();
-        fileSocket.close();
+        fileChannel.close();
         return ControlledSession.SEND_FILE_ERROR;
     }
 
-    private boolean ex(Socket fileSocket, OutputStream outputStream1, File file, String path) throws IOException {
+    private boolean ex(DataChannel fileChannel, OutputStream outputStream1, File file, String path, int pageSize, String token, boolean binary) throws IOException {
         try {
-            if (resolveDirectory(file, path, outputStream1)) {
+            if (resolveDirectory(file, path, outputStream1, pageSize, token, binary)) {
                 outputStream1.write(ERROR_1);
                 outputStream1.write(path.getBytes(ConfigureConstantArea.CHARSET));
             } else {
                 outputStream1.flush();
                 outputStream1.close();
-                fileSocket.close();
+                fileChannel.close();
                 return true;
             }
         } catch (IOException e) {
@@ -1,6 +1,7 @@
 package dialogue.core.actuator;
 
 import dialogue.ConfigureConstantArea;
+import dialogue.core.result.DirectoryListing;
 
 import java.io.*;
 import java.net.Socket;
@@ -39,23 +40,18 @@ public class ControlledSeeDirNameActuator extends ControlledSeeDirActuator {
     }
 
     @Override
-    protected boolean resolveDirectory(File file, String path, OutputStream outputStream) throws IOException {
-        File[] files = file.listFiles();
-        if (files == null) {
-            return true;
-        } else {
-            outputStream.write(FILE_PATH);
-            outputStream.write((path + '\n').getBytes(ConfigureConstantArea.CHARSET));
-            outputStream.write(SPLIT);
-            for (File listFile : files) {
-                outputStream.write(listFile.isDirectory() ? DIR : FILE);
-                outputStream.write((listFile.getName() + '\n').getBytes(ConfigureConstantArea.CHARSET));
-                outputStream.flush();
-            }
-            outputStream.write(SPLIT);
-            outputStream.write(("Number of files read: " + files.length).getBytes(ConfigureConstantArea.CHARSET));
-            outputStream.flush();
-        }
-        return false;
+    protected void writeEntry(DirectoryListing.Entry entry, OutputStream outputStream) throws IOException {
+        outputStream.write(entry.isDirectory() ? DIR : FILE);
+        outputStream.write((entry.getName() + '\n').getBytes(ConfigureConstantArea.CHARSET));
+    }
+
+    @Override
+    protected boolean isNamesOnly() {
+        return true;
+    }
+
+    @Override
+    protected byte[] getSplit() {
+        return SPLIT;
     }
 }
@@ -1,7 +1,9 @@
 package dialogue.core.actuator;
 
-import dialogue.ConfigureConstantArea;
 import dialogue.Session;
+import dialogue.core.channel.DataChannel;
+import dialogue.core.controlled.ControlledSession;
+import dialogue.utils.IOUtils;
 import zhao.algorithmMagic.exception.OperatorOperationException;
 import zhao.algorithmMagic.io.InputCamera;
 import zhao.algorithmMagic.io.InputCameraBuilder;
@@ -91,11 +93,12 @@ public class ControlledSnapActuator implements Actuator {
     @Override
     public String runActuatorCommand(String command, Matcher matcher) throws IOException {
         // 准备数据流
-        Socket fileSocket = new Socket(accept.getInetAddress().getHostName(), ConfigureConstantArea.FILE_PORT);
-        final ObjectOutputStream objectOutputStream = new ObjectOutputStream(fileSocket.getOutputStream());
+        DataChannel fileChannel = ControlledSession.openFileChannel(accept);
+        final ObjectOutputStream objectOutputStream = new ObjectOutputStream(fileChannel.getOutputStream());
         // 首先判断相机组件初始化是否成功
         if (!this.inputCamera.open()) {
             // 若不成功就返回错误数据
+            IOUtils.close(objectOutputStream);
             return "inputCamera.isOpen() == false";
         }
         // 在这里直接进行拍照
@@ -110,6 +113,7 @@ public class ControlledSnapActuator implements Actuator {
             return e.toString();
         } finally {
             this.inputCamera.close();
+            IOUtils.close(objectOutputStream);
         }
     }
 }
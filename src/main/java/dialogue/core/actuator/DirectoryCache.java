@@ -0,0 +1,398 @@
+package dialogue.core.actuator;
+
+import dialogue.ConfigureConstantArea;
+import dialogue.core.result.DirectoryListing;
+import dialogue.utils.ThreadUtils;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 被控端的目录列表缓存，以目录的真实路径作为键，通过 {@link WatchService} 监听目录的变化，只有发生变化的文件会在下一次查看时重新读取属性。
+ * <p>
+ * Directory listing cache of the controlled end. It is keyed by the real path of the directory and listens to the changes of the directory through {@link WatchService}, only the files that changed have their attributes read again the next time the directory is viewed.
+ * <p>
+ * 缓存使用的内存按照文件数量与名称长度估算，超出 see.dir.cache.size 的时候淘汰最久没有查看的目录，单个目录超出上限时不会被缓存，0 代表不使用缓存。
+ * 目录的变化是异步通知的，变化之后很短的时间内可能还会看到旧的结果；子目录中的变化不会通知到父目录，因此缓存中子目录自己的大小与修改时间可能不是最新的。
+ * <p>
+ * The memory used by the cache is estimated from the number of files and the length of their names. When it exceeds see.dir.cache.size, the directories viewed least recently are evicted, a single directory above the limit is not cached, and 0 disables the cache.
+ * Changes of a directory are notified asynchronously, so the old result may still be seen for a very short time after a change. Changes inside a subdirectory are not notified to the parent directory, so the size and modification time of the subdirectory itself may be out of date in the cache.
+ *
+ * @author 赵凌宇
+ */
+public final class DirectoryCache {
+
+    /**
+     * 目录中每一个文件除名称之外估算占用的字节数量，包含属性、名称字符串与哈希表节点。
+     */
+    private final static int ENTRY_OVERHEAD = 112;
+    /**
+     * 超出缓存上限的目录在这段时间之内不会再尝试缓存。
+     */
+    private final static long TOO_LARGE_RETRY_MS = 60_000L;
+
+    private final static Object LOCK = new Object();
+    private final static LinkedHashMap<Path, CachedDirectory> DIRECTORIES = new LinkedHashMap<>(16, 0.75f, true);
+    private final static HashMap<WatchKey, CachedDirectory> KEYS = new HashMap<>();
+    private final static HashMap<Path, Long> TOO_LARGE = new HashMap<>();
+    private static WatchService watchService;
+    private static long size = 0;
+    private static long hits = 0;
+    private static long misses = 0;
+    private static long evictions = 0;
+    private static long invalidations = 0;
+
+    private DirectoryCache() {
+    }
+
+    /**
+     * 获取一个目录中的所有文件，缓存中没有的目录会被读取并加入缓存。
+     *
+     * @param directory 需要读取的目录
+     * @return 目录中的所有文件，没有启用缓存或者目录无法缓存的时候返回 null，调用者需要自己读取目录
+     * @throws IOException 读取目录时发生的异常
+     */
+    static List<DirectoryListing.Entry> get(Path directory) throws IOException {
+        if (ConfigureConstantArea.SEE_DIR_CACHE_SIZE <= 0) {
+            return null;
+        }
+        Path path = directory.toRealPath();
+        CachedDirectory cached;
+        synchronized (LOCK) {
+            cached = DIRECTORIES.get(path);
+            if (cached != null) {
+                hits++;
+            } else {
+                misses++;
+                Long tooLarge = TOO_LARGE.get(path);
+                if (tooLarge != null) {
+                    if (System.currentTimeMillis() - tooLarge < TOO_LARGE_RETRY_MS) {
+                        return null;
+                    }
+                    TOO_LARGE.remove(path);
+                }
+            }
+        }
+        if (cached == null && (cached = load(path)) == null) {
+            return null;
+        }
+        return snapshot(cached);
+    }
+
+    /**
+     * 清空缓存并停止监听所有目录，缓存之后依旧可以使用。
+     * <p>
+     * Clear the cache and stop watching all directories, the cache can still be used afterwards.
+     */
+    public static void clear() {
+        synchronized (LOCK) {
+            for (CachedDirectory cached : new ArrayList<>(DIRECTORIES.values())) {
+                remove(cached);
+            }
+            TOO_LARGE.clear();
+        }
+    }
+
+    /**
+     * @return 缓存命中的次数。
+     * <p>
+     * Number of cache hits.
+     */
+    public static long getHits() {
+        synchronized (LOCK) {
+            return hits;
+        }
+    }
+
+    /**
+     * @return 缓存没有命中的次数。
+     * <p>
+     * Number of cache misses.
+     */
+    public static long getMisses() {
+        synchronized (LOCK) {
+            return misses;
+        }
+    }
+
+    /**
+     * @return 缓存命中率，还没有查看过目录的时候为 0。
+     * <p>
+     * Cache hit ratio, 0 when no directory has been viewed yet.
+     */
+    public static double getHitRatio() {
+        synchronized (LOCK) {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+    }
+
+    /**
+     * @return 因为内存上限被淘汰的目录数量。
+     * <p>
+     * Number of directories evicted because of the memory limit.
+     */
+    public static long getEvictions() {
+        synchronized (LOCK) {
+            return evictions;
+        }
+    }
+
+    /**
+     * @return 因为目录变化而失效的文件数量。
+     * <p>
+     * Number of files invalidated because the directory changed.
+     */
+    public static long getInvalidations() {
+        synchronized (LOCK) {
+            return invalidations;
+        }
+    }
+
+    /**
+     * @return 缓存当前估算占用的字节数量。
+     * <p>
+     * Number of bytes currently estimated to be used by the cache.
+     */
+    public static long getSize() {
+        synchronized (LOCK) {
+            return size;
+        }
+    }
+
+    /**
+     * @return 缓存的统计信息文本。
+     * <p>
+     * Statistics of the cache as text.
+     */
+    public static String getStatistics() {
+        synchronized (LOCK) {
+            return "directory cache: " + (ConfigureConstantArea.SEE_DIR_CACHE_SIZE <= 0 ? "disabled" : "enabled") +
+                    "\ndirectories: " + DIRECTORIES.size() +
+                    "\nsize: " + size + " / " + ConfigureConstantArea.SEE_DIR_CACHE_SIZE + " byte" +
+                    "\nhits: " + hits +
+                    "\nmisses: " + misses +
+                    "\nhit ratio: " + String.format("%.4f", getHitRatio()) +
+                    "\nevictions: " + evictions +
+                    "\ninvalidations: " + invalidations;
+        }
+    }
+
+    private static long estimate(String name) {
+        return ENTRY_OVERHEAD + ((long) name.length() << 1);
+    }
+
+    private static DirectoryListing.Entry readEntry(Path entry) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+            return new DirectoryListing.Entry(entry.getFileName().toString(), attributes.isDirectory(), Files.isWritable(entry), attributes.size(), attributes.lastModifiedTime().toMillis());
+        } catch (IOException e) {
+            // 文件在读取目录之后被删除了
+            return null;
+        }
+    }
+
+    /**
+     * 读取一个目录并加入缓存，在读取之前就开始监听目录，读取期间目录发生变化的时候本次结果不会被缓存。
+     */
+    private static CachedDirectory load(Path path) throws IOException {
+        CachedDirectory cached = new CachedDirectory(path);
+        synchronized (LOCK) {
+            cached.key = path.register(watchService(), StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            if (KEYS.containsKey(cached.key)) {
+                // 其它线程正在读取这个目录，监听键是共用的，这里不能取消
+                return null;
+            }
+            KEYS.put(cached.key, cached);
+        }
+        boolean cache = false;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+            for (Path entry : stream) {
+                DirectoryListing.Entry value = readEntry(entry);
+                if (value != null) {
+                    cached.entries.put(value.getName(), value);
+                    cached.size += estimate(value.getName());
+                    if (cached.size > ConfigureConstantArea.SEE_DIR_CACHE_SIZE) {
+                        synchronized (LOCK) {
+                            TOO_LARGE.put(path, System.currentTimeMillis());
+                        }
+                        return null;
+                    }
+                }
+            }
+            synchronized (LOCK) {
+                cached.loading = false;
+                if (!cached.changedWhileLoading) {
+                    cache = true;
+                    cached.resident = true;
+                    DIRECTORIES.put(path, cached);
+                    size += cached.size;
+                    trim();
+                }
+            }
+            return cached;
+        } catch (DirectoryIteratorException e) {
+            throw e.getCause();
+        } finally {
+            if (!cache) {
+                synchronized (LOCK) {
+                    KEYS.remove(cached.key);
+                    cached.key.cancel();
+                }
+            }
+        }
+    }
+
+    /**
+     * 复制缓存中的文件列表，失效的文件会在锁之外重新读取属性之后再写回缓存。
+     */
+    private static List<DirectoryListing.Entry> snapshot(CachedDirectory cached) {
+        String[] names;
+        DirectoryListing.Entry[] values;
+        synchronized (LOCK) {
+            names = cached.entries.keySet().toArray(new String[0]);
+            values = cached.entries.values().toArray(new DirectoryListing.Entry[0]);
+        }
+        ArrayList<DirectoryListing.Entry> result = new ArrayList<>(values.length);
+        HashMap<String, DirectoryListing.Entry> refreshed = new HashMap<>();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                values[i] = readEntry(cached.path.resolve(names[i]));
+                refreshed.put(names[i], values[i]);
+            }
+            if (values[i] != null) {
+                result.add(values[i]);
+            }
+        }
+        if (!refreshed.isEmpty()) {
+            synchronized (LOCK) {
+                for (Map.Entry<String, DirectoryListing.Entry> entry : refreshed.entrySet()) {
+                    // 只写回依旧处于失效状态的文件，读取期间又发生变化的文件保持失效
+                    if (cached.entries.containsKey(entry.getKey()) && cached.entries.get(entry.getKey()) == null) {
+                        if (entry.getValue() == null) {
+                            cached.entries.remove(entry.getKey());
+                            resize(cached, -estimate(entry.getKey()));
+                        } else {
+                            cached.entries.put(entry.getKey(), entry.getValue());
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static WatchService watchService() throws IOException {
+        if (watchService == null) {
+            WatchService service = FileSystems.getDefault().newWatchService();
+            ThreadUtils.start("dialogue-dir-watch", () -> watch(service));
+            watchService = service;
+        }
+        return watchService;
+    }
+
+    private static void watch(WatchService service) {
+        while (true) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            synchronized (LOCK) {
+                CachedDirectory cached = KEYS.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (cached == null) {
+                        break;
+                    }
+                    if (cached.loading) {
+                        cached.changedWhileLoading = true;
+                        break;
+                    }
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // 丢失了部分事件，无法知道哪些文件发生了变化，整个目录都需要重新读取
+                        invalidations += cached.entries.size();
+                        remove(cached);
+                        cached = null;
+                        break;
+                    }
+                    String name = event.context().toString();
+                    invalidations++;
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                        if (cached.entries.containsKey(name)) {
+                            cached.entries.remove(name);
+                            resize(cached, -estimate(name));
+                        }
+                    } else if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && !cached.entries.containsKey(name)) {
+                        cached.entries.put(name, null);
+                        resize(cached, estimate(name));
+                    } else if (cached.entries.containsKey(name)) {
+                        cached.entries.put(name, null);
+                    }
+                }
+                if (!key.reset() && cached != null) {
+                    // 目录已经被删除或者无法再监听
+                    if (cached.loading) {
+                        cached.changedWhileLoading = true;
+                    } else {
+                        remove(cached);
+                    }
+                }
+                trim();
+            }
+        }
+    }
+
+    private static void resize(CachedDirectory cached, long delta) {
+        cached.size += delta;
+        if (cached.resident) {
+            size += delta;
+        }
+    }
+
+    private static void remove(CachedDirectory cached) {
+        if (cached.resident) {
+            cached.resident = false;
+            DIRECTORIES.remove(cached.path);
+            size -= cached.size;
+        }
+        KEYS.remove(cached.key);
+        cached.key.cancel();
+    }
+
+    private static void trim() {
+        Iterator<CachedDirectory> iterator = DIRECTORIES.values().iterator();
+        while (size > ConfigureConstantArea.SEE_DIR_CACHE_SIZE && iterator.hasNext()) {
+            CachedDirectory cached = iterator.next();
+            iterator.remove();
+            cached.resident = false;
+            size -= cached.size;
+            KEYS.remove(cached.key);
+            cached.key.cancel();
+            evictions++;
+        }
+    }
+
+    /**
+     * 缓存中的一个目录，文件按照目录中的顺序保存，值为 null 的文件已经失效，需要重新读取属性。
+     */
+    private final static class CachedDirectory {
+        private final Path path;
+        private final LinkedHashMap<String, DirectoryListing.Entry> entries = new LinkedHashMap<>();
+        private WatchKey key;
+        private long size = 0;
+        private boolean resident = false;
+        private boolean loading = true;
+        private boolean changedWhileLoading = false;
+
+        private CachedDirectory(Path path) {
+            this.path = path;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package dialogue.core.actuator;
+
+import dialogue.core.result.DirectoryListing;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 目录列表工具，通过目录流逐个读取目录中的文件，不会将整个目录加载到内存中，每一个文件的属性只需要一次批量读取。
+ * <p>
+ * Directory listing utility. It reads the files of a directory one by one through a directory stream without loading the whole directory into memory, and the attributes of each file take only one bulk read.
+ * <p>
+ * 列表可以分页，每一页结束的时候会返回一个继续标记。被控会在一段时间内保留上一页打开的目录流，使用继续标记读取下一页时直接从上一页结束的位置继续；
+ * 目录流已经过期的时候会重新打开目录并跳过已经读取的数量，这种情况下如果目录在两页之间被修改，可能会有文件重复或者遗漏。
+ * <p>
+ * Listings can be paged, and a continuation token is returned at the end of each page. The controlled end keeps the directory stream of the previous page open for a while, so reading the next page with the token continues right where the previous page ended.
+ * When the stream has expired, the directory is opened again and the entries already read are skipped. In that case files may be repeated or missed if the directory was modified between the two pages.
+ * <p>
+ * 启用 {@link DirectoryCache} 之后，目录会从缓存中读取，继续标记中只记录下一页开始的位置。
+ * <p>
+ * When {@link DirectoryCache} is enabled, directories are read from the cache and the continuation token only records where the next page starts.
+ *
+ * @author 赵凌宇
+ */
+final class DirectoryLister {
+
+    /**
+     * 每读取这个数量的文件刷新一次输出，使得主控可以尽快看到结果。
+     */
+    private final static int FLUSH_BATCH = 1024;
+    /**
+     * 同时保留的目录流数量上限，每一个目录流都会占用一个文件描述符。
+     */
+    private final static int MAX_CURSORS = 16;
+    /**
+     * 目录流空闲多久之后会被关闭。
+     */
+    private final static long CURSOR_IDLE_MS = 60_000L;
+    private final static LinkedHashMap<String, Cursor> CURSORS = new LinkedHashMap<>();
+    /**
+     * 从缓存中读取的页使用的继续标记前缀，缓存失效之后会当作过期的目录流处理。
+     */
+    private final static String CACHED_CURSOR = "cache";
+
+    private DirectoryLister() {
+    }
+
+    /**
+     * 读取目录中的一页文件，每一个文件都会连同它的属性交给写入器。
+     * <p>
+     * Read a page of files of a directory, every file is handed to the writer together with its attributes.
+     *
+     * @param directory 需要读取的目录
+     * @param pageSize  一页最多包含的文件数量，0 代表读取全部文件
+     * @param token     上一页返回的继续标记，为 null 代表从第一页开始
+     * @param writable  是否需要检查文件是否可写，只需要名称与类型的时候不需要检查
+     * @param writer    文件写入器
+     * @param flushable 每一批文件写入之后需要刷新的输出
+     * @return 本页读取的结果
+     * @throws IOException 读取目录或者写入时发生的异常，继续标记无效的时候也会抛出该异常
+     */
+    static Page list(Path directory, int pageSize, String token, boolean writable, EntryWriter writer, Flushable flushable) throws IOException {
+        List<DirectoryListing.Entry> cached = DirectoryCache.get(directory);
+        if (cached != null) {
+            return listCached(cached, pageSize, token, writer, flushable);
+        }
+        Cursor cursor = open(directory, token);
+        boolean keep = false;
+        try {
+            long count = 0;
+            try {
+                while ((pageSize <= 0 || count < pageSize) && cursor.iterator.hasNext()) {
+                    Path entry = cursor.iterator.next();
+                    cursor.position++;
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                    } catch (IOException e) {
+                        // 文件在读取目录之后被删除了
+                        continue;
+                    }
+                    writer.write(new DirectoryListing.Entry(entry.getFileName().toString(), attributes.isDirectory(), writable && Files.isWritable(entry), attributes.size(), attributes.lastModifiedTime().toMillis()));
+                    if (++count % FLUSH_BATCH == 0) {
+                        flushable.flush();
+                    }
+                }
+                keep = cursor.iterator.hasNext();
+            } catch (DirectoryIteratorException e) {
+                throw e.getCause();
+            }
+            if (keep) {
+                cursor.lastUsed = System.currentTimeMillis();
+                park(cursor);
+                return new Page(count, cursor.id + '-' + cursor.position);
+            }
+            return new Page(count, null);
+        } finally {
+            if (!keep) {
+                cursor.stream.close();
+            }
+        }
+    }
+
+    /**
+     * 从缓存的目录列表中读取一页文件，继续标记中记录的是下一页开始的位置。
+     */
+    private static Page listCached(List<DirectoryListing.Entry> entries, int pageSize, String token, EntryWriter writer, Flushable flushable) throws IOException {
+        long position = token == null ? 0 : position(token);
+        long end = pageSize <= 0 ? entries.size() : Math.min(entries.size(), position + pageSize);
+        long count = 0;
+        for (long i = position; i < end; i++) {
+            writer.write(entries.get((int) i));
+            if (++count % FLUSH_BATCH == 0) {
+                flushable.flush();
+            }
+        }
+        return new Page(count, end < entries.size() ? CACHED_CURSOR + '-' + end : null);
+    }
+
+    private static long position(String token) throws IOException {
+        try {
+            long position = Long.parseLong(token.substring(token.lastIndexOf('-') + 1));
+            if (position >= 0) {
+                return position;
+            }
+        } catch (NumberFormatException e) {
+            // 与负数一样当作无效的继续标记
+        }
+        throw new IOException("Invalid continuation token: " + token);
+    }
+
+    private static Cursor open(Path directory, String token) throws IOException {
+        if (token == null) {
+            return new Cursor(directory);
+        }
+        long position = position(token);
+        String id = token.substring(0, Math.max(0, token.lastIndexOf('-')));
+        Cursor cursor;
+        synchronized (CURSORS) {
+            cursor = CURSORS.remove(id);
+        }
+        if (cursor != null) {
+            if (cursor.directory.equals(directory) && cursor.position == position) {
+                return cursor;
+            }
+            cursor.stream.close();
+        }
+        // 目录流已经过期，重新打开目录并跳过已经读取的文件，跳过时不需要读取文件属性
+        cursor = new Cursor(directory);
+        try {
+            while (cursor.position < position && cursor.iterator.hasNext()) {
+                cursor.iterator.next();
+                cursor.position++;
+            }
+        } catch (DirectoryIteratorException e) {
+            cursor.stream.close();
+            throw e.getCause();
+        }
+        return cursor;
+    }
+
+    private static void park(Cursor cursor) {
+        long expired = System.currentTimeMillis() - CURSOR_IDLE_MS;
+        synchronized (CURSORS) {
+            CURSORS.values().removeIf(old -> {
+                if (old.lastUsed < expired) {
+                    closeQuietly(old);
+                    return true;
+                }
+                return false;
+            });
+            while (CURSORS.size() >= MAX_CURSORS) {
+                Iterator<Cursor> iterator = CURSORS.values().iterator();
+                closeQuietly(iterator.next());
+                iterator.remove();
+            }
+            CURSORS.put(cursor.id, cursor);
+        }
+    }
+
+    private static void closeQuietly(Cursor cursor) {
+        try {
+            cursor.stream.close();
+        } catch (IOException ignored) {
+            // 目录流只用于读取，关闭失败不影响结果
+        }
+    }
+
+    /**
+     * 目录中文件的写入器。
+     * <p>
+     * Writer of the files of a directory.
+     */
+    interface EntryWriter {
+
+        /**
+         * @param entry 目录中的文件
+         * @throws IOException 写入时发生的异常
+         */
+        void write(DirectoryListing.Entry entry) throws IOException;
+    }
+
+    /**
+     * 一页读取的结果。
+     * <p>
+     * The result of reading a page.
+     */
+    final static class Page {
+        final long count;
+        final String nextToken;
+
+        private Page(long count, String nextToken) {
+            this.count = count;
+            this.nextToken = nextToken;
+        }
+    }
+
+    /**
+     * 一个打开中的目录流以及它已经读取的数量。
+     */
+    private final static class Cursor {
+        private final String id = UUID.randomUUID().toString().replace("-", "");
+        private final Path directory;
+        private final DirectoryStream<Path> stream;
+        private final Iterator<Path> iterator;
+        private long position = 0;
+        private long lastUsed;
+
+        private Cursor(Path directory) throws IOException {
+            this.directory = directory;
+            this.stream = Files.newDirectoryStream(directory);
+            this.iterator = this.stream.iterator();
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package dialogue.core.actuator;
+
+import dialogue.ConfigureConstantArea;
+import dialogue.utils.BufferPool;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * 持续跟踪一个正在增长的文件，将文件末尾新追加的数据分批写入数据流，直到被取消或者到达截止时间，与 tail -F 类似。
+ * <p>
+ * Keep following a growing file and write the data appended to its end into a stream batch by batch until it is cancelled or the deadline is reached, similar to tail -F.
+ * <p>
+ * 文件的变化通过 WatchService 得知，平台不支持的时候退化为轮询，没有变化时等待的时间从 50 毫秒逐渐增加到 1 秒，有新数据之后重新从 50 毫秒开始。
+ * 文件被截断(大小变小)时从头开始读取，文件被轮转(路径对应的文件已经不是打开的那个文件)时先读完旧文件剩下的数据，再从头读取新文件。
+ * 设置了过滤条件时只写入匹配的整行，没有换行的最后一行会等到换行出现之后再判断。
+ * <p>
+ * Changes of the file are learned through WatchService, falling back to polling when the platform does not support it. The wait without changes grows from 50 milliseconds to 1 second, and starts from 50 milliseconds again after new data arrives.
+ * When the file is truncated (its size becomes smaller), it is read from the beginning. When the file is rotated (the path no longer refers to the opened file), the rest of the old file is read first, and then the new file is read from the beginning.
+ * With a filter only the whole matching lines are written, and a last line without a line break is judged after the line break appears.
+ *
+ * @author 赵凌宇
+ */
+final class FileFollower {
+
+    private final static long MIN_INTERVAL = 50;
+    private final static long MAX_INTERVAL = 1000;
+    /**
+     * 一次从文件中读取的字节数量，同时也是一批数据的大小。
+     */
+    private final static int BATCH_SIZE = 64 << 10;
+    /**
+     * 过滤时一行最多缓存的字节数量，更长的行会被截断判断，避免没有换行的文件占用过多内存。
+     */
+    private final static int MAX_LINE_LENGTH = 64 << 10;
+    private final static int SEEK_BLOCK = 8192;
+
+    private final Path path;
+    private final Pattern pattern;
+    private final OutputStream outputStream;
+    private final Charset charset = ConfigureConstantArea.getCharset();
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private long written;
+    private volatile boolean cancelled;
+
+    /**
+     * @param path         需要跟踪的文件
+     * @param pattern      过滤条件，为 null 代表写入所有新追加的数据
+     * @param outputStream 新追加的数据需要写入的数据流，每一批数据之后都会刷新
+     */
+    FileFollower(Path path, Pattern pattern, OutputStream outputStream) {
+        this.path = path;
+        this.pattern = pattern;
+        this.outputStream = outputStream;
+    }
+
+    /**
+     * 取消跟踪，可以在其它线程中调用，跟踪会在当前的等待结束之后停止。
+     */
+    void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * @return 写入数据流的文件字节数量，不包含截断与轮转的提示。
+     */
+    long getWritten() {
+        return this.written;
+    }
+
+    /**
+     * 从文件末尾向前查找，得到最后若干行的起始位置，只需要读取这些行所在的数据块。
+     *
+     * @param lines 需要的行数，末尾的换行不会被当作一个空行
+     * @return 最后若干行的起始位置，文件中的行数不足时返回 0
+     */
+    long lastLines(int lines) throws IOException {
+        try (FileChannel channel = FileChannel.open(this.path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (lines <= 0) {
+                return size;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(SEEK_BLOCK);
+            int count = 0;
+            long end = size;
+            while (end > 0) {
+                int n = (int) Math.min(SEEK_BLOCK, end);
+                long begin = end - n;
+                buffer.clear();
+                buffer.limit(n);
+                while (buffer.hasRemaining() && channel.read(buffer, begin + buffer.position()) > 0) {
+                    // 读取满整个数据块
+                }
+                for (int i = buffer.position() - 1; i >= 0; i--) {
+                    if (buffer.get(i) == '\n' && begin + i != size - 1 && ++count == lines) {
+                        return begin + i + 1;
+                    }
+                }
+                end = begin;
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * 从指定的位置开始跟踪文件，直到被取消、写入数据流失败或者到达截止时间。
+     *
+     * @param start    开始读取的位置，超出文件大小时从文件末尾开始
+     * @param deadline 截止时间的毫秒值，0 代表没有截止时间
+     * @throws IOException 读取文件或者写入数据流时发生的异常
+     */
+    void follow(long start, long deadline) throws IOException {
+        WatchService watchService = watch();
+        FileChannel channel = FileChannel.open(this.path, StandardOpenOption.READ);
+        byte[] bytes = BufferPool.acquire(BATCH_SIZE);
+        try {
+            Object identity = identity();
+            long position = Math.min(start, channel.size());
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            long interval = MIN_INTERVAL;
+            while (!this.cancelled && (deadline == 0 || System.currentTimeMillis() < deadline)) {
+                long size = channel.size();
+                if (size < position) {
+                    notice("file truncated");
+                    position = 0;
+                }
+                if (size > position) {
+                    while (position < size && !this.cancelled) {
+                        buffer.clear();
+                        buffer.limit((int) Math.min(bytes.length, size - position));
+                        int n = channel.read(buffer, position);
+                        if (n <= 0) {
+                            break;
+                        }
+                        write(bytes, n);
+                        position += n;
+                    }
+                    this.outputStream.flush();
+                    interval = MIN_INTERVAL;
+                    continue;
+                }
+                Object current = identity();
+                if (current != null && !current.equals(identity)) {
+                    // 旧文件的数据已经读完，路径现在对应的是一个新的文件
+                    FileChannel reopened = reopen();
+                    if (reopened != null) {
+                        channel.close();
+                        channel = reopened;
+                        identity = current;
+                        position = 0;
+                        notice("file rotated");
+                        continue;
+                    }
+                }
+                awaitChange(watchService, deadline == 0 ? interval : Math.max(1, Math.min(interval, deadline - System.currentTimeMillis())));
+                interval = Math.min(interval << 1, MAX_INTERVAL);
+            }
+        } finally {
+            BufferPool.release(bytes);
+            channel.close();
+            if (watchService != null) {
+                watchService.close();
+            }
+        }
+    }
+
+    private FileChannel reopen() throws IOException {
+        try {
+            return FileChannel.open(this.path, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            // 新文件在检查之后又被移走了，继续等待旧文件，下一次再尝试
+            return null;
+        }
+    }
+
+    private WatchService watch() {
+        Path parent = this.path.toAbsolutePath().getParent();
+        if (parent == null) {
+            return null;
+        }
+        WatchService watchService = null;
+        try {
+            watchService = parent.getFileSystem().newWatchService();
+            parent.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            return watchService;
+        } catch (IOException | UnsupportedOperationException e) {
+            ConfigureConstantArea.LOGGER.fine("WatchService is not available, polling " + this.path + ": " + e);
+            if (watchService != null) {
+                try {
+                    watchService.close();
+                } catch (IOException ignored) {
+                    // 已经退化为轮询
+                }
+            }
+            return null;
+        }
+    }
+
+    private void awaitChange(WatchService watchService, long timeout) throws IOException {
+        try {
+            if (watchService == null) {
+                Thread.sleep(timeout);
+                return;
+            }
+            // 目录中任意文件的变化都会唤醒等待，之后再检查被跟踪文件的大小
+            WatchKey watchKey = watchService.poll(timeout, TimeUnit.MILLISECONDS);
+            if (watchKey != null) {
+                watchKey.pollEvents();
+                watchKey.reset();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while following the file.", e);
+        } catch (ClosedWatchServiceException e) {
+            this.cancelled = true;
+        }
+    }
+
+    /**
+     * @return 路径当前对应的文件标识，通常是设备与 inode，平台不提供时使用创建时间，文件不存在时返回 null。
+     */
+    private Object identity() {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(this.path, BasicFileAttributes.class);
+            return attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void write(byte[] bytes, int length) throws IOException {
+        this.written += length;
+        if (this.pattern == null) {
+            this.outputStream.write(bytes, 0, length);
+            return;
+        }
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] == '\n') {
+                appendLine(bytes, start, i - start);
+                matchLine();
+                start = i + 1;
+            }
+        }
+        appendLine(bytes, start, length - start);
+        if (this.lineLength >= MAX_LINE_LENGTH) {
+            matchLine();
+        }
+    }
+
+    private void appendLine(byte[] bytes, int offset, int length) {
+        length = Math.min(length, MAX_LINE_LENGTH - this.lineLength);
+        if (length <= 0) {
+            return;
+        }
+        if (this.lineLength + length > this.line.length) {
+            this.line = Arrays.copyOf(this.line, Math.min(MAX_LINE_LENGTH, Math.max(this.lineLength + length, this.line.length << 1)));
+        }
+        System.arraycopy(bytes, offset, this.line, this.lineLength, length);
+        this.lineLength += length;
+    }
+
+    private void matchLine() throws IOException {
+        int length = this.lineLength;
+        if (length > 0 && this.line[length - 1] == '\r') {
+            length--;
+        }
+        if (this.pattern.matcher(new String(this.line, 0, length, this.charset)).find()) {
+            this.outputStream.write(this.line, 0, this.lineLength);
+            this.outputStream.write('\n');
+        }
+        this.lineLength = 0;
+    }
+
+    private void notice(String message) throws IOException {
+        this.lineLength = 0;
+        this.outputStream.write(("\n==> " + this.path + ": " + message + " <==\n").getBytes(this.charset));
+        this.outputStream.flush();
+    }
+}
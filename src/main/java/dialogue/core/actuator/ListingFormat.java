@@ -0,0 +1,224 @@
+package dialogue.core.actuator;
+
+import dialogue.ConfigureConstantArea;
+import dialogue.Session;
+import dialogue.core.result.DirectoryListing;
+import dialogue.utils.IOUtils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * 目录列表的二进制格式，主控在查看目录的命令中加入 -b 之后，被控会使用这种格式返回目录列表，由主控解码之后再显示为文本。
+ * <p>
+ * Binary format of directory listings. When the master adds -b to a command viewing a directory, the controlled end returns the listing in this format, and the master decodes it before displaying it as text.
+ * <p>
+ * 格式：[0, 'D', 'L', 版本][是否只有名称(1字节)][路径] 之后是每一个文件的记录 [标志(1字节)][大小][修改时间][名称]，只有名称的列表中没有大小与修改时间，
+ * 最后是结束记录 [END][数量][每页数量][继续标记] 或者错误记录 [ERROR][错误信息]。数字都是变长整数，字符串都是 [字节数量][UTF-8 数据]。
+ * 文本结果永远不会以 0 开头，因此主控可以通过第一个字节区分两种格式，被控无法读取目录等情况依旧返回文本。
+ * <p>
+ * Layout: [0, 'D', 'L', version][names only (1 byte)][path], then a record [flags (1 byte)][size][modification time][name] for every file. Listings with names only have no size and modification time.
+ * It ends with an end record [END][count][page size][continuation token] or an error record [ERROR][error message]. Numbers are variable length integers and strings are [byte count][UTF-8 data].
+ * Text results never start with 0, so the master can tell the two formats apart by the first byte. Cases such as the controlled end being unable to read the directory are still returned as text.
+ *
+ * @author 赵凌宇
+ */
+final class ListingFormat {
+
+    /**
+     * 主控请求二进制格式时在命令中加入的参数。
+     */
+    final static String OPTION = "-b";
+
+    private final static byte[] MAGIC = {0, 'D', 'L', 1};
+    private final static int FLAG_DIRECTORY = 1;
+    private final static int FLAG_WRITABLE = 1 << 1;
+    private final static int RECORD_END = 0x80;
+    private final static int RECORD_ERROR = 0x81;
+    private final static int MAX_STRING = 1 << 20;
+
+    private ListingFormat() {
+    }
+
+    static void writeHeader(OutputStream outputStream, String path, boolean namesOnly) throws IOException {
+        outputStream.write(MAGIC);
+        outputStream.write(namesOnly ? 1 : 0);
+        writeString(outputStream, path);
+    }
+
+    static void writeEntry(OutputStream outputStream, DirectoryListing.Entry entry, boolean namesOnly) throws IOException {
+        int flags = entry.isDirectory() ? FLAG_DIRECTORY : 0;
+        if (namesOnly) {
+            outputStream.write(flags);
+        } else {
+            outputStream.write(entry.isWritable() ? flags | FLAG_WRITABLE : flags);
+            writeLong(outputStream, entry.getSize());
+            writeLong(outputStream, entry.getLastModified());
+        }
+        writeString(outputStream, entry.getName());
+    }
+
+    static void writeEnd(OutputStream outputStream, long count, int pageSize, String nextToken) throws IOException {
+        outputStream.write(RECORD_END);
+        writeLong(outputStream, count);
+        writeLong(outputStream, pageSize);
+        writeString(outputStream, nextToken == null ? "" : nextToken);
+    }
+
+    static void writeError(OutputStream outputStream, String message) throws IOException {
+        outputStream.write(RECORD_ERROR);
+        writeString(outputStream, message);
+    }
+
+    /**
+     * 读取被控返回的目录列表，不是二进制格式的数据会被当作文本错误信息。
+     * <p>
+     * Read the directory listing returned by the controlled end, data that is not in the binary format is treated as a text error message.
+     */
+    static DirectoryListing read(InputStream inputStream) throws IOException {
+        PushbackInputStream pushbackInputStream = new PushbackInputStream(inputStream, 1);
+        int first = pushbackInputStream.read();
+        if (first != MAGIC[0]) {
+            // 被控无法读取目录或者不支持二进制格式，返回的是文本
+            if (first >= 0) {
+                pushbackInputStream.unread(first);
+            }
+            return new DirectoryListing(false, Session.MASTER_FILE_SESSION, null, false, new ArrayList<>(), null, 0, IOUtils.getStringByStream(pushbackInputStream));
+        }
+        inputStream = pushbackInputStream;
+        for (int i = 1; i < MAGIC.length; i++) {
+            if (inputStream.read() != MAGIC[i]) {
+                throw new IOException("Unsupported directory listing format.");
+            }
+        }
+        boolean namesOnly = readByte(inputStream) == 1;
+        String path = readString(inputStream);
+        ArrayList<DirectoryListing.Entry> entries = new ArrayList<>();
+        while (true) {
+            int flags = readByte(inputStream);
+            if (flags == RECORD_END) {
+                readLong(inputStream);
+                int pageSize = (int) readLong(inputStream);
+                String nextToken = readString(inputStream);
+                return new DirectoryListing(true, Session.MASTER_FILE_SESSION, path, namesOnly, entries, nextToken.isEmpty() ? null : nextToken, pageSize, null);
+            }
+            if (flags == RECORD_ERROR) {
+                return new DirectoryListing(false, Session.MASTER_FILE_SESSION, path, namesOnly, entries, null, 0, readString(inputStream));
+            }
+            if (namesOnly) {
+                entries.add(new DirectoryListing.Entry(readString(inputStream), (flags & FLAG_DIRECTORY) != 0, false, -1, -1));
+            } else {
+                long size = readLong(inputStream);
+                long lastModified = readLong(inputStream);
+                entries.add(new DirectoryListing.Entry(readString(inputStream), (flags & FLAG_DIRECTORY) != 0, (flags & FLAG_WRITABLE) != 0, size, lastModified));
+            }
+        }
+    }
+
+    /**
+     * 将目录列表显示为与文本格式完全一样的内容。
+     * <p>
+     * Display a directory listing exactly like the text format.
+     *
+     * @param listing 目录列表
+     * @param name    查看目录的命令名称，用于生成读取下一页的命令
+     */
+    static String render(DirectoryListing listing, String name) {
+        if (listing.getPath() == null) {
+            return listing.getError();
+        }
+        String split = text(listing.isNamesOnly() ? ControlledSeeDirNameActuator.SPLIT : ControlledSeeDirActuator.SPLIT);
+        StringBuilder builder = new StringBuilder(64 + listing.getDataOrError().size() * (listing.isNamesOnly() ? 24 : 96));
+        builder.append(text(ControlledSeeDirActuator.FILE_PATH)).append(listing.getPath()).append('\n').append(split);
+        String dir = text(ControlledSeeDirActuator.DIR);
+        String file = text(ControlledSeeDirActuator.FILE);
+        if (listing.isNamesOnly()) {
+            for (DirectoryListing.Entry entry : listing.getDataOrError()) {
+                builder.append(entry.isDirectory() ? dir : file).append(entry.getName()).append('\n');
+            }
+        } else {
+            String writable = text(ControlledSeeDirActuator.FILE_WRITABLE);
+            String type = text(ControlledSeeDirActuator.FILE_TYPE);
+            String size = text(ControlledSeeDirActuator.FILE_SIZE);
+            String fileName = text(ControlledSeeDirActuator.FILE_NAME);
+            for (DirectoryListing.Entry entry : listing.getDataOrError()) {
+                builder.append(writable).append(entry.isWritable()).append('\t')
+                        .append(type).append(entry.isDirectory() ? dir : file)
+                        .append(size).append(entry.getSize()).append(" byte\t")
+                        .append(fileName).append(entry.getName()).append('\n');
+            }
+        }
+        if (listing.getError() != null) {
+            // 与文本格式一样，读取到一半失败时在已经读取的文件之后显示错误信息
+            return builder.append(listing.getError()).toString();
+        }
+        builder.append(split).append("Number of files read: ").append(listing.getDataOrError().size());
+        if (listing.getNextToken() != null) {
+            builder.append("\nNext page: ").append(name).append(' ').append(listing.getPath())
+                    .append(" -n ").append(listing.getPageSize()).append(" -c ").append(listing.getNextToken());
+        }
+        return builder.toString();
+    }
+
+    private static String text(byte[] bytes) {
+        return new String(bytes, ConfigureConstantArea.getCharset());
+    }
+
+    private static void writeLong(OutputStream outputStream, long value) throws IOException {
+        // zigzag 编码，使得负数也只需要很少的字节
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            outputStream.write((int) (zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        outputStream.write((int) zigzag);
+    }
+
+    private static void writeString(OutputStream outputStream, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeLong(outputStream, bytes.length);
+        outputStream.write(bytes);
+    }
+
+    private static int readByte(InputStream inputStream) throws IOException {
+        int b = inputStream.read();
+        if (b < 0) {
+            throw new EOFException("The directory listing ended unexpectedly.");
+        }
+        return b;
+    }
+
+    private static long readLong(InputStream inputStream) throws IOException {
+        long zigzag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte(inputStream);
+            zigzag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IOException("Malformed variable length integer in the directory listing.");
+    }
+
+    private static String readString(InputStream inputStream) throws IOException {
+        long length = readLong(inputStream);
+        if (length < 0 || length > MAX_STRING) {
+            throw new IOException("Malformed string length in the directory listing: " + length);
+        }
+        byte[] bytes = new byte[(int) length];
+        int offset = 0;
+        while (offset < bytes.length) {
+            int read = inputStream.read(bytes, offset, bytes.length - offset);
+            if (read < 0) {
+                throw new EOFException("The directory listing ended unexpectedly.");
+            }
+            offset += read;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
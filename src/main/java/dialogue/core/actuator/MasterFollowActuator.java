@@ -0,0 +1,138 @@
+package dialogue.core.actuator;
+
+import dialogue.ConfigureConstantArea;
+import dialogue.Session;
+import dialogue.core.channel.DataChannel;
+import dialogue.core.master.MasterConnection;
+import dialogue.utils.BufferPool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 主控端的文件跟踪执行器，与 tail -F 类似，接收被控中一个文件的最后若干行以及之后新追加的数据，不需要反复查看整个文件。
+ * <p>
+ * File following actuator of the master, similar to tail -F. It receives the last lines of a file of the controlled end and the data appended after that, without viewing the whole file again and again.
+ * <p>
+ * 命令格式：follow [-n 最后的行数] [-o 开始位置] [-e 过滤内容] [-F] [-i] [-t 秒数] [--] 文件，过滤在被控中进行，只有匹配的行会被传输。
+ * 通过控制台运行并且没有指定 -t 的时候会使用 follow.timeout 秒，使得命令能够结束并显示结果。
+ * <p>
+ * Command format: follow [-n last lines] [-o start position] [-e filter] [-F] [-i] [-t seconds] [--] file. Filtering happens on the controlled end, and only the matching lines are transferred.
+ * When run through the console without -t, follow.timeout seconds are used so that the command ends and its result can be displayed.
+ *
+ * @author 赵凌宇
+ */
+public class MasterFollowActuator implements Actuator {
+
+    private final static Pattern TIMEOUT_OPTION = Pattern.compile("\\s-t\\s");
+
+    protected final MasterConnection masterConnection;
+
+    public MasterFollowActuator(MasterConnection masterConnection) {
+        this.masterConnection = masterConnection;
+    }
+
+    /**
+     * @return 能够调用该执行器的会话对象编号。
+     * <p>
+     * The number of the session object that can call the executor.
+     */
+    @Override
+    public int getType() {
+        return Session.MASTER_FILE_SESSION;
+    }
+
+    /**
+     * @return 该执行器的名称，一般是该执行器能够解析的命令标识。
+     * <p>
+     * The name of the executor is generally the command ID that the executor can resolve.
+     */
+    @Override
+    public String getName() {
+        return "follow";
+    }
+
+    /**
+     * 返回会话当前运行状态，当一个会话没有在运行的时候，该函数将返回false，一个没有运行中的会话将不具备执行命令与回显数据的能力
+     * <p>
+     * Returns the current running state of the session. When a session is not running, this function will return false. A session that is not running will not have the ability to execute commands and echo data
+     *
+     * @return 如果返回true，代表当前会话正在运行中
+     * <p>
+     * If true is returned, the current session is running
+     */
+    @Override
+    public boolean isRunning() {
+        return ActuatorManager.containMasterActuator(this.getName());
+    }
+
+    /**
+     * @param command 需要执行的命令参数
+     *                <p>
+     *                Command parameters to be executed
+     * @param matcher 命令匹配器，通过该匹配器获取到命令中的所需参数
+     *                <p>
+     *                Command matcher, through which the required parameters in the command can be obtained
+     * @return 运行之后的结果的字符串形式
+     * <p>
+     * String form of the result after running
+     * @throws IOException 异常抛出主要为当运行执行器的过程中，出现了无法提供给对方的异常信息时，异常将会被抛出。
+     *                     <p>
+     *                     Exception throwing is mainly used to throw exceptions when there is exception information that cannot be provided to the other party during the execution.
+     */
+    @Override
+    public String runActuatorCommand(String command, Matcher matcher) throws IOException {
+        // 没有参数的命令只会得到用法提示，不需要加入时间
+        if (command.trim().indexOf(' ') > 0 && !TIMEOUT_OPTION.matcher(command).find()) {
+            command = command + " -t " + ConfigureConstantArea.FOLLOW_TIMEOUT;
+        }
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        follow(command, byteArrayOutputStream);
+        return byteArrayOutputStream.toString(ConfigureConstantArea.CHARSET);
+    }
+
+    /**
+     * 跟踪被控中的一个文件，被控发送来的数据会在到达的时候立刻写入数据流，直到被控结束跟踪或者调用者取消。
+     * <p>
+     * Follow a file of the controlled end. The data sent by the controlled end is written into the stream as soon as it arrives, until the controlled end stops following or the caller cancels.
+     * <p>
+     * 写入数据流时抛出异常，或者在多路复用模式下中断当前线程，都会关闭与被控之间的文件数据流，被控会立刻停止跟踪，没有指定 -t 的时候只能通过这种方式结束。
+     * <p>
+     * Throwing an exception while writing into the stream, or interrupting the current thread in the multiplexed mode, closes the file data stream to the controlled end, and the controlled end stops following at once. Without -t this is the only way to end it.
+     *
+     * @param command      跟踪命令
+     *                     <p>
+     *                     The follow command
+     * @param outputStream 数据需要写入的数据流
+     *                     <p>
+     *                     Stream the data is written into
+     * @return 接收到的字节数量
+     * <p>
+     * Number of bytes received
+     * @throws IOException 与被控通信或者写入数据流时发生的异常
+     */
+    public long follow(String command, OutputStream outputStream) throws IOException {
+        int requestId = masterConnection.sendCommand(command);
+        DataChannel accept = masterConnection.acceptFileChannel(requestId);
+        InputStream inputStream = accept.getInputStream();
+        byte[] buffer = BufferPool.acquire(ConfigureConstantArea.TCP_BUFFER_MAX_SIZE);
+        long received = 0;
+        try {
+            int offset;
+            while ((offset = inputStream.read(buffer)) > 0) {
+                outputStream.write(buffer, 0, offset);
+                outputStream.flush();
+                received += offset;
+            }
+            return received;
+        } finally {
+            BufferPool.release(buffer);
+            inputStream.close();
+            accept.close();
+        }
+    }
+}
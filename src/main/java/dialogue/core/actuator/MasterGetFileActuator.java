@@ -2,11 +2,26 @@ package dialogue.core.actuator;
 
 import dialogue.ConfigureConstantArea;
 import dialogue.Session;
+import dialogue.core.channel.CompressedTransfer;
+import dialogue.core.channel.DataChannel;
+import dialogue.core.channel.DeltaTransfer;
+import dialogue.core.channel.ResumableTransfer;
+import dialogue.core.channel.StripedTransfer;
+import dialogue.core.channel.TransferChecksum;
+import dialogue.core.master.MasterConnection;
+import dialogue.utils.IOUtils;
+import dialogue.utils.progressEvent.ProgressFileNumber;
 
 import java.io.*;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Matcher;
+import java.util.zip.Checksum;
 
 /**
  * get 命令执行类，与被控的get执行类相互对应，用于主控从被控设备中获取数据。
@@ -16,14 +31,12 @@ import java.util.regex.Matcher;
  * @author 赵凌宇
  */
 public class MasterGetFileActuator implements Actuator {
-    private final static String ERROR = "Incorrect syntax! => get [Remote File Path] [local File Path]";
+    private final static String ERROR = "Incorrect syntax! => get [-d | -p stripes] [Remote File Path] [local File Path]";
 
-    protected final ServerSocket fileSocket;
-    protected final OutputStream outputStream;
+    protected final MasterConnection masterConnection;
 
-    public MasterGetFileActuator(ServerSocket fileSocket, OutputStream outputStream) {
-        this.fileSocket = fileSocket;
-        this.outputStream = outputStream;
+    public MasterGetFileActuator(MasterConnection masterConnection) {
+        this.masterConnection = masterConnection;
     }
 
     /**
@@ -41,6 +54,11 @@ public class MasterGetFileActuator implements Actuator {
         return "get";
     }
 
+    @Override
+    public boolean isTransfer() {
+        return true;
+    }
+
     /**
      * 返回会话当前运行状态，当一个会话没有在运行的时候，该函数将返回false，一个没有运行中的会话将不具备执行命令与回显数据的能力
      * <p>
@@ -68,63 +86,53 @@ public class MasterGetFileActuator implements Actuator {
      */
     @Override
     public String runActuatorCommand(String command, Matcher matcher) throws IOException {
-        // 首先获取到下载路径
+        // 首先获取到分片数量与下载路径
+        boolean delta = DeltaTransfer.parseOption(matcher);
+        int stripes = delta ? 1 : StripedTransfer.parseStripes(matcher);
         if (matcher.find() && matcher.find()) {
             String downLoadPath = matcher.group(1);
             if (downLoadPath != null) {
                 // 然后传递命令给被控
-                outputStream.write(command.getBytes(ConfigureConstantArea.CHARSET));
-                outputStream.flush();
+                int requestId = masterConnection.sendCommand(command);
                 ConfigureConstantArea.LOGGER.info("downloading....");
                 // 等待连接接受
-                Socket accept = fileSocket.accept();
+                DataChannel accept = masterConnection.acceptFileChannel(requestId);
                 // 接收到后开启数据流
                 DataInputStream inputStream = new DataInputStream(accept.getInputStream());
                 // 判断状态，如果这里返回的不是-1，那么就是成功了，稍后会返回文件数据，而这里的数值就是文件的大小
                 long size = inputStream.readLong();
-                if (ConfigureConstantArea.FILE_PROGRESS != null) {
-                    if (size != -1) {
-                        // 代表没有问题，开始接受文件数据
-                        ConfigureConstantArea.FILE_PROGRESS.setMaxSize(size);
-                        ConfigureConstantArea.FILE_PROGRESS.function1(0);
-                        BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(new FileOutputStream(downLoadPath));
-                        byte[] buffer = new byte[ConfigureConstantArea.TCP_BUFFER_MAX_SIZE];
-                        int offset;
-                        while ((offset = inputStream.read(buffer)) > 0) {
-                            ConfigureConstantArea.FILE_PROGRESS.function2(offset);
-                            // 当前匹配项就是下载路径
-                            bufferedOutputStream.write(buffer, 0, offset);
-                        }
-                        bufferedOutputStream.flush();
-                        bufferedOutputStream.close();
-                        inputStream.close();
-                        accept.close();
-                        ConfigureConstantArea.FILE_PROGRESS.function3(0);
-                        return " file download ok!";
-                    } else {
-                        // 如果返回的是 -1 代表稍后传输的是错误信息，需要打印出来
-                        return inputStream.readUTF();
-                    }
-                } else {
-                    if (size != -1) {
-                        // 代表没有问题，开始接受文件数据
-                        BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(new FileOutputStream(downLoadPath));
-                        byte[] buffer = new byte[ConfigureConstantArea.TCP_BUFFER_MAX_SIZE];
-                        int offset;
-                        while ((offset = inputStream.read(buffer)) > 0) {
-                            // 当前匹配项就是下载路径
-                            bufferedOutputStream.write(buffer, 0, offset);
-                        }
-                        bufferedOutputStream.flush();
-                        bufferedOutputStream.close();
-                        inputStream.close();
-                        accept.close();
-                        return " file download ok!";
-                    } else {
-                        // 如果返回的是 -1 代表稍后传输的是错误信息，需要打印出来
-                        return inputStream.readUTF();
+                if (stripes > 1 && size != -1) {
+                    return receiveStripes(requestId, accept, inputStream, size, downLoadPath);
+                }
+                if (size == -1) {
+                    // 如果返回的是 -1 代表稍后传输的是错误信息，需要打印出来
+                    return inputStream.readUTF();
+                }
+                if (delta) {
+                    return receiveDelta(accept, inputStream, downLoadPath);
+                }
+                // 代表没有问题，数据先写入临时文件，告知被控已经拥有的数据与支持的压缩算法，被控会从双方一致的位置继续发送
+                Path target = Paths.get(downLoadPath);
+                Checksum checksum = TransferChecksum.create();
+                try {
+                    try (FileChannel part = ResumableTransfer.openPart(target)) {
+                        DataOutputStream outputStream = new DataOutputStream(accept.getOutputStream());
+                        ResumableTransfer.offer(part, size, outputStream);
+                        CompressedTransfer.offer(outputStream);
+                        long position = inputStream.readLong();
+                        InputStream data = CompressedTransfer.receive(inputStream, ConfigureConstantArea.FILE_PROGRESS, checksum);
+                        ResumableTransfer.receive(part, position, size, data, ConfigureConstantArea.FILE_PROGRESS);
+                        data.close();
                     }
+                    // 临时文件关闭之后再校验，校验失败的临时文件不会被保留，下一次会重新传输完整的数据
+                    TransferChecksum.verify(inputStream, checksum, ResumableTransfer.partOf(target).toFile());
+                } finally {
+                    IOUtils.close(inputStream);
+                    IOUtils.close(accept);
                 }
+                // 全部接收之后再替换目标文件
+                ResumableTransfer.commit(target);
+                return " file download ok!";
             } else {
                 return ERROR;
             }
@@ -132,4 +140,71 @@ public class MasterGetFileActuator implements Actuator {
             return ERROR;
         }
     }
+
+    /**
+     * 增量模式的下载，将本地已经存在的旧文件的签名发送给被控，并根据被控发送的增量指令在临时文件中重建新文件，最后替换旧文件。
+     *
+     * @param accept       下载命令的数据通道
+     * @param inputStream  数据通道的输入流
+     * @param downLoadPath 下载路径，文件不存在的时候被控会发送完整的数据
+     * @return 运行之后的结果的字符串形式
+     * @throws IOException 接收数据、读写文件或者校验失败时发生的异常
+     */
+    private String receiveDelta(DataChannel accept, DataInputStream inputStream, String downLoadPath) throws IOException {
+        Path target = Paths.get(downLoadPath);
+        long size;
+        try (FileChannel basis = Files.isRegularFile(target) ? FileChannel.open(target, StandardOpenOption.READ) : null;
+             FileChannel part = FileChannel.open(ResumableTransfer.partOf(target), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DeltaTransfer.sendSignature(basis, accept.getOutputStream());
+            size = DeltaTransfer.receiveDelta(basis, part, inputStream);
+        } finally {
+            IOUtils.close(inputStream);
+            IOUtils.close(accept);
+        }
+        ResumableTransfer.commit(target);
+        return " file download ok! (" + size + " bytes, delta)";
+    }
+
+    /**
+     * 分片模式的下载，被控会在状态之后告知实际的分片数量，并为每一个分片打开一个数据通道，这里同时接收所有的分片并写入到文件中对应的位置。
+     *
+     * @param requestId    下载命令的请求编号
+     * @param accept       下载命令的主数据通道
+     * @param inputStream  主数据通道的输入流
+     * @param size         文件的字节数
+     * @param downLoadPath 下载路径
+     * @return 运行之后的结果的字符串形式
+     * @throws IOException 接收分片时发生的异常
+     */
+    private String receiveStripes(int requestId, DataChannel accept, DataInputStream inputStream, long size, String downLoadPath) throws IOException {
+        int count;
+        try {
+            // 分片数量来自被控，检查通过之后才会创建文件与接受数据通道
+            count = StripedTransfer.checkCount(size, inputStream.readInt());
+        } catch (IOException e) {
+            IOUtils.close(inputStream);
+            IOUtils.close(accept);
+            throw e;
+        }
+        List<DataChannel> channels = new ArrayList<>(count);
+        Path path = Paths.get(downLoadPath);
+        try (FileChannel target = FileChannel.open(ResumableTransfer.partOf(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int i = 0; i < count; i++) {
+                channels.add(masterConnection.acceptFileChannel(requestId));
+            }
+            ProgressFileNumber fileProgress = ConfigureConstantArea.FILE_PROGRESS;
+            if (fileProgress != null) {
+                fileProgress.setMaxSize(size);
+            }
+            StripedTransfer.receive(target, size, channels, fileProgress);
+        } finally {
+            for (DataChannel channel : channels) {
+                IOUtils.close(channel);
+            }
+            IOUtils.close(inputStream);
+            IOUtils.close(accept);
+        }
+        ResumableTransfer.commit(path);
+        return " file download ok! (" + count + " stripes)";
+    }
 }
@@ -1,12 +1,18 @@
 package dialogue.core.actuator;
 
 import dialogue.ConfigureConstantArea;
+import dialogue.core.channel.ArchiveTransfer;
+import dialogue.core.channel.CompressedTransfer;
+import dialogue.core.channel.DataChannel;
+import dialogue.core.channel.PipelinedTransfer;
+import dialogue.core.channel.TransferChecksum;
+import dialogue.core.master.MasterConnection;
 import dialogue.utils.IOUtils;
+import dialogue.utils.progressEvent.ProgressFileNumber;
 
 import java.io.*;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.util.regex.Matcher;
+import java.util.zip.Checksum;
 
 /**
  * 主控 目录获取执行器，将目录中所有的文件全都进行远程传输的类
@@ -17,10 +23,10 @@ import java.util.regex.Matcher;
  */
 public class MasterGetsDirActuator extends MasterGetFileActuator {
 
-    private final static String ERROR = "Incorrect syntax! => gets [Remote Dir Path] [local Dir Path]";
+    private final static String ERROR = "Incorrect syntax! => gets [-r] [Remote Dir Path] [local Dir Path]";
 
-    public MasterGetsDirActuator(ServerSocket fileSocket, OutputStream outputStream) {
-        super(fileSocket, outputStream);
+    public MasterGetsDirActuator(MasterConnection masterConnection) {
+        super(masterConnection);
     }
 
     /**
@@ -65,84 +71,60 @@ public class MasterGetsDirActuator extends MasterGetFileActuator {
      */
     @Override
     public String runActuatorCommand(String command, Matcher matcher) throws IOException {
-        // 获取到下载到本机的新目录路径
+        // 获取到递归选项与下载到本机的新目录路径
+        boolean recursive = ArchiveTransfer.parseOption(matcher);
         if (matcher.find() && matcher.find()) {
             String dirPath = matcher.group(1);
             File file = new File(dirPath);
             // 判断当前目录是否存在
             if (file.exists() && file.isDirectory()) {
                 // 如果存在就开始传递命令
-                outputStream.write(command.getBytes(ConfigureConstantArea.CHARSET));
-                outputStream.flush();
+                int requestId = masterConnection.sendCommand(command);
                 // 等待连接接收
-                Socket accept = fileSocket.accept();
-                DataInputStream dataInputStream = new DataInputStream(accept.getInputStream());
+                DataChannel accept = masterConnection.acceptFileChannel(requestId);
+                DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(accept.getInputStream(), IOUtils.SMALL_FILE_SIZE));
                 DataOutputStream dataOutputStream = new DataOutputStream(accept.getOutputStream());
+                // 告知被控支持的压缩算法，被控会为每一个文件单独选择是否压缩
+                CompressedTransfer.offer(dataOutputStream);
+                if (recursive) {
+                    // 递归模式，被控会将整个目录树作为一条记录流发送，这里边接收边还原
+                    try {
+                        long files = ArchiveTransfer.receive(file.toPath(), dataInputStream, ConfigureConstantArea.FILE_PROGRESS);
+                        return " dir download ok!!! (" + files + " files)";
+                    } catch (IOException e) {
+                        return e.toString();
+                    } finally {
+                        IOUtils.close(dataInputStream);
+                        IOUtils.close(accept);
+                    }
+                }
                 // 准备进度条
+                ProgressFileNumber fileProgress = ConfigureConstantArea.FILE_PROGRESS;
                 long size = dataInputStream.readLong();
-                if (ConfigureConstantArea.FILE_PROGRESS != null) {
-                    // 接受到文件之后开始下一个文件的大小或状态码：-1代表发生错误 -2代表发送完毕
-                    while (size >= -2) {
-                        String error = getString(size, dataInputStream);
-                        if (error != null) return error;
-                        // 等待获取当前文件的名称
-                        String fileName = dataInputStream.readUTF();
+                // 接受到文件之后开始下一个文件的大小或状态码：-1代表发生错误 -2代表发送完毕
+                while (size >= -2) {
+                    String error = getString(size, dataInputStream);
+                    if (error != null) return error;
+                    // 如果都不是 那么， size 就代表当前文件数据的大小
+                    // 等待获取当前文件的名称
+                    String fileName = dataInputStream.readUTF();
+                    if (fileProgress != null) {
                         System.out.println();
-                        ConfigureConstantArea.LOGGER.info(fileName + " Start downloading.....");
-                        // 如果都不是 那么， size 就代表当前文件数据的大小
-                        ConfigureConstantArea.FILE_PROGRESS.setMaxSize(size);
-                        // 开始传输数据
-                        BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(new FileOutputStream(dirPath + '/' + fileName));
-                        byte[] buffer = new byte[ConfigureConstantArea.TCP_BUFFER_MAX_SIZE];
-                        ConfigureConstantArea.FILE_PROGRESS.function1(0);
-                        int offset;
-                        while ((offset = dataInputStream.read(buffer)) > 0) {
-                            ConfigureConstantArea.FILE_PROGRESS.function2(offset);
-                            bufferedOutputStream.write(buffer, 0, offset);
-                            if ((size -= offset) <= 0) {
-                                // 当前文件传输完成
-                                ConfigureConstantArea.FILE_PROGRESS.function3(offset);
-                                bufferedOutputStream.flush();
-                                bufferedOutputStream.close();
-                                // 告知被控已经准备好接受下一次数据
-                                dataOutputStream.writeUTF(OK_2);
-                                // 开始读取下一个状态的数值
-                                size = dataInputStream.readLong();
-                                // 开始下一个文件的获取
-                                break;
-                            }
-                        }
-                    }
-                } else {
-                    // 代表不使用进度条
-                    // 接受到文件之后开始下一个文件的大小或状态码：-1代表发生错误 -2代表发送完毕
-                    while (size >= -2) {
-                        String error = getString(size, dataInputStream);
-                        if (error != null) return error;
-                        // 如果都不是 那么， size 就代表当前文件数据的大小
-                        // 等待获取当前文件的名称
-                        String fileName = dataInputStream.readUTF();
-                        ConfigureConstantArea.LOGGER.info(fileName + " Start downloading.....");
-                        // 开始传输数据
-                        BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(new FileOutputStream(dirPath + '/' + fileName));
-                        byte[] buffer = new byte[ConfigureConstantArea.TCP_BUFFER_MAX_SIZE];
-                        int offset;
-                        while ((offset = dataInputStream.read(buffer)) > 0) {
-                            bufferedOutputStream.write(buffer, 0, offset);
-                            if ((size -= offset) <= 0) {
-                                // 当前文件传输完成
-                                bufferedOutputStream.flush();
-                                bufferedOutputStream.close();
-                                ConfigureConstantArea.LOGGER.info(fileName + " download ok!");
-                                // 告知被控已经准备好接受下一次数据
-                                dataOutputStream.writeUTF(OK_2);
-                                // 开始读取下一个状态的数值
-                                size = dataInputStream.readLong();
-                                // 开始下一个文件的获取
-                                break;
-                            }
-                        }
+                        fileProgress.setMaxSize(size);
                     }
+                    ConfigureConstantArea.LOGGER.info(fileName + " Start downloading.....");
+                    // 开始传输数据，压缩数据的结尾会在关闭数据流的时候读取，随后是校验尾，校验失败的文件不会被保留
+                    Checksum checksum = TransferChecksum.create();
+                    InputStream data = CompressedTransfer.receive(dataInputStream, fileProgress, checksum);
+                    File target = new File(dirPath, fileName);
+                    PipelinedTransfer.receive(data, target, size, fileProgress, null);
+                    data.close();
+                    TransferChecksum.verify(dataInputStream, checksum, target);
+                    ConfigureConstantArea.LOGGER.info(fileName + " download ok!");
+                    // 告知被控已经准备好接受下一次数据
+                    dataOutputStream.writeUTF(OK_2);
+                    // 开始读取下一个状态的数值
+                    size = dataInputStream.readLong();
                 }
                 IOUtils.close(dataInputStream);
                 IOUtils.close(accept);
@@ -0,0 +1,84 @@
+package dialogue.core.actuator;
+
+import dialogue.Session;
+import dialogue.core.channel.TransferScheduler;
+import dialogue.core.master.MasterConnection;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+
+/**
+ * 主控端的传输限制执行器，用于在运行中修改主控与被控两端的传输数量与带宽限制。
+ * <p>
+ * Transfer limit actuator of the master, used to change the transfer count and bandwidth limits of both the master and the controlled end while running.
+ * <p>
+ * 命令格式：limit [-h 本机总速率] [-t 每个传输的速率] [-c 同时进行的传输数量]，没有参数的时候只查看两端当前的限制。
+ * <p>
+ * Command format: limit [-h host rate] [-t rate per transfer] [-c simultaneous transfers]. Without arguments only the current limits of both ends are shown.
+ *
+ * @author 赵凌宇
+ */
+public class MasterLimitActuator implements Actuator {
+
+    protected final MasterConnection masterConnection;
+
+    public MasterLimitActuator(MasterConnection masterConnection) {
+        this.masterConnection = masterConnection;
+    }
+
+    /**
+     * @return 能够调用该执行器的会话对象编号。
+     * <p>
+     * The number of the session object that can call the executor.
+     */
+    @Override
+    public int getType() {
+        return Session.MASTER_FILE_SESSION;
+    }
+
+    /**
+     * @return 该执行器的名称，一般是该执行器能够解析的命令标识。
+     * <p>
+     * The name of the executor is generally the command ID that the executor can resolve.
+     */
+    @Override
+    public String getName() {
+        return "limit";
+    }
+
+    /**
+     * 返回会话当前运行状态，当一个会话没有在运行的时候，该函数将返回false，一个没有运行中的会话将不具备执行命令与回显数据的能力
+     * <p>
+     * Returns the current running state of the session. When a session is not running, this function will return false. A session that is not running will not have the ability to execute commands and echo data
+     *
+     * @return 如果返回true，代表当前会话正在运行中
+     * <p>
+     * If true is returned, the current session is running
+     */
+    @Override
+    public boolean isRunning() {
+        return ActuatorManager.containMasterActuator(this.getName());
+    }
+
+    /**
+     * @param command 需要执行的命令参数
+     *                <p>
+     *                Command parameters to be executed
+     * @param matcher 命令匹配器，通过该匹配器获取到命令中的所需参数
+     *                <p>
+     *                Command matcher, through which the required parameters in the command can be obtained
+     * @return 运行之后的结果的字符串形式
+     * <p>
+     * String form of the result after running
+     * @throws IOException 异常抛出主要为当运行执行器的过程中，出现了无法提供给对方的异常信息时，异常将会被抛出。
+     *                     <p>
+     *                     Exception throwing is mainly used to throw exceptions when there is exception information that cannot be provided to the other party during the execution.
+     */
+    @Override
+    public String runActuatorCommand(String command, Matcher matcher) throws IOException {
+        // 首先在本机修改，参数有误的时候不会发送给被控
+        String master = TransferScheduler.configure(matcher);
+        // 然后将相同的命令发送给被控，由被控修改自己的限制
+        return "master => " + master + "\ncontrolled => " + masterConnection.runCommand(command);
+    }
+}
@@ -0,0 +1,249 @@
+package dialogue.core.actuator;
+
+import dialogue.ConfigureConstantArea;
+import dialogue.core.result.DirectoryListing;
+import dialogue.utils.ThreadUtils;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * 主控端的目录列表缓存，在 see.dir.master.cache.ttl 毫秒之内重复查看同一个目录时直接使用本地的结果，不再与被控通信。
+ * <p>
+ * Directory listing cache of the master. Viewing the same directory again within see.dir.master.cache.ttl milliseconds uses the local result without communicating with the controlled end.
+ * <p>
+ * 查看一个目录之后，其中最多 see.dir.prefetch 个子目录会在后台被提前查看，下一次进入这些子目录时不需要等待。
+ * 提前查看只会在没有前台查看请求的时候进行，每一次新的查看都会取消还没有开始的提前查看，同一个目录同时只会有一个请求。
+ * <p>
+ * After a directory is viewed, at most see.dir.prefetch of its subdirectories are viewed in the background in advance, so entering them next does not have to wait.
+ * Prefetching only happens while there is no foreground request, every new view cancels the prefetches that have not started yet, and there is only one request at a time for the same directory.
+ *
+ * @author 赵凌宇
+ */
+final class MasterListingCache {
+
+    /**
+     * 缓存中最多保留的目录列表数量。
+     */
+    private final static int MAX_LISTINGS = 256;
+
+    private final Fetcher fetcher;
+    private final LinkedHashMap<String, Cached> listings = new LinkedHashMap<String, Cached>(16, 0.75f, true) {
+        private final static long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+            return size() > MAX_LISTINGS;
+        }
+    };
+    private final AtomicInteger foreground = new AtomicInteger();
+    private ThreadPoolExecutor prefetcher;
+
+    MasterListingCache(Fetcher fetcher) {
+        this.fetcher = fetcher;
+    }
+
+    /**
+     * 获取一个查看目录命令的结果，缓存中存在并且没有过期的时候直接返回缓存中的结果。
+     *
+     * @param name    查看目录的命令名称
+     * @param command 查看目录的命令
+     * @return 目录列表
+     * @throws IOException 与被控通信时发生的异常
+     */
+    DirectoryListing get(String name, String command) throws IOException {
+        Request request = Request.parse(name, command);
+        if (ConfigureConstantArea.SEE_DIR_MASTER_CACHE_TTL <= 0 || request == null) {
+            return this.fetcher.fetch(command);
+        }
+        CompletableFuture<DirectoryListing> future;
+        boolean owner = false;
+        synchronized (this.listings) {
+            Cached cached = this.listings.get(request.key);
+            if (cached != null && !cached.isExpired()) {
+                future = cached.future;
+            } else {
+                future = new CompletableFuture<>();
+                this.listings.put(request.key, new Cached(future));
+                owner = true;
+            }
+        }
+        if (owner) {
+            this.foreground.incrementAndGet();
+            try {
+                fetch(request.key, command, future);
+            } finally {
+                this.foreground.decrementAndGet();
+            }
+        }
+        DirectoryListing listing;
+        try {
+            listing = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the directory listing.", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+        if (owner && request.token == null && listing.isSuccessful()) {
+            prefetch(name, request, listing);
+        }
+        return listing;
+    }
+
+    /**
+     * 清空缓存，被控中的文件发生变化的时候调用。
+     */
+    void clear() {
+        synchronized (this.listings) {
+            this.listings.clear();
+        }
+        synchronized (this) {
+            if (this.prefetcher != null) {
+                this.prefetcher.getQueue().clear();
+            }
+        }
+    }
+
+    private void fetch(String key, String command, CompletableFuture<DirectoryListing> future) {
+        DirectoryListing listing = null;
+        try {
+            listing = this.fetcher.fetch(command);
+            future.complete(listing);
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+        } finally {
+            synchronized (this.listings) {
+                Cached cached = this.listings.get(key);
+                if (cached != null && cached.future == future) {
+                    if (listing != null && listing.isSuccessful()) {
+                        // 过期时间从得到结果的时候开始计算
+                        cached.time = System.currentTimeMillis();
+                    } else {
+                        // 失败的结果不缓存，下一次重新查看
+                        this.listings.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    private void prefetch(String name, Request request, DirectoryListing listing) {
+        if (ConfigureConstantArea.SEE_DIR_PREFETCH <= 0) {
+            return;
+        }
+        ThreadPoolExecutor executor = prefetcher();
+        // 用户已经进入了新的目录，还没有开始的提前查看已经没有意义了
+        executor.getQueue().clear();
+        String path = listing.getPath();
+        char separator = path.indexOf('/') < 0 && path.indexOf('\\') >= 0 ? '\\' : '/';
+        String parent = path.endsWith("/") || path.endsWith("\\") ? path : path + separator;
+        int count = 0;
+        for (DirectoryListing.Entry entry : listing.getDataOrError()) {
+            if (count >= ConfigureConstantArea.SEE_DIR_PREFETCH) {
+                break;
+            }
+            // 命令中的参数使用空白分隔，名称中包含空白的目录无法查看
+            if (!entry.isDirectory() || entry.getName().chars().anyMatch(Character::isWhitespace)) {
+                continue;
+            }
+            count++;
+            String command = name + ' ' + parent + entry.getName() + (request.pageSize == null ? "" : " -n " + request.pageSize);
+            Request child = Request.parse(name, command);
+            executor.execute(() -> {
+                if (this.foreground.get() > 0) {
+                    // 前台正在查看目录，不与前台争抢连接
+                    return;
+                }
+                CompletableFuture<DirectoryListing> future = new CompletableFuture<>();
+                synchronized (this.listings) {
+                    Cached cached = this.listings.get(child.key);
+                    if (cached != null && !cached.isExpired()) {
+                        return;
+                    }
+                    this.listings.put(child.key, new Cached(future));
+                }
+                fetch(child.key, command, future);
+                if (future.isCompletedExceptionally()) {
+                    ConfigureConstantArea.LOGGER.log(Level.FINE, "Failed to prefetch the directory listing: " + command);
+                }
+            });
+        }
+    }
+
+    private synchronized ThreadPoolExecutor prefetcher() {
+        if (this.prefetcher == null) {
+            // 一个线程依次提前查看，空闲之后线程会自动结束
+            this.prefetcher = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), ThreadUtils.factory("dialogue-prefetch-"));
+            this.prefetcher.allowCoreThreadTimeOut(true);
+        }
+        return this.prefetcher;
+    }
+
+    /**
+     * 与被控通信获取目录列表的函数。
+     */
+    interface Fetcher {
+        DirectoryListing fetch(String command) throws IOException;
+    }
+
+    /**
+     * 缓存中的一个目录列表，还没有得到结果的时候不会过期。
+     */
+    private final static class Cached {
+        private final CompletableFuture<DirectoryListing> future;
+        private volatile long time = Long.MAX_VALUE;
+
+        private Cached(CompletableFuture<DirectoryListing> future) {
+            this.future = future;
+        }
+
+        private boolean isExpired() {
+            return this.time != Long.MAX_VALUE && System.currentTimeMillis() - this.time > ConfigureConstantArea.SEE_DIR_MASTER_CACHE_TTL;
+        }
+    }
+
+    /**
+     * 解析之后的查看目录命令，目录、每页数量与继续标记相同的命令使用同一个缓存。
+     */
+    private final static class Request {
+        private final String key;
+        private final String pageSize;
+        private final String token;
+
+        private Request(String key, String pageSize, String token) {
+            this.key = key;
+            this.pageSize = pageSize;
+            this.token = token;
+        }
+
+        /**
+         * @return 解析之后的命令，不是查看目录的命令(例如查看缓存统计信息)返回 null，这种命令不会被缓存。
+         */
+        private static Request parse(String name, String command) {
+            String[] args = command.trim().split("\\s+");
+            String path = "";
+            String pageSize = null;
+            String token = null;
+            for (int i = 1; i < args.length; i++) {
+                if ("-n".equals(args[i]) && i + 1 < args.length) {
+                    pageSize = args[++i];
+                } else if ("-c".equals(args[i]) && i + 1 < args.length) {
+                    token = args[++i];
+                } else if (args[i].startsWith("-") && !ListingFormat.OPTION.equals(args[i])) {
+                    return null;
+                } else if (path.isEmpty() && !ListingFormat.OPTION.equals(args[i])) {
+                    path = args[i];
+                }
+            }
+            if (path.length() > 1 && (path.endsWith("/") || path.endsWith("\\"))) {
+                path = path.substring(0, path.length() - 1);
+            }
+            return new Request(name + '\n' + path + '\n' + pageSize + '\n' + token, pageSize, token);
+        }
+    }
+}
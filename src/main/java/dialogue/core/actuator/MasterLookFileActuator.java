@@ -2,13 +2,13 @@ package dialogue.core.actuator;
 
 import dialogue.ConfigureConstantArea;
 import dialogue.Session;
+import dialogue.core.channel.CompressedTransfer;
+import dialogue.core.channel.DataChannel;
+import dialogue.core.master.MasterConnection;
 import dialogue.utils.IOUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.util.regex.Matcher;
 
 /**
@@ -20,12 +20,10 @@ import java.util.regex.Matcher;
  */
 public class MasterLookFileActuator implements Actuator {
 
-    protected final ServerSocket fileSocket;
-    protected final OutputStream outputStream;
+    protected final MasterConnection masterConnection;
 
-    public MasterLookFileActuator(ServerSocket fileSocket, OutputStream outputStream) {
-        this.fileSocket = fileSocket;
-        this.outputStream = outputStream;
+    public MasterLookFileActuator(MasterConnection masterConnection) {
+        this.masterConnection = masterConnection;
     }
 
     /**
@@ -70,12 +68,13 @@ public class MasterLookFileActuator implements Actuator {
      */
     @Override
     public String runActuatorCommand(String command, Matcher matcher) throws IOException {
-        outputStream.write(command.getBytes(ConfigureConstantArea.CHARSET));
-        outputStream.flush();
+        int requestId = masterConnection.sendCommand(command);
         ConfigureConstantArea.LOGGER.info("reading....");
         // look 目标文件
-        Socket accept = fileSocket.accept();
-        InputStream inputStream = accept.getInputStream();
+        DataChannel accept = masterConnection.acceptFileChannel(requestId);
+        // 告知被控支持的压缩算法，文本内容通常能够被有效的压缩
+        CompressedTransfer.offer(accept.getOutputStream());
+        InputStream inputStream = CompressedTransfer.receive(accept.getInputStream(), null, null);
         String stringByStream = IOUtils.getStringByStream(inputStream);
         inputStream.close();
         accept.close();
@@ -2,13 +2,22 @@ package dialogue.core.actuator;
 
 import dialogue.ConfigureConstantArea;
 import dialogue.Session;
+import dialogue.core.channel.CompressedTransfer;
+import dialogue.core.channel.DataChannel;
+import dialogue.core.channel.DeltaTransfer;
+import dialogue.core.channel.ResumableTransfer;
+import dialogue.core.channel.StripedTransfer;
+import dialogue.core.channel.TransferChecksum;
+import dialogue.core.master.MasterConnection;
 import dialogue.utils.IOUtils;
 import dialogue.utils.progressEvent.ProgressFileNumber;
 
 import java.io.*;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Matcher;
+import java.util.zip.Checksum;
 
 /**
  * 主控文件发送执行器，该对象中支持向原主机中发送文件数据。
@@ -19,15 +28,11 @@ import java.util.regex.Matcher;
  */
 public class MasterPutFileActuator implements Actuator {
     protected final static String SEND_OK = " File sending completed";
-    private final static String ERROR = "Incorrect syntax! => put [local File Path] [Remote New Path]";
-    protected final ServerSocket fileSocket;
-    protected final OutputStream outputStream;
-    protected final InputStream inputStream;
+    private final static String ERROR = "Incorrect syntax! => put [-d | -p stripes] [local File Path] [Remote New Path]";
+    protected final MasterConnection masterConnection;
 
-    public MasterPutFileActuator(ServerSocket fileSocket, OutputStream outputStream, InputStream inputStream) {
-        this.fileSocket = fileSocket;
-        this.outputStream = outputStream;
-        this.inputStream = inputStream;
+    public MasterPutFileActuator(MasterConnection masterConnection) {
+        this.masterConnection = masterConnection;
     }
 
     /**
@@ -50,6 +55,11 @@ public class MasterPutFileActuator implements Actuator {
         return "put";
     }
 
+    @Override
+    public boolean isTransfer() {
+        return true;
+    }
+
     /**
      * 返回会话当前运行状态，当一个会话没有在运行的时候，该函数将返回false，一个没有运行中的会话将不具备执行命令与回显数据的能力
      * <p>
@@ -77,49 +87,66 @@ public class MasterPutFileActuator implements Actuator {
      */
     @Override
     public String runActuatorCommand(String command, Matcher matcher) {
+        boolean delta = DeltaTransfer.parseOption(matcher);
+        int stripes = delta ? 1 : StripedTransfer.parseStripes(matcher);
         if (matcher.find()) {
             // 首先获取到下一个参数，也就是本地路径
             File localFile = new File(matcher.group(1));
             // 然后获取到下一个参数，也就是新文件路径
             if (matcher.find()) {
                 try {
-                    BufferedInputStream bufferedInputStream = new BufferedInputStream(new FileInputStream(localFile));
+                    FileInputStream fileInputStream = new FileInputStream(localFile);
                     // 提前给对方发送一个数据，告知我们要开始传输数据了
-                    outputStream.write(command.getBytes(ConfigureConstantArea.CHARSET));
+                    int requestId = sendCommand(command);
                     // 开始等待对方发送来的接收请求
-                    Socket fileSendSocket = fileSocket.accept();
+                    DataChannel fileChannel = masterConnection.acceptFileChannel(requestId);
                     // 查看对方是否准备好了接受数据
-                    DataOutputStream dataOutputStream = new DataOutputStream(fileSendSocket.getOutputStream());
-                    DataInputStream dataInputStream = new DataInputStream(fileSendSocket.getInputStream());
+                    DataOutputStream dataOutputStream = new DataOutputStream(fileChannel.getOutputStream());
+                    DataInputStream dataInputStream = new DataInputStream(fileChannel.getInputStream());
                     ConfigureConstantArea.LOGGER.info(dataInputStream.readUTF());
                     ConfigureConstantArea.LOGGER.info("Start sending file....");
                     String res1 = dataInputStream.readUTF();
                     if (ControlledPutFileActuator.OK_2.equals(res1)) {
                         // 开始发送文件数据主体，这里根据配置准备发送进度条对象
-                        {
-                            ProgressFileNumber fileProgress = ConfigureConstantArea.FILE_PROGRESS;
-                            if (fileProgress != null) {
-                                fileProgress.setMaxSize(localFile.length());
-                                fileProgress.function1(0);
-                                byte[] buffer = new byte[ConfigureConstantArea.TCP_BUFFER_MAX_SIZE];
-                                int offset;
-                                while ((offset = (bufferedInputStream.read(buffer))) > 0) {
-                                    fileProgress.function2(offset);
-                                    dataOutputStream.write(buffer, 0, offset);
-                                }
-                                fileProgress.function3(0);
-                            } else {
-                                IOUtils.copy(bufferedInputStream, dataOutputStream, false);
-                            }
+                        FileChannel source = fileInputStream.getChannel();
+                        long size = source.size();
+                        if (delta) {
+                            // 增量模式，被控会发送旧文件的签名，这里只发送不同的部分
+                            long literal = DeltaTransfer.sendDelta(source, size, dataInputStream, dataOutputStream);
+                            ConfigureConstantArea.LOGGER.info("delta: " + literal + " of " + size + " bytes sent as literal data");
+                            fileInputStream.close();
+                            String res = dataInputStream.readUTF();
+                            dataOutputStream.close();
+                            return OK_3.equals(res) ? SEND_OK : res;
+                        }
+                        if (stripes > 1) {
+                            return sendStripes(requestId, fileChannel, dataOutputStream, dataInputStream, fileInputStream, size, stripes);
+                        }
+                        // 被控会告知它已经拥有的数据与支持的压缩算法，校验一致的时候只发送剩余的部分
+                        long position = ResumableTransfer.accept(source, size, dataInputStream);
+                        byte[] offer = CompressedTransfer.readOffer(dataInputStream);
+                        dataOutputStream.writeLong(size);
+                        dataOutputStream.writeLong(position);
+                        dataOutputStream.flush();
+                        ProgressFileNumber fileProgress = ConfigureConstantArea.FILE_PROGRESS;
+                        if (fileProgress != null) {
+                            fileProgress.setMaxSize(size - position);
                         }
+                        // 数据不适合压缩的时候由数据通道直接发送，不经过额外的缓冲区
+                        source.position(position);
+                        Checksum checksum = TransferChecksum.create();
+                        CompressedTransfer.send(source, size - position, offer, fileChannel, fileProgress, checksum);
+                        TransferChecksum.writeTrailer(dataOutputStream, checksum);
                         dataOutputStream.flush();
-                        bufferedInputStream.close();
+                        fileInputStream.close();
+                        // 等待被控确认文件已经完整的写入
+                        String res = dataInputStream.readUTF();
                         dataOutputStream.close();
-                        return " File sending completed";
+                        return OK_3.equals(res) ? SEND_OK : res;
                     } else {
                         // 出现了错误，将错误信息读取出来，然后返回
                         dataOutputStream.flush();
-                        bufferedInputStream.close();
+                        fileInputStream.close();
                         dataOutputStream.close();
                         return res1;
                     }
@@ -130,4 +157,58 @@ public class MasterPutFileActuator implements Actuator {
         }
         return ERROR;
     }
-}
+
+    /**
+     * 分片模式的上传，先告知被控文件大小与实际的分片数量，被控会为每一个分片打开一个数据通道，这里同时发送所有的分片，最后等待被控校验完整性的结果。
+     *
+     * @param requestId        上传命令的请求编号
+     * @param fileChannel      上传命令的主数据通道
+     * @param dataOutputStream 主数据通道的输出流
+     * @param dataInputStream  主数据通道的输入流
+     * @param fileInputStream  本地文件的数据流
+     * @param size             文件的字节数
+     * @param stripes          命令中指定的分片数量
+     * @return 运行之后的结果的字符串形式
+     * @throws IOException 发送分片时发生的异常
+     */
+    private String sendStripes(int requestId, DataChannel fileChannel, DataOutputStream dataOutputStream, DataInputStream dataInputStream,
+                               FileInputStream fileInputStream, long size, int stripes) throws IOException {
+        int count = StripedTransfer.stripeCount(size, stripes);
+        dataOutputStream.writeLong(size);
+        dataOutputStream.writeInt(count);
+        dataOutputStream.flush();
+        List<DataChannel> channels = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                channels.add(masterConnection.acceptFileChannel(requestId));
+            }
+            StripedTransfer.send(fileInputStream.getChannel(), size, channels);
+            // 等待被控确认所有的分片已经完整的写入
+            String res = dataInputStream.readUTF();
+            return OK_3.equals(res) ? SEND_OK : res;
+        } finally {
+            for (DataChannel channel : channels) {
+                IOUtils.close(channel);
+            }
+            IOUtils.close(fileInputStream);
+            IOUtils.close(fileChannel);
+        }
+    }
+
+    /**
+     * 将命令发送给被控，子类可以重写该函数来等待命令的结果。
+     * <p>
+     * Send the command to the controlled end. Subclasses can override this function to wait for the result of the command.
+     *
+     * @param command 需要发送的命令
+     *                <p>
+     *                Command to be sent
+     * @return 命令对应的请求编号
+     * <p>
+     * The request id of the command
+     * @throws IOException 发送数据时发生的异常
+     */
+    protected int sendCommand(String command) throws IOException {
+        return masterConnection.sendCommand(command);
+    }
+}
\ No newline at end of file
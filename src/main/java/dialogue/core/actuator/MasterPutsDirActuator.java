@@ -2,13 +2,19 @@ package dialogue.core.actuator;
 
 import dialogue.ConfigureConstantArea;
 import dialogue.Session;
+import dialogue.core.channel.AckWindow;
+import dialogue.core.channel.ArchiveTransfer;
+import dialogue.core.channel.DataChannel;
+import dialogue.core.channel.TransferChecksum;
+import dialogue.core.channel.ZeroCopyTransfer;
+import dialogue.core.master.MasterConnection;
 import dialogue.utils.IOUtils;
 import dialogue.utils.progressEvent.ProgressFileNumber;
 
 import java.io.*;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.nio.channels.FileChannel;
 import java.util.regex.Matcher;
+import java.util.zip.Checksum;
 
 /**
  * 将主控指定的目录中所有的文件发送到被控的设备中。
@@ -19,13 +25,11 @@ import java.util.regex.Matcher;
  */
 public class MasterPutsDirActuator implements Actuator {
 
-    private final static String ERROR = "Incorrect syntax! => puts [local File Path] [Remote New Path]";
-    protected final ServerSocket fileSocket;
-    protected final OutputStream outputStream;
+    private final static String ERROR = "Incorrect syntax! => puts [-r] [local File Path] [Remote New Path]";
+    protected final MasterConnection masterConnection;
 
-    public MasterPutsDirActuator(ServerSocket fileSocket, OutputStream outputStream) {
-        this.fileSocket = fileSocket;
-        this.outputStream = outputStream;
+    public MasterPutsDirActuator(MasterConnection masterConnection) {
+        this.masterConnection = masterConnection;
     }
 
     /**
@@ -48,6 +52,11 @@ public class MasterPutsDirActuator implements Actuator {
         return "puts";
     }
 
+    @Override
+    public boolean isTransfer() {
+        return true;
+    }
+
     /**
      * 返回会话当前运行状态，当一个会话没有在运行的时候，该函数将返回false，一个没有运行中的会话将不具备执行命令与回显数据的能力
      * <p>
@@ -75,58 +84,71 @@ public class MasterPutsDirActuator implements Actuator {
      */
     @Override
     public String runActuatorCommand(String command, Matcher matcher) throws IOException {
-        // puts [Master dir] [Controlled dir]
+        // puts [-r] [Master dir] [Controlled dir]
+        boolean recursive = ArchiveTransfer.parseOption(matcher);
         if (matcher.find()) {
             // 获取到当前需要获取的文件目录
             File masterDir = new File(matcher.group(1));
+            if (recursive && masterDir.isDirectory()) {
+                return sendArchive(command, masterDir);
+            }
             if (masterDir.exists()) {
                 // 开始获取到此目录下的所有文件
                 File[] files = masterDir.listFiles();
                 if (files != null) {
                     // 给对方发送数据，告知对方要传输文件了
-                    outputStream.write(command.getBytes(ConfigureConstantArea.CHARSET));
-                    outputStream.flush();
+                    int requestId = masterConnection.sendCommand(command);
                     // 接受对方的文件请求
-                    Socket accept = fileSocket.accept();
+                    DataChannel accept = masterConnection.acceptFileChannel(requestId);
                     DataInputStream dataInputStream = new DataInputStream(accept.getInputStream());
-                    DataOutputStream dataOutputStream = new DataOutputStream(accept.getOutputStream());
-                    for (File file : files) {
-                        if (file.isFile()) {
-                            // 等待对方回复是否准备好接收数据，如果对方返回的是ok_2代表可以开始传输文件
-                            String s = dataInputStream.readUTF();
-                            if (OK_2.equals(s)) {
+                    // 文件头与较小的文件会被写入缓冲区中一起发送
+                    DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(accept.getOutputStream(), IOUtils.SMALL_FILE_SIZE));
+                    try {
+                        // 等待对方回复是否准备好接收数据，如果对方返回的是ok_2代表可以开始传输文件
+                        String s = dataInputStream.readUTF();
+                        if (!OK_2.equals(s)) {
+                            // 代表被控发生错误，这里直接将错误信息获取到并返回出去
+                            return s;
+                        }
+                        // 被控每写入一个文件都会回复 ok_2，窗口没有满的时候不需要等待回复就可以发送下一个文件
+                        AckWindow window = new AckWindow(dataInputStream, dataOutputStream, OK_2, ConfigureConstantArea.FILE_WINDOW_SIZE);
+                        ProgressFileNumber fileProgress = ConfigureConstantArea.FILE_PROGRESS;
+                        for (File file : files) {
+                            if (file.isFile()) {
+                                String error = window.acquire();
+                                if (error != null) {
+                                    return error;
+                                }
                                 // 开始发送编码，告知对方还有下一个文件
                                 dataOutputStream.writeUTF(file.getName());
-                                // 开始发送文件数据量
-                                long length = file.length();
-                                dataOutputStream.writeLong(length);
-                                // 打开文件数据流
-                                BufferedInputStream bufferedInputStream = new BufferedInputStream(new FileInputStream(file));
-                                ProgressFileNumber fileProgress = ConfigureConstantArea.FILE_PROGRESS;
-                                if (fileProgress != null) {
-                                    fileProgress.setMaxSize(length);
-                                    System.out.println();
+                                // 打开文件数据流，并发送文件数据量
+                                try (FileInputStream fileInputStream = new FileInputStream(file)) {
+                                    FileChannel source = fileInputStream.getChannel();
+                                    long length = source.size();
+                                    dataOutputStream.writeLong(length);
+                                    if (fileProgress != null && length > IOUtils.SMALL_FILE_SIZE) {
+                                        fileProgress.setMaxSize(length);
+                                        System.out.println();
+                                    }
+                                    // 数据之后是校验尾，不计算校验和的时候较大的文件数据由数据通道直接发送，不经过额外的缓冲区
+                                    Checksum checksum = TransferChecksum.create();
+                                    ZeroCopyTransfer.transfer(source, length, dataOutputStream, accept, fileProgress, checksum);
+                                    TransferChecksum.writeTrailer(dataOutputStream, checksum);
                                 }
-                                IOUtils.copy(length, bufferedInputStream, dataOutputStream, fileProgress);
-                                dataOutputStream.flush();
-                                // 发送完毕后关闭当前文件的数据流
-                                bufferedInputStream.close();
-                            } else {
-                                // 代表被控发生错误，这里直接将错误信息获取到并返回出去
-                                dataOutputStream.close();
-                                dataInputStream.close();
-                                accept.close();
-                                return s;
                             }
                         }
+                        // 等待所有文件的回复，然后告知对方文件传输已经结束
+                        String error = window.drain();
+                        if (error != null) {
+                            return error;
+                        }
+                        dataOutputStream.writeUTF(OK_2);
+                        dataOutputStream.flush();
+                    } finally {
+                        IOUtils.close(dataOutputStream);
+                        IOUtils.close(dataInputStream);
+                        IOUtils.close(accept);
                     }
-                    // 开始发送编码，告知对方，文件传输已经结束
-                    dataInputStream.readUTF();
-                    dataOutputStream.writeUTF(OK_2);
-                    dataOutputStream.flush();
-                    dataOutputStream.close();
-                    dataInputStream.close();
-                    accept.close();
                     return " Sending files in directory completed!!!";
                 } else {
                     return masterDir.getPath() + " is not a directory";
@@ -138,4 +160,32 @@ public class MasterPutsDirActuator implements Actuator {
             return ERROR;
         }
     }
+
+    /**
+     * 递归模式的上传，被控准备好之后将目录中所有的子目录与文件作为一条记录流发送，每一个文件之间不需要等待被控的确认，最后等待被控确认全部写入。
+     *
+     * @param command   需要发送给被控的命令
+     * @param masterDir 需要发送的目录
+     * @return 运行之后的结果的字符串形式
+     * @throws IOException 发送数据时发生的异常
+     */
+    private String sendArchive(String command, File masterDir) throws IOException {
+        int requestId = masterConnection.sendCommand(command);
+        DataChannel accept = masterConnection.acceptFileChannel(requestId);
+        DataInputStream dataInputStream = new DataInputStream(accept.getInputStream());
+        try {
+            // 等待对方回复是否准备好接收数据，如果对方返回的不是ok_2代表发生了错误
+            String s = dataInputStream.readUTF();
+            if (!OK_2.equals(s)) {
+                return s;
+            }
+            long files = ArchiveTransfer.send(masterDir.toPath(), accept, ConfigureConstantArea.FILE_PROGRESS);
+            // 等待被控确认所有的文件已经写入
+            String res = dataInputStream.readUTF();
+            return OK_3.equals(res) ? " Sending files in directory completed!!! (" + files + " files)" : res;
+        } finally {
+            IOUtils.close(dataInputStream);
+            IOUtils.close(accept);
+        }
+    }
 }
@@ -2,13 +2,21 @@ package dialogue.core.actuator;
 
 import dialogue.ConfigureConstantArea;
 import dialogue.Session;
+import dialogue.core.channel.DataChannel;
+import dialogue.core.channel.DeltaTransfer;
+import dialogue.core.channel.TransferChecksum;
+import dialogue.core.channel.ZeroCopyTransfer;
+import dialogue.core.master.MasterConnection;
 import dialogue.utils.IOUtils;
 import dialogue.utils.progressEvent.ProgressFileNumber;
 
 import java.io.*;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Matcher;
+import java.util.zip.Checksum;
 
 /**
  * 传输对方指定目录中不存在的文件数据。
@@ -20,13 +28,11 @@ import java.util.regex.Matcher;
  */
 public class MasterPutsNCActuator implements Actuator {
 
-    private final static String ERROR = "Incorrect syntax! => puts [local File Path] [Remote New Path]";
-    protected final ServerSocket fileSocket;
-    protected final OutputStream outputStream;
+    private final static String ERROR = "Incorrect syntax! => puts-nc [-d] [local File Path] [Remote New Path]";
+    protected final MasterConnection masterConnection;
 
-    public MasterPutsNCActuator(ServerSocket fileSocket, OutputStream outputStream) {
-        this.fileSocket = fileSocket;
-        this.outputStream = outputStream;
+    public MasterPutsNCActuator(MasterConnection masterConnection) {
+        this.masterConnection = masterConnection;
     }
 
     /**
@@ -49,6 +55,11 @@ public class MasterPutsNCActuator implements Actuator {
         return "puts-nc";
     }
 
+    @Override
+    public boolean isTransfer() {
+        return true;
+    }
+
     /**
      * 返回会话当前运行状态，当一个会话没有在运行的时候，该函数将返回false，一个没有运行中的会话将不具备执行命令与回显数据的能力
      * <p>
@@ -76,7 +87,8 @@ public class MasterPutsNCActuator implements Actuator {
      */
     @Override
     public String runActuatorCommand(String command, Matcher matcher) throws IOException {
-        // puts [Master dir] [Controlled dir]
+        // puts-nc [-d] [Master dir] [Controlled dir]
+        boolean delta = DeltaTransfer.parseOption(matcher);
         if (matcher.find()) {
             // 获取到当前需要获取的文件目录
             File masterDir = new File(matcher.group(1));
@@ -85,56 +97,95 @@ public class MasterPutsNCActuator implements Actuator {
                 File[] files = masterDir.listFiles();
                 if (files != null) {
                     // 给对方发送数据，告知对方要传输文件了
-                    outputStream.write(command.getBytes(ConfigureConstantArea.CHARSET));
-                    outputStream.flush();
+                    int requestId = masterConnection.sendCommand(command);
                     // 接受对方的文件请求
-                    Socket accept = fileSocket.accept();
+                    DataChannel accept = masterConnection.acceptFileChannel(requestId);
                     DataInputStream dataInputStream = new DataInputStream(accept.getInputStream());
-                    DataOutputStream dataOutputStream = new DataOutputStream(accept.getOutputStream());
-                    for (File file : files) {
-                        if (file.isFile()) {
-                            // 等待对方回复是否准备好接收数据，如果对方返回的是ok_2代表可以开始传输文件
-                            String s = dataInputStream.readUTF();
-                            if (OK_2.equals(s)) {
-                                // 开始发送编码，告知对方还有下一个文件
+                    // 文件名称、文件头与较小的文件会被写入缓冲区中一起发送
+                    DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(accept.getOutputStream(), IOUtils.SMALL_FILE_SIZE));
+                    try {
+                        // 等待对方回复是否准备好接收数据，如果对方返回的是ok_2代表可以开始传输文件
+                        String s = dataInputStream.readUTF();
+                        if (!OK_2.equals(s)) {
+                            // 代表被控发生错误，这里直接将错误信息获取到并返回出去
+                            return s;
+                        }
+                        // 每一批最多发送窗口大小个文件名称，被控一次性回复这些文件是否需要接收，每一批只需要等待一次回复
+                        ProgressFileNumber fileProgress = ConfigureConstantArea.FILE_PROGRESS;
+                        List<File> batch = new ArrayList<>(ConfigureConstantArea.FILE_WINDOW_SIZE);
+                        boolean acked = true;
+                        int index = 0;
+                        while (true) {
+                            batch.clear();
+                            while (index < files.length && batch.size() < ConfigureConstantArea.FILE_WINDOW_SIZE) {
+                                File file = files[index++];
+                                if (file.isFile()) {
+                                    batch.add(file);
+                                }
+                            }
+                            // 发送本批次的文件名称，数量为 0 代表文件传输已经结束
+                            dataOutputStream.writeInt(batch.size());
+                            for (File file : batch) {
+                                dataOutputStream.writeUTF(file.getName());
+                            }
+                            dataOutputStream.flush();
+                            if (!acked) {
+                                // 被控会在回复之前确认上一批文件已经全部写入
+                                String reply = dataInputStream.readUTF();
+                                if (!OK_2.equals(reply)) {
+                                    return reply;
+                                }
+                            }
+                            if (batch.isEmpty()) {
+                                break;
+                            }
+                            String[] replies = new String[batch.size()];
+                            for (int i = 0; i < replies.length; i++) {
+                                replies[i] = dataInputStream.readUTF();
+                                if (!OK_2.equals(replies[i]) && !AE_1.equals(replies[i]) && !DL_1.equals(replies[i])) {
+                                    return replies[i];
+                                }
+                            }
+                            for (int i = 0; i < replies.length; i++) {
+                                File file = batch.get(i);
                                 String name = file.getName();
-                                dataOutputStream.writeUTF(name);
-                                // 等待对方回复文件是否需要接受
-                                if (dataInputStream.readUTF().equals(AE_1)) {
+                                if (replies[i].equals(AE_1)) {
                                     // 如果不需要就直接跳过
                                     ConfigureConstantArea.LOGGER.info(name + " continue!!!");
                                     continue;
                                 }
-                                // 开始发送文件数据量
-                                long length = file.length();
-                                dataOutputStream.writeLong(length);
-                                // 打开文件数据流
-                                BufferedInputStream bufferedInputStream = new BufferedInputStream(new FileInputStream(file));
-                                ProgressFileNumber fileProgress = ConfigureConstantArea.FILE_PROGRESS;
-                                if (fileProgress != null) {
-                                    fileProgress.setMaxSize(length);
-                                    System.out.println();
+                                try (FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                                    long length = source.size();
+                                    if (replies[i].equals(DL_1)) {
+                                        // 对方已经有旧版本的文件，只发送不同的部分，被控会在签名之前再次发送状态
+                                        dataOutputStream.flush();
+                                        String status = dataInputStream.readUTF();
+                                        if (!DL_1.equals(status)) {
+                                            return status;
+                                        }
+                                        long literal = DeltaTransfer.sendDelta(source, length, dataInputStream, dataOutputStream);
+                                        ConfigureConstantArea.LOGGER.info(name + " delta: " + literal + " of " + length + " bytes sent as literal data");
+                                        continue;
+                                    }
+                                    // 开始发送文件数据量
+                                    dataOutputStream.writeLong(length);
+                                    if (fileProgress != null && length > IOUtils.SMALL_FILE_SIZE) {
+                                        fileProgress.setMaxSize(length);
+                                        System.out.println();
+                                    }
+                                    // 数据之后是校验尾，不计算校验和的时候较大的文件数据由数据通道直接发送，不经过额外的缓冲区
+                                    Checksum checksum = TransferChecksum.create();
+                                    ZeroCopyTransfer.transfer(source, length, dataOutputStream, accept, fileProgress, checksum);
+                                    TransferChecksum.writeTrailer(dataOutputStream, checksum);
                                 }
-                                IOUtils.copy(length, bufferedInputStream, dataOutputStream, fileProgress);
-                                dataOutputStream.flush();
-                                // 发送完毕后关闭当前文件的数据流
-                                bufferedInputStream.close();
-                            } else {
-                                // 代表被控发生错误，这里直接将错误信息获取到并返回出去
-                                dataOutputStream.close();
-                                dataInputStream.close();
-                                accept.close();
-                                return s;
                             }
+                            acked = false;
                         }
+                    } finally {
+                        IOUtils.close(dataOutputStream);
+                        IOUtils.close(dataInputStream);
+                        IOUtils.close(accept);
                     }
-                    // 开始发送编码，告知对方，文件传输已经结束
-                    dataInputStream.readUTF();
-                    dataOutputStream.writeUTF(OK_2);
-                    dataOutputStream.flush();
-                    dataOutputStream.close();
-                    dataInputStream.close();
-                    accept.close();
                     return " Sending files in directory completed!!!";
                 } else {
                     return masterDir.getPath() + " is not a directory";
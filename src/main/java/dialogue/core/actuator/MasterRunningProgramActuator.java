@@ -1,13 +1,12 @@
 package dialogue.core.actuator;
 
 import dialogue.ConfigureConstantArea;
+import dialogue.core.master.MasterConnection;
 import dialogue.utils.StrUtils;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.ServerSocket;
+import java.util.concurrent.CompletableFuture;
 import java.util.regex.Matcher;
 
 import static dialogue.Session.COMMAND_PATTERN;
@@ -34,8 +33,10 @@ public class MasterRunningProgramActuator extends MasterPutFileActuator {
             "\t[filePath]   : 需要被远程运行的程序文件。\n" +
             "\t[Parameters] : 运行程序时需要传递给程序的参数\n";
 
-    public MasterRunningProgramActuator(ServerSocket fileSocket, OutputStream outputStream, InputStream inputStream) {
-        super(fileSocket, outputStream, inputStream);
+    private CompletableFuture<String> result;
+
+    public MasterRunningProgramActuator(MasterConnection masterConnection) {
+        super(masterConnection);
     }
 
     /**
@@ -92,9 +93,8 @@ public class MasterRunningProgramActuator extends MasterPutFileActuator {
                     // 接收程序运行结果
                     try {
                         ConfigureConstantArea.LOGGER.info(START_RUNNING);
-                        byte[] buffer = new byte[ConfigureConstantArea.TCP_BUFFER_MAX_SIZE];
-                        return new String(buffer, 0, inputStream.read(buffer));
-                    } catch (IOException e) {
+                        return MasterConnection.await(this.result);
+                    } catch (RuntimeException e) {
                         return e.toString();
                     }
                 } else {
@@ -106,6 +106,17 @@ public class MasterRunningProgramActuator extends MasterPutFileActuator {
         }
     }
 
+    /**
+     * 发送命令的同时登记结果，程序在被控中运行结束之后，运行结果会通过它返回。
+     * <p>
+     * Register the result while sending the command. After the program finishes running in the controlled end, the running result is returned through it.
+     */
+    @Override
+    protected int sendCommand(String command) throws IOException {
+        this.result = new CompletableFuture<>();
+        return masterConnection.sendCommand(command, this.result);
+    }
+
     private String getCommand(String command, String name) {
         // 首先将命令中的参数进行重组
         char c = ' ';
@@ -0,0 +1,129 @@
+package dialogue.core.actuator;
+
+import dialogue.ConfigureConstantArea;
+import dialogue.Session;
+import dialogue.core.channel.DataChannel;
+import dialogue.core.master.MasterConnection;
+import dialogue.utils.BufferPool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.regex.Matcher;
+
+/**
+ * 主控端的文本搜索执行器，被控会在本地查找文件中匹配的行，这里只接收匹配的行，不需要传输整个文件。
+ * <p>
+ * Text search actuator of the master. The controlled end looks for matching lines in its files locally, and only the matching lines are received here without transferring whole files.
+ * <p>
+ * 命令格式：search [-F] [-i] [-m 最多匹配行数] 内容 [文件或目录]，结果中的每一行为 [文件:行号:内容]。
+ * <p>
+ * Command format: search [-F] [-i] [-m max matching lines] pattern [file or directory], every line of the result is [file:line number:content].
+ *
+ * @author 赵凌宇
+ */
+public class MasterSearchActuator implements Actuator {
+
+    protected final MasterConnection masterConnection;
+
+    public MasterSearchActuator(MasterConnection masterConnection) {
+        this.masterConnection = masterConnection;
+    }
+
+    /**
+     * @return 能够调用该执行器的会话对象编号。
+     * <p>
+     * The number of the session object that can call the executor.
+     */
+    @Override
+    public int getType() {
+        return Session.MASTER_FILE_SESSION;
+    }
+
+    /**
+     * @return 该执行器的名称，一般是该执行器能够解析的命令标识。
+     * <p>
+     * The name of the executor is generally the command ID that the executor can resolve.
+     */
+    @Override
+    public String getName() {
+        return "search";
+    }
+
+    /**
+     * 返回会话当前运行状态，当一个会话没有在运行的时候，该函数将返回false，一个没有运行中的会话将不具备执行命令与回显数据的能力
+     * <p>
+     * Returns the current running state of the session. When a session is not running, this function will return false. A session that is not running will not have the ability to execute commands and echo data
+     *
+     * @return 如果返回true，代表当前会话正在运行中
+     * <p>
+     * If true is returned, the current session is running
+     */
+    @Override
+    public boolean isRunning() {
+        return ActuatorManager.containMasterActuator(this.getName());
+    }
+
+    /**
+     * @param command 需要执行的命令参数
+     *                <p>
+     *                Command parameters to be executed
+     * @param matcher 命令匹配器，通过该匹配器获取到命令中的所需参数
+     *                <p>
+     *                Command matcher, through which the required parameters in the command can be obtained
+     * @return 运行之后的结果的字符串形式
+     * <p>
+     * String form of the result after running
+     * @throws IOException 异常抛出主要为当运行执行器的过程中，出现了无法提供给对方的异常信息时，异常将会被抛出。
+     *                     <p>
+     *                     Exception throwing is mainly used to throw exceptions when there is exception information that cannot be provided to the other party during the execution.
+     */
+    @Override
+    public String runActuatorCommand(String command, Matcher matcher) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        search(command, byteArrayOutputStream);
+        return byteArrayOutputStream.toString(ConfigureConstantArea.CHARSET);
+    }
+
+    /**
+     * 执行一个搜索命令，被控发送来的结果会在到达的时候立刻写入数据流，不需要等待搜索结束。
+     * <p>
+     * Run a search command. The results sent by the controlled end are written into the stream as soon as they arrive, without waiting for the search to finish.
+     * <p>
+     * 写入数据流时抛出异常会关闭与被控之间的文件数据流，被控会在写出下一批结果时停止搜索，可以通过这种方式取消搜索。
+     * <p>
+     * Throwing an exception while writing into the stream closes the file data stream to the controlled end, and the controlled end stops searching when it writes the next batch of results. A search can be cancelled this way.
+     *
+     * @param command      搜索命令
+     *                     <p>
+     *                     The search command
+     * @param outputStream 结果需要写入的数据流
+     *                     <p>
+     *                     Stream the results are written into
+     * @return 接收到的结果字节数量
+     * <p>
+     * Number of bytes of the results received
+     * @throws IOException 与被控通信或者写入数据流时发生的异常
+     */
+    public long search(String command, OutputStream outputStream) throws IOException {
+        int requestId = masterConnection.sendCommand(command);
+        DataChannel accept = masterConnection.acceptFileChannel(requestId);
+        InputStream inputStream = accept.getInputStream();
+        byte[] buffer = BufferPool.acquire(ConfigureConstantArea.TCP_BUFFER_MAX_SIZE);
+        long received = 0;
+        try {
+            int offset;
+            while ((offset = inputStream.read(buffer)) > 0) {
+                outputStream.write(buffer, 0, offset);
+                outputStream.flush();
+                received += offset;
+            }
+            return received;
+        } finally {
+            BufferPool.release(buffer);
+            inputStream.close();
+            accept.close();
+        }
+    }
+}
@@ -2,13 +2,13 @@ package dialogue.core.actuator;
 
 import dialogue.ConfigureConstantArea;
 import dialogue.Session;
-import dialogue.utils.IOUtils;
+import dialogue.core.channel.DataChannel;
+import dialogue.core.master.MasterConnection;
+import dialogue.core.result.DirectoryListing;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.util.regex.Matcher;
 
 /**
@@ -18,12 +18,11 @@ import java.util.regex.Matcher;
  */
 public class MasterSeeDirActuator implements Actuator {
 
-    protected final ServerSocket fileSocket;
-    protected final OutputStream outputStream;
+    protected final MasterConnection masterConnection;
+    private final MasterListingCache listingCache = new MasterListingCache(this::fetch);
 
-    public MasterSeeDirActuator(ServerSocket fileSocket, OutputStream outputStream) {
-        this.fileSocket = fileSocket;
-        this.outputStream = outputStream;
+    public MasterSeeDirActuator(MasterConnection masterConnection) {
+        this.masterConnection = masterConnection;
     }
 
     /**
@@ -76,15 +75,47 @@ public class MasterSeeDirActuator implements Actuator {
      */
     @Override
     public String runActuatorCommand(String command, Matcher matcher) throws IOException {
-        // 给对方发送数据
-        outputStream.write(command.getBytes(ConfigureConstantArea.CHARSET));
-        outputStream.flush();
+        return ListingFormat.render(listDirectory(command), getName());
+    }
+
+    /**
+     * 查看被控中的一个目录，被控会以二进制格式返回目录列表，这里将其解码为可以直接使用的结果对象。
+     * <p>
+     * View a directory of the controlled end. The controlled end returns the listing in the binary format, which is decoded here into a result object that can be used directly.
+     *
+     * @param command 查看目录的命令，例如 see-dir /home -n 1000
+     *                <p>
+     *                Command viewing a directory, for example see-dir /home -n 1000
+     * @return 目录列表，被控无法读取目录时结果不成功，错误信息可以通过 {@link DirectoryListing#getError()} 获取
+     * <p>
+     * The directory listing. When the controlled end cannot read the directory the result is not successful and the error message is available from {@link DirectoryListing#getError()}
+     * @throws IOException 与被控通信时发生的异常
+     */
+    public DirectoryListing listDirectory(String command) throws IOException {
+        // 启用主控缓存的时候，重复查看或者已经提前查看过的目录直接使用本地的结果
+        return this.listingCache.get(getName(), command);
+    }
+
+    /**
+     * 清空主控端缓存的目录列表，被控中的文件可能发生变化的时候调用。
+     * <p>
+     * Clear the directory listings cached by the master, called when the files of the controlled end may have changed.
+     */
+    public void clearCache() {
+        this.listingCache.clear();
+    }
+
+    private DirectoryListing fetch(String command) throws IOException {
+        // 给对方发送数据，要求对方使用二进制格式
+        int requestId = masterConnection.sendCommand(command + ' ' + ListingFormat.OPTION);
         // 等待对方回复数据
-        Socket accept = fileSocket.accept();
-        InputStream inputStream = accept.getInputStream();
-        String stringByStream = IOUtils.getStringByStream(inputStream);
-        inputStream.close();
-        accept.close();
-        return stringByStream;
+        DataChannel accept = masterConnection.acceptFileChannel(requestId);
+        InputStream inputStream = new BufferedInputStream(accept.getInputStream(), ConfigureConstantArea.TCP_BUFFER_MAX_SIZE);
+        try {
+            return ListingFormat.read(inputStream);
+        } finally {
+            inputStream.close();
+            accept.close();
+        }
     }
 }
@@ -1,15 +1,14 @@
 package dialogue.core.actuator;
 
-import java.io.OutputStream;
-import java.net.ServerSocket;
+import dialogue.core.master.MasterConnection;
 
 /**
  * @author zhao
  */
 public class MasterSeeDirNameActuator extends MasterSeeDirActuator {
 
-    public MasterSeeDirNameActuator(ServerSocket fileSocket, OutputStream outputStream) {
-        super(fileSocket, outputStream);
+    public MasterSeeDirNameActuator(MasterConnection masterConnection) {
+        super(masterConnection);
     }
 
     /**
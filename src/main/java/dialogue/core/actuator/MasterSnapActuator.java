@@ -1,13 +1,12 @@
 package dialogue.core.actuator;
 
-import dialogue.ConfigureConstantArea;
 import dialogue.Session;
+import dialogue.core.channel.DataChannel;
+import dialogue.core.master.MasterConnection;
 import zhao.algorithmMagic.exception.OperatorOperationException;
 import zhao.algorithmMagic.operands.matrix.ColorMatrix;
 
 import java.io.*;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.util.regex.Matcher;
 
 /**
@@ -17,14 +16,10 @@ import java.util.regex.Matcher;
  */
 public class MasterSnapActuator implements Actuator {
 
-    protected final ServerSocket fileSocket;
-    protected final OutputStream outputStream;
-    protected final InputStream inputStream;
+    protected final MasterConnection masterConnection;
 
-    public MasterSnapActuator(ServerSocket fileSocket, OutputStream outputStream, InputStream inputStream) {
-        this.fileSocket = fileSocket;
-        this.outputStream = outputStream;
-        this.inputStream = inputStream;
+    public MasterSnapActuator(MasterConnection masterConnection) {
+        this.masterConnection = masterConnection;
     }
 
     /**
@@ -89,9 +84,9 @@ public class MasterSnapActuator implements Actuator {
             }
 
             // 其它情况代表被控端 可以开始执行命令了 将命令发送给被控
-            outputStream.write(command.getBytes(ConfigureConstantArea.CHARSET));
+            int requestId = masterConnection.sendCommand(command);
             // 接受对方的文件请求
-            Socket accept = fileSocket.accept();
+            DataChannel accept = masterConnection.acceptFileChannel(requestId);
             // 启动数据流 接收来自被控的数据 这里应该是 AS 库的序列化数据
             final ObjectInputStream objectInputStream = new ObjectInputStream(accept.getInputStream());
             try {
@@ -108,9 +103,9 @@ public class MasterSnapActuator implements Actuator {
         } else {
             // 代表命令后面没有其它参数 因此在这里还是反序列化 但是不进行保存，而是直接展示
             // 其它情况代表被控端 可以开始执行命令了 将命令发送给被控
-            outputStream.write(command.getBytes(ConfigureConstantArea.CHARSET));
+            int requestId = masterConnection.sendCommand(command);
             // 接受对方的文件请求
-            Socket accept = fileSocket.accept();
+            DataChannel accept = masterConnection.acceptFileChannel(requestId);
             // 启动数据流 接收来自被控的数据 这里应该是 AS 库的序列化数据
             final ObjectInputStream objectInputStream = new ObjectInputStream(accept.getInputStream());
             try {
@@ -119,6 +114,8 @@ public class MasterSnapActuator implements Actuator {
                 return "ok!!!!";
             } catch (ClassNotFoundException | OperatorOperationException e) {
                 return e.toString();
+            } finally {
+                accept.close();
             }
         }
     }
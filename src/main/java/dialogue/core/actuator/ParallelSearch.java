@@ -0,0 +1,420 @@
+package dialogue.core.actuator;
+
+import dialogue.ConfigureConstantArea;
+import dialogue.utils.BufferPool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 并行文本搜索，通过 fork/join 并行的遍历目录，在文件中查找匹配的行，并将 [文件:行号:内容] 形式的结果写入数据流。
+ * <p>
+ * Parallel text search. It walks directories in parallel through fork/join, looks for matching lines in the files, and writes the results into the stream as [file:line number:content].
+ * <p>
+ * 较小的文件会被读取到缓冲区中，较大的文件会被分段映射到内存中，每一段都在换行处结束。
+ * 字面量模式直接在文件的字节上匹配，不需要解码；正则表达式模式会先按照配置中的字符集解码。
+ * 匹配的行数达到上限或者结果无法写出(例如主控关闭了数据流)的时候，所有的搜索任务都会尽快结束。
+ * <p>
+ * Smaller files are read into a buffer, larger files are mapped into memory window by window, and every window ends at a line break.
+ * Literal patterns are matched directly on the bytes of the file without decoding, regular expression patterns are decoded with the charset of the configuration first.
+ * When the number of matching lines reaches the limit or the results cannot be written (for example the master closed the stream), all search tasks finish as soon as possible.
+ *
+ * @author 赵凌宇
+ */
+final class ParallelSearch {
+
+    /**
+     * 结果中一行最多显示的字节数量，超出的部分会被省略。
+     */
+    private final static int MAX_LINE_LENGTH = 1024;
+    /**
+     * 每一次读取或者映射的字节数量，超出这个大小的文件会被分段映射到内存中。
+     */
+    private final static int WINDOW_SIZE = 4 << 20;
+    /**
+     * 检查文件开头的这些字节中是否有 0，用于识别二进制文件。
+     */
+    private final static int BINARY_PROBE = 8192;
+    /**
+     * 一个文件的结果超过这个字节数量时先写出一部分。
+     */
+    private final static int FLUSH_SIZE = 64 << 10;
+    private final static byte[] ELLIPSIS = "...".getBytes(StandardCharsets.US_ASCII);
+    private final static ThreadLocal<CharBuffer> CHARS = new ThreadLocal<>();
+    private static ForkJoinPool pool;
+
+    private final Pattern pattern;
+    private final boolean byteView;
+    private final Charset charset;
+    private final int maxMatches;
+    private final OutputStream outputStream;
+    private final AtomicInteger matches = new AtomicInteger();
+    private final AtomicInteger files = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+    private volatile boolean stopped = false;
+    private volatile IOException writeError;
+
+    /**
+     * @param pattern      需要查找的内容
+     * @param literal      如果为true，代表 pattern 是字面量，否则是正则表达式
+     * @param ignoreCase   是否忽略 ASCII 字母的大小写
+     * @param maxMatches   最多返回的匹配行数
+     * @param outputStream 结果需要写入的数据流
+     */
+    ParallelSearch(String pattern, boolean literal, boolean ignoreCase, int maxMatches, OutputStream outputStream) {
+        this.charset = ConfigureConstantArea.getCharset();
+        // 换行符与 ASCII 字符在这些字符集中不会出现在多字节字符的中间，字面量可以直接按照字节匹配
+        this.byteView = literal && (StandardCharsets.UTF_8.equals(this.charset) || StandardCharsets.US_ASCII.equals(this.charset) || StandardCharsets.ISO_8859_1.equals(this.charset));
+        int flags = Pattern.MULTILINE | (ignoreCase ? Pattern.CASE_INSENSITIVE : 0);
+        if (this.byteView) {
+            // 每一个字节都被看作一个字符，字面量也需要转换为同样形式的字符串
+            this.pattern = Pattern.compile(Pattern.quote(new String(pattern.getBytes(this.charset), StandardCharsets.ISO_8859_1)), flags);
+        } else {
+            this.pattern = Pattern.compile(literal ? Pattern.quote(pattern) : pattern, flags);
+        }
+        this.maxMatches = maxMatches;
+        this.outputStream = outputStream;
+    }
+
+    /**
+     * 取消搜索，可以在其它线程中调用，所有的搜索任务都会尽快结束。
+     */
+    void cancel() {
+        this.stopped = true;
+    }
+
+    private static synchronized ForkJoinPool pool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(ConfigureConstantArea.SEARCH_PARALLELISM);
+        }
+        return pool;
+    }
+
+    /**
+     * 在一个文件或者目录中查找，目录中的符号链接不会被跟随。
+     *
+     * @param root 需要查找的文件或者目录
+     * @throws IOException 结果无法写出时抛出的异常
+     */
+    void run(Path root) throws IOException {
+        pool().invoke(new SearchTask(root, true));
+        if (this.writeError != null) {
+            throw this.writeError;
+        }
+    }
+
+    /**
+     * @return 匹配的行数，不会超过上限。
+     */
+    int getMatches() {
+        return Math.min(this.matches.get(), this.maxMatches);
+    }
+
+    /**
+     * @return 如果返回true，代表匹配的行数达到了上限，后面的结果被省略了。
+     */
+    boolean isLimited() {
+        return this.matches.get() > this.maxMatches;
+    }
+
+    int getFiles() {
+        return this.files.get();
+    }
+
+    int getErrors() {
+        return this.errors.get();
+    }
+
+    private void searchFile(Path path) {
+        this.files.incrementAndGet();
+        byte[] prefix = (path.toString() + ':').getBytes(this.charset);
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] heap = null;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            long line = 1;
+            if (size <= WINDOW_SIZE) {
+                // 按照 2 的幂次取整，使得大小相近的文件可以复用缓冲池中的同一种数组
+                heap = BufferPool.acquire(Math.max(64 << 10, Integer.highestOneBit((int) Math.max(1, size - 1)) << 1));
+            }
+            while (position < size && line > 0 && !this.stopped) {
+                ByteBuffer window;
+                if (heap != null) {
+                    window = ByteBuffer.wrap(heap, 0, (int) size);
+                    while (window.hasRemaining() && channel.read(window, window.position()) > 0) {
+                        // 读取整个小文件，文件在读取期间变小的时候读取到末尾或者没有进展就停止
+                    }
+                    window.flip();
+                    // 只搜索真正读取到的数据，使得这一段就是最后一段
+                    size = window.limit();
+                } else {
+                    window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, size - position));
+                }
+                boolean last = position + window.limit() >= size;
+                int end = window.limit();
+                if (!last) {
+                    // 在最后一个换行处结束，剩下的半行从下一段的开头读取
+                    while (end > 0 && window.get(end - 1) != '\n') {
+                        end--;
+                    }
+                    if (end == 0) {
+                        end = window.limit();
+                    }
+                }
+                boolean binary = position == 0 && isBinary(window);
+                line = searchWindow(window, end, line, binary, prefix, result);
+                position += end;
+            }
+            writeResult(result);
+        } catch (IOException | RuntimeException e) {
+            // 无法读取的文件只记录数量，不影响其它文件
+            this.errors.incrementAndGet();
+        } catch (InternalError e) {
+            if (heap != null) {
+                throw e;
+            }
+            // 文件在映射之后被截断，访问超出文件末尾的映射内存时 JVM 会将 SIGBUS 转换为 InternalError，已经找到的结果依旧写出
+            writeResult(result);
+            this.errors.incrementAndGet();
+        } finally {
+            if (heap != null) {
+                BufferPool.release(heap);
+            }
+        }
+    }
+
+    private static boolean isBinary(ByteBuffer window) {
+        for (int i = 0, end = Math.min(window.limit(), BINARY_PROBE); i < end; i++) {
+            if (window.get(i) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 在一段数据中查找匹配的行。
+     *
+     * @return 下一段数据第一行的行号，二进制文件匹配之后返回 -1，代表不需要再查找这个文件
+     */
+    private long searchWindow(ByteBuffer window, int end, long line, boolean binary, byte[] prefix, ByteArrayOutputStream result) throws IOException {
+        CharSequence text;
+        if (this.byteView) {
+            text = new ByteChars(window, 0, end);
+        } else {
+            text = decode(window, end);
+        }
+        int length = text.length();
+        Matcher matcher = this.pattern.matcher(text);
+        int counted = 0;
+        int lineStart = 0;
+        int from = 0;
+        while (from <= length && !this.stopped && matcher.find(from)) {
+            int start = matcher.start();
+            if (start == length && length > 0 && text.charAt(length - 1) == '\n') {
+                // 最后一个换行之后没有内容，不算作新的一行
+                break;
+            }
+            for (; counted < start; counted++) {
+                if (text.charAt(counted) == '\n') {
+                    line++;
+                    lineStart = counted + 1;
+                }
+            }
+            if (binary) {
+                if (count()) {
+                    result.write(prefix);
+                    result.write(" binary file matches\n".getBytes(this.charset));
+                }
+                return -1;
+            }
+            int lineEnd = start;
+            while (lineEnd < length && text.charAt(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            if (!count()) {
+                break;
+            }
+            result.write(prefix);
+            result.write((line + ":").getBytes(this.charset));
+            writeLine(text, window, lineStart, lineEnd, result);
+            if (result.size() >= FLUSH_SIZE) {
+                writeResult(result);
+            }
+            from = lineEnd + 1;
+        }
+        for (; counted < length; counted++) {
+            if (text.charAt(counted) == '\n') {
+                line++;
+            }
+        }
+        return line;
+    }
+
+    private void writeLine(CharSequence text, ByteBuffer window, int start, int end, ByteArrayOutputStream result) {
+        if (end > start && text.charAt(end - 1) == '\r') {
+            end--;
+        }
+        if (this.byteView) {
+            // 直接写出文件中的原始字节
+            int length = Math.min(end - start, MAX_LINE_LENGTH);
+            for (int i = 0; i < length; i++) {
+                result.write(window.get(start + i));
+            }
+            if (end - start > MAX_LINE_LENGTH) {
+                result.write(ELLIPSIS, 0, ELLIPSIS.length);
+            }
+        } else {
+            boolean truncated = end - start > MAX_LINE_LENGTH;
+            byte[] bytes = text.subSequence(start, truncated ? start + MAX_LINE_LENGTH : end).toString().getBytes(this.charset);
+            result.write(bytes, 0, bytes.length);
+            if (truncated) {
+                result.write(ELLIPSIS, 0, ELLIPSIS.length);
+            }
+        }
+        result.write('\n');
+    }
+
+    private CharSequence decode(ByteBuffer window, int end) {
+        CharBuffer chars = CHARS.get();
+        if (chars == null || chars.capacity() < end) {
+            // 解码之后的字符数量不会超过字节数量，缓冲区只在需要的时候扩大
+            chars = CharBuffer.allocate(Math.max(end, 64 << 10));
+            CHARS.set(chars);
+        }
+        chars.clear();
+        CharsetDecoder decoder = this.charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer input = window.duplicate();
+        input.position(0).limit(end);
+        decoder.decode(input, chars, true);
+        decoder.flush(chars);
+        chars.flip();
+        return chars;
+    }
+
+    /**
+     * 记录一个匹配的行。
+     *
+     * @return 如果返回false，代表匹配的行数已经达到上限，这一行不应该再写出
+     */
+    private boolean count() {
+        if (this.matches.incrementAndGet() > this.maxMatches) {
+            this.stopped = true;
+            return false;
+        }
+        return true;
+    }
+
+    private void writeResult(ByteArrayOutputStream result) {
+        if (result.size() == 0) {
+            return;
+        }
+        try {
+            synchronized (this.outputStream) {
+                result.writeTo(this.outputStream);
+            }
+        } catch (IOException e) {
+            // 结果无法写出，通常是主控已经不再需要结果了
+            this.writeError = e;
+            this.stopped = true;
+        }
+        result.reset();
+    }
+
+    /**
+     * 搜索一个文件或者目录的任务，目录中的每一个文件都会成为一个子任务。
+     */
+    private final class SearchTask extends RecursiveAction {
+        private final static long serialVersionUID = 1L;
+        private final transient Path path;
+        private final boolean root;
+
+        private SearchTask(Path path, boolean root) {
+            this.path = path;
+            this.root = root;
+        }
+
+        @Override
+        protected void compute() {
+            if (stopped) {
+                return;
+            }
+            BasicFileAttributes attributes;
+            try {
+                attributes = this.root ? Files.readAttributes(this.path, BasicFileAttributes.class) : Files.readAttributes(this.path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException e) {
+                errors.incrementAndGet();
+                return;
+            }
+            if (attributes.isRegularFile()) {
+                searchFile(this.path);
+            } else if (attributes.isDirectory()) {
+                ArrayList<SearchTask> tasks = new ArrayList<>();
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.path)) {
+                    for (Path child : stream) {
+                        tasks.add(new SearchTask(child, false));
+                    }
+                } catch (IOException | DirectoryIteratorException e) {
+                    errors.incrementAndGet();
+                }
+                invokeAll(tasks);
+            }
+        }
+    }
+
+    /**
+     * 将字节数据看作字符的只读视图，每一个字节都是一个字符，不需要解码。
+     */
+    private final static class ByteChars implements CharSequence {
+        private final ByteBuffer buffer;
+        private final int offset;
+        private final int length;
+
+        private ByteChars(ByteBuffer buffer, int offset, int length) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return this.length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (this.buffer.get(this.offset + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new ByteChars(this.buffer, this.offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            byte[] bytes = new byte[this.length];
+            for (int i = 0; i < this.length; i++) {
+                bytes[i] = this.buffer.get(this.offset + i);
+            }
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
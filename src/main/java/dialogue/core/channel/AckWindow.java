@@ -0,0 +1,97 @@
+package dialogue.core.channel;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 多文件传输的确认窗口，发送方最多可以在没有收到确认的情况下连续发送窗口大小个文件，窗口满的时候才会等待对方的确认。
+ * <p>
+ * Acknowledgement window of multi-file transfers. The sender may send up to the window size of files in a row without receiving an acknowledgement, and only waits for the peer's acknowledgement when the window is full.
+ * <p>
+ * 接收方每写入一个文件就会回复一个确认，确认之外的回复代表接收方发生了错误，它会被返回给调用者。
+ * <p>
+ * The receiver replies one acknowledgement for every file it has written. Any reply other than the acknowledgement means the receiver failed, and it is returned to the caller.
+ *
+ * @author 赵凌宇
+ */
+public final class AckWindow {
+
+    private final DataInputStream inputStream;
+    private final OutputStream outputStream;
+    private final String ack;
+    private final int size;
+    private int pending = 0;
+
+    /**
+     * @param inputStream  读取确认的数据流
+     *                     <p>
+     *                     Stream the acknowledgements are read from
+     * @param outputStream 发送文件的数据流，等待确认之前会被刷新，避免对方因为数据还在缓冲区中而无法确认
+     *                     <p>
+     *                     Stream the files are sent through. It is flushed before waiting, so the peer is never waiting for data left in the buffer
+     * @param ack          代表确认的回复
+     *                     <p>
+     *                     The reply that stands for an acknowledgement
+     * @param size         窗口大小，1 代表每一个文件都需要等待确认
+     *                     <p>
+     *                     The window size, 1 means every file waits for its acknowledgement
+     */
+    public AckWindow(DataInputStream inputStream, OutputStream outputStream, String ack, int size) {
+        this.inputStream = inputStream;
+        this.outputStream = outputStream;
+        this.ack = ack;
+        this.size = Math.max(1, size);
+    }
+
+    /**
+     * 在发送一个文件之前调用，窗口已满的时候等待最早的一个确认。
+     * <p>
+     * Called before sending a file. Waits for the earliest acknowledgement when the window is full.
+     *
+     * @return 如果返回 null 代表可以发送，否则返回的是接收方发送的错误信息
+     * <p>
+     * Null means the file can be sent, otherwise the error sent by the receiver is returned
+     * @throws IOException 读取确认时发生的异常
+     */
+    public String acquire() throws IOException {
+        if (this.pending >= this.size) {
+            String reply = take();
+            if (reply != null) {
+                return reply;
+            }
+        }
+        this.pending++;
+        return null;
+    }
+
+    /**
+     * 等待所有已经发送的文件的确认，在发送结束标识之前调用。
+     * <p>
+     * Wait for the acknowledgements of all files sent, called before sending the end mark.
+     *
+     * @return 如果返回 null 代表所有文件都已经被接收方写入，否则返回的是接收方发送的错误信息
+     * <p>
+     * Null means all files have been written by the receiver, otherwise the error sent by the receiver is returned
+     * @throws IOException 读取确认时发生的异常
+     */
+    public String drain() throws IOException {
+        while (this.pending > 0) {
+            String reply = take();
+            if (reply != null) {
+                return reply;
+            }
+        }
+        return null;
+    }
+
+    private String take() throws IOException {
+        this.outputStream.flush();
+        String reply = this.inputStream.readUTF();
+        if (!this.ack.equals(reply)) {
+            return reply;
+        }
+        this.pending--;
+        return null;
+    }
+}
@@ -0,0 +1,270 @@
+package dialogue.core.channel;
+
+import dialogue.ConfigureConstantArea;
+import dialogue.utils.BufferPool;
+import dialogue.utils.IOUtils;
+import dialogue.utils.progressEvent.ProgressFileNumber;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.regex.Matcher;
+import java.util.zip.Checksum;
+
+/**
+ * 归档传输工具类，将整个目录树作为一条连续的记录流发送，接收方边接收边还原，每一个文件之间不需要任何确认。
+ * <p>
+ * Archive transfer utility. The whole directory tree is sent as one continuous record stream and the receiver restores it on the fly, without any acknowledgement between files.
+ * <p>
+ * 记录格式：目录 [1][相对路径]，文件 [2][相对路径][文件大小][文件数据][校验尾]，错误 [3][错误信息]，结束 [0]，相对路径始终使用 '/' 分隔。
+ * 发送方通过 {@link Files#walkFileTree} 逐个访问目录中的条目，不会在内存中保存整个目录树，因此可以处理包含大量文件的目录。
+ * <p>
+ * Record format: directory [1][relative path], file [2][relative path][file size][file data][checksum trailer], error [3][message], end [0]. Relative paths always use '/' as the separator.
+ * The sender visits the entries of the directory one by one through {@link Files#walkFileTree} and never keeps the whole tree in memory, so directories with a huge number of files can be handled.
+ *
+ * @author 赵凌宇
+ */
+public final class ArchiveTransfer {
+
+    /**
+     * 命令中启用递归归档传输的选项，例如 gets -r [Remote Dir Path] [local Dir Path]。
+     * <p>
+     * The option that enables recursive archive transfer in a command, for example gets -r [Remote Dir Path] [local Dir Path].
+     */
+    public final static String OPTION = "-r";
+
+    private final static byte RECORD_END = 0;
+    private final static byte RECORD_DIRECTORY = 1;
+    private final static byte RECORD_FILE = 2;
+    private final static byte RECORD_ERROR = 3;
+
+    private ArchiveTransfer() {
+    }
+
+    /**
+     * 从命令中解析递归选项，如果下一个参数是 {@link #OPTION}，它会被消耗，否则匹配器的位置不会改变。
+     * <p>
+     * Parse the recursive option from the command. If the next argument is {@link #OPTION}, it is consumed, otherwise the position of the matcher is unchanged.
+     *
+     * @param matcher 已经匹配过命令名称的命令匹配器
+     *                <p>
+     *                Command matcher that has already matched the command name
+     * @return 如果返回true，代表命令中启用了递归归档传输
+     * <p>
+     * If true is returned, recursive archive transfer is enabled in the command
+     */
+    public static boolean parseOption(Matcher matcher) {
+        int start = matcher.start();
+        if (matcher.find() && OPTION.equals(matcher.group(1))) {
+            return true;
+        }
+        // 不是递归选项，重新匹配上一个参数，使得下一次匹配依旧从这个参数开始
+        matcher.region(start, matcher.regionEnd());
+        matcher.find();
+        return false;
+    }
+
+    /**
+     * 由发送方调用，将目录中的所有子目录与文件作为记录流发送到数据通道中，无法读取的条目会被跳过并记录警告。
+     * <p>
+     * Called by the sender to send all subdirectories and files of the directory to the data channel as a record stream. Entries that cannot be read are skipped with a warning.
+     *
+     * @param root         需要发送的目录
+     *                     <p>
+     *                     Directory to send
+     * @param dataChannel  目标数据通道
+     *                     <p>
+     *                     Target data channel
+     * @param fileProgress 文件传输进度条对象，只有由数据通道直接发送的较大文件会展示进度，如果为 null 代表不展示进度
+     *                     <p>
+     *                     File transfer progress object, only the larger files sent directly by the data channel show progress. Null means no progress is shown
+     * @return 发送的文件数量
+     * <p>
+     * The number of files sent
+     * @throws IOException 发送数据时发生的异常
+     */
+    public static long send(Path root, DataChannel dataChannel, ProgressFileNumber fileProgress) throws IOException {
+        DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(dataChannel.getOutputStream(), IOUtils.SMALL_FILE_SIZE));
+        long[] files = new long[1];
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!dir.equals(root)) {
+                    outputStream.writeByte(RECORD_DIRECTORY);
+                    outputStream.writeUTF(relativize(root, dir));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (!attrs.isRegularFile()) {
+                    return FileVisitResult.CONTINUE;
+                }
+                FileChannel source;
+                try {
+                    source = FileChannel.open(file, StandardOpenOption.READ);
+                } catch (IOException e) {
+                    ConfigureConstantArea.LOGGER.warning(e.toString());
+                    return FileVisitResult.CONTINUE;
+                }
+                try {
+                    long size = source.size();
+                    outputStream.writeByte(RECORD_FILE);
+                    outputStream.writeUTF(relativize(root, file));
+                    outputStream.writeLong(size);
+                    if (fileProgress != null && size > IOUtils.SMALL_FILE_SIZE) {
+                        fileProgress.setMaxSize(size);
+                    }
+                    // 小文件与相邻的记录一起发送
+                    Checksum checksum = TransferChecksum.create();
+                    long sent = ZeroCopyTransfer.transfer(source, size, outputStream, dataChannel, fileProgress, checksum);
+                    if (sent != size) {
+                        // 记录中已经声明了文件大小，无法继续发送后续的记录
+                        throw new EOFException(file + " became shorter while sending, " + sent + " of " + size + " bytes.");
+                    }
+                    TransferChecksum.writeTrailer(outputStream, checksum);
+                } finally {
+                    IOUtils.close(source);
+                }
+                files[0]++;
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                ConfigureConstantArea.LOGGER.warning(exc.toString());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        outputStream.writeByte(RECORD_END);
+        outputStream.flush();
+        return files[0];
+    }
+
+    /**
+     * 由发送方调用，在记录流中发送一个错误，接收方会在读取到它的时候抛出包含错误信息的异常。
+     * <p>
+     * Called by the sender to send an error in the record stream. The receiver throws an exception with the message when it reads it.
+     *
+     * @param outputStream 数据通道的输出流
+     *                     <p>
+     *                     Output stream of the data channel
+     * @param message      错误信息
+     *                     <p>
+     *                     Error message
+     * @throws IOException 发送数据时发生的异常
+     */
+    public static void sendError(DataOutputStream outputStream, String message) throws IOException {
+        outputStream.writeByte(RECORD_ERROR);
+        outputStream.writeUTF(message);
+        outputStream.flush();
+    }
+
+    /**
+     * 由接收方调用，读取记录流并在目录中还原所有的子目录与文件，已经存在的文件会被覆盖。
+     * <p>
+     * Called by the receiver to read the record stream and restore all subdirectories and files in the directory. Existing files are overwritten.
+     *
+     * @param root         还原到的目录
+     *                     <p>
+     *                     Directory to restore into
+     * @param inputStream  数据通道的输入流
+     *                     <p>
+     *                     Input stream of the data channel
+     * @param fileProgress 文件传输进度条对象，只有较大的文件会展示进度，如果为 null 代表不展示进度
+     *                     <p>
+     *                     File transfer progress object, only the larger files show progress. Null means no progress is shown
+     * @return 接收的文件数量
+     * <p>
+     * The number of files received
+     * @throws IOException 接收数据、写入文件、记录中的路径不合法或者发送方发送了错误时发生的异常
+     */
+    public static long receive(Path root, DataInputStream inputStream, ProgressFileNumber fileProgress) throws IOException {
+        Path base = root.toAbsolutePath().normalize();
+        byte[] buffer = BufferPool.acquire(IOUtils.SMALL_FILE_SIZE);
+        try {
+            return receive(base, inputStream, buffer, fileProgress);
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
+    private static long receive(Path base, DataInputStream inputStream, byte[] buffer, ProgressFileNumber fileProgress) throws IOException {
+        long files = 0;
+        while (true) {
+            byte type = inputStream.readByte();
+            switch (type) {
+                case RECORD_END:
+                    return files;
+                case RECORD_DIRECTORY:
+                    Files.createDirectories(resolve(base, inputStream.readUTF()));
+                    break;
+                case RECORD_FILE:
+                    Path path = resolve(base, inputStream.readUTF());
+                    long size = inputStream.readLong();
+                    ProgressFileNumber progress = size > IOUtils.SMALL_FILE_SIZE ? fileProgress : null;
+                    Checksum checksum = TransferChecksum.create();
+                    if (progress != null) {
+                        progress.setMaxSize(size);
+                        progress.function1(0);
+                    }
+                    try (OutputStream outputStream = new FileOutputStream(path.toFile())) {
+                        long remaining = size;
+                        while (remaining > 0) {
+                            int n = inputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                            if (n < 0) {
+                                throw new EOFException(path + " was interrupted, " + (size - remaining) + " of " + size + " bytes received.");
+                            }
+                            outputStream.write(buffer, 0, n);
+                            if (checksum != null) {
+                                checksum.update(buffer, 0, n);
+                            }
+                            remaining -= n;
+                            if (progress != null) {
+                                progress.function2(n);
+                            }
+                        }
+                    }
+                    TransferChecksum.verify(inputStream, checksum, path.toFile());
+                    if (progress != null) {
+                        progress.function3(0);
+                    }
+                    files++;
+                    break;
+                case RECORD_ERROR:
+                    throw new IOException(inputStream.readUTF());
+                default:
+                    throw new IOException("Illegal archive record: " + type);
+            }
+        }
+    }
+
+    private static String relativize(Path root, Path path) {
+        String name = root.relativize(path).toString();
+        return File.separatorChar == '/' ? name : name.replace(File.separatorChar, '/');
+    }
+
+    /**
+     * 解析记录中的相对路径，路径不能是绝对路径，也不能通过 ".." 离开还原的目录。
+     */
+    private static Path resolve(Path base, String name) throws IOException {
+        Path path = base.resolve(name).normalize();
+        if (name.startsWith("/") || !path.startsWith(base) || path.equals(base)) {
+            throw new IOException("Illegal path in archive: " + name);
+        }
+        return path;
+    }
+}
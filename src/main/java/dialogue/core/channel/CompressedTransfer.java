@@ -0,0 +1,291 @@
+package dialogue.core.channel;
+
+import dialogue.ConfigureConstantArea;
+import dialogue.core.codec.ChunkedInputStream;
+import dialogue.core.codec.ChunkedOutputStream;
+import dialogue.core.codec.Codec;
+import dialogue.core.codec.CodecManager;
+import dialogue.utils.IOUtils;
+import dialogue.utils.progressEvent.ProgressFileNumber;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.zip.Checksum;
+
+/**
+ * 压缩传输工具类，接收方在数据通道建立之后提供自己支持的压缩算法，发送方在发送每一段文件数据之前选择算法并告知接收方。
+ * <p>
+ * Compressed transfer utility. The receiver offers the codecs it supports after the data channel is established, and the sender picks a codec and tells the receiver before sending each piece of file data.
+ * <p>
+ * 协商过程：接收方发送算法数量(1字节)与算法编号(每个1字节)；发送方在数据之前发送选中的算法编号(1字节)，0 代表原始数据，原始数据依旧可以由内核直接发送，
+ * 压缩数据则以 {@link ChunkedOutputStream} 的分块形式发送。
+ * <p>
+ * Negotiation: the receiver sends the number of codecs (1 byte) and the codec ids (1 byte each). The sender sends the id of the picked codec (1 byte) before the data. 0 stands for raw data, which can still be sent directly by the kernel,
+ * while compressed data is sent in the chunks of {@link ChunkedOutputStream}.
+ *
+ * @author 赵凌宇
+ */
+public final class CompressedTransfer {
+
+    private final static int CHUNK_SIZE = 64 * 1024;
+
+    private CompressedTransfer() {
+    }
+
+    /**
+     * 由接收方调用，将本地启用的压缩算法提供给发送方。
+     * <p>
+     * Called by the receiver to offer the locally enabled codecs to the sender.
+     *
+     * @param outputStream 数据通道的输出流
+     *                     <p>
+     *                     Output stream of the data channel
+     * @throws IOException 发送数据时发生的异常
+     */
+    public static void offer(OutputStream outputStream) throws IOException {
+        byte[] ids = CodecManager.getOffer();
+        byte[] bytes = new byte[ids.length + 1];
+        bytes[0] = (byte) ids.length;
+        System.arraycopy(ids, 0, bytes, 1, ids.length);
+        outputStream.write(bytes);
+        outputStream.flush();
+    }
+
+    /**
+     * 由发送方调用，读取接收方提供的压缩算法。
+     * <p>
+     * Called by the sender to read the codecs offered by the receiver.
+     *
+     * @param inputStream 数据通道的输入流
+     *                    <p>
+     *                    Input stream of the data channel
+     * @return 接收方提供的压缩算法编号
+     * <p>
+     * Codec ids offered by the receiver
+     * @throws IOException 接收数据时发生的异常
+     */
+    public static byte[] readOffer(InputStream inputStream) throws IOException {
+        DataInputStream dataInputStream = new DataInputStream(inputStream);
+        byte[] ids = new byte[dataInputStream.readUnsignedByte()];
+        dataInputStream.readFully(ids);
+        return ids;
+    }
+
+    /**
+     * 由发送方调用，将文件通道中从当前位置开始的指定数据量发送到数据通道中，数据开头的采样压缩效果不明显的时候会发送原始数据。
+     * <p>
+     * Called by the sender to send the given amount of data from the current position of the file channel to the data channel. Raw data is sent if a sample from the beginning of the data does not compress well.
+     *
+     * @param source       源文件通道，发送完毕之后它的位置会移动到发送数据的末尾
+     *                     <p>
+     *                     Source file channel, its position is moved to the end of the sent data afterwards
+     * @param count        需要发送的字节数量
+     *                     <p>
+     *                     The number of bytes to send
+     * @param offer        接收方提供的压缩算法编号
+     *                     <p>
+     *                     Codec ids offered by the receiver
+     * @param dataChannel  目标数据通道，调用之前通过它的输出流写入的数据需要已经被刷新
+     *                     <p>
+     *                     Target data channel, data written through its output stream before the call must have been flushed
+     * @param fileProgress 文件传输进度条对象，如果为 null 代表不展示进度
+     *                     <p>
+     *                     File transfer progress object, null means no progress is shown
+     * @param checksum     发送时同步计算的校验和对象，校验尾由调用者在数据之后写入，为 null 代表不计算校验和
+     *                     <p>
+     *                     Checksum object updated while sending. The trailer is written after the data by the caller, null means no checksum is computed
+     * @return 实际写入数据通道的字节数量
+     * <p>
+     * The number of bytes actually written to the data channel
+     * @throws IOException 读取文件或发送数据时发生的异常
+     */
+    public static long send(FileChannel source, long count, byte[] offer, DataChannel dataChannel, ProgressFileNumber fileProgress, Checksum checksum) throws IOException {
+        OutputStream outputStream = dataChannel.getOutputStream();
+        long sent = send(source, count, offer, outputStream, dataChannel, fileProgress, checksum);
+        outputStream.flush();
+        return sent;
+    }
+
+    /**
+     * 由发送方调用，与 {@link #send(FileChannel, long, byte[], DataChannel, ProgressFileNumber, Checksum)} 相同，但是算法编号、较小的原始数据与压缩数据会被写入指定的缓冲流中，
+     * 使得多个较小的文件可以一起发送，缓冲流由调用者刷新。
+     * <p>
+     * Called by the sender. The same as {@link #send(FileChannel, long, byte[], DataChannel, ProgressFileNumber, Checksum)}, but the codec id, small raw data and compressed data are written into the given buffered stream,
+     * so several small files can be sent together. The buffered stream is flushed by the caller.
+     *
+     * @param source       源文件通道，发送完毕之后它的位置会移动到发送数据的末尾
+     *                     <p>
+     *                     Source file channel, its position is moved to the end of the sent data afterwards
+     * @param count        需要发送的字节数量
+     *                     <p>
+     *                     The number of bytes to send
+     * @param offer        接收方提供的压缩算法编号
+     *                     <p>
+     *                     Codec ids offered by the receiver
+     * @param outputStream 数据通道输出流之上的缓冲流
+     *                     <p>
+     *                     Buffered stream on top of the output stream of the data channel
+     * @param dataChannel  目标数据通道，较大的原始数据由它直接发送
+     *                     <p>
+     *                     Target data channel, larger raw data is sent directly by it
+     * @param fileProgress 文件传输进度条对象，如果为 null 代表不展示进度
+     *                     <p>
+     *                     File transfer progress object, null means no progress is shown
+     * @param checksum     发送时同步计算的校验和对象，校验尾由调用者在数据之后写入，为 null 代表不计算校验和
+     *                     <p>
+     *                     Checksum object updated while sending. The trailer is written after the data by the caller, null means no checksum is computed
+     * @return 实际写入的字节数量
+     * <p>
+     * The number of bytes actually written
+     * @throws IOException 读取文件或发送数据时发生的异常
+     */
+    public static long send(FileChannel source, long count, byte[] offer, OutputStream outputStream, DataChannel dataChannel, ProgressFileNumber fileProgress, Checksum checksum) throws IOException {
+        long position = source.position();
+        Codec codec = CodecManager.choose(offer, source, position, count);
+        if (codec == null) {
+            outputStream.write(CodecManager.RAW);
+            return ZeroCopyTransfer.transfer(source, count, outputStream, dataChannel, fileProgress, checksum);
+        }
+        outputStream.write(codec.getId());
+        long start = System.nanoTime();
+        ChunkedOutputStream chunkedOutputStream = new ChunkedOutputStream(outputStream, CHUNK_SIZE);
+        long sent;
+        if (fileProgress != null) {
+            fileProgress.function1(0);
+        }
+        try (OutputStream compressed = codec.compress(chunkedOutputStream)) {
+            // 较大的文件由磁盘线程提前读取，当前线程只负责压缩与发送
+            sent = PipelinedTransfer.send(source, position, count, compressed, fileProgress, checksum);
+            if (sent < count) {
+                throw new EOFException("The file became shorter while sending, " + sent + " of " + count + " bytes.");
+            }
+        }
+        source.position(position + sent);
+        if (fileProgress != null) {
+            fileProgress.function3(0);
+            fileProgress.compression(codec.getName(), sent, chunkedOutputStream.getWritten(), System.nanoTime() - start);
+        }
+        return chunkedOutputStream.getWritten();
+    }
+
+    /**
+     * 由接收方调用，读取发送方选择的压缩算法，并返回一个读取原始数据的数据流。
+     * <p>
+     * Called by the receiver to read the codec picked by the sender and return a stream that reads the raw data.
+     *
+     * @param inputStream  数据通道的输入流
+     *                     <p>
+     *                     Input stream of the data channel
+     * @param fileProgress 文件传输进度条对象，压缩传输结束之后会通过它展示压缩率，如果为 null 代表不展示
+     *                     <p>
+     *                     File transfer progress object, the compression ratio is shown through it after a compressed transfer. Null means nothing is shown
+     * @param checksum     接收时同步计算的校验和对象，校验尾由调用者在关闭数据流之后读取，为 null 代表不计算校验和
+     *                     <p>
+     *                     Checksum object updated while receiving. The trailer is read by the caller after closing the stream, null means no checksum is computed
+     * @return 读取原始数据的数据流，关闭它不会关闭数据通道，但会读取到压缩数据的结尾，使得数据通道可以继续用于后续的数据
+     * <p>
+     * Stream that reads the raw data. Closing it does not close the data channel but reads to the end of the compressed data, so the data channel can be used for the data that follows
+     * @throws IOException 接收数据或者算法不被支持时发生的异常
+     */
+    public static InputStream receive(InputStream inputStream, ProgressFileNumber fileProgress, Checksum checksum) throws IOException {
+        int id = inputStream.read();
+        if (id < 0) {
+            throw new EOFException("The data channel was closed before the codec was chosen.");
+        }
+        if (id == CodecManager.RAW) {
+            return new FilterInputStream(inputStream) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b >= 0 && checksum != null) {
+                        checksum.update(b);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n = super.read(b, off, len);
+                    if (n > 0 && checksum != null) {
+                        checksum.update(b, off, n);
+                    }
+                    return n;
+                }
+
+                @Override
+                public long skip(long n) throws IOException {
+                    // 跳过的数据也需要计算校验和
+                    byte[] buffer = new byte[(int) Math.min(n, 8192)];
+                    int read = read(buffer, 0, buffer.length);
+                    return Math.max(read, 0);
+                }
+
+                @Override
+                public void close() {
+                    // 原始数据没有结尾标识，数据通道由调用者关闭
+                }
+            };
+        }
+        Codec codec = CodecManager.getCodec((byte) id);
+        if (codec == null) {
+            throw new IOException("The sender chose a codec that is not registered: " + id);
+        }
+        ChunkedInputStream chunkedInputStream = new ChunkedInputStream(inputStream, CHUNK_SIZE);
+        long start = System.nanoTime();
+        return new FilterInputStream(codec.decompress(chunkedInputStream)) {
+            private long raw = 0;
+            private boolean closed = false;
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    this.raw++;
+                    if (checksum != null) {
+                        checksum.update(b);
+                    }
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    this.raw += n;
+                    if (checksum != null) {
+                        checksum.update(b, off, n);
+                    }
+                }
+                return n;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                // 跳过的数据也需要计算校验和
+                byte[] buffer = new byte[(int) Math.min(n, 8192)];
+                int read = read(buffer, 0, buffer.length);
+                return Math.max(read, 0);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (this.closed) {
+                    return;
+                }
+                this.closed = true;
+                // 解压数据流会关闭分块数据流，分块数据流只会读取到结束块，不会关闭数据通道
+                super.close();
+                ConfigureConstantArea.LOGGER.info(codec.getName() + ": " + this.raw + " bytes received as " + chunkedInputStream.getRead());
+                if (fileProgress != null) {
+                    fileProgress.compression(codec.getName(), this.raw, chunkedInputStream.getRead(), System.nanoTime() - start);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,65 @@
+package dialogue.core.channel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+
+/**
+ * 数据通道接口，文件执行器与持久会话通过它传输数据，它可以是一个独立的套接字，也可以是多路复用连接中的一个逻辑数据流。
+ * <p>
+ * Data channel interface, through which file actuators and persistent sessions transfer data. It can be an independent socket or a logical stream in a multiplexed connection.
+ *
+ * @author 赵凌宇
+ */
+public interface DataChannel extends Closeable {
+
+    /**
+     * @return 从通道中读取数据的输入流。
+     * <p>
+     * The input stream that reads data from the channel.
+     * @throws IOException 获取数据流时发生的异常
+     */
+    InputStream getInputStream() throws IOException;
+
+    /**
+     * @return 向通道中写入数据的输出流。
+     * <p>
+     * The output stream that writes data into the channel.
+     * @throws IOException 获取数据流时发生的异常
+     */
+    OutputStream getOutputStream() throws IOException;
+
+    /**
+     * @return 如果返回true，代表当前通道没有被本端关闭。
+     * <p>
+     * If true is returned, the channel has not been closed by this end.
+     */
+    boolean isOpen();
+
+    /**
+     * 将文件中的一段数据发送到通道中，实现类会尽可能的避免在用户空间中复制数据，套接字通道会使用 {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)} 直接由内核发送。
+     * <p>
+     * Send a range of a file into the channel. Implementations avoid copying the data in user space as far as possible, socket channels use {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)} to let the kernel send it directly.
+     * <p>
+     * 调用之前通过输出流写入的数据需要已经被刷新。
+     * <p>
+     * Data written through the output stream before the call must already be flushed.
+     *
+     * @param source   数据来源的文件通道
+     *                 <p>
+     *                 File channel of the data source
+     * @param position 数据在文件中的起始位置
+     *                 <p>
+     *                 The start position of the data in the file
+     * @param count    需要发送的字节数量
+     *                 <p>
+     *                 The number of bytes to send
+     * @return 实际发送的字节数量，只有文件提前结束的时候才会小于 count
+     * <p>
+     * The number of bytes actually sent, which is less than count only when the file ends early
+     * @throws IOException 读取文件或发送数据时发生的异常
+     */
+    long transferFrom(FileChannel source, long position, long count) throws IOException;
+}
@@ -0,0 +1,28 @@
+package dialogue.core.channel;
+
+import java.io.IOException;
+
+/**
+ * 数据通道接收器，主控通过它等待被控为某一个命令打开的数据通道。
+ * <p>
+ * Data channel acceptor, through which the master waits for the data channel opened by the controlled end for a command.
+ *
+ * @author 赵凌宇
+ */
+public interface DataChannelAcceptor {
+
+    /**
+     * 等待并接收被控为指定请求打开的数据通道。
+     * <p>
+     * Wait for and accept the data channel opened by the controlled end for the specified request.
+     *
+     * @param requestId 打开数据通道的命令对应的请求编号
+     *                  <p>
+     *                  The request id of the command that opens the data channel
+     * @return 被控打开的数据通道
+     * <p>
+     * The data channel opened by the controlled end
+     * @throws IOException 等待过程中连接被关闭或被控返回了错误时抛出的异常
+     */
+    DataChannel accept(int requestId) throws IOException;
+}
@@ -0,0 +1,454 @@
+package dialogue.core.channel;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.stream.IntStream;
+
+/**
+ * 增量传输工具类，接收方已经拥有旧版本文件的时候，只需要传输新文件中与旧文件不同的部分。
+ * <p>
+ * Delta transfer utility. When the receiver already has an old version of the file, only the parts of the new file that differ from the old file need to be transferred.
+ * <p>
+ * 接收方将旧文件切分成固定大小的块，并发送每一个块的滚动校验和与 MD5 签名；发送方在新文件中逐字节的滑动窗口，通过滚动校验和快速查找可能相同的块，
+ * 再通过 MD5 确认，最终只发送块引用与无法匹配的原始数据，接收方根据这些指令与旧文件重建出新文件，并通过整个文件的 MD5 校验结果。
+ * <p>
+ * The receiver splits the old file into blocks of a fixed size and sends the rolling checksum and MD5 signature of each block. The sender slides a window over the new file byte by byte, quickly finds blocks that may be the same through the rolling checksum,
+ * confirms them with MD5, and finally only sends block references and the literal data that cannot be matched. The receiver rebuilds the new file from these instructions and the old file, and verifies the result with the MD5 of the whole file.
+ *
+ * @author 赵凌宇
+ */
+public final class DeltaTransfer {
+
+    /**
+     * 命令中启用增量传输的选项，例如 put -d [local File Path] [Remote New Path]。
+     * <p>
+     * The option that enables delta transfer in a command, for example put -d [local File Path] [Remote New Path].
+     */
+    public final static String OPTION = "-d";
+    /**
+     * 块大小的下限与上限，实际的块大小约为旧文件大小的平方根。
+     * <p>
+     * Lower and upper bounds of the block size, the actual block size is about the square root of the old file size.
+     */
+    public final static int MIN_BLOCK_SIZE = 1024;
+    public final static int MAX_BLOCK_SIZE = 128 * 1024;
+
+    private final static byte OP_END = 0;
+    private final static byte OP_COPY = 1;
+    private final static byte OP_LITERAL = 2;
+    private final static int STRONG_SIZE = 16;
+    private final static int SIGNATURE_SIZE = 4 + STRONG_SIZE;
+    private final static int MAX_LITERAL = 64 * 1024;
+    private final static int WINDOW_SIZE = 1 << 20;
+
+    private DeltaTransfer() {
+    }
+
+    /**
+     * 从命令中解析增量传输选项，如果下一个参数是 {@link #OPTION}，它会被消耗，否则匹配器的位置不会改变。
+     * <p>
+     * Parse the delta option from the command. If the next argument is {@link #OPTION}, it is consumed, otherwise the position of the matcher is unchanged.
+     *
+     * @param matcher 已经匹配过命令名称的命令匹配器
+     *                <p>
+     *                Command matcher that has already matched the command name
+     * @return 如果返回true，代表命令中启用了增量传输
+     * <p>
+     * If true is returned, delta transfer is enabled in the command
+     */
+    public static boolean parseOption(Matcher matcher) {
+        int start = matcher.start();
+        if (matcher.find() && OPTION.equals(matcher.group(1))) {
+            return true;
+        }
+        // 不是增量选项，重新匹配上一个参数，使得下一次匹配依旧从这个参数开始
+        matcher.region(start, matcher.regionEnd());
+        matcher.find();
+        return false;
+    }
+
+    /**
+     * 由接收方调用，计算旧文件中每一个块的签名并发送给发送方，多个块的签名会被并行的计算。
+     * <p>
+     * Called by the receiver to compute the signature of every block of the old file and send them to the sender. The signatures of several blocks are computed in parallel.
+     *
+     * @param basis        旧文件的文件通道，如果为 null 代表接收方没有旧文件
+     *                     <p>
+     *                     File channel of the old file, null means the receiver has no old file
+     * @param outputStream 发送签名的数据流
+     *                     <p>
+     *                     Stream the signatures are sent through
+     * @throws IOException 读取文件或发送数据时发生的异常
+     */
+    public static void sendSignature(FileChannel basis, OutputStream outputStream) throws IOException {
+        long length = basis == null ? 0 : basis.size();
+        int blockSize = blockSize(length);
+        long blocks = length / blockSize;
+        if (blocks > Integer.MAX_VALUE / SIGNATURE_SIZE) {
+            throw new IOException("The file is too large for delta transfer: " + length);
+        }
+        int count = (int) blocks;
+        byte[] signatures = new byte[count * SIGNATURE_SIZE];
+        int segments = Math.max(1, Math.min(count, Runtime.getRuntime().availableProcessors()));
+        try {
+            // 每一个线程负责一段连续的块，各自使用独立的缓冲区与摘要对象
+            IntStream.range(0, segments).parallel().forEach(segment -> {
+                int from = (int) ((long) count * segment / segments);
+                int to = (int) ((long) count * (segment + 1) / segments);
+                byte[] buffer = new byte[blockSize];
+                MessageDigest md5 = md5();
+                try {
+                    for (int block = from; block < to; block++) {
+                        readFully(basis, (long) block * blockSize, buffer, blockSize);
+                        int offset = block * SIGNATURE_SIZE;
+                        int weak = weakChecksum(buffer, 0, blockSize);
+                        signatures[offset] = (byte) (weak >>> 24);
+                        signatures[offset + 1] = (byte) (weak >>> 16);
+                        signatures[offset + 2] = (byte) (weak >>> 8);
+                        signatures[offset + 3] = (byte) weak;
+                        md5.update(buffer, 0, blockSize);
+                        md5.digest(signatures, offset + 4, STRONG_SIZE);
+                    }
+                } catch (IOException | DigestException e) {
+                    throw new UncheckedIOException(e instanceof IOException ? (IOException) e : new IOException(e));
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(outputStream, MAX_LITERAL));
+        dataOutputStream.writeInt(blockSize);
+        dataOutputStream.writeInt(count);
+        dataOutputStream.write(signatures);
+        dataOutputStream.flush();
+    }
+
+    /**
+     * 由发送方调用，读取接收方的签名，并发送新文件相对于旧文件的增量指令，最后发送整个新文件的 MD5。
+     * <p>
+     * Called by the sender to read the signatures of the receiver, send the delta instructions of the new file relative to the old file, and finally send the MD5 of the whole new file.
+     *
+     * @param source       新文件的文件通道
+     *                     <p>
+     *                     File channel of the new file
+     * @param size         新文件的字节数
+     *                     <p>
+     *                     Number of bytes in the new file
+     * @param inputStream  接收签名的数据流
+     *                     <p>
+     *                     Stream the signatures are received from
+     * @param outputStream 发送增量指令的数据流
+     *                     <p>
+     *                     Stream the delta instructions are sent through
+     * @return 作为原始数据发送的字节数量，其余的字节都是通过块引用传输的
+     * <p>
+     * The number of bytes sent as literal data, the rest of the bytes are transferred through block references
+     * @throws IOException 读取文件或传输数据时发生的异常
+     */
+    public static long sendDelta(FileChannel source, long size, InputStream inputStream, OutputStream outputStream) throws IOException {
+        DataInputStream dataInputStream = new DataInputStream(inputStream);
+        int blockSize = dataInputStream.readInt();
+        int count = dataInputStream.readInt();
+        if (blockSize < MIN_BLOCK_SIZE || blockSize > MAX_BLOCK_SIZE || count < 0 || count > Integer.MAX_VALUE / SIGNATURE_SIZE) {
+            throw new IOException("Malformed delta signature: blockSize=" + blockSize + ", count=" + count);
+        }
+        byte[] signatures = new byte[count * SIGNATURE_SIZE];
+        dataInputStream.readFully(signatures);
+        Encoder encoder = new Encoder(new DataOutputStream(new BufferedOutputStream(outputStream, MAX_LITERAL)));
+        encoder.out.writeInt(blockSize);
+        // 以弱校验和为键的链式哈希表，值是块的编号
+        int tableSize = Integer.highestOneBit(Math.max(16, count * 2 - 1)) << 1;
+        int shift = 32 - Integer.numberOfTrailingZeros(tableSize);
+        int[] heads = new int[tableSize];
+        int[] next = new int[count];
+        int[] weaks = new int[count];
+        Arrays.fill(heads, -1);
+        for (int block = count - 1; block >= 0; block--) {
+            int offset = block * SIGNATURE_SIZE;
+            weaks[block] = (signatures[offset] & 0xff) << 24 | (signatures[offset + 1] & 0xff) << 16 | (signatures[offset + 2] & 0xff) << 8 | signatures[offset + 3] & 0xff;
+            int bucket = (weaks[block] * 0x9E3779B1) >>> shift;
+            next[block] = heads[bucket];
+            heads[bucket] = block;
+        }
+        MessageDigest fileDigest = md5();
+        MessageDigest blockDigest = md5();
+        byte[] strong = new byte[STRONG_SIZE];
+        byte[] buffer = new byte[Math.max(blockSize * 2, WINDOW_SIZE)];
+        // buffer 中 [literal, start) 是等待发送的原始数据，[start, start + blockSize) 是当前的窗口，[start, end) 是已经读取的数据
+        int start = 0, end = 0, literal = 0;
+        long read = 0;
+        int a = 0, b = 0;
+        boolean rolling = false;
+        while (true) {
+            if (end - start <= blockSize && read < size) {
+                // 窗口之后的数据不足，发送等待中的原始数据之后将剩余数据移动到缓冲区开头，并继续读取文件
+                encoder.literal(buffer, literal, start);
+                end -= start;
+                System.arraycopy(buffer, start, buffer, 0, end);
+                start = literal = 0;
+                while (end < buffer.length && read < size) {
+                    int n = source.read(ByteBuffer.wrap(buffer, end, (int) Math.min(buffer.length - end, size - read)), read);
+                    if (n < 0) {
+                        throw new EOFException("The file became shorter while sending, " + read + " of " + size + " bytes.");
+                    }
+                    fileDigest.update(buffer, end, n);
+                    end += n;
+                    read += n;
+                }
+            }
+            if (count == 0) {
+                // 接收方没有旧文件，所有数据都只能作为原始数据发送，不需要滑动窗口
+                start = end;
+                if (read < size) {
+                    continue;
+                }
+                break;
+            }
+            if (end - start < blockSize) {
+                // 剩余数据不足一个块，只能作为原始数据发送
+                break;
+            }
+            if (!rolling) {
+                a = b = 0;
+                for (int i = start; i < start + blockSize; i++) {
+                    a += buffer[i] & 0xff;
+                    b += a;
+                }
+                rolling = true;
+            }
+            int weak = a & 0xffff | b << 16;
+            int match = -1;
+            boolean digested = false;
+            for (int block = heads[(weak * 0x9E3779B1) >>> shift]; block >= 0; block = next[block]) {
+                if (weaks[block] != weak) {
+                    continue;
+                }
+                if (!digested) {
+                    // 同一个窗口只计算一次 MD5
+                    blockDigest.update(buffer, start, blockSize);
+                    try {
+                        blockDigest.digest(strong, 0, STRONG_SIZE);
+                    } catch (DigestException e) {
+                        throw new IOException(e);
+                    }
+                    digested = true;
+                }
+                int offset = block * SIGNATURE_SIZE + 4;
+                if (equals(signatures, offset, strong)) {
+                    match = block;
+                    break;
+                }
+            }
+            if (match >= 0) {
+                encoder.literal(buffer, literal, start);
+                encoder.copy(match);
+                start += blockSize;
+                literal = start;
+                rolling = false;
+                continue;
+            }
+            if (start + blockSize >= end) {
+                // 文件已经读取完毕，并且窗口之后没有更多的数据
+                break;
+            }
+            // 窗口向后滑动一个字节
+            int out = buffer[start] & 0xff;
+            a += (buffer[start + blockSize] & 0xff) - out;
+            b += a - blockSize * out;
+            start++;
+            if (start - literal >= MAX_LITERAL) {
+                encoder.literal(buffer, literal, start);
+                literal = start;
+            }
+        }
+        encoder.literal(buffer, literal, end);
+        encoder.flushCopy();
+        encoder.out.writeByte(OP_END);
+        encoder.out.write(fileDigest.digest());
+        encoder.out.flush();
+        return encoder.literalBytes;
+    }
+
+    /**
+     * 由接收方调用，根据发送方的增量指令与旧文件重建新文件，并校验新文件的 MD5。
+     * <p>
+     * Called by the receiver to rebuild the new file from the delta instructions of the sender and the old file, and verify the MD5 of the new file.
+     *
+     * @param basis       旧文件的文件通道，如果为 null 代表接收方没有旧文件
+     *                    <p>
+     *                    File channel of the old file, null means the receiver has no old file
+     * @param target      新文件的文件通道，不能与旧文件相同
+     *                    <p>
+     *                    File channel of the new file, must not be the same as the old file
+     * @param inputStream 接收增量指令的数据流
+     *                    <p>
+     *                    Stream the delta instructions are received from
+     * @return 新文件的字节数
+     * <p>
+     * Number of bytes in the new file
+     * @throws IOException 接收数据、读写文件或者校验失败时发生的异常
+     */
+    public static long receiveDelta(FileChannel basis, FileChannel target, InputStream inputStream) throws IOException {
+        DataInputStream dataInputStream = new DataInputStream(inputStream);
+        int blockSize = dataInputStream.readInt();
+        long blocks = basis == null ? 0 : basis.size() / blockSize;
+        if (blockSize < MIN_BLOCK_SIZE || blockSize > MAX_BLOCK_SIZE) {
+            throw new IOException("Malformed delta block size: " + blockSize);
+        }
+        MessageDigest fileDigest = md5();
+        byte[] buffer = new byte[Math.max(blockSize, MAX_LITERAL)];
+        long position = 0;
+        target.truncate(0);
+        while (true) {
+            byte op = dataInputStream.readByte();
+            if (op == OP_END) {
+                break;
+            }
+            if (op == OP_COPY) {
+                int block = dataInputStream.readInt();
+                int count = dataInputStream.readInt();
+                if (block < 0 || count <= 0 || (long) block + count > blocks) {
+                    throw new IOException("Illegal delta block reference: " + block + " + " + count + " > " + blocks);
+                }
+                for (long i = block; i < (long) block + count; i++) {
+                    readFully(basis, i * blockSize, buffer, blockSize);
+                    position += write(target, position, buffer, blockSize, fileDigest);
+                }
+            } else if (op == OP_LITERAL) {
+                int length = dataInputStream.readInt();
+                if (length <= 0 || length > buffer.length) {
+                    throw new IOException("Illegal delta literal length: " + length);
+                }
+                dataInputStream.readFully(buffer, 0, length);
+                position += write(target, position, buffer, length, fileDigest);
+            } else {
+                throw new IOException("Unknown delta instruction: " + op);
+            }
+        }
+        byte[] expected = new byte[STRONG_SIZE];
+        dataInputStream.readFully(expected);
+        if (!MessageDigest.isEqual(expected, fileDigest.digest())) {
+            throw new IOException("The rebuilt file does not match the MD5 of the source file.");
+        }
+        target.force(false);
+        return position;
+    }
+
+    /**
+     * 根据旧文件大小计算块大小，约为文件大小的平方根，并对齐到 1024 字节。
+     */
+    private static int blockSize(long length) {
+        long size = ((long) Math.sqrt(length) + 1023) & ~1023L;
+        return (int) Math.max(MIN_BLOCK_SIZE, Math.min(MAX_BLOCK_SIZE, size));
+    }
+
+    /**
+     * 计算滚动校验和，低16位是所有字节的和，高16位是每一个前缀和的和。
+     */
+    private static int weakChecksum(byte[] buffer, int offset, int length) {
+        int a = 0, b = 0;
+        for (int i = offset; i < offset + length; i++) {
+            a += buffer[i] & 0xff;
+            b += a;
+        }
+        return a & 0xffff | b << 16;
+    }
+
+    private static boolean equals(byte[] signatures, int offset, byte[] strong) {
+        for (int i = 0; i < STRONG_SIZE; i++) {
+            if (signatures[offset + i] != strong[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void readFully(FileChannel fileChannel, long position, byte[] buffer, int length) throws IOException {
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, length);
+        while (byteBuffer.hasRemaining()) {
+            if (fileChannel.read(byteBuffer, position + byteBuffer.position()) < 0) {
+                throw new EOFException("The old file became shorter during the delta transfer.");
+            }
+        }
+    }
+
+    private static int write(FileChannel target, long position, byte[] buffer, int length, MessageDigest fileDigest) throws IOException {
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, length);
+        while (byteBuffer.hasRemaining()) {
+            target.write(byteBuffer, position + byteBuffer.position());
+        }
+        fileDigest.update(buffer, 0, length);
+        return length;
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            // 每一个 Java 平台都必须支持 MD5
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 增量指令的编码器，连续的块引用会被合并成一条指令。
+     */
+    private final static class Encoder {
+
+        final DataOutputStream out;
+        int copyStart = -1;
+        int copyCount = 0;
+        long literalBytes = 0;
+
+        Encoder(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void copy(int block) throws IOException {
+            if (this.copyCount > 0 && this.copyStart + this.copyCount == block) {
+                this.copyCount++;
+                return;
+            }
+            flushCopy();
+            this.copyStart = block;
+            this.copyCount = 1;
+        }
+
+        void flushCopy() throws IOException {
+            if (this.copyCount > 0) {
+                this.out.writeByte(OP_COPY);
+                this.out.writeInt(this.copyStart);
+                this.out.writeInt(this.copyCount);
+                this.copyCount = 0;
+            }
+        }
+
+        void literal(byte[] buffer, int from, int to) throws IOException {
+            if (from >= to) {
+                return;
+            }
+            flushCopy();
+            while (from < to) {
+                int length = Math.min(MAX_LITERAL, to - from);
+                this.out.writeByte(OP_LITERAL);
+                this.out.writeInt(length);
+                this.out.write(buffer, from, length);
+                this.literalBytes += length;
+                from += length;
+            }
+        }
+    }
+}
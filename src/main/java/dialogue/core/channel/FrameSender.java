@@ -0,0 +1,39 @@
+package dialogue.core.channel;
+
+import java.io.IOException;
+
+/**
+ * 帧发送者，多路复用器通过它将编码完成的帧发送到底层连接中。
+ * <p>
+ * Frame sender, through which the multiplexer sends encoded frames to the underlying connection.
+ *
+ * @author 赵凌宇
+ */
+public interface FrameSender {
+
+    /**
+     * 发送一个完整的帧。
+     * <p>
+     * Send a complete frame.
+     *
+     * @param frame 包含帧头与数据体的字节数组
+     *              <p>
+     *              Byte array containing the header and payload
+     * @throws IOException 发送数据时发生的异常
+     */
+    void send(byte[] frame) throws IOException;
+
+    /**
+     * 发送一个批量传输的数据帧，实现类可以让它排在其它帧的后面发送，默认与 {@link #send(byte[])} 相同。
+     * <p>
+     * Send a data frame of a bulk transfer. Implementations may send it after the other frames, by default it is the same as {@link #send(byte[])}.
+     *
+     * @param frame 包含帧头与数据体的字节数组
+     *              <p>
+     *              Byte array containing the header and payload
+     * @throws IOException 发送数据时发生的异常
+     */
+    default void sendBulk(byte[] frame) throws IOException {
+        send(frame);
+    }
+}
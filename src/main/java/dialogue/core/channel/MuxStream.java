@@ -0,0 +1,330 @@
+package dialogue.core.channel;
+
+import dialogue.core.protocol.Frame;
+import dialogue.core.protocol.FrameCodec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+
+/**
+ * 多路复用连接中的一个逻辑数据流，使用方式与套接字一致，每一个数据流都有独立的流量控制窗口，一个数据流的读取速度不会影响连接中的其它数据流。
+ * <p>
+ * A logical stream in a multiplexed connection, used in the same way as a socket. Each stream has its own flow control window, so the reading speed of one stream does not affect the other streams in the connection.
+ * <p>
+ * 发送方在窗口用完之后会阻塞，直到接收方读取数据之后发送窗口更新帧，因此接收方为每一个数据流缓存的数据不会超过接收窗口。
+ * <p>
+ * The sender blocks when the window is used up until the receiver reads data and sends a window update frame, so the data buffered by the receiver for each stream never exceeds the receiving window.
+ *
+ * @author 赵凌宇
+ */
+public final class MuxStream implements DataChannel {
+
+    /**
+     * 文件数据流的类型。
+     * <p>
+     * The kind of file streams.
+     */
+    public final static byte KIND_FILE = 1;
+    /**
+     * 持久会话数据流的类型。
+     * <p>
+     * The kind of persistent session streams.
+     */
+    public final static byte KIND_PERSISTENT = 2;
+    /**
+     * 协议约定的初始窗口字节数，每一个数据流在打开的时候双方都拥有这么多的发送额度。
+     * <p>
+     * The initial window in bytes agreed by the protocol. Both sides own this much sending credit when a stream is opened.
+     */
+    public final static int INITIAL_WINDOW = 256 * 1024;
+    /**
+     * 一个数据帧中最多携带的字节数量，较大的写入会被拆成多个帧，使得多个数据流可以交替的使用连接。
+     * <p>
+     * The maximum number of bytes carried by one data frame. Larger writes are split into several frames so that several streams can take turns using the connection.
+     */
+    public final static int MAX_DATA_SIZE = 64 * 1024;
+
+    private final StreamMultiplexer multiplexer;
+    private final int id;
+    private final byte kind;
+    private final int requestId;
+    private final int receiveWindow;
+    private final ArrayDeque<byte[]> inbound = new ArrayDeque<>();
+    private int inboundOffset;
+    private int unacknowledged;
+    private int sendWindow = INITIAL_WINDOW;
+    private boolean remoteClosed = false;
+    private boolean localClosed = false;
+    private volatile boolean bulk = false;
+    private final InputStream inputStream = new InputStream() {
+        @Override
+        public int read() throws IOException {
+            byte[] bytes = new byte[1];
+            return read(bytes, 0, 1) < 0 ? -1 : bytes[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return MuxStream.this.read(b, off, len);
+        }
+
+        @Override
+        public int available() {
+            synchronized (MuxStream.this) {
+                byte[] head = inbound.peek();
+                return head == null ? 0 : head.length - inboundOffset;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            MuxStream.this.close();
+        }
+    };
+    private final OutputStream outputStream = new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            MuxStream.this.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            MuxStream.this.close();
+        }
+    };
+
+    MuxStream(StreamMultiplexer multiplexer, int id, byte kind, int requestId, int receiveWindow) {
+        this.multiplexer = multiplexer;
+        this.id = id;
+        this.kind = kind;
+        this.requestId = requestId;
+        this.receiveWindow = receiveWindow;
+    }
+
+    /**
+     * @return 数据流编号，在一个连接中是唯一的。
+     * <p>
+     * The stream id, which is unique in a connection.
+     */
+    public int getId() {
+        return this.id;
+    }
+
+    /**
+     * @return 数据流的类型。
+     * <p>
+     * The kind of the stream.
+     */
+    public byte getKind() {
+        return this.kind;
+    }
+
+    /**
+     * @return 打开该数据流的命令对应的请求编号。
+     * <p>
+     * The request id of the command that opened the stream.
+     */
+    public int getRequestId() {
+        return this.requestId;
+    }
+
+    /**
+     * 由传输调度器调用，将该数据流标记为批量传输，之后它的数据帧会排在控制帧与其它数据流的后面发送。
+     */
+    void markBulk() {
+        this.bulk = true;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return this.inputStream;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return this.outputStream;
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return !this.localClosed;
+    }
+
+    private int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int n;
+        int credit = 0;
+        synchronized (this) {
+            while (this.inbound.isEmpty()) {
+                if (this.localClosed) {
+                    throw new IOException("The stream is closed.");
+                }
+                if (this.remoteClosed) {
+                    return -1;
+                }
+                waitSignal();
+            }
+            byte[] head = this.inbound.peek();
+            n = Math.min(len, head.length - this.inboundOffset);
+            System.arraycopy(head, this.inboundOffset, b, off, n);
+            this.inboundOffset += n;
+            if (this.inboundOffset == head.length) {
+                this.inbound.poll();
+                this.inboundOffset = 0;
+            }
+            // 读取的数据累计到窗口的一半时才通知对方，避免频繁的发送窗口更新帧
+            this.unacknowledged += n;
+            if (this.unacknowledged >= this.receiveWindow >> 1 && !this.remoteClosed) {
+                credit = this.unacknowledged;
+                this.unacknowledged = 0;
+            }
+        }
+        if (credit > 0) {
+            this.multiplexer.sendWindow(this.id, credit);
+        }
+        return n;
+    }
+
+    private void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = acquireWindow(len);
+            sendData(FrameCodec.encode(Frame.TYPE_DATA, this.id, b, off, n));
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * 文件数据会被直接读取到数据帧中，相比于通过输出流写入，少了一次读取缓冲区与一次帧编码的复制。
+     * <p>
+     * File data is read directly into data frames, which saves one copy into a read buffer and one copy for frame encoding compared with writing through the output stream.
+     */
+    @Override
+    public long transferFrom(FileChannel source, long position, long count) throws IOException {
+        long transferred = 0;
+        while (transferred < count) {
+            int n = acquireWindow((int) Math.min(count - transferred, MAX_DATA_SIZE));
+            byte[] frame = FrameCodec.encode(Frame.TYPE_DATA, this.id, source, position + transferred, n);
+            int sent = frame == null ? 0 : frame.length - Frame.HEADER_SIZE;
+            if (sent < n) {
+                // 文件提前结束，归还没有使用的窗口
+                releaseWindow(n - sent);
+            }
+            if (frame == null) {
+                break;
+            }
+            sendData(frame);
+            transferred += sent;
+            if (sent < n) {
+                break;
+            }
+        }
+        return transferred;
+    }
+
+    private void sendData(byte[] frame) throws IOException {
+        if (this.bulk) {
+            this.multiplexer.sendBulk(frame);
+        } else {
+            this.multiplexer.send(frame);
+        }
+    }
+
+    /**
+     * 等待发送窗口，并从中取出本次可以发送的字节数量。
+     */
+    private int acquireWindow(int len) throws IOException {
+        synchronized (this) {
+            while (this.sendWindow == 0 && !this.localClosed && !this.remoteClosed) {
+                waitSignal();
+            }
+            if (this.localClosed) {
+                throw new IOException("The stream is closed.");
+            }
+            if (this.remoteClosed) {
+                throw new IOException("The stream was closed by the peer.");
+            }
+            int n = Math.min(Math.min(len, this.sendWindow), MAX_DATA_SIZE);
+            this.sendWindow -= n;
+            return n;
+        }
+    }
+
+    private synchronized void releaseWindow(int credit) {
+        this.sendWindow += credit;
+    }
+
+    private void waitSignal() throws IOException {
+        try {
+            this.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the stream.", e);
+        }
+    }
+
+    /**
+     * 由多路复用器调用，将对方发送来的数据添加到接收缓冲中。
+     */
+    synchronized void receive(byte[] data) {
+        if (!this.localClosed && data.length > 0) {
+            this.inbound.add(data);
+            this.notifyAll();
+        }
+    }
+
+    /**
+     * 由多路复用器调用，增加发送窗口。
+     */
+    synchronized void addWindow(int credit) {
+        this.sendWindow += credit;
+        this.notifyAll();
+    }
+
+    /**
+     * 由多路复用器调用，标记对方已经关闭了数据流，已经接收到的数据依旧可以被读取。
+     */
+    synchronized void remoteClose() {
+        this.remoteClosed = true;
+        this.notifyAll();
+    }
+
+    /**
+     * 关闭数据流，通知对方不会再读写该数据流，并丢弃所有没有被读取的数据。
+     * <p>
+     * Close the stream, tell the peer that the stream will no longer be read or written, and discard all unread data.
+     */
+    @Override
+    public void close() throws IOException {
+        boolean notify;
+        synchronized (this) {
+            if (this.localClosed) {
+                return;
+            }
+            this.localClosed = true;
+            notify = !this.remoteClosed;
+            this.inbound.clear();
+            this.notifyAll();
+        }
+        this.multiplexer.remove(this.id);
+        if (notify) {
+            // 关闭帧与数据帧使用同一个发送队列，不能超过还没有发送的数据
+            sendData(FrameCodec.encode(Frame.TYPE_CLOSE, this.id, new byte[0], 0, 0));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MuxStream{id=" + this.id + ", kind=" + this.kind + ", requestId=" + this.requestId + '}';
+    }
+}
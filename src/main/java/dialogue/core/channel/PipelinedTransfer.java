@@ -0,0 +1,396 @@
+package dialogue.core.channel;
+
+import dialogue.ConfigureConstantArea;
+import dialogue.utils.BufferPool;
+import dialogue.utils.ThreadUtils;
+import dialogue.utils.progressEvent.ProgressFileNumber;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.Checksum;
+
+/**
+ * 流水线传输工具类，较大的文件在传输时由一个磁盘线程负责读写文件，当前线程只负责读写数据流，两者之间通过固定数量的缓冲区交替工作，使得磁盘与网络可以同时忙碌。
+ * <p>
+ * Pipelined transfer utility. When a larger file is transferred, a disk thread reads or writes the file while the current thread only reads or writes the stream.
+ * The two work on a fixed ring of buffers in turn, so the disk and the network can be busy at the same time.
+ * <p>
+ * 不超过 {@link #PIPELINE_MIN_SIZE} 的数据由当前线程直接处理，创建线程的开销不值得。
+ * <p>
+ * Data not exceeding {@link #PIPELINE_MIN_SIZE} is handled directly by the current thread, it is not worth the cost of a thread.
+ *
+ * @author 赵凌宇
+ */
+public final class PipelinedTransfer {
+
+    /**
+     * 使用流水线传输的最小数据量。
+     * <p>
+     * The minimum amount of data that is transferred through the pipeline.
+     */
+    public final static long PIPELINE_MIN_SIZE = 1024 * 1024;
+
+    private final static int BUFFERS = 4;
+    private final static Block END = new Block(null, -1);
+
+    private PipelinedTransfer() {
+    }
+
+    /**
+     * 由接收方调用，从数据流中接收文件，文件的大小会被预先分配，接收的数据不足时文件会被截断到已经接收的部分并抛出异常。
+     * <p>
+     * Called by the receiver to receive a file from the stream. The size of the file is allocated in advance. When the stream does not carry enough data, the file is truncated to the part received and an exception is thrown.
+     *
+     * @param inputStream  文件数据的来源
+     *                     <p>
+     *                     Source of the file data
+     * @param target       目标文件，已经存在的时候会被覆盖
+     *                     <p>
+     *                     Target file, it is overwritten if it exists
+     * @param size         文件的字节数
+     *                     <p>
+     *                     Number of bytes in the file
+     * @param fileProgress 文件传输进度条对象，如果为 null 代表不展示进度
+     *                     <p>
+     *                     File transfer progress object, null means no progress is shown
+     * @param checksum     需要更新的校验和对象，在接收数据的同时计算，如果为 null 代表不计算校验和
+     *                     <p>
+     *                     Checksum object to update, computed while receiving. Null means no checksum is computed
+     * @throws IOException 接收数据、写入文件或者数据不足时发生的异常
+     */
+    public static void receive(InputStream inputStream, File target, long size, ProgressFileNumber fileProgress, Checksum checksum) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(target, "rw")) {
+            file.setLength(size);
+            if (fileProgress != null) {
+                fileProgress.function1(0);
+            }
+            long received = receive(inputStream, file.getChannel(), 0, size, fileProgress, checksum);
+            if (received < size) {
+                file.setLength(received);
+                throw new EOFException(target + " was interrupted, " + received + " of " + size + " bytes received.");
+            }
+            if (fileProgress != null) {
+                fileProgress.function3(0);
+            }
+        }
+    }
+
+    /**
+     * 由接收方调用，从数据流中接收指定数量的数据并写入文件通道的指定位置，数据流提前结束的时候，已经接收的数据依旧会被写入文件。
+     * <p>
+     * Called by the receiver to receive the given amount of data from the stream and write it at the given position of the file channel. When the stream ends early, the data already received is still written into the file.
+     *
+     * @param inputStream  数据的来源
+     *                     <p>
+     *                     Source of the data
+     * @param target       目标文件通道
+     *                     <p>
+     *                     Target file channel
+     * @param position     开始写入的位置
+     *                     <p>
+     *                     The position to start writing at
+     * @param count        需要接收的字节数量
+     *                     <p>
+     *                     The number of bytes to receive
+     * @param fileProgress 文件传输进度条对象，只会收到每一段数据的进度，如果为 null 代表不展示进度
+     *                     <p>
+     *                     File transfer progress object, only receives the progress of each piece of data. Null means no progress is shown
+     * @param checksum     需要更新的校验和对象，在接收数据的同时计算，如果为 null 代表不计算校验和
+     *                     <p>
+     *                     Checksum object to update, computed while receiving. Null means no checksum is computed
+     * @return 实际接收并写入的字节数量，小于需要接收的数量代表数据流提前结束
+     * <p>
+     * The number of bytes actually received and written, less than the requested amount means the stream ended early
+     * @throws IOException 接收数据或写入文件时发生的异常
+     */
+    public static long receive(InputStream inputStream, FileChannel target, long position, long count, ProgressFileNumber fileProgress, Checksum checksum) throws IOException {
+        if (count <= PIPELINE_MIN_SIZE) {
+            byte[] buffer = BufferPool.acquire(ConfigureConstantArea.TCP_BUFFER_MAX_SIZE);
+            long received = 0;
+            try {
+                while (received < count) {
+                    int n = inputStream.read(buffer, 0, (int) Math.min(buffer.length, count - received));
+                    if (n < 0) {
+                        break;
+                    }
+                    if (checksum != null) {
+                        checksum.update(buffer, 0, n);
+                    }
+                    write(target, buffer, n, position + received);
+                    received += n;
+                    if (fileProgress != null) {
+                        fileProgress.function2(n);
+                    }
+                }
+            } finally {
+                BufferPool.release(buffer);
+            }
+            return received;
+        }
+        byte[][] ring = acquireRing();
+        BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(BUFFERS, false, Arrays.asList(ring));
+        BlockingQueue<Block> full = new ArrayBlockingQueue<>(BUFFERS + 1);
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        Thread writer = ThreadUtils.start("dialogue-disk-writer", () -> {
+            long offset = position;
+            try {
+                while (true) {
+                    Block block = full.take();
+                    if (block == END) {
+                        return;
+                    }
+                    // 写入失败之后只归还缓冲区，使得网络线程可以尽快发现错误
+                    if (failure.get() == null) {
+                        try {
+                            write(target, block.buffer, block.length, offset);
+                        } catch (IOException e) {
+                            failure.set(e);
+                        }
+                    }
+                    offset += block.length;
+                    free.add(block.buffer);
+                }
+            } catch (InterruptedException e) {
+                failure.compareAndSet(null, new InterruptedIOException("The disk writer was interrupted."));
+            }
+        });
+        long received = 0;
+        IOException error = null;
+        try {
+            while (received < count && failure.get() == null) {
+                byte[] buffer = free.take();
+                int n = fill(inputStream, buffer, (int) Math.min(buffer.length, count - received));
+                if (n <= 0) {
+                    free.add(buffer);
+                    break;
+                }
+                if (checksum != null) {
+                    checksum.update(buffer, 0, n);
+                }
+                full.add(new Block(buffer, n));
+                received += n;
+                if (fileProgress != null) {
+                    fileProgress.function2(n);
+                }
+            }
+        } catch (InterruptedException e) {
+            error = new InterruptedIOException("Interrupted while receiving data.");
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            // 等待已经接收的数据全部写入文件
+            full.add(END);
+            join(writer);
+            releaseRing(ring);
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        if (error != null) {
+            throw error;
+        }
+        return received;
+    }
+
+    /**
+     * 由发送方调用，由磁盘线程从文件通道的指定位置提前读取数据，当前线程将数据写入数据流中。
+     * <p>
+     * Called by the sender. The disk thread reads data ahead from the given position of the file channel and the current thread writes the data into the stream.
+     *
+     * @param source       源文件通道，它的位置不会改变
+     *                     <p>
+     *                     Source file channel, its position is not changed
+     * @param position     开始读取的位置
+     *                     <p>
+     *                     The position to start reading at
+     * @param count        需要发送的字节数量
+     *                     <p>
+     *                     The number of bytes to send
+     * @param outputStream 目标数据流
+     *                     <p>
+     *                     Target stream
+     * @param fileProgress 文件传输进度条对象，只会收到每一段数据的进度，如果为 null 代表不展示进度
+     *                     <p>
+     *                     File transfer progress object, only receives the progress of each piece of data. Null means no progress is shown
+     * @param checksum     需要更新的校验和对象，由磁盘线程在读取数据的同时计算，如果为 null 代表不计算校验和
+     *                     <p>
+     *                     Checksum object to update, computed by the disk thread while reading. Null means no checksum is computed
+     * @return 实际发送的字节数量，小于需要发送的数量代表文件变短了
+     * <p>
+     * The number of bytes actually sent, less than the requested amount means the file became shorter
+     * @throws IOException 读取文件或写入数据流时发生的异常
+     */
+    public static long send(FileChannel source, long position, long count, OutputStream outputStream, ProgressFileNumber fileProgress, Checksum checksum) throws IOException {
+        if (count <= PIPELINE_MIN_SIZE) {
+            byte[] buffer = BufferPool.acquire(ConfigureConstantArea.TCP_BUFFER_MAX_SIZE);
+            long sent = 0;
+            try {
+                while (sent < count) {
+                    int n = read(source, buffer, (int) Math.min(buffer.length, count - sent), position + sent);
+                    if (n <= 0) {
+                        break;
+                    }
+                    if (checksum != null) {
+                        checksum.update(buffer, 0, n);
+                    }
+                    outputStream.write(buffer, 0, n);
+                    sent += n;
+                    if (fileProgress != null) {
+                        fileProgress.function2(n);
+                    }
+                }
+            } finally {
+                BufferPool.release(buffer);
+            }
+            return sent;
+        }
+        byte[][] ring = acquireRing();
+        BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(BUFFERS, false, Arrays.asList(ring));
+        BlockingQueue<Block> full = new ArrayBlockingQueue<>(BUFFERS + 1);
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        Thread reader = ThreadUtils.start("dialogue-disk-reader", () -> {
+            long read = 0;
+            try {
+                // 发送失败之后 failure 会被设置，读取线程不再继续读取
+                while (read < count && failure.get() == null) {
+                    byte[] buffer = free.take();
+                    int n = read(source, buffer, (int) Math.min(buffer.length, count - read), position + read);
+                    if (n <= 0) {
+                        free.add(buffer);
+                        break;
+                    }
+                    if (checksum != null) {
+                        checksum.update(buffer, 0, n);
+                    }
+                    full.add(new Block(buffer, n));
+                    read += n;
+                }
+            } catch (InterruptedException e) {
+                failure.compareAndSet(null, new InterruptedIOException("The disk reader was interrupted."));
+            } catch (IOException e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                full.add(END);
+            }
+        });
+        long sent = 0;
+        try {
+            while (true) {
+                Block block = full.take();
+                if (block == END) {
+                    break;
+                }
+                if (failure.get() == null) {
+                    try {
+                        outputStream.write(block.buffer, 0, block.length);
+                        sent += block.length;
+                        if (fileProgress != null) {
+                            fileProgress.function2(block.length);
+                        }
+                    } catch (IOException e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+                free.add(block.buffer);
+            }
+        } catch (InterruptedException e) {
+            failure.compareAndSet(null, new InterruptedIOException("Interrupted while sending data."));
+            reader.interrupt();
+        } finally {
+            join(reader);
+            releaseRing(ring);
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return sent;
+    }
+
+    /**
+     * 从缓冲区池中借用流水线使用的缓冲区，两个线程都结束之后再一起归还，使得中途发生错误的时候也不会遗漏。
+     */
+    private static byte[][] acquireRing() {
+        byte[][] ring = new byte[BUFFERS][];
+        for (int i = 0; i < BUFFERS; i++) {
+            ring[i] = BufferPool.acquire(ConfigureConstantArea.TCP_BUFFER_MAX_SIZE);
+        }
+        return ring;
+    }
+
+    private static void releaseRing(byte[][] ring) {
+        for (byte[] buffer : ring) {
+            BufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * 尽量读满缓冲区，使得磁盘每一次写入的数据量足够大，只有数据流结束的时候才会返回不足的数据。
+     */
+    private static int fill(InputStream inputStream, byte[] buffer, int length) throws IOException {
+        int filled = 0;
+        while (filled < length) {
+            int n = inputStream.read(buffer, filled, length - filled);
+            if (n < 0) {
+                break;
+            }
+            filled += n;
+        }
+        return filled;
+    }
+
+    private static int read(FileChannel source, byte[] buffer, int length, long position) throws IOException {
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, length);
+        while (byteBuffer.hasRemaining()) {
+            if (source.read(byteBuffer, position + byteBuffer.position()) < 0) {
+                break;
+            }
+        }
+        return byteBuffer.position();
+    }
+
+    private static void write(FileChannel target, byte[] buffer, int length, long position) throws IOException {
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, length);
+        while (byteBuffer.hasRemaining()) {
+            target.write(byteBuffer, position + byteBuffer.position());
+        }
+    }
+
+    private static void join(Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 一段已经填充数据的缓冲区。
+     */
+    private final static class Block {
+        final byte[] buffer;
+        final int length;
+
+        Block(byte[] buffer, int length) {
+            this.buffer = buffer;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package dialogue.core.channel;
+
+import dialogue.ConfigureConstantArea;
+import dialogue.utils.IOUtils;
+import dialogue.utils.ThreadUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Checksum;
+
+/**
+ * 预读发送器，多文件发送时由一个磁盘读取线程提前读取后续的文件，网络发送线程只负责按照顺序发送已经准备好的文件。
+ * <p>
+ * Read-ahead sender. In multi-file sends, one disk reader thread reads the following files in advance, and the network sending thread only sends the prepared files in order.
+ * <p>
+ * 较小的文件会被读取并按需压缩到缓冲池中的缓冲区，成为可以直接写入数据流的完整记录 [文件大小][文件名称][算法编号][数据][校验尾]；较大的文件只会被提前打开，
+ * 数据依旧由数据通道直接发送。缓冲区的数量固定为预读深度，读取线程在缓冲区用完时等待，因此线程数量与内存占用都不会随着目录的大小增加。
+ * <p>
+ * Small files are read and, when worthwhile, compressed into a buffer of the buffer pool, becoming a complete record [file size][file name][codec id][data][checksum trailer] that can be written to the stream directly. Larger files are only opened in advance,
+ * and their data is still sent directly by the data channel. The number of buffers is fixed to the read-ahead depth and the reader waits when they are all in use, so neither the thread count nor the memory grows with the size of the directory.
+ *
+ * @author 赵凌宇
+ */
+public final class ReadAheadSender implements Closeable {
+
+    private final static Item END = new Item(null, 0, null, null);
+
+    private final BlockingQueue<Item> ready;
+    private final BlockingQueue<ByteArrayOutputStream> pool;
+    private final Thread reader;
+    private Item next;
+    private volatile boolean closed = false;
+
+    /**
+     * 创建预读发送器，并立即开始读取文件。
+     * <p>
+     * Create the read-ahead sender and start reading the files immediately.
+     *
+     * @param files 需要发送的文件，目录会被跳过
+     *              <p>
+     *              Files to send, directories are skipped
+     * @param offer 接收方提供的压缩算法编号
+     *              <p>
+     *              Codec ids offered by the receiver
+     * @param depth 预读深度，也就是最多提前准备好的文件数量
+     *              <p>
+     *              Read-ahead depth, that is the maximum number of files prepared in advance
+     */
+    public ReadAheadSender(File[] files, byte[] offer, int depth) {
+        depth = Math.max(1, depth);
+        this.ready = new ArrayBlockingQueue<>(depth + 1);
+        this.pool = new ArrayBlockingQueue<>(depth);
+        for (int i = 0; i < depth; i++) {
+            this.pool.add(new ByteArrayOutputStream(IOUtils.SMALL_FILE_SIZE + 1024));
+        }
+        this.reader = ThreadUtils.start("dialogue-read-ahead", () -> read(files, offer));
+    }
+
+    /**
+     * 等待下一个文件准备好。
+     * <p>
+     * Wait until the next file is prepared.
+     *
+     * @return 如果返回 false，代表所有文件都已经发送
+     * <p>
+     * If false is returned, all files have been sent
+     * @throws IOException 等待的过程中线程被中断
+     */
+    public boolean hasNext() throws IOException {
+        if (this.next == null) {
+            try {
+                this.next = this.ready.take();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while waiting for the read-ahead thread.");
+            }
+        }
+        return this.next != END;
+    }
+
+    /**
+     * 按照顺序将下一个文件的记录写入数据流中。
+     * <p>
+     * Write the record of the next file to the stream, in order.
+     *
+     * @param outputStream 数据通道输出流之上的缓冲流
+     *                     <p>
+     *                     Buffered stream on top of the output stream of the data channel
+     * @param dataChannel  目标数据通道，较大的文件由它直接发送
+     *                     <p>
+     *                     Target data channel, larger files are sent directly by it
+     * @param offer        接收方提供的压缩算法编号
+     *                     <p>
+     *                     Codec ids offered by the receiver
+     * @return 发送的文件名称
+     * <p>
+     * Name of the file sent
+     * @throws IOException 发送数据时发生的异常
+     */
+    public String sendNext(OutputStream outputStream, DataChannel dataChannel, byte[] offer) throws IOException {
+        if (!hasNext()) {
+            throw new EOFException("No more files to send.");
+        }
+        Item item = this.next;
+        this.next = null;
+        if (item.buffer != null) {
+            item.buffer.writeTo(outputStream);
+            item.buffer.reset();
+            this.pool.add(item.buffer);
+            return item.name;
+        }
+        try (FileChannel source = item.source) {
+            DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+            dataOutputStream.writeLong(item.size);
+            dataOutputStream.writeUTF(item.name);
+            Checksum checksum = TransferChecksum.create();
+            CompressedTransfer.send(source, item.size, offer, outputStream, dataChannel, null, checksum);
+            if (source.position() != item.size) {
+                // 记录中已经声明了文件大小，无法继续发送后续的文件
+                throw new EOFException(item.name + " became shorter while sending, " + source.position() + " of " + item.size + " bytes.");
+            }
+            TransferChecksum.writeTrailer(outputStream, checksum);
+        }
+        return item.name;
+    }
+
+    /**
+     * 停止读取线程并关闭所有已经打开但还没有发送的文件。
+     * <p>
+     * Stop the reader thread and close all files that are opened but not sent yet.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        this.reader.interrupt();
+        if (this.next != null) {
+            IOUtils.close(this.next.source);
+        }
+        for (Item item : this.ready) {
+            IOUtils.close(item.source);
+        }
+    }
+
+    private void read(File[] files, byte[] offer) {
+        try {
+            for (File file : files) {
+                if (this.closed) {
+                    return;
+                }
+                String name = file.getName();
+                if (file.isDirectory() || name.isEmpty()) {
+                    continue;
+                }
+                Item item = prepare(file, name, offer);
+                if (item != null) {
+                    this.ready.put(item);
+                }
+            }
+            this.ready.put(END);
+        } catch (InterruptedException e) {
+            // 发送已经结束，不再读取后续的文件
+        }
+    }
+
+    /**
+     * 准备一个文件，无法读取的文件会被跳过并记录警告。
+     */
+    private Item prepare(File file, String name, byte[] offer) throws InterruptedException {
+        FileChannel source;
+        try {
+            source = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            ConfigureConstantArea.LOGGER.warning(e.toString());
+            return null;
+        }
+        ByteArrayOutputStream buffer = null;
+        try {
+            long size = source.size();
+            if (size > IOUtils.SMALL_FILE_SIZE) {
+                return new Item(name, size, source, null);
+            }
+            buffer = this.pool.take();
+            DataOutputStream dataOutputStream = new DataOutputStream(buffer);
+            dataOutputStream.writeLong(size);
+            dataOutputStream.writeUTF(name);
+            // 较小的原始数据与压缩数据都会被写入缓冲区，不会用到数据通道
+            Checksum checksum = TransferChecksum.create();
+            CompressedTransfer.send(source, size, offer, buffer, null, null, checksum);
+            if (source.position() != size) {
+                throw new EOFException(name + " became shorter while reading, " + source.position() + " of " + size + " bytes.");
+            }
+            TransferChecksum.writeTrailer(buffer, checksum);
+            IOUtils.close(source);
+            return new Item(name, size, null, buffer);
+        } catch (IOException e) {
+            ConfigureConstantArea.LOGGER.warning(e.toString());
+            IOUtils.close(source);
+            if (buffer != null) {
+                buffer.reset();
+                this.pool.add(buffer);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 一个准备好的文件，较小的文件携带完整的记录，较大的文件携带已经打开的文件通道。
+     */
+    private final static class Item {
+        final String name;
+        final long size;
+        final FileChannel source;
+        final ByteArrayOutputStream buffer;
+
+        Item(String name, long size, FileChannel source, ByteArrayOutputStream buffer) {
+            this.name = name;
+            this.size = size;
+            this.source = source;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package dialogue.core.channel;
+
+import dialogue.ConfigureConstantArea;
+import dialogue.utils.BufferPool;
+import dialogue.utils.progressEvent.ProgressFileNumber;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * 断点续传工具类，接收方会先将数据写入到目标文件旁边的临时文件中，传输中断之后临时文件会被保留，下一次传输同一个文件的时候只需要发送剩余的部分。
+ * <p>
+ * Resumable transfer utility. The receiver first writes data into a temporary file next to the target file. The temporary file is kept when the transfer is interrupted, so the next transfer of the same file only needs to send the remainder.
+ * <p>
+ * 协商过程：接收方告知已经拥有的字节数量(8字节)与这些字节的校验和(8字节)，发送方校验自己文件中相同区间的校验和，一致时从该位置继续发送，否则从头发送，最后发送方告知实际的起始位置(8字节)。
+ * 接收完毕之后，临时文件会被原子的重命名为目标文件。
+ * <p>
+ * Negotiation: the receiver reports how many bytes it already has (8 bytes) and the checksum of these bytes (8 bytes). The sender checks the checksum of the same range of its own file and continues from that position if they match, otherwise it sends from the beginning. Finally the sender reports the actual start position (8 bytes).
+ * After receiving, the temporary file is atomically renamed to the target file.
+ *
+ * @author 赵凌宇
+ */
+public final class ResumableTransfer {
+
+    /**
+     * 临时文件的后缀，临时文件与目标文件在同一个目录中，这样重命名才能是原子的。
+     * <p>
+     * Suffix of the temporary file. The temporary file is in the same directory as the target file so that the rename can be atomic.
+     */
+    public final static String PART_SUFFIX = ".dialogue.part";
+
+    private ResumableTransfer() {
+    }
+
+    /**
+     * @param target 目标文件路径
+     *               <p>
+     *               Target file path
+     * @return 目标文件对应的临时文件路径。
+     * <p>
+     * The temporary file path corresponding to the target file.
+     */
+    public static Path partOf(Path target) {
+        return target.resolveSibling(target.getFileName() + PART_SUFFIX);
+    }
+
+    /**
+     * 打开目标文件对应的临时文件，上一次传输留下的数据会被保留。
+     * <p>
+     * Open the temporary file corresponding to the target file, data left by the previous transfer is kept.
+     *
+     * @param target 目标文件路径
+     *               <p>
+     *               Target file path
+     * @return 临时文件的文件通道
+     * <p>
+     * File channel of the temporary file
+     * @throws IOException 打开文件时发生的异常
+     */
+    public static FileChannel openPart(Path target) throws IOException {
+        return FileChannel.open(partOf(target), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * 由接收方调用，告知发送方临时文件中已经拥有的字节数量与它们的校验和。
+     * <p>
+     * Called by the receiver to tell the sender how many bytes the temporary file already has and their checksum.
+     *
+     * @param part             临时文件的文件通道
+     *                         <p>
+     *                         File channel of the temporary file
+     * @param limit            允许续传的最大字节数，临时文件比它大的时候需要从头接收
+     *                         <p>
+     *                         The maximum number of bytes that can be resumed, the transfer starts over if the temporary file is larger
+     * @param dataOutputStream 发送协商数据的数据流
+     *                         <p>
+     *                         Stream the negotiation data is sent through
+     * @throws IOException 读取文件或发送数据时发生的异常
+     */
+    public static void offer(FileChannel part, long limit, DataOutputStream dataOutputStream) throws IOException {
+        long have = part.size();
+        if (have > limit) {
+            have = 0;
+        }
+        dataOutputStream.writeLong(have);
+        dataOutputStream.writeLong(have == 0 ? 0 : checksum(part, have));
+        dataOutputStream.flush();
+    }
+
+    /**
+     * 由发送方调用，读取接收方已经拥有的数据并校验，得到本次发送的起始位置，调用者需要将该位置告知接收方。
+     * <p>
+     * Called by the sender to read and verify the data the receiver already has and get the start position of this transfer. The caller needs to tell the receiver this position.
+     *
+     * @param source          数据来源的文件通道
+     *                        <p>
+     *                        File channel of the data source
+     * @param size            需要发送的字节数量
+     *                        <p>
+     *                        The number of bytes to send
+     * @param dataInputStream 接收协商数据的数据流
+     *                        <p>
+     *                        Stream the negotiation data is received from
+     * @return 本次发送的起始位置，校验不一致的时候是 0
+     * <p>
+     * The start position of this transfer, 0 if the checksums do not match
+     * @throws IOException 读取文件或接收数据时发生的异常
+     */
+    public static long accept(FileChannel source, long size, DataInputStream dataInputStream) throws IOException {
+        long have = dataInputStream.readLong();
+        long checksum = dataInputStream.readLong();
+        if (have > 0 && have <= size && checksum(source, have) == checksum) {
+            return have;
+        }
+        return 0;
+    }
+
+    /**
+     * 由接收方调用，丢弃临时文件中起始位置之后的数据，并从数据流中接收剩余的部分，数据流中的数据量不足时会抛出异常，已经接收的数据会保留在临时文件中。
+     * <p>
+     * Called by the receiver to discard the data after the start position in the temporary file and receive the remainder from the stream. An exception is thrown if the stream does not carry enough data, and the data already received is kept in the temporary file.
+     *
+     * @param part         临时文件的文件通道
+     *                     <p>
+     *                     File channel of the temporary file
+     * @param position     发送方告知的起始位置
+     *                     <p>
+     *                     The start position reported by the sender
+     * @param size         文件的字节数
+     *                     <p>
+     *                     Number of bytes in the file
+     * @param inputStream  文件数据的来源
+     *                     <p>
+     *                     Source of the file data
+     * @param fileProgress 文件传输进度条对象，如果为 null 代表不展示进度
+     *                     <p>
+     *                     File transfer progress object, null means no progress is shown
+     * @throws IOException 接收数据或写入文件时发生的异常
+     */
+    public static void receive(FileChannel part, long position, long size, InputStream inputStream, ProgressFileNumber fileProgress) throws IOException {
+        if (position < 0 || position > size || position > part.size()) {
+            throw new IOException("Illegal resume position: " + position);
+        }
+        part.truncate(position);
+        if (fileProgress != null) {
+            fileProgress.setMaxSize(size - position);
+            fileProgress.function1(0);
+        }
+        // 数据流提前结束的时候，已经接收的数据也会被写入临时文件，下一次传输可以从这里继续
+        position += PipelinedTransfer.receive(inputStream, part, position, size - position, fileProgress, null);
+        if (position < size) {
+            throw new EOFException("The transfer was interrupted after " + position + " of " + size + " bytes, run the same command again to resume.");
+        }
+        part.force(false);
+        if (fileProgress != null) {
+            fileProgress.function3(0);
+        }
+    }
+
+    /**
+     * 将接收完毕的临时文件原子的重命名为目标文件，目标文件已经存在的时候会被替换。
+     * <p>
+     * Atomically rename the completely received temporary file to the target file, an existing target file is replaced.
+     *
+     * @param target 目标文件路径
+     *               <p>
+     *               Target file path
+     * @throws IOException 重命名时发生的异常
+     */
+    public static void commit(Path target) throws IOException {
+        Path part = partOf(target);
+        try {
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 计算文件开头指定数量字节的 CRC32 校验和。
+     */
+    private static long checksum(FileChannel fileChannel, long length) throws IOException {
+        CRC32 crc32 = new CRC32();
+        ByteBuffer byteBuffer = BufferPool.acquireBuffer(ConfigureConstantArea.TCP_BUFFER_MAX_SIZE << 4, true);
+        long position = 0;
+        try {
+            while (position < length) {
+                byteBuffer.clear().limit((int) Math.min(byteBuffer.capacity(), length - position));
+                int read = fileChannel.read(byteBuffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                byteBuffer.flip();
+                crc32.update(byteBuffer);
+                position += read;
+            }
+        } finally {
+            BufferPool.release(byteBuffer);
+        }
+        return crc32.getValue();
+    }
+}
@@ -0,0 +1,209 @@
+package dialogue.core.channel;
+
+import dialogue.ConfigureConstantArea;
+
+import dialogue.core.protocol.Frame;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * 基于服务器套接字的数据通道接收器，不使用多路复用模式的时候，主控会在文件端口与持久会话端口上等待被控的反向连接。
+ * <p>
+ * Data channel acceptor based on a server socket. When the multiplexed mode is not used, the master waits for the reverse connection of the controlled end on the file port and the persistent session port.
+ * <p>
+ * 端口只会在第一次被需要的时候打开，启用多路复用模式的主控不会占用这些端口。
+ * <p>
+ * The ports are only opened the first time they are needed, so a master using the multiplexed mode does not occupy them.
+ * <p>
+ * 同一个连接中的多个命令会同时执行，因此被控在每一个反向连接的开头写入 4 字节的请求编号，同一时间只有一个线程接收连接，属于其它请求的连接会被暂存并交给等待它的线程。
+ * <p>
+ * Several commands of one connection run concurrently, so the controlled end writes a 4 byte request id at the beginning of every reverse connection. Only one thread accepts connections at a time, and connections belonging to other requests are parked and handed to the threads waiting for them.
+ *
+ * @author 赵凌宇
+ */
+public final class ServerSocketAcceptor implements DataChannelAcceptor {
+
+    private final static HashMap<Integer, ServerSocketAcceptor> ACCEPTOR_HASH_MAP = new HashMap<>();
+    /**
+     * 读取反向连接中请求编号的最长等待毫秒数，以及暂存的连接没有被领取时保留的毫秒数。
+     */
+    private final static int HANDSHAKE_TIMEOUT = 10000;
+    private final static long PARKED_TIMEOUT = 60000;
+    private final ServerSocketChannel serverSocketChannel;
+    private final HashMap<Integer, ArrayDeque<Parked>> parked = new HashMap<>();
+    private boolean accepting = false;
+
+    private ServerSocketAcceptor(ServerSocketChannel serverSocketChannel) {
+        this.serverSocketChannel = serverSocketChannel;
+    }
+
+    /**
+     * 获取到指定端口的接收器，如果端口还没有被打开，会在这里打开。
+     * <p>
+     * Get the acceptor of the specified port. If the port has not been opened, it is opened here.
+     *
+     * @param port 需要监听的端口
+     *             <p>
+     *             The port to listen on
+     * @return 该端口对应的接收器
+     * <p>
+     * The acceptor of the port
+     * @throws IOException 端口无法被打开时抛出的异常
+     */
+    public static synchronized ServerSocketAcceptor of(int port) throws IOException {
+        ServerSocketAcceptor serverSocketAcceptor = ACCEPTOR_HASH_MAP.get(port);
+        if (serverSocketAcceptor == null) {
+            serverSocketAcceptor = new ServerSocketAcceptor(ServerSocketChannel.open().bind(new InetSocketAddress(port)));
+            ACCEPTOR_HASH_MAP.put(port, serverSocketAcceptor);
+            ConfigureConstantArea.LOGGER.info("Data channel port is ready => " + port);
+        }
+        return serverSocketAcceptor;
+    }
+
+    /**
+     * 反向连接主控，并在连接的开头写入请求编号，使得主控能够将连接交给对应的命令。
+     * <p>
+     * Connect back to the master and write the request id at the beginning of the connection, so that the master can hand the connection to the matching command.
+     *
+     * @param address   主控数据端口的地址
+     *                  <p>
+     *                  Address of the data port of the master
+     * @param requestId 打开数据通道的命令对应的请求编号
+     *                  <p>
+     *                  The request id of the command that opens the data channel
+     * @return 连接之后的数据通道
+     * <p>
+     * The connected data channel
+     * @throws IOException 连接时发生的异常
+     */
+    public static DataChannel connect(InetSocketAddress address, int requestId) throws IOException {
+        SocketChannel socketChannel = SocketChannel.open(address);
+        try {
+            ByteBuffer byteBuffer = ByteBuffer.allocate(4).putInt(requestId);
+            byteBuffer.flip();
+            while (byteBuffer.hasRemaining()) {
+                socketChannel.write(byteBuffer);
+            }
+            return new SocketDataChannel(socketChannel);
+        } catch (IOException e) {
+            socketChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 等待属于指定请求的反向连接，不携带请求编号(编号为 {@link Frame#NO_REQUEST_ID})的连接会交给正在接收连接的线程。
+     * <p>
+     * Wait for the reverse connection belonging to the specified request. A connection without a request id ({@link Frame#NO_REQUEST_ID}) is handed to the thread that is accepting.
+     */
+    @Override
+    public DataChannel accept(int requestId) throws IOException {
+        synchronized (this) {
+            while (true) {
+                ArrayDeque<Parked> ready = this.parked.get(requestId);
+                if (ready != null) {
+                    // 分段传输会为同一个请求打开多个连接，按照到达的顺序领取
+                    Parked first = ready.poll();
+                    if (ready.isEmpty()) {
+                        this.parked.remove(requestId);
+                    }
+                    return new SocketDataChannel(first.socketChannel);
+                }
+                if (!this.accepting) {
+                    break;
+                }
+                waitAcceptor();
+            }
+            this.accepting = true;
+        }
+        try {
+            while (true) {
+                // 使用通道接收连接，使得发送文件的时候可以直接由内核发送
+                SocketChannel socketChannel = this.serverSocketChannel.accept();
+                int id;
+                try {
+                    id = readRequestId(socketChannel.socket());
+                } catch (IOException e) {
+                    ConfigureConstantArea.LOGGER.warning("Dropped a data connection without a request id: " + e);
+                    socketChannel.close();
+                    continue;
+                }
+                if (id == requestId || id == Frame.NO_REQUEST_ID) {
+                    return new SocketDataChannel(socketChannel);
+                }
+                synchronized (this) {
+                    park(id, socketChannel);
+                    this.notifyAll();
+                }
+            }
+        } finally {
+            synchronized (this) {
+                this.accepting = false;
+                this.notifyAll();
+            }
+        }
+    }
+
+    private static int readRequestId(Socket socket) throws IOException {
+        // 套接字适配器的输入流会遵守读取超时，不会被一个不发送数据的连接一直阻塞，DataInputStream 不会多读取数据
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+        int id = new DataInputStream(socket.getInputStream()).readInt();
+        socket.setSoTimeout(0);
+        return id;
+    }
+
+    private void park(int id, SocketChannel socketChannel) {
+        long now = System.currentTimeMillis();
+        Iterator<ArrayDeque<Parked>> iterator = this.parked.values().iterator();
+        while (iterator.hasNext()) {
+            ArrayDeque<Parked> queue = iterator.next();
+            while (!queue.isEmpty() && now - queue.peek().time > PARKED_TIMEOUT) {
+                // 等待这个连接的命令已经放弃了
+                closeQuietly(queue.poll().socketChannel);
+            }
+            if (queue.isEmpty()) {
+                iterator.remove();
+            }
+        }
+        this.parked.computeIfAbsent(id, k -> new ArrayDeque<>()).add(new Parked(socketChannel, now));
+    }
+
+    private void waitAcceptor() throws IOException {
+        try {
+            this.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the data connection.", e);
+        }
+    }
+
+    private static void closeQuietly(SocketChannel socketChannel) {
+        try {
+            socketChannel.close();
+        } catch (IOException ignored) {
+            // 连接已经不再需要
+        }
+    }
+
+    /**
+     * 已经到达但是还没有被对应命令领取的连接。
+     */
+    private final static class Parked {
+        private final SocketChannel socketChannel;
+        private final long time;
+
+        private Parked(SocketChannel socketChannel, long time) {
+            this.socketChannel = socketChannel;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package dialogue.core.channel;
+
+import dialogue.utils.TokenBucket;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+
+/**
+ * 限速的数据通道，读写的每一个字节都需要先从传输自己的令牌桶与本机共用的令牌桶中取得令牌，数据本身依旧由被包装的数据通道传输。
+ * <p>
+ * Rate limited data channel. Every byte read or written first takes tokens from the bucket of its transfer and the bucket shared by the host, the data itself is still transferred by the wrapped channel.
+ * <p>
+ * 文件发送会被拆成较小的区间，每一个区间依旧通过被包装通道的 {@link DataChannel#transferFrom(FileChannel, long, long)} 发送，因此不会失去零拷贝。
+ * <p>
+ * File sends are split into smaller ranges and each range is still sent through {@link DataChannel#transferFrom(FileChannel, long, long)} of the wrapped channel, so zero-copy is kept.
+ *
+ * @author 赵凌宇
+ */
+final class ShapedDataChannel implements DataChannel {
+
+    private final DataChannel dataChannel;
+    private final TokenBucket transferBucket;
+    private final TokenBucket hostBucket;
+    private final InputStream inputStream;
+    private final OutputStream outputStream;
+
+    ShapedDataChannel(DataChannel dataChannel, TokenBucket transferBucket, TokenBucket hostBucket) throws IOException {
+        this.dataChannel = dataChannel;
+        this.transferBucket = transferBucket;
+        this.hostBucket = hostBucket;
+        this.inputStream = new FilterInputStream(dataChannel.getInputStream()) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    acquire(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                // 读取之后再等待，接收方读取变慢之后，发送方会因为窗口或者套接字缓冲区用完而变慢
+                int n = super.read(b, off, Math.min(len, TransferScheduler.SHAPING_CHUNK));
+                if (n > 0) {
+                    acquire(n);
+                }
+                return n;
+            }
+        };
+        this.outputStream = new FilterOutputStream(dataChannel.getOutputStream()) {
+            @Override
+            public void write(int b) throws IOException {
+                acquire(1);
+                this.out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                while (len > 0) {
+                    int n = Math.min(len, TransferScheduler.SHAPING_CHUNK);
+                    acquire(n);
+                    this.out.write(b, off, n);
+                    off += n;
+                    len -= n;
+                }
+            }
+        };
+    }
+
+    private void acquire(long count) throws IOException {
+        this.transferBucket.acquire(count);
+        this.hostBucket.acquire(count);
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return this.inputStream;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return this.outputStream;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return this.dataChannel.isOpen();
+    }
+
+    @Override
+    public long transferFrom(FileChannel source, long position, long count) throws IOException {
+        long transferred = 0;
+        while (transferred < count) {
+            long n = Math.min(count - transferred, TransferScheduler.SHAPING_CHUNK);
+            acquire(n);
+            long sent = this.dataChannel.transferFrom(source, position + transferred, n);
+            transferred += sent;
+            if (sent < n) {
+                // 文件提前结束
+                break;
+            }
+        }
+        return transferred;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.dataChannel.close();
+    }
+}
@@ -0,0 +1,130 @@
+package dialogue.core.channel;
+
+import dialogue.utils.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * 基于独立套接字的数据通道，在没有启用多路复用模式的时候，被控会反向连接主控，并通过这种通道传输数据。
+ * <p>
+ * Data channel based on an independent socket. When the multiplexed mode is not enabled, the controlled end connects back to the master and transfers data through this kind of channel.
+ * <p>
+ * 使用套接字通道创建的数据通道在发送文件时会使用 {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}，文件数据不会被复制到用户空间中。
+ * <p>
+ * A data channel created from a socket channel uses {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)} when sending files, so the file data is never copied into user space.
+ *
+ * @author 赵凌宇
+ */
+public final class SocketDataChannel implements DataChannel {
+
+    private final Socket socket;
+    private final SocketChannel socketChannel;
+    private final InputStream inputStream;
+    private final OutputStream outputStream;
+
+    /**
+     * @param socket 已经连接的套接字，发送文件的时候会通过数据流复制
+     *               <p>
+     *               A connected socket, files are copied through the streams when sent
+     * @throws IOException 获取数据流时发生的异常
+     */
+    public SocketDataChannel(Socket socket) throws IOException {
+        this.socket = socket;
+        this.socketChannel = null;
+        this.inputStream = socket.getInputStream();
+        this.outputStream = socket.getOutputStream();
+    }
+
+    /**
+     * @param socketChannel 已经连接的阻塞模式套接字通道，发送文件的时候会直接由内核发送
+     *                      <p>
+     *                      A connected socket channel in blocking mode, files are sent directly by the kernel
+     */
+    public SocketDataChannel(SocketChannel socketChannel) {
+        this.socket = socketChannel.socket();
+        this.socketChannel = socketChannel;
+        // 这里不使用套接字适配器的数据流，它在读取的时候会占用通道的阻塞锁，导致另一个线程无法同时写入
+        this.inputStream = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] bytes = new byte[1];
+                return read(bytes, 0, 1) < 0 ? -1 : bytes[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                return socketChannel.read(ByteBuffer.wrap(b, off, len));
+            }
+
+            @Override
+            public void close() throws IOException {
+                socketChannel.close();
+            }
+        };
+        this.outputStream = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                ByteBuffer byteBuffer = ByteBuffer.wrap(b, off, len);
+                while (byteBuffer.hasRemaining()) {
+                    socketChannel.write(byteBuffer);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                socketChannel.close();
+            }
+        };
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return this.inputStream;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return this.outputStream;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !this.socket.isClosed();
+    }
+
+    @Override
+    public long transferFrom(FileChannel source, long position, long count) throws IOException {
+        if (this.socketChannel == null) {
+            return IOUtils.copy(source, position, count, this.outputStream);
+        }
+        long transferred = 0;
+        while (transferred < count) {
+            long n = source.transferTo(position + transferred, count - transferred, this.socketChannel);
+            if (n <= 0) {
+                // 文件已经没有更多的数据了
+                break;
+            }
+            transferred += n;
+        }
+        return transferred;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.socket.close();
+    }
+}
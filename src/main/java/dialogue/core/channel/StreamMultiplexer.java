@@ -0,0 +1,202 @@
+package dialogue.core.channel;
+
+import dialogue.ConfigureConstantArea;
+import dialogue.core.protocol.Frame;
+import dialogue.core.protocol.FrameCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * 多路复用器，管理一个连接中所有的逻辑数据流，负责打开数据流以及将收到的数据流帧分发到对应的数据流中。
+ * <p>
+ * Multiplexer that manages all logical streams in a connection. It opens streams and dispatches received stream frames to the corresponding streams.
+ * <p>
+ * 分发操作不会阻塞，因此可以直接在连接的读取线程中调用 {@link #onFrame(Frame)}。
+ * <p>
+ * Dispatching never blocks, so {@link #onFrame(Frame)} can be called directly on the reading thread of the connection.
+ *
+ * @author 赵凌宇
+ */
+public final class StreamMultiplexer {
+
+    private final FrameSender frameSender;
+    private final OpenListener openListener;
+    private final Map<Integer, MuxStream> streams = new ConcurrentHashMap<>();
+    private final AtomicInteger streamId = new AtomicInteger();
+    private final int receiveWindow = Math.max(MuxStream.INITIAL_WINDOW, ConfigureConstantArea.MULTIPLEX_STREAM_WINDOW);
+    private volatile boolean closed = false;
+
+    /**
+     * @param frameSender  将帧发送到底层连接的发送者
+     *                     <p>
+     *                     Sender that sends frames to the underlying connection
+     * @param openListener 对方打开新数据流时的监听器，不需要接收数据流的一端可以传递 null
+     *                     <p>
+     *                     Listener called when the peer opens a new stream, the end that does not accept streams can pass null
+     */
+    public StreamMultiplexer(FrameSender frameSender, OpenListener openListener) {
+        this.frameSender = frameSender;
+        this.openListener = openListener;
+    }
+
+    /**
+     * 打开一个新的逻辑数据流，并通知对方。
+     * <p>
+     * Open a new logical stream and notify the peer.
+     *
+     * @param kind      数据流的类型
+     *                  <p>
+     *                  Kind of the stream
+     * @param requestId 打开数据流的命令对应的请求编号
+     *                  <p>
+     *                  The request id of the command that opens the stream
+     * @return 新的数据流
+     * <p>
+     * The new stream
+     * @throws IOException 连接已经关闭或发送数据时发生的异常
+     */
+    public MuxStream open(byte kind, int requestId) throws IOException {
+        if (this.closed) {
+            throw new IOException("The multiplexed connection is closed.");
+        }
+        MuxStream muxStream = register(this.streamId.incrementAndGet(), kind, requestId);
+        byte[] payload = ByteBuffer.allocate(5).put(kind).putInt(requestId).array();
+        send(FrameCodec.encode(Frame.TYPE_OPEN, muxStream.getId(), payload, 0, payload.length));
+        grantExtraWindow(muxStream);
+        return muxStream;
+    }
+
+    /**
+     * 处理一个从连接中接收到的帧。
+     * <p>
+     * Handle a frame received from the connection.
+     *
+     * @param frame 接收到的帧
+     *              <p>
+     *              The frame received
+     * @return 如果返回true，代表该帧是数据流帧并已经被处理，反之代表该帧需要由调用者处理。
+     * <p>
+     * If true is returned, the frame is a stream frame and has been handled, otherwise the caller needs to handle it.
+     * @throws IOException 帧格式错误或发送数据时发生的异常
+     */
+    public boolean onFrame(Frame frame) throws IOException {
+        MuxStream muxStream;
+        switch (frame.getType()) {
+            case Frame.TYPE_OPEN:
+                ByteBuffer byteBuffer = ByteBuffer.wrap(frame.getPayload());
+                if (byteBuffer.remaining() < 5) {
+                    throw new IOException("Malformed stream open frame: " + frame);
+                }
+                muxStream = register(frame.getRequestId(), byteBuffer.get(), byteBuffer.getInt());
+                grantExtraWindow(muxStream);
+                if (this.openListener != null) {
+                    this.openListener.onOpen(muxStream);
+                } else {
+                    muxStream.close();
+                }
+                return true;
+            case Frame.TYPE_DATA:
+                muxStream = this.streams.get(frame.getRequestId());
+                if (muxStream != null) {
+                    muxStream.receive(frame.getPayload());
+                }
+                return true;
+            case Frame.TYPE_WINDOW:
+                muxStream = this.streams.get(frame.getRequestId());
+                if (muxStream != null && frame.getPayload().length >= 4) {
+                    muxStream.addWindow(ByteBuffer.wrap(frame.getPayload()).getInt());
+                }
+                return true;
+            case Frame.TYPE_CLOSE:
+                muxStream = this.streams.get(frame.getRequestId());
+                if (muxStream != null) {
+                    muxStream.remoteClose();
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return 当前处于打开状态的数据流数量。
+     * <p>
+     * The number of streams currently open.
+     */
+    public int getStreamCount() {
+        return this.streams.size();
+    }
+
+    /**
+     * 在底层连接断开的时候调用，所有的数据流都会被标记为对方已关闭，阻塞中的读写操作会立即返回。
+     * <p>
+     * Called when the underlying connection is broken. All streams are marked as closed by the peer, and blocked reads and writes return immediately.
+     */
+    public void closeAll() {
+        this.closed = true;
+        for (MuxStream muxStream : new ArrayList<>(this.streams.values())) {
+            muxStream.remoteClose();
+        }
+        this.streams.clear();
+    }
+
+    private MuxStream register(int id, byte kind, int requestId) {
+        MuxStream muxStream = new MuxStream(this, id, kind, requestId, this.receiveWindow);
+        this.streams.put(id, muxStream);
+        return muxStream;
+    }
+
+    private void grantExtraWindow(MuxStream muxStream) throws IOException {
+        // 配置的接收窗口大于协议初始窗口时，直接将多出来的部分告知对方
+        int extra = this.receiveWindow - MuxStream.INITIAL_WINDOW;
+        if (extra > 0) {
+            sendWindow(muxStream.getId(), extra);
+        }
+    }
+
+    void sendWindow(int id, int credit) throws IOException {
+        byte[] payload = ByteBuffer.allocate(4).putInt(credit).array();
+        send(FrameCodec.encode(Frame.TYPE_WINDOW, id, payload, 0, payload.length));
+    }
+
+    void send(byte[] frame) throws IOException {
+        if (this.closed) {
+            throw new IOException("The multiplexed connection is closed.");
+        }
+        this.frameSender.send(frame);
+    }
+
+    void sendBulk(byte[] frame) throws IOException {
+        if (this.closed) {
+            throw new IOException("The multiplexed connection is closed.");
+        }
+        this.frameSender.sendBulk(frame);
+    }
+
+    void remove(int id) {
+        if (this.streams.remove(id) != null) {
+            ConfigureConstantArea.LOGGER.log(Level.FINE, "Stream closed => " + id);
+        }
+    }
+
+    /**
+     * 对方打开新数据流时的监听器。
+     * <p>
+     * Listener called when the peer opens a new stream.
+     */
+    public interface OpenListener {
+
+        /**
+         * @param muxStream 对方打开的数据流
+         *                  <p>
+         *                  The stream opened by the peer
+         */
+        void onOpen(MuxStream muxStream);
+    }
+}
@@ -0,0 +1,317 @@
+package dialogue.core.channel;
+
+import dialogue.ConfigureConstantArea;
+import dialogue.utils.BufferPool;
+import dialogue.utils.IOUtils;
+import dialogue.utils.ThreadUtils;
+import dialogue.utils.progressEvent.ProgressFileNumber;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.zip.Checksum;
+
+/**
+ * 分片传输工具类，一个文件会被切分成多个连续的字节区间，每一个区间都通过独立的数据通道同时传输，接收方会将每一个区间直接写入到文件中对应的位置。
+ * <p>
+ * Striped transfer utility. A file is split into several contiguous byte ranges, each range is transferred through its own data channel at the same time, and the receiver writes each range directly at its position in the file.
+ * <p>
+ * 每一个分片通道都以区间的起始位置(8字节)与长度(8字节)开头，随后是区间的数据与区间的校验尾，发送完毕之后通道会被关闭；接收方会校验每一个区间的校验和，以及所有的区间是否刚好拼接成完整的文件。
+ * <p>
+ * Each stripe channel starts with the start position (8 bytes) and length (8 bytes) of its range, followed by the data and the checksum trailer of the range, and the channel is closed after sending. The receiver verifies the checksum of every range and that all ranges exactly make up the whole file.
+ *
+ * @author 赵凌宇
+ */
+public final class StripedTransfer {
+
+    /**
+     * 命令中指定分片数量的选项，例如 get -p 8 [Remote File Path] [local File Path]。
+     * <p>
+     * The option that specifies the number of stripes in a command, for example get -p 8 [Remote File Path] [local File Path].
+     */
+    public final static String OPTION = "-p";
+    /**
+     * 一个文件最多可以被切分成的分片数量。
+     * <p>
+     * The maximum number of stripes a file can be split into.
+     */
+    public final static int MAX_STRIPES = 64;
+    /**
+     * 每一个分片的最小字节数，文件较小的时候分片数量会被减少，避免为很少的数据打开过多的通道。
+     * <p>
+     * The minimum number of bytes per stripe. The number of stripes is reduced for small files to avoid opening too many channels for little data.
+     */
+    public final static long MIN_STRIPE_SIZE = 1 << 20;
+
+    private StripedTransfer() {
+    }
+
+    /**
+     * 从命令中解析分片选项，如果下一个参数是 {@link #OPTION}，它与分片数量都会被消耗，否则匹配器的位置不会改变。
+     * <p>
+     * Parse the stripe option from the command. If the next argument is {@link #OPTION}, it and the number of stripes are consumed, otherwise the position of the matcher is unchanged.
+     *
+     * @param matcher 已经匹配过命令名称的命令匹配器
+     *                <p>
+     *                Command matcher that has already matched the command name
+     * @return 命令中指定的分片数量，没有指定时返回 1
+     * <p>
+     * The number of stripes specified in the command, or 1 if not specified
+     */
+    public static int parseStripes(Matcher matcher) {
+        int start = matcher.start();
+        if (matcher.find() && OPTION.equals(matcher.group(1))) {
+            if (matcher.find()) {
+                try {
+                    return Math.max(1, Math.min(MAX_STRIPES, Integer.parseInt(matcher.group(1))));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("The number of stripes must be an integer: " + matcher.group(1));
+                }
+            }
+            throw new IllegalArgumentException("Missing the number of stripes after " + OPTION);
+        }
+        // 不是分片选项，重新匹配上一个参数，使得下一次匹配依旧从这个参数开始
+        matcher.region(start, matcher.regionEnd());
+        matcher.find();
+        return 1;
+    }
+
+    /**
+     * 根据文件大小计算实际使用的分片数量。
+     * <p>
+     * Calculate the number of stripes actually used according to the file size.
+     *
+     * @param size      文件的字节数
+     *                  <p>
+     *                  Number of bytes in the file
+     * @param requested 命令中指定的分片数量
+     *                  <p>
+     *                  The number of stripes specified in the command
+     * @return 实际使用的分片数量，至少是 1
+     * <p>
+     * The number of stripes actually used, at least 1
+     */
+    public static int stripeCount(long size, int requested) {
+        long bySize = (size + MIN_STRIPE_SIZE - 1) / MIN_STRIPE_SIZE;
+        return (int) Math.max(1, Math.min(Math.min(requested, MAX_STRIPES), bySize));
+    }
+
+    /**
+     * 检查对方告知的分片数量，需要在为分片分配任何资源或者打开任何通道之前调用。
+     * <p>
+     * Check the number of stripes announced by the peer. It must be called before anything is allocated or any channel is opened for the stripes.
+     *
+     * @param size  对方告知的文件字节数
+     *              <p>
+     *              Number of bytes in the file announced by the peer
+     * @param count 对方告知的分片数量
+     *              <p>
+     *              The number of stripes announced by the peer
+     * @return 通过检查的分片数量
+     * <p>
+     * The number of stripes that passed the check
+     * @throws IOException 文件大小为负数，或者分片数量不在 1 到 {@link #MAX_STRIPES} 之间，或者超过了 {@link #stripeCount(long, int)} 对这个文件大小允许的数量
+     *                     <p>
+     *                     The file size is negative, or the number of stripes is not between 1 and {@link #MAX_STRIPES}, or it exceeds what {@link #stripeCount(long, int)} allows for this file size
+     */
+    public static int checkCount(long size, int count) throws IOException {
+        if (size < 0 || count < 1 || count > MAX_STRIPES || count > stripeCount(size, MAX_STRIPES)) {
+            throw new IOException("Invalid number of stripes: " + count + " for " + size + " bytes.");
+        }
+        return count;
+    }
+
+    /**
+     * 将文件切分成与通道数量相同的区间，并通过这些通道同时发送，所有的通道在发送完毕之后都会被关闭。
+     * <p>
+     * Split the file into as many ranges as there are channels and send them through these channels at the same time. All channels are closed after sending.
+     *
+     * @param source   数据来源的文件通道
+     *                 <p>
+     *                 File channel of the data source
+     * @param size     需要发送的字节数量
+     *                 <p>
+     *                 The number of bytes to send
+     * @param channels 分片通道
+     *                 <p>
+     *                 Stripe channels
+     * @throws IOException 任意一个分片发送失败时抛出的异常
+     */
+    public static void send(FileChannel source, long size, List<DataChannel> channels) throws IOException {
+        int count = channels.size();
+        AtomicReference<IOException> error = new AtomicReference<>();
+        List<Runnable> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final DataChannel channel = channels.get(i);
+            final long offset = size * i / count;
+            final long length = size * (i + 1) / count - offset;
+            tasks.add(new StripeTask(channels, error) {
+                @Override
+                void transfer() throws IOException {
+                    DataOutputStream dataOutputStream = new DataOutputStream(channel.getOutputStream());
+                    dataOutputStream.writeLong(offset);
+                    dataOutputStream.writeLong(length);
+                    dataOutputStream.flush();
+                    // 校验和在读取磁盘的一侧计算，数据依旧由数据通道直接发送
+                    Checksum checksum = TransferChecksum.create();
+                    long sent = ZeroCopyTransfer.send(source, offset, length, channel, null, checksum);
+                    if (sent != length) {
+                        throw new EOFException("The file became shorter while sending the range starting at " + offset);
+                    }
+                    TransferChecksum.writeTrailer(dataOutputStream, checksum);
+                    dataOutputStream.flush();
+                    channel.close();
+                }
+            });
+        }
+        runAll(tasks, error);
+    }
+
+    /**
+     * 通过所有的分片通道同时接收数据，并将每一个区间写入到文件中对应的位置，接收完毕之后校验所有的区间是否刚好拼接成完整的文件。
+     * <p>
+     * Receive data through all stripe channels at the same time, write each range at its position in the file, and verify after receiving that all ranges exactly make up the whole file.
+     *
+     * @param target       数据写入的文件通道
+     *                     <p>
+     *                     File channel the data is written to
+     * @param size         文件的字节数
+     *                     <p>
+     *                     Number of bytes in the file
+     * @param channels     分片通道，接收完毕之后会被关闭
+     *                     <p>
+     *                     Stripe channels, closed after receiving
+     * @param fileProgress 文件传输进度条对象，如果为 null 代表不展示进度
+     *                     <p>
+     *                     File transfer progress object, null means no progress is shown
+     * @throws IOException 任意一个分片接收失败或者区间不完整时抛出的异常
+     */
+    public static void receive(FileChannel target, long size, List<DataChannel> channels, ProgressFileNumber fileProgress) throws IOException {
+        int count = channels.size();
+        final long[][] ranges = new long[count][];
+        AtomicReference<IOException> error = new AtomicReference<>();
+        List<Runnable> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            final DataChannel channel = channels.get(i);
+            tasks.add(new StripeTask(channels, error) {
+                @Override
+                void transfer() throws IOException {
+                    DataInputStream dataInputStream = new DataInputStream(channel.getInputStream());
+                    long offset = dataInputStream.readLong();
+                    long length = dataInputStream.readLong();
+                    if (offset < 0 || length < 0 || offset + length > size) {
+                        throw new IOException("Illegal stripe range: " + offset + " + " + length + " > " + size);
+                    }
+                    byte[] buffer = BufferPool.acquire(ConfigureConstantArea.TCP_BUFFER_MAX_SIZE);
+                    Checksum checksum = TransferChecksum.create();
+                    long position = offset;
+                    long end = offset + length;
+                    try {
+                        while (position < end) {
+                            int read = dataInputStream.read(buffer, 0, (int) Math.min(buffer.length, end - position));
+                            if (read < 0) {
+                                throw new EOFException("The stripe starting at " + offset + " ended after " + (position - offset) + " of " + length + " bytes.");
+                            }
+                            if (checksum != null) {
+                                checksum.update(buffer, 0, read);
+                            }
+                            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+                            while (byteBuffer.hasRemaining()) {
+                                position += target.write(byteBuffer, position);
+                            }
+                            if (fileProgress != null) {
+                                synchronized (fileProgress) {
+                                    fileProgress.function2(read);
+                                }
+                            }
+                        }
+                    } finally {
+                        BufferPool.release(buffer);
+                    }
+                    TransferChecksum.verify(dataInputStream, checksum, null);
+                    ranges[index] = new long[]{offset, length};
+                    channel.close();
+                }
+            });
+        }
+        if (fileProgress != null) {
+            fileProgress.function1(0);
+        }
+        runAll(tasks, error);
+        if (fileProgress != null) {
+            fileProgress.function3(0);
+        }
+        // 所有的区间按照起始位置排序之后，必须首尾相接并且刚好覆盖整个文件
+        Arrays.sort(ranges, (a, b) -> Long.compare(a[0], b[0]));
+        long expected = 0;
+        for (long[] range : ranges) {
+            if (range[0] != expected) {
+                throw new IOException("The stripes do not make up the whole file, missing bytes at " + expected);
+            }
+            expected += range[1];
+        }
+        if (expected != size) {
+            throw new IOException("The stripes do not make up the whole file, received " + expected + " of " + size + " bytes.");
+        }
+    }
+
+    /**
+     * 在独立的线程中运行每一个分片任务，等待所有任务结束，并抛出第一个发生的异常。
+     */
+    private static void runAll(List<Runnable> tasks, AtomicReference<IOException> error) throws IOException {
+        Thread[] threads = new Thread[tasks.size()];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = ThreadUtils.start("dialogue-stripe-" + i, tasks.get(i));
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the stripes.", e);
+            }
+        }
+        if (error.get() != null) {
+            throw error.get();
+        }
+    }
+
+    /**
+     * 一个分片的传输任务，任意一个分片失败时会关闭所有的分片通道，使得其它分片不会一直等待。
+     */
+    private abstract static class StripeTask implements Runnable {
+
+        private final List<DataChannel> channels;
+        private final AtomicReference<IOException> error;
+
+        StripeTask(List<DataChannel> channels, AtomicReference<IOException> error) {
+            this.channels = channels;
+            this.error = error;
+        }
+
+        abstract void transfer() throws IOException;
+
+        @Override
+        public void run() {
+            try {
+                transfer();
+            } catch (IOException | RuntimeException e) {
+                // 只记录最先发生的异常，其它分片因为通道被关闭而产生的异常会被忽略
+                if (this.error.compareAndSet(null, e instanceof IOException ? (IOException) e : new IOException(e))) {
+                    for (DataChannel channel : this.channels) {
+                        IOUtils.close(channel);
+                    }
+                }
+            }
+        }
+    }
+}
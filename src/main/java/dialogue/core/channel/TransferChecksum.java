@@ -0,0 +1,203 @@
+package dialogue.core.channel;
+
+import dialogue.ConfigureConstantArea;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.util.zip.Checksum;
+
+/**
+ * 文件传输的完整性校验工具类，发送方在发送数据的同时计算 CRC32C 校验和，并在数据之后发送校验尾；接收方在接收数据的同时计算校验和，读取校验尾之后进行比较。
+ * <p>
+ * Integrity check utility of file transfers. The sender computes the CRC32C checksum while sending the data and sends a checksum trailer after the data. The receiver computes the checksum while receiving the data and compares it after reading the trailer.
+ * <p>
+ * 校验尾格式：[算法编号(1字节)][校验和(4字节)]，算法编号为 0 的时候代表发送方没有计算校验和，此时没有校验和字段。
+ * 校验和在数据经过的时候计算，不会再次读取文件；运行在 Java 9 及以上的版本时使用 JDK 中由硬件加速的 {@code java.util.zip.CRC32C}，否则使用纯 Java 的实现。
+ * <p>
+ * Trailer format: [algorithm id (1 byte)][checksum (4 bytes)]. Algorithm id 0 means the sender did not compute a checksum, and the checksum field is absent.
+ * The checksum is computed while the data passes by and the file is never read again. On Java 9 and later the hardware accelerated {@code java.util.zip.CRC32C} of the JDK is used, otherwise a pure Java implementation.
+ *
+ * @author 赵凌宇
+ */
+public final class TransferChecksum {
+
+    /**
+     * 校验尾中代表没有校验和的算法编号。
+     * <p>
+     * Algorithm id in the trailer that stands for no checksum.
+     */
+    public final static byte NONE = 0;
+    /**
+     * 校验尾中代表 CRC32C 的算法编号。
+     * <p>
+     * Algorithm id in the trailer that stands for CRC32C.
+     */
+    public final static byte CRC32C = 1;
+
+    private final static Constructor<? extends Checksum> JDK_CRC32C = findJdkCrc32c();
+
+    private TransferChecksum() {
+    }
+
+    /**
+     * 根据配置文件中的 file.checksum 创建一个校验和对象。
+     * <p>
+     * Create a checksum object according to file.checksum in the configuration file.
+     *
+     * @return 一个新的 CRC32C 校验和对象，如果配置中关闭了校验，返回 null
+     * <p>
+     * A new CRC32C checksum object, or null if checksums are disabled in the configuration
+     */
+    public static Checksum create() {
+        return ConfigureConstantArea.FILE_CHECKSUM ? newCrc32c() : null;
+    }
+
+    /**
+     * @return 一个新的 CRC32C 校验和对象，优先使用 JDK 中的实现。
+     * <p>
+     * A new CRC32C checksum object, the implementation of the JDK is preferred.
+     */
+    public static Checksum newCrc32c() {
+        if (JDK_CRC32C != null) {
+            try {
+                return JDK_CRC32C.newInstance();
+            } catch (ReflectiveOperationException e) {
+                // 构造函数是公开的无参构造函数，这里不会发生
+            }
+        }
+        return new PureCrc32c();
+    }
+
+    /**
+     * 由发送方调用，在数据之后写入校验尾，数据流由调用者刷新。
+     * <p>
+     * Called by the sender to write the trailer after the data, the stream is flushed by the caller.
+     *
+     * @param outputStream 目标数据流
+     *                     <p>
+     *                     Target stream
+     * @param checksum     已经计算了所有发送数据的校验和对象，为 null 代表没有计算校验和
+     *                     <p>
+     *                     Checksum object that has covered all the data sent, null means no checksum was computed
+     * @throws IOException 写入数据时发生的异常
+     */
+    public static void writeTrailer(OutputStream outputStream, Checksum checksum) throws IOException {
+        if (checksum == null) {
+            outputStream.write(NONE);
+            return;
+        }
+        int value = (int) checksum.getValue();
+        // 一次写入整个校验尾，避免未经缓冲的数据通道发出过小的数据包
+        outputStream.write(new byte[]{CRC32C, (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value});
+    }
+
+    /**
+     * 由接收方调用，读取校验尾并与接收时计算的校验和比较，不一致的时候会删除接收到的文件并抛出异常。
+     * <p>
+     * Called by the receiver to read the trailer and compare it with the checksum computed while receiving. On a mismatch the received file is deleted and an exception is thrown.
+     *
+     * @param inputStream 数据来源，紧接着数据之后的就是校验尾
+     *                    <p>
+     *                    Source of the data, the trailer immediately follows the data
+     * @param checksum    接收时计算的校验和对象，为 null 代表接收方没有计算校验和，此时校验尾只会被读取
+     *                    <p>
+     *                    Checksum object computed while receiving. Null means the receiver did not compute a checksum, and the trailer is only read
+     * @param file        接收到的文件，校验失败的时候会被删除，为 null 代表没有需要删除的文件
+     *                    <p>
+     *                    The received file, deleted when the check fails. Null means there is no file to delete
+     * @throws IOException 读取数据、校验尾格式错误或者校验和不一致时发生的异常
+     */
+    public static void verify(InputStream inputStream, Checksum checksum, File file) throws IOException {
+        DataInputStream dataInputStream = inputStream instanceof DataInputStream ? (DataInputStream) inputStream : new DataInputStream(inputStream);
+        byte id = dataInputStream.readByte();
+        if (id == NONE) {
+            return;
+        }
+        if (id != CRC32C) {
+            throw new IOException("Unsupported checksum algorithm: " + id);
+        }
+        int expected = dataInputStream.readInt();
+        if (checksum == null) {
+            return;
+        }
+        int actual = (int) checksum.getValue();
+        if (actual != expected) {
+            if (file != null && file.delete()) {
+                ConfigureConstantArea.LOGGER.warning("Deleted the corrupted file " + file);
+            }
+            throw new IOException("CRC32C mismatch" + (file == null ? "" : " on " + file) + ", expected " + Integer.toHexString(expected) + " but received " + Integer.toHexString(actual));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Constructor<? extends Checksum> findJdkCrc32c() {
+        try {
+            return (Constructor<? extends Checksum>) Class.forName("java.util.zip.CRC32C").getConstructor();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // Java 8 中没有这个类
+            return null;
+        }
+    }
+
+    /**
+     * 纯 Java 的 CRC32C 实现，每次处理 8 个字节，只在 JDK 没有提供 CRC32C 的时候使用。
+     */
+    private final static class PureCrc32c implements Checksum {
+
+        private final static int[][] TABLES = new int[8][256];
+
+        static {
+            for (int i = 0; i < 256; i++) {
+                int crc = i;
+                for (int j = 0; j < 8; j++) {
+                    crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0x82F63B78 : crc >>> 1;
+                }
+                TABLES[0][i] = crc;
+            }
+            for (int i = 0; i < 256; i++) {
+                for (int t = 1; t < 8; t++) {
+                    int previous = TABLES[t - 1][i];
+                    TABLES[t][i] = (previous >>> 8) ^ TABLES[0][previous & 0xff];
+                }
+            }
+        }
+
+        private int crc = 0xffffffff;
+
+        @Override
+        public void update(int b) {
+            this.crc = (this.crc >>> 8) ^ TABLES[0][(this.crc ^ b) & 0xff];
+        }
+
+        @Override
+        public void update(byte[] b, int off, int len) {
+            int crc = this.crc;
+            int end = off + len;
+            int[][] t = TABLES;
+            while (end - off >= 8) {
+                int low = crc ^ ((b[off] & 0xff) | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff) << 16 | (b[off + 3] & 0xff) << 24);
+                crc = t[7][low & 0xff] ^ t[6][(low >>> 8) & 0xff] ^ t[5][(low >>> 16) & 0xff] ^ t[4][low >>> 24]
+                        ^ t[3][b[off + 4] & 0xff] ^ t[2][b[off + 5] & 0xff] ^ t[1][b[off + 6] & 0xff] ^ t[0][b[off + 7] & 0xff];
+                off += 8;
+            }
+            while (off < end) {
+                crc = (crc >>> 8) ^ t[0][(crc ^ b[off++]) & 0xff];
+            }
+            this.crc = crc;
+        }
+
+        @Override
+        public long getValue() {
+            return ~this.crc & 0xffffffffL;
+        }
+
+        @Override
+        public void reset() {
+            this.crc = 0xffffffff;
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package dialogue.core.channel;
+
+import dialogue.ConfigureConstantArea;
+import dialogue.utils.ThreadUtils;
+import dialogue.utils.TokenBucket;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+
+/**
+ * 传输调度器，主控与被控都会通过它执行文件传输命令，它负责限制同时进行的传输数量，并通过令牌桶限制本机所有传输的总带宽与每一个传输的带宽。
+ * <p>
+ * Transfer scheduler. Both the master and the controlled end run file transfer commands through it. It caps the number of simultaneous transfers and limits, through token buckets, the total bandwidth of all transfers on this host and the bandwidth of each transfer.
+ * <p>
+ * 传输命令执行期间打开的文件数据通道会被包装成限速的数据通道，多路复用模式中这些数据流的数据帧会进入低优先级的发送队列，控制帧与交互命令的数据总是优先发送。
+ * 其它命令不经过调度器，因此不会在传输的后面排队。所有的限制都可以通过 limit 命令在运行中修改，修改会立即作用于正在进行的传输。
+ * <p>
+ * File data channels opened while a transfer command runs are wrapped into rate limited channels. In the multiplexed mode the data frames of these streams go to the low priority send queue, so control frames and the data of interactive commands are always sent first.
+ * Other commands do not go through the scheduler and therefore never queue behind transfers. All limits can be changed while running through the limit command, and the change applies to ongoing transfers immediately.
+ *
+ * @author 赵凌宇
+ */
+public final class TransferScheduler {
+
+    /**
+     * 限速数据通道一次最多申请的令牌数量，较大的写入与文件发送会被拆开，使得速率的修改能够尽快生效。
+     */
+    final static int SHAPING_CHUNK = 256 * 1024;
+
+    private final static TokenBucket HOST_BUCKET = new TokenBucket(ConfigureConstantArea.TRANSFER_HOST_RATE);
+    private final static ThreadLocal<Transfer> CURRENT = new ThreadLocal<>();
+    /**
+     * 当前线程是否持有一个已经提前获取到的传输名额，它会被当前线程中下一次调用的 run 使用。
+     */
+    private final static ThreadLocal<Boolean> ASSIGNED = new ThreadLocal<>();
+    private final static Set<Transfer> ACTIVE = ConcurrentHashMap.newKeySet();
+    /**
+     * 传输名额的锁，使用显式锁使得等待名额的虚拟线程不会占用载体线程。
+     */
+    private final static ReentrantLock SLOTS = new ReentrantLock();
+    private final static Condition SLOT_FREED = SLOTS.newCondition();
+    /**
+     * 没有获取到名额的非阻塞申请者，名额被释放时这里所有的回调都会被调用一次，之后被移除。
+     */
+    private final static List<Runnable> SLOT_LISTENERS = new ArrayList<>();
+    private final static ExecutorService EXECUTOR = ThreadUtils.newTaskExecutor(
+            "dialogue-transfer-", ConfigureConstantArea.TRANSFER_EXECUTOR_THREADS, ConfigureConstantArea.TRANSFER_EXECUTOR_QUEUE_SIZE
+    );
+
+    private static volatile long transferRate = ConfigureConstantArea.TRANSFER_RATE;
+    private static int maxTransfers = ConfigureConstantArea.TRANSFER_MAX_CONCURRENT;
+    private static int running = 0;
+    private static int waiting = 0;
+
+    private TransferScheduler() {
+    }
+
+    /**
+     * 在当前线程中执行一个文件传输命令，同时进行的传输数量达到上限的时候会等待，执行期间打开的文件数据通道都会被限速。
+     * <p>
+     * Run a file transfer command on the current thread. It waits when the number of simultaneous transfers has reached the cap, and all file data channels opened while it runs are rate limited.
+     *
+     * @param task 需要执行的传输命令
+     *             <p>
+     *             The transfer command to run
+     * @return 传输命令的运行结果
+     * <p>
+     * The result of the transfer command
+     * @throws IOException 传输命令抛出的异常，或者等待时被中断的时候抛出的异常
+     */
+    public static String run(TransferTask task) throws IOException {
+        if (CURRENT.get() != null) {
+            // 传输中嵌套的传输共用外层的名额与带宽
+            return task.run();
+        }
+        if (ASSIGNED.get() != null) {
+            // 名额已经在提交到当前线程之前获取到了，这里直接使用
+            ASSIGNED.remove();
+        } else {
+            acquireSlot();
+        }
+        Transfer transfer = new Transfer(transferRate);
+        ACTIVE.add(transfer);
+        CURRENT.set(transfer);
+        try {
+            return task.run();
+        } finally {
+            CURRENT.remove();
+            ACTIVE.remove(transfer);
+            releaseSlot();
+        }
+    }
+
+    /**
+     * 不等待的尝试获取一个传输名额，调用者可以在获取成功之后再将传输命令交给工作线程，使得等待名额的命令不会占用工作线程。
+     * <p>
+     * Try to take a transfer slot without waiting, so that the caller can hand the transfer command to a worker thread only after a slot is taken, and commands waiting for a slot do not occupy worker threads.
+     *
+     * @param onFreed 获取失败的时候，在之后有名额被释放时调用一次的回调，它会在释放名额的线程中执行，因此不能阻塞
+     *                <p>
+     *                When no slot is taken, the callback invoked once when a slot is freed later. It runs on the thread releasing the slot, so it must not block
+     * @return 如果返回true，代表获取到了名额，它需要通过 {@link #assignSlot()} 交给执行传输命令的线程
+     * <p>
+     * If true is returned, a slot was taken, and it must be handed to the thread running the transfer command through {@link #assignSlot()}
+     */
+    public static boolean tryAcquireSlot(Runnable onFreed) {
+        SLOTS.lock();
+        try {
+            if (maxTransfers > 0 && running >= maxTransfers) {
+                SLOT_LISTENERS.add(onFreed);
+                return false;
+            }
+            running++;
+            return true;
+        } finally {
+            SLOTS.unlock();
+        }
+    }
+
+    /**
+     * 将通过 {@link #tryAcquireSlot(Runnable)} 获取到的名额交给当前线程，当前线程中下一次调用的 {@link #run(TransferTask)} 会直接使用它，不再等待。
+     * <p>
+     * Hand a slot taken through {@link #tryAcquireSlot(Runnable)} to the current thread. The next {@link #run(TransferTask)} on the current thread uses it directly without waiting.
+     */
+    public static void assignSlot() {
+        ASSIGNED.set(Boolean.TRUE);
+    }
+
+    /**
+     * 如果交给当前线程的名额没有被传输命令使用(例如命令在运行之前就失败了)，将其释放，否则什么也不做。
+     * <p>
+     * Release the slot handed to the current thread if no transfer command used it (for example the command failed before running), otherwise do nothing.
+     */
+    public static void releaseAssignedSlot() {
+        if (ASSIGNED.get() != null) {
+            ASSIGNED.remove();
+            releaseSlot();
+        }
+    }
+
+    /**
+     * 如果当前线程正在执行传输命令，将数据通道包装成限速的数据通道，否则直接返回原数据通道。
+     * <p>
+     * If the current thread is running a transfer command, wrap the data channel into a rate limited one, otherwise return the original channel.
+     *
+     * @param dataChannel 刚刚打开的文件数据通道
+     *                    <p>
+     *                    The file data channel just opened
+     * @return 需要交给执行器使用的数据通道
+     * <p>
+     * The data channel to hand to the actuator
+     * @throws IOException 获取数据流时发生的异常
+     */
+    public static DataChannel shape(DataChannel dataChannel) throws IOException {
+        Transfer transfer = CURRENT.get();
+        if (transfer == null) {
+            return dataChannel;
+        }
+        if (dataChannel instanceof MuxStream) {
+            ((MuxStream) dataChannel).markBulk();
+        }
+        return new ShapedDataChannel(dataChannel, transfer.bucket, HOST_BUCKET);
+    }
+
+    /**
+     * @return 用于异步执行传输命令的有界线程池，真正同时进行的传输数量依旧由调度器限制，线程池已满时提交任务会抛出 RejectedExecutionException。
+     * <p>
+     * The bounded thread pool used to run transfer commands asynchronously, the number of transfers really running at the same time is still capped by the scheduler. Submitting a task throws RejectedExecutionException when the pool is full.
+     */
+    public static ExecutorService executor() {
+        return EXECUTOR;
+    }
+
+    /**
+     * 根据 limit 命令中的参数修改限制，没有参数的时候只返回当前的状态。
+     * <p>
+     * Change the limits according to the arguments of the limit command. Without arguments only the current status is returned.
+     * <p>
+     * 参数格式：limit [-h 本机总速率] [-t 每个传输的速率] [-c 同时进行的传输数量]，速率的单位是字节每秒，可以使用 K、M、G 后缀，0 代表不限制。
+     * <p>
+     * Argument format: limit [-h host rate] [-t rate per transfer] [-c simultaneous transfers]. Rates are in bytes per second and may use the K, M and G suffixes, 0 means unlimited.
+     *
+     * @param matcher 已经匹配到命令名称的命令匹配器
+     *                <p>
+     *                Command matcher that has already matched the command name
+     * @return 修改之后的状态
+     * <p>
+     * The status after the change
+     */
+    public static String configure(Matcher matcher) {
+        long hostRate = -1, rate = -1;
+        int transfers = -1;
+        while (matcher.find()) {
+            String option = matcher.group(1);
+            if (!matcher.find()) {
+                throw new IllegalArgumentException("Missing the value after " + option + " => limit [-h hostRate] [-t transferRate] [-c transfers]");
+            }
+            String value = matcher.group(1);
+            switch (option) {
+                case "-h":
+                    hostRate = parseRate(value);
+                    break;
+                case "-t":
+                    rate = parseRate(value);
+                    break;
+                case "-c":
+                    transfers = (int) parseRate(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + option + " => limit [-h hostRate] [-t transferRate] [-c transfers]");
+            }
+        }
+        // 全部参数解析成功之后再修改，避免只生效了一部分
+        if (hostRate >= 0) {
+            HOST_BUCKET.setRate(hostRate);
+        }
+        if (rate >= 0) {
+            transferRate = rate;
+            for (Transfer transfer : ACTIVE) {
+                transfer.bucket.setRate(rate);
+            }
+        }
+        if (transfers >= 0) {
+            List<Runnable> listeners;
+            SLOTS.lock();
+            try {
+                maxTransfers = transfers;
+                SLOT_FREED.signalAll();
+                listeners = takeListeners();
+            } finally {
+                SLOTS.unlock();
+            }
+            listeners.forEach(Runnable::run);
+        }
+        return status();
+    }
+
+    /**
+     * @return 当前的限制以及正在进行与等待中的传输数量。
+     * <p>
+     * The current limits and the number of running and waiting transfers.
+     */
+    public static String status() {
+        SLOTS.lock();
+        try {
+            return "host rate: " + formatRate(HOST_BUCKET.getRate())
+                    + ", transfer rate: " + formatRate(transferRate)
+                    + ", max transfers: " + (maxTransfers == 0 ? "unlimited" : String.valueOf(maxTransfers))
+                    + ", running: " + running + ", waiting: " + waiting;
+        } finally {
+            SLOTS.unlock();
+        }
+    }
+
+    private static void acquireSlot() throws IOException {
+        SLOTS.lock();
+        try {
+            if (maxTransfers > 0 && running >= maxTransfers) {
+                ConfigureConstantArea.LOGGER.info("Waiting for a transfer slot, running transfers: " + running);
+            }
+            waiting++;
+            try {
+                while (maxTransfers > 0 && running >= maxTransfers) {
+                    SLOT_FREED.await();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a transfer slot.");
+            } finally {
+                waiting--;
+            }
+            running++;
+        } finally {
+            SLOTS.unlock();
+        }
+    }
+
+    private static void releaseSlot() {
+        List<Runnable> listeners;
+        SLOTS.lock();
+        try {
+            running--;
+            SLOT_FREED.signalAll();
+            listeners = takeListeners();
+        } finally {
+            SLOTS.unlock();
+        }
+        // 回调会重新申请名额，因此在锁的外面调用
+        listeners.forEach(Runnable::run);
+    }
+
+    private static List<Runnable> takeListeners() {
+        if (SLOT_LISTENERS.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Runnable> listeners = new ArrayList<>(SLOT_LISTENERS);
+        SLOT_LISTENERS.clear();
+        return listeners;
+    }
+
+    private static long parseRate(String value) {
+        String s = value.trim().toUpperCase(Locale.ROOT);
+        long unit = 1;
+        if (s.endsWith("K")) {
+            unit = 1L << 10;
+        } else if (s.endsWith("M")) {
+            unit = 1L << 20;
+        } else if (s.endsWith("G")) {
+            unit = 1L << 30;
+        }
+        if (unit != 1) {
+            s = s.substring(0, s.length() - 1);
+        }
+        try {
+            long rate = Long.parseLong(s);
+            if (rate < 0) {
+                throw new IllegalArgumentException("The limit can not be negative: " + value);
+            }
+            return rate * unit;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The limit must be an integer with an optional K, M or G suffix: " + value);
+        }
+    }
+
+    private static String formatRate(long rate) {
+        return rate == 0 ? "unlimited" : rate + " B/s";
+    }
+
+    /**
+     * 传输命令，与执行器的运行函数一致。
+     * <p>
+     * Transfer command, the same as the run function of actuators.
+     */
+    public interface TransferTask {
+
+        /**
+         * @return 运行之后的结果的字符串形式
+         * <p>
+         * String form of the result after running
+         * @throws IOException 运行时发生的异常
+         */
+        String run() throws IOException;
+    }
+
+    /**
+     * 一个正在进行的传输，其中的令牌桶被这个传输打开的所有数据通道共用。
+     */
+    private final static class Transfer {
+        private final TokenBucket bucket;
+
+        private Transfer(long rate) {
+            this.bucket = new TokenBucket(rate);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package dialogue.core.channel;
+
+import dialogue.ConfigureConstantArea;
+import dialogue.utils.BufferPool;
+import dialogue.utils.IOUtils;
+import dialogue.utils.progressEvent.ProgressFileNumber;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.Checksum;
+
+/**
+ * 零拷贝文件发送工具类，文件数据通过数据通道的 {@link DataChannel#transferFrom(FileChannel, long, long)} 发送，套接字通道中由内核直接发送，不会被复制到用户空间中。
+ * <p>
+ * Zero-copy file send utility. File data is sent through {@link DataChannel#transferFrom(FileChannel, long, long)} of the data channel, which lets the kernel send it directly for socket channels without copying it into user space.
+ * <p>
+ * 需要校验和的时候，每一段数据会先在磁盘一侧读入缓冲区计算校验和，然后依旧由数据通道直接发送，刚刚读取过的数据还在页缓存中，发送时不会再次访问磁盘。
+ * 读取与发送之间文件被修改的时候，接收方会发现校验和不一致。
+ * <p>
+ * When a checksum is needed, every range is first read into a buffer on the disk side to compute the checksum, and then still sent directly by the data channel. The data just read is still in the page cache, so sending it does not touch the disk again.
+ * If the file is modified between the read and the send, the receiver finds that the checksum does not match.
+ *
+ * @author 赵凌宇
+ */
+public final class ZeroCopyTransfer {
+
+    private ZeroCopyTransfer() {
+    }
+
+    /**
+     * 将文件通道中从当前位置开始的指定数据量发送出去，不超过 {@link IOUtils#SMALL_FILE_SIZE} 的数据会被写入缓冲流中与相邻的数据一起发送，
+     * 更大的数据会先刷新缓冲流，再由数据通道直接发送。
+     * <p>
+     * Send the given amount of data starting at the current position of the file channel. Data not exceeding {@link IOUtils#SMALL_FILE_SIZE} is written into the buffered stream and sent together with the adjacent data,
+     * larger data flushes the buffered stream first and is then sent directly by the data channel.
+     *
+     * @param fileChannel  源文件通道，发送完毕之后它的位置会移动到发送数据的末尾
+     *                     <p>
+     *                     Source file channel, its position is moved to the end of the sent data afterwards
+     * @param size         需要发送的字节数量
+     *                     <p>
+     *                     The number of bytes to send
+     * @param outputStream 数据通道输出流之上的缓冲流
+     *                     <p>
+     *                     The buffered stream on top of the output stream of the data channel
+     * @param dataChannel  目标数据通道
+     *                     <p>
+     *                     Target data channel
+     * @param fileProgress 文件传输进度条对象，只有由数据通道直接发送的数据会展示进度，如果为 null 代表不展示进度
+     *                     <p>
+     *                     File transfer progress object, only data sent directly by the data channel shows progress, null means no progress is shown
+     * @param checksum     需要更新的校验和对象，如果为 null 代表不计算校验和
+     *                     <p>
+     *                     Checksum object to update, null means no checksum is computed
+     * @return 实际发送的字节数量
+     * <p>
+     * The number of bytes actually sent
+     * @throws IOException 读取文件或发送数据时发生的异常
+     */
+    public static long transfer(FileChannel fileChannel, long size, OutputStream outputStream, DataChannel dataChannel, ProgressFileNumber fileProgress, Checksum checksum) throws IOException {
+        long position = fileChannel.position();
+        long sent;
+        if (size <= IOUtils.SMALL_FILE_SIZE) {
+            sent = IOUtils.copy(fileChannel, position, size, outputStream, checksum);
+        } else {
+            outputStream.flush();
+            if (fileProgress != null) {
+                fileProgress.function1(0);
+            }
+            sent = send(fileChannel, position, size, dataChannel, fileProgress, checksum);
+            if (fileProgress != null) {
+                fileProgress.function3(0);
+            }
+        }
+        fileChannel.position(position + sent);
+        return sent;
+    }
+
+    /**
+     * 将文件中的一段数据由数据通道直接发送，调用之前通过数据通道输出流写入的数据需要已经被刷新。
+     * <p>
+     * Send a range of a file directly through the data channel. Data written through the output stream of the data channel before the call must already be flushed.
+     *
+     * @param source       数据来源的文件通道，它的位置不会改变
+     *                     <p>
+     *                     File channel of the data source, its position is not changed
+     * @param position     数据在文件中的起始位置
+     *                     <p>
+     *                     The start position of the data in the file
+     * @param count        需要发送的字节数量
+     *                     <p>
+     *                     The number of bytes to send
+     * @param dataChannel  目标数据通道
+     *                     <p>
+     *                     Target data channel
+     * @param fileProgress 文件传输进度条对象，这里只会刷新进度，如果为 null 代表不展示进度
+     *                     <p>
+     *                     File transfer progress object, only the progress is refreshed here, null means no progress is shown
+     * @param checksum     需要更新的校验和对象，如果为 null 代表不计算校验和
+     *                     <p>
+     *                     Checksum object to update, null means no checksum is computed
+     * @return 实际发送的字节数量，只有文件提前结束的时候才会小于 count
+     * <p>
+     * The number of bytes actually sent, which is less than count only when the file ends early
+     * @throws IOException 读取文件或发送数据时发生的异常
+     */
+    public static long send(FileChannel source, long position, long count, DataChannel dataChannel, ProgressFileNumber fileProgress, Checksum checksum) throws IOException {
+        if (fileProgress == null && checksum == null) {
+            return dataChannel.transferFrom(source, position, count);
+        }
+        // 分段发送，使得进度条可以在发送过程中刷新，校验和也只需要一个分段大小的缓冲区
+        int step = ConfigureConstantArea.TCP_BUFFER_MAX_SIZE << 4;
+        byte[] buffer = checksum == null ? null : BufferPool.acquire(step);
+        long transferred = 0;
+        try {
+            while (transferred < count) {
+                long n = Math.min(step, count - transferred);
+                if (checksum != null) {
+                    n = read(source, position + transferred, buffer, (int) n);
+                    checksum.update(buffer, 0, (int) n);
+                }
+                long sent = n == 0 ? 0 : dataChannel.transferFrom(source, position + transferred, n);
+                transferred += sent;
+                if (fileProgress != null && sent > 0) {
+                    fileProgress.function2((int) sent);
+                }
+                if (sent < n || n == 0) {
+                    // 文件提前结束
+                    break;
+                }
+            }
+        } finally {
+            if (buffer != null) {
+                BufferPool.release(buffer);
+            }
+        }
+        return transferred;
+    }
+
+    private static int read(FileChannel source, long position, byte[] buffer, int length) throws IOException {
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, length);
+        while (byteBuffer.hasRemaining() && source.read(byteBuffer, position + byteBuffer.position()) > 0) {
+            // 读取满整个分段，文件提前结束的时候停止
+        }
+        return byteBuffer.position();
+    }
+}
@@ -0,0 +1,110 @@
+package dialogue.core.codec;
+
+import dialogue.utils.BufferPool;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 分块输入流，读取 {@link ChunkedOutputStream} 写入的分块数据，读取到结束块之后返回 -1，但不会关闭来源数据流，也不会读取结束块之后的任何数据。
+ * <p>
+ * Chunked input stream that reads the chunks written by {@link ChunkedOutputStream}. It returns -1 after the end chunk, but does not close the source stream and never reads any data after the end chunk.
+ *
+ * @author 赵凌宇
+ */
+public final class ChunkedInputStream extends InputStream {
+
+    private final DataInputStream dataInputStream;
+    private final int maxChunkSize;
+    private int remaining = 0;
+    private long read = 0;
+    private boolean end = false;
+
+    /**
+     * @param inputStream  来源数据流
+     *                     <p>
+     *                     Source stream
+     * @param maxChunkSize 允许的最大分块字节数，用于识别错误的数据
+     *                     <p>
+     *                     The maximum chunk size allowed, used to detect malformed data
+     */
+    public ChunkedInputStream(InputStream inputStream, int maxChunkSize) {
+        this.dataInputStream = new DataInputStream(inputStream);
+        this.maxChunkSize = maxChunkSize;
+    }
+
+    /**
+     * @return 已经从来源数据流中读取的字节数量，包含分块的长度。
+     * <p>
+     * The number of bytes read from the source stream, including the chunk lengths.
+     */
+    public long getRead() {
+        return this.read;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] bytes = new byte[1];
+        return read(bytes, 0, 1) < 0 ? -1 : bytes[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+        int n = this.dataInputStream.read(b, off, Math.min(len, this.remaining));
+        if (n < 0) {
+            throw new EOFException("The compressed data ended in the middle of a chunk.");
+        }
+        this.remaining -= n;
+        this.read += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return Math.min(this.remaining, this.dataInputStream.available());
+    }
+
+    /**
+     * 读取到结束块为止，丢弃剩余的数据，来源数据流不会被关闭。
+     * <p>
+     * Read until the end chunk and discard the remaining data, the source stream is not closed.
+     */
+    @Override
+    public void close() throws IOException {
+        byte[] buffer = BufferPool.acquire(8192);
+        try {
+            while (read(buffer, 0, buffer.length) >= 0) {
+                // 丢弃结束块之前的数据
+            }
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
+    private boolean nextChunk() throws IOException {
+        while (this.remaining == 0) {
+            if (this.end) {
+                return false;
+            }
+            int length = this.dataInputStream.readInt();
+            this.read += 4;
+            if (length < 0 || length > this.maxChunkSize) {
+                throw new IOException("Illegal chunk length: " + length);
+            }
+            if (length == 0) {
+                this.end = true;
+                return false;
+            }
+            this.remaining = length;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,109 @@
+package dialogue.core.codec;
+
+import dialogue.utils.BufferPool;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 分块输出流，写入的数据会以 [长度(4字节)][数据] 的分块形式写入目标数据流，关闭的时候写入长度为 0 的结束块，但不会刷新或关闭目标数据流。
+ * <p>
+ * Chunked output stream. Written data is sent to the target stream as [length (4 bytes)][data] chunks. Closing it writes an end chunk with length 0 but neither flushes nor closes the target stream.
+ * <p>
+ * 压缩后的数据使用这种形式传输，接收方通过结束块就能知道压缩数据的结尾，不会读取到属于后续协议的数据。
+ * <p>
+ * Compressed data is transferred in this form, so the receiver knows the end of the compressed data from the end chunk and never reads data belonging to the rest of the protocol.
+ *
+ * @author 赵凌宇
+ */
+public final class ChunkedOutputStream extends OutputStream {
+
+    private final static byte[] END_CHUNK = new byte[4];
+
+    private final OutputStream outputStream;
+    private final byte[] buffer;
+    private int length = 4;
+    private long written = 0;
+    private boolean closed = false;
+
+    /**
+     * @param outputStream 目标数据流
+     *                     <p>
+     *                     Target stream
+     * @param chunkSize    每一个分块最多携带的字节数量
+     *                     <p>
+     *                     The maximum number of bytes carried by one chunk
+     */
+    public ChunkedOutputStream(OutputStream outputStream, int chunkSize) {
+        this.outputStream = outputStream;
+        // 前4个字节留给分块长度，使得每一个分块只需要一次写入
+        this.buffer = BufferPool.acquire(chunkSize + 4);
+    }
+
+    /**
+     * @return 已经写入目标数据流的字节数量，包含分块的长度。
+     * <p>
+     * The number of bytes written to the target stream, including the chunk lengths.
+     */
+    public long getWritten() {
+        return this.written;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (this.length == this.buffer.length) {
+            writeChunk();
+        }
+        this.buffer[this.length++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (this.length == this.buffer.length) {
+                writeChunk();
+            }
+            int n = Math.min(len, this.buffer.length - this.length);
+            System.arraycopy(b, off, this.buffer, this.length, n);
+            this.length += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writeChunk();
+        this.outputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            writeChunk();
+            // 长度为 0 的结束块，目标数据流由调用者刷新，使得多个较小的压缩数据可以一起发送
+            this.outputStream.write(END_CHUNK);
+            this.written += 4;
+        } finally {
+            BufferPool.release(this.buffer);
+        }
+    }
+
+    private void writeChunk() throws IOException {
+        int n = this.length - 4;
+        if (n == 0) {
+            return;
+        }
+        this.buffer[0] = (byte) (n >>> 24);
+        this.buffer[1] = (byte) (n >>> 16);
+        this.buffer[2] = (byte) (n >>> 8);
+        this.buffer[3] = (byte) n;
+        this.outputStream.write(this.buffer, 0, this.length);
+        this.written += this.length;
+        this.length = 4;
+    }
+}
@@ -0,0 +1,55 @@
+package dialogue.core.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 文件传输使用的压缩算法，实现该接口并通过 {@link CodecManager#register(Codec)} 注册之后，就可以在配置文件中通过名称启用。
+ * <p>
+ * A compression codec used in file transfers. After implementing this interface and registering it through {@link CodecManager#register(Codec)}, it can be enabled by name in the configuration file.
+ * <p>
+ * 压缩后的数据会被分块传输，因此解压数据流不需要自己识别数据的结尾。
+ * <p>
+ * Compressed data is transferred in chunks, so the decompressing stream does not need to recognize the end of the data by itself.
+ *
+ * @author 赵凌宇
+ */
+public interface Codec {
+
+    /**
+     * @return 算法的编号，会在握手的时候发送给对方，0 代表原始数据，不能被使用。
+     * <p>
+     * The id of the codec, sent to the peer during the handshake. 0 stands for raw data and cannot be used.
+     */
+    byte getId();
+
+    /**
+     * @return 算法的名称，在配置文件中通过它启用算法。
+     * <p>
+     * The name of the codec, used to enable it in the configuration file.
+     */
+    String getName();
+
+    /**
+     * @param outputStream 压缩数据的去向
+     *                     <p>
+     *                     Destination of the compressed data
+     * @return 将写入的数据压缩之后写入到 outputStream 的数据流，关闭它的时候需要写出所有剩余的数据并关闭 outputStream
+     * <p>
+     * Stream that compresses the written data into outputStream. Closing it must write out all remaining data and close outputStream
+     * @throws IOException 创建数据流时发生的异常
+     */
+    OutputStream compress(OutputStream outputStream) throws IOException;
+
+    /**
+     * @param inputStream 压缩数据的来源
+     *                    <p>
+     *                    Source of the compressed data
+     * @return 读取 inputStream 中的数据并解压的数据流
+     * <p>
+     * Stream that reads and decompresses the data in inputStream
+     * @throws IOException 创建数据流时发生的异常
+     */
+    InputStream decompress(InputStream inputStream) throws IOException;
+}
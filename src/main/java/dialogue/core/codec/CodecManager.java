@@ -0,0 +1,174 @@
+package dialogue.core.codec;
+
+import dialogue.ConfigureConstantArea;
+import dialogue.utils.BufferPool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 压缩算法管理者，负责注册压缩算法、生成提供给对方的算法列表，以及在发送数据之前根据对方的列表与数据的采样结果选择算法。
+ * <p>
+ * Codec manager. It registers codecs, builds the list of codecs offered to the peer, and picks a codec before sending data according to the peer's list and a sample of the data.
+ *
+ * @author 赵凌宇
+ */
+public final class CodecManager {
+
+    /**
+     * 原始数据的算法编号，代表数据没有被压缩。
+     * <p>
+     * The codec id of raw data, which means the data is not compressed.
+     */
+    public final static byte RAW = 0;
+    /**
+     * 选择算法之前从数据开头采样压缩的字节数量。
+     * <p>
+     * The number of bytes sampled and compressed from the beginning of the data before picking a codec.
+     */
+    public final static int SAMPLE_SIZE = 64 * 1024;
+    /**
+     * 采样数据压缩之后最多允许保留的比例，超过这个比例说明数据已经被压缩过，会直接发送原始数据。
+     * <p>
+     * The maximum ratio the sampled data may keep after compression. Above it the data is considered already compressed and is sent raw.
+     */
+    public final static double MAX_SAMPLE_RATIO = 0.9;
+    /**
+     * 数据量小于这个数值的时候不值得压缩，会直接发送原始数据。
+     * <p>
+     * Data smaller than this is not worth compressing and is sent raw.
+     */
+    public final static int MIN_COMPRESS_SIZE = 512;
+
+    private final static Map<Byte, Codec> CODECS = new ConcurrentHashMap<>();
+
+    static {
+        register(new DeflateCodec());
+    }
+
+    private CodecManager() {
+    }
+
+    /**
+     * 注册一个压缩算法，编号相同的算法会被替换。
+     * <p>
+     * Register a codec, a codec with the same id is replaced.
+     *
+     * @param codec 需要注册的压缩算法
+     *              <p>
+     *              Codec to register
+     */
+    public static void register(Codec codec) {
+        if (codec.getId() == RAW) {
+            throw new IllegalArgumentException("The codec id " + RAW + " is reserved for raw data: " + codec.getName());
+        }
+        CODECS.put(codec.getId(), codec);
+    }
+
+    /**
+     * @param id 压缩算法的编号
+     *           <p>
+     *           Id of the codec
+     * @return 编号对应的压缩算法，没有注册的时候返回 null
+     * <p>
+     * The codec with the id, or null if it is not registered
+     */
+    public static Codec getCodec(byte id) {
+        return CODECS.get(id);
+    }
+
+    /**
+     * @return 配置文件中启用并且已经注册的压缩算法编号，按照优先级排列，接收方会将它提供给发送方。
+     * <p>
+     * Ids of the codecs enabled in the configuration file and registered, in order of preference. The receiver offers it to the sender.
+     */
+    public static byte[] getOffer() {
+        ByteArrayOutputStream offer = new ByteArrayOutputStream();
+        for (String name : ConfigureConstantArea.FILE_COMPRESSION) {
+            for (Codec codec : CODECS.values()) {
+                if (codec.getName().equalsIgnoreCase(name)) {
+                    offer.write(codec.getId());
+                }
+            }
+        }
+        return offer.toByteArray();
+    }
+
+    /**
+     * 由发送方调用，从对方提供的算法中选择第一个本地也启用的算法，然后压缩数据开头的一部分，压缩效果不明显的时候不使用压缩。
+     * <p>
+     * Called by the sender to pick the first codec offered by the peer that is also enabled locally, then compress the beginning of the data. No codec is used if it does not compress well.
+     *
+     * @param offer    对方提供的算法编号
+     *                 <p>
+     *                 Codec ids offered by the peer
+     * @param source   需要发送的文件
+     *                 <p>
+     *                 File to send
+     * @param position 数据在文件中的起始位置
+     *                 <p>
+     *                 Start position of the data in the file
+     * @param count    需要发送的字节数量
+     *                 <p>
+     *                 Number of bytes to send
+     * @return 选中的压缩算法，返回 null 代表发送原始数据
+     * <p>
+     * The codec picked, null means raw data is sent
+     * @throws IOException 读取文件或压缩数据时发生的异常
+     */
+    public static Codec choose(byte[] offer, FileChannel source, long position, long count) throws IOException {
+        if (count < MIN_COMPRESS_SIZE) {
+            return null;
+        }
+        Codec codec = null;
+        byte[] local = getOffer();
+        for (int i = 0; i < offer.length && codec == null; i++) {
+            for (byte id : local) {
+                if (id == offer[i]) {
+                    codec = getCodec(id);
+                    break;
+                }
+            }
+        }
+        if (codec == null) {
+            return null;
+        }
+        ByteBuffer sample = BufferPool.acquireBuffer(SAMPLE_SIZE, false);
+        try {
+            sample.limit((int) Math.min(SAMPLE_SIZE, count));
+            while (sample.hasRemaining() && source.read(sample, position + sample.position()) > 0) {
+                // 读取到采样缓冲区满或者文件结束
+            }
+            CountingOutputStream counter = new CountingOutputStream();
+            try (OutputStream outputStream = codec.compress(counter)) {
+                outputStream.write(sample.array(), 0, sample.position());
+            }
+            return counter.count <= sample.position() * MAX_SAMPLE_RATIO ? codec : null;
+        } finally {
+            BufferPool.release(sample);
+        }
+    }
+
+    /**
+     * 只统计字节数量的数据流，用于计算采样数据压缩之后的大小。
+     */
+    private final static class CountingOutputStream extends OutputStream {
+
+        long count;
+
+        @Override
+        public void write(int b) {
+            this.count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            this.count += len;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package dialogue.core.codec;
+
+import dialogue.ConfigureConstantArea;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 基于 JDK 自带 Deflate 算法的压缩实现，压缩级别由配置文件中的 file.compression.level 决定。
+ * <p>
+ * Compression based on the Deflate algorithm of the JDK. The compression level is decided by file.compression.level in the configuration file.
+ *
+ * @author 赵凌宇
+ */
+public final class DeflateCodec implements Codec {
+
+    private final static int BUFFER_SIZE = 64 * 1024;
+
+    @Override
+    public byte getId() {
+        return 1;
+    }
+
+    @Override
+    public String getName() {
+        return "deflate";
+    }
+
+    @Override
+    public OutputStream compress(OutputStream outputStream) {
+        Deflater deflater = new Deflater(ConfigureConstantArea.FILE_COMPRESSION_LEVEL);
+        return new DeflaterOutputStream(outputStream, deflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    // 使用自定义的压缩器时，数据流不会自动释放它占用的本地内存
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    @Override
+    public InputStream decompress(InputStream inputStream) {
+        Inflater inflater = new Inflater();
+        return new InflaterInputStream(inputStream, inflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+}
@@ -1,10 +1,17 @@
 package dialogue.core.controlled;
 
 import dialogue.ConfigureConstantArea;
-import dialogue.utils.IOUtils;
+import dialogue.core.controlled.task.StreamCopyTask;
+import dialogue.core.protocol.Frame;
+import dialogue.utils.BufferPool;
+import dialogue.utils.ExceptionProgress;
+import dialogue.utils.ThreadUtils;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.util.logging.Level;
 
 /**
@@ -13,11 +20,24 @@ import java.util.logging.Level;
  * The command line conversation object is the command execution object of the controlled device. The implementation of this class will execute the command and return the execution result.
  * <p>
  * 该命令行只能执行查看类的命令，例如 cat type 或 python xxx等，不能执行 cd等命令以及不正确的命令
+ * <p>
+ * 命令的标准输出与标准错误会被同时读取，主控发送的是流式命令时，输出会在命令运行期间实时发送给主控，结果中只包含命令的退出码。
+ * <p>
+ * The standard output and standard error of the command are read at the same time. When the master sends a streaming command, the output is sent to the master in real time while the command runs, and the result only contains the exit code of the command.
+ * <p>
+ * 配置了 console.shell.pool.size 之后，命令会交给常驻的 shell 进程执行，此时命令会按照 shell 的语法解析。
+ * <p>
+ * When console.shell.pool.size is configured, commands are handed to long-lived shell processes and are then parsed with the shell syntax.
  *
  * @author 赵凌宇
  */
 public class ConsoleSession extends ControlledSession {
 
+    /**
+     * 常驻 shell 进程池，没有启用的时候为 null。
+     */
+    private final ShellPool shellPool = ShellPool.create();
+
     protected ConsoleSession(int port) {
         super(port);
     }
@@ -42,27 +62,100 @@ public class ConsoleSession extends ControlledSession {
     public String runCommand(String command) {
         ConfigureConstantArea.LOGGER.log(Level.INFO, "run -> " + command);
         try {
-            final Process exec = runtime.exec(command);
-            InputStream inputStream1 = exec.getInputStream();
-            String stringByStream = IOUtils.getStringByStream(inputStream1);
-            inputStream1.close();
-            if (stringByStream.length() != 0) {
-                return stringByStream;
+            OutputStream stdout = openCommandOutput(Frame.OUTPUT_STDOUT);
+            if (stdout != null) {
+                // 流式命令，两个输出在读取到的同时就发送给主控
+                return "Command exited with code " + execute(command, stdout, openCommandOutput(Frame.OUTPUT_STDERR)) + '.';
+            }
+            ByteArrayOutputStream stdoutBuffer = new ByteArrayOutputStream();
+            ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+            execute(command, stdoutBuffer, stderr);
+            if (stdoutBuffer.size() != 0) {
+                return stdoutBuffer.toString(ConfigureConstantArea.CHARSET);
+            } else if (stderr.size() != 0) {
+                return stderr.toString(ConfigureConstantArea.CHARSET);
             } else {
-                InputStream errorStream = exec.getErrorStream();
-                stringByStream = IOUtils.getStringByStream(errorStream);
-                errorStream.close();
-                if (stringByStream.length() != 0) {
-                    return stringByStream;
-                } else {
-                    return "Command executed, but no data returned.";
-                }
+                return "Command executed, but no data returned.";
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "ERROR => " + new InterruptedIOException("Interrupted while waiting for the command.");
         } catch (RuntimeException | IOException e) {
             return "ERROR => " + e;
         }
     }
 
+    /**
+     * 终止主机，停止运行中的逻辑与程序，终止该主机对应的所有功能，常驻 shell 进程池中空闲的 shell 也会被销毁。
+     * <p>
+     * Terminate the host, stop the running logic and program, and terminate all functions corresponding to the host. The idle shells of the shell pool are destroyed as well.
+     *
+     * @param args 主机关闭的参数
+     */
+    @Override
+    public void stop(String... args) {
+        super.stop(args);
+        if (this.shellPool != null) {
+            this.shellPool.clear();
+        }
+    }
+
+    /**
+     * 执行一个命令，并将命令的两个输出同时写入对应的数据流，启用了常驻 shell 进程池的时候由池中的 shell 执行，
+     * 池中没有可用的 shell 时创建一个一次性的 shell 执行，两种方式都按照 shell 的语法解析命令；没有启用进程池的时候直接创建进程执行。
+     * <p>
+     * Run a command and write its two outputs into the corresponding streams at the same time. When the shell pool is enabled the command is run by a shell of the pool,
+     * or by a one-off shell when none is available, so it is parsed with the shell syntax either way. Without the pool a process is created directly.
+     *
+     * @param command 需要执行的命令
+     *                <p>
+     *                Command to be run
+     * @param stdout  标准输出需要写入的数据流
+     *                <p>
+     *                Stream the standard output is written to
+     * @param stderr  标准错误需要写入的数据流
+     *                <p>
+     *                Stream the standard error is written to
+     * @return 命令的退出码
+     * <p>
+     * Exit code of the command
+     * @throws IOException          执行命令或者写入输出时发生的异常
+     * @throws InterruptedException 等待命令结束时被中断的时候抛出的异常
+     */
+    protected int execute(String command, OutputStream stdout, OutputStream stderr) throws IOException, InterruptedException {
+        if (this.shellPool != null) {
+            Integer exitCode = this.shellPool.run(command, stdout, stderr);
+            if (exitCode != null) {
+                return exitCode;
+            }
+        }
+        // 启用了进程池的时候，临时创建的进程同样由 shell 解析命令，命令的结果不会因为池中的 shell 是否空闲而不同
+        Process exec = this.shellPool != null ? this.shellPool.exec(command) : runtime.exec(command);
+        try {
+            // 标准错误需要同时读取，否则它的管道被写满之后命令会一直阻塞
+            Thread errorPump = ThreadUtils.start("dialogue-console-stderr", new StreamCopyTask(exec.getErrorStream(), stderr, false, ExceptionProgress.NO_ACTION));
+            pump(exec.getInputStream(), stdout);
+            errorPump.join();
+            return exec.waitFor();
+        } catch (InterruptedException | RuntimeException | IOException e) {
+            // 输出无法发送给主控的时候，命令也不需要继续运行了
+            exec.destroy();
+            throw e;
+        }
+    }
+
+    private static void pump(InputStream inputStream, OutputStream outputStream) throws IOException {
+        byte[] buffer = BufferPool.acquire(ConfigureConstantArea.TCP_BUFFER_MAX_SIZE);
+        try (InputStream in = inputStream) {
+            int offset;
+            while ((offset = in.read(buffer)) > 0) {
+                outputStream.write(buffer, 0, offset);
+            }
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
     /**
      * 将当前会话克隆一个出来，使得一种会话可以提供给多个网络连接使用，需要注意的是，克隆出来的会话将不会被管理者所管理。
      * <p>
@@ -0,0 +1,503 @@
+package dialogue.core.controlled;
+
+import dialogue.ConfigureConstantArea;
+import dialogue.core.channel.FrameSender;
+import dialogue.core.channel.MuxStream;
+import dialogue.core.channel.StreamMultiplexer;
+import dialogue.core.channel.TransferScheduler;
+import dialogue.core.protocol.Frame;
+import dialogue.core.protocol.FrameCodec;
+import dialogue.core.protocol.FrameDecoder;
+import dialogue.utils.IOUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 被控端的主控连接对象，被控会话每接收到一个主控的连接，就会创建一个该对象，其中保存着这个连接独有的通道、待发送数据以及待执行命令。
+ * <p>
+ * The master connection object of the controlled end. Every time the controlled session accepts a master connection, one of these objects is created to hold the channel, pending writes and pending commands that belong to that connection only.
+ * <p>
+ * 所有的读写操作都由被控会话的选择器线程完成，工作线程只会将需要发送的数据放入队列，因此该对象可以被多个线程安全的使用。
+ * <p>
+ * All reads and writes are performed by the selector thread of the controlled session. Worker threads only queue the data to be sent, so this object can be safely used by several threads.
+ * <p>
+ * 发送与执行都分为两个优先级：控制帧总是排在批量传输的数据帧前面发送，交互命令总是排在文件传输命令前面执行，并且文件传输命令最多只会占用该连接的并发数量减一个执行任务。
+ * <p>
+ * Both sending and execution have two priorities: control frames are always sent before the data frames of bulk transfers, interactive commands are always executed before file transfer commands, and file transfer commands occupy at most the parallelism of the connection minus one execution task.
+ * <p>
+ * 文件传输命令只有在获取到传输调度器的名额之后才会从队列中取出，等待名额的命令留在队列中，不会占用工作线程，名额被释放之后会重新为该连接提交执行任务。
+ * <p>
+ * A file transfer command is taken from the queue only after a slot of the transfer scheduler is taken. Commands waiting for a slot stay in the queue without occupying worker threads, and an execution task is submitted for the connection again when a slot is freed.
+ *
+ * @author 赵凌宇
+ */
+public final class ControlledConnection implements Closeable {
+
+    /**
+     * 一次聚集写入中最多包含的缓冲区数量。
+     */
+    private final static int MAX_GATHER = 64;
+    /**
+     * 一个输出帧中最多包含的命令输出字节数量。
+     */
+    private final static int MAX_OUTPUT_CHUNK = 64 * 1024;
+
+    private final ControlledSession session;
+    private final SocketChannel socketChannel;
+    private final SelectionKey selectionKey;
+    private final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+    private final Queue<ByteBuffer> bulkWriteQueue = new ConcurrentLinkedQueue<>();
+    /**
+     * 高优先级发送队列中还没有写出的字节数量，命令输出在超过多路复用窗口的时候会等待，避免输出很快的命令占满内存。
+     */
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private volatile int outputWaiters = 0;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ArrayDeque<Frame> commandQueue = new ArrayDeque<>();
+    private final ArrayDeque<Frame> transferQueue = new ArrayDeque<>();
+    private final FrameDecoder frameDecoder = new FrameDecoder();
+    private final OutputStream outputStream = new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (!socketChannel.isOpen()) {
+                throw new IOException("The master connection has been closed.");
+            }
+            // 控制通道中只能传递帧，因此这里写入的数据会被包装成不属于任何请求的结果帧，过大的数据会被拆分成多个帧
+            do {
+                int n = Math.min(len, ConfigureConstantArea.MAX_FRAME_SIZE);
+                send(FrameCodec.encode(Frame.TYPE_RESULT, Frame.NO_REQUEST_ID, b, off, n));
+                off += n;
+                len -= n;
+            } while (len > 0);
+        }
+    };
+    private final InetAddress inetAddress;
+    private volatile StreamMultiplexer multiplexer;
+    private final long connectTimeMS = System.currentTimeMillis();
+    private int executing = 0;
+    private int executingTransfers = 0;
+    /**
+     * 是否已经在传输调度器中登记了名额释放的回调，避免同一个连接重复登记。
+     */
+    private boolean awaitingSlot = false;
+
+    ControlledConnection(ControlledSession session, SocketChannel socketChannel, SelectionKey selectionKey) {
+        this.session = session;
+        this.socketChannel = socketChannel;
+        this.selectionKey = selectionKey;
+        this.inetAddress = socketChannel.socket().getInetAddress();
+    }
+
+    /**
+     * @return 该连接对应的主控地址。
+     * <p>
+     * The address of the master of this connection.
+     */
+    public InetAddress getInetAddress() {
+        return this.inetAddress;
+    }
+
+    /**
+     * @return 该连接对应的主控主机名称，被控在需要反向连接主控的时候会使用这个名称。
+     * <p>
+     * The host name of the master of this connection, which is used when the controlled end needs to connect back to the master.
+     */
+    public String getHostName() {
+        return getInetAddress().getHostName();
+    }
+
+    /**
+     * @return 该连接对应的套接字对象。
+     * <p>
+     * The socket object of this connection.
+     */
+    public Socket getSocket() {
+        return this.socketChannel.socket();
+    }
+
+    /**
+     * @return 一个向该主控发送数据的输出流，写入的数据会被包装成不属于任何请求的结果帧放入发送队列，由选择器线程负责真正的发送。
+     * <p>
+     * An output stream that sends data to this master. The written data is wrapped into result frames that belong to no request and queued, the selector thread actually sends them.
+     */
+    public OutputStream getOutputStream() {
+        return this.outputStream;
+    }
+
+    /**
+     * @return 该连接建立的时间毫秒值。
+     * <p>
+     * The time in milliseconds when the connection was established.
+     */
+    public long getConnectTimeMS() {
+        return this.connectTimeMS;
+    }
+
+    /**
+     * @return 如果返回true，代表该连接仍然处于打开状态。
+     * <p>
+     * If true is returned, the connection is still open.
+     */
+    public boolean isOpen() {
+        return this.socketChannel.isOpen();
+    }
+
+    /**
+     * 将一批数据放入发送队列，并通知选择器线程进行发送。
+     * <p>
+     * Put a batch of data into the send queue and notify the selector thread to send it.
+     *
+     * @param bytes 需要发送给主控的数据
+     *              <p>
+     *              Data to be sent to the master
+     */
+    public void send(byte[] bytes) {
+        this.queuedBytes.addAndGet(bytes.length);
+        this.writeQueue.add(ByteBuffer.wrap(bytes));
+        requestFlush();
+    }
+
+    /**
+     * 打开一个将流式命令的输出发送给主控的输出流，写入的数据会被包装成输出帧，发送队列中积压的数据过多时写入会等待。
+     * <p>
+     * Open an output stream that sends the output of a streaming command to the master. The written data is wrapped into output frames, and writing waits when too much data is queued.
+     *
+     * @param requestId 流式命令的请求编号
+     *                  <p>
+     *                  Request id of the streaming command
+     * @param source    输出的来源，{@link Frame#OUTPUT_STDOUT} 或 {@link Frame#OUTPUT_STDERR}
+     *                  <p>
+     *                  Source of the output, {@link Frame#OUTPUT_STDOUT} or {@link Frame#OUTPUT_STDERR}
+     * @return 输出流
+     * <p>
+     * Output stream
+     */
+    public OutputStream openOutput(int requestId, byte source) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                while (len > 0) {
+                    awaitWritable();
+                    int n = Math.min(len, MAX_OUTPUT_CHUNK);
+                    send(FrameCodec.encodeOutput(requestId, source, b, off, n));
+                    off += n;
+                    len -= n;
+                }
+            }
+        };
+    }
+
+    private void awaitWritable() throws IOException {
+        if (this.queuedBytes.get() > ConfigureConstantArea.MULTIPLEX_STREAM_WINDOW) {
+            synchronized (this.queuedBytes) {
+                this.outputWaiters++;
+                try {
+                    while (this.queuedBytes.get() > ConfigureConstantArea.MULTIPLEX_STREAM_WINDOW && this.socketChannel.isOpen()) {
+                        this.queuedBytes.wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting to send the command output.");
+                } finally {
+                    this.outputWaiters--;
+                }
+            }
+        }
+        if (!this.socketChannel.isOpen()) {
+            throw new IOException("The master connection has been closed.");
+        }
+    }
+
+    /**
+     * 将一个批量传输的数据帧放入低优先级的发送队列，只有在控制帧全部发送之后才会发送它。
+     * <p>
+     * Put a data frame of a bulk transfer into the low priority send queue, it is only sent after all control frames have been sent.
+     *
+     * @param bytes 需要发送给主控的数据帧
+     *              <p>
+     *              Data frame to be sent to the master
+     */
+    public void sendBulk(byte[] bytes) {
+        this.bulkWriteQueue.add(ByteBuffer.wrap(bytes));
+        requestFlush();
+    }
+
+    private void requestFlush() {
+        // 选择器线程还没有处理上一次的发送请求时，新的数据会在那一次发送中一起写出，不需要再次唤醒选择器
+        if (this.flushRequested.compareAndSet(false, true)) {
+            this.session.requestWrite(this);
+        }
+    }
+
+    /**
+     * @return 如果返回true，代表主控要求该连接使用多路复用模式，文件与持久会话的数据流都会在该连接中传输。
+     * <p>
+     * If true is returned, the master requires this connection to use the multiplexed mode, and the streams of files and persistent sessions are transferred in this connection.
+     */
+    public boolean isMultiplexed() {
+        return this.multiplexer != null;
+    }
+
+    /**
+     * 在该连接中打开一个新的逻辑数据流，只有在多路复用模式中可以使用。
+     * <p>
+     * Open a new logical stream in this connection, only available in the multiplexed mode.
+     *
+     * @param kind      数据流的类型
+     *                  <p>
+     *                  Kind of the stream
+     * @param requestId 打开数据流的命令对应的请求编号
+     *                  <p>
+     *                  The request id of the command that opens the stream
+     * @return 新的数据流
+     * <p>
+     * The new stream
+     * @throws IOException 连接不是多路复用模式或已经关闭时抛出的异常
+     */
+    public MuxStream openStream(byte kind, int requestId) throws IOException {
+        StreamMultiplexer multiplexer = this.multiplexer;
+        if (multiplexer == null) {
+            throw new IOException("The master connection is not multiplexed.");
+        }
+        return multiplexer.open(kind, requestId);
+    }
+
+    /**
+     * 在收到主控的握手帧之后启用多路复用模式，被控不会主动打开数据流，因此不需要监听对方打开的数据流。
+     */
+    void enableMultiplex() {
+        if (this.multiplexer == null) {
+            this.multiplexer = new StreamMultiplexer(new FrameSender() {
+                @Override
+                public void send(byte[] frame) {
+                    ControlledConnection.this.send(frame);
+                }
+
+                @Override
+                public void sendBulk(byte[] frame) {
+                    ControlledConnection.this.sendBulk(frame);
+                }
+            }, null);
+        }
+    }
+
+    /**
+     * @return 该连接的多路复用器，没有启用多路复用模式的时候返回 null。
+     */
+    StreamMultiplexer getMultiplexer() {
+        return this.multiplexer;
+    }
+
+    /**
+     * @return 该连接的帧解码器，只有选择器线程会使用它。
+     */
+    FrameDecoder getFrameDecoder() {
+        return this.frameDecoder;
+    }
+
+    /**
+     * 将一个命令帧添加到该连接的待执行队列中，同一个连接中最多会有 {@link ConfigureConstantArea#CONTROLLED_CONNECTION_PARALLELISM} 个执行任务同时取出命令执行。
+     *
+     * @param command  需要执行的命令帧
+     * @param transfer 如果为true，代表这是一个文件传输命令，它会排在交互命令的后面执行
+     * @return 如果返回true，代表需要为该连接提交一个新的执行任务。
+     */
+    synchronized boolean offerCommand(Frame command, boolean transfer) {
+        (transfer ? this.transferQueue : this.commandQueue).add(command);
+        if (this.executing >= ConfigureConstantArea.CONTROLLED_CONNECTION_PARALLELISM) {
+            return false;
+        }
+        this.executing++;
+        return true;
+    }
+
+    /**
+     * 在执行任务被拒绝或连接已经关闭的时候，清理掉该连接中所有的待执行命令，调用者对应的执行任务会结束，其它正在执行的任务不受影响。
+     *
+     * @return 被清理掉的命令帧
+     */
+    synchronized List<Frame> rejectCommands() {
+        List<Frame> rejected = new ArrayList<>(this.commandQueue);
+        rejected.addAll(this.transferQueue);
+        this.commandQueue.clear();
+        this.transferQueue.clear();
+        this.executing--;
+        return rejected;
+    }
+
+    /**
+     * 由工作线程调用，不断的从该连接中取出待执行的命令执行，并将结果发送给主控，多个执行任务之间的结果会按照完成的顺序发送，主控通过请求编号区分它们。
+     */
+    void drainCommands() {
+        int transferLimit = Math.max(1, ConfigureConstantArea.CONTROLLED_CONNECTION_PARALLELISM - 1);
+        while (true) {
+            Frame command;
+            boolean transfer = false;
+            synchronized (this) {
+                // 交互命令优先，文件传输命令只有在执行中的传输没有占满名额的时候才会被取出，剩下的执行任务留给交互命令
+                command = this.commandQueue.poll();
+                if (command == null && this.executingTransfers < transferLimit && !this.transferQueue.isEmpty() && tryAcquireSlot()) {
+                    command = this.transferQueue.poll();
+                    transfer = true;
+                }
+                if (command == null) {
+                    this.executing--;
+                    return;
+                }
+                if (transfer) {
+                    this.executingTransfers++;
+                }
+            }
+            try {
+                if (transfer) {
+                    TransferScheduler.assignSlot();
+                }
+                if (!isOpen()) {
+                    rejectCommands();
+                    return;
+                }
+                this.session.execute(this, command);
+            } finally {
+                if (transfer) {
+                    TransferScheduler.releaseAssignedSlot();
+                    synchronized (this) {
+                        this.executingTransfers--;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 在持有该对象锁的时候调用，尝试为队列中的文件传输命令获取一个传输名额，获取失败时登记一个名额释放的回调。
+     *
+     * @return 如果返回true，代表已经获取到了名额
+     */
+    private boolean tryAcquireSlot() {
+        if (this.awaitingSlot) {
+            // 已经在等待名额，名额释放时回调会重新提交执行任务
+            return false;
+        }
+        if (TransferScheduler.tryAcquireSlot(this::slotFreed)) {
+            return true;
+        }
+        this.awaitingSlot = true;
+        return false;
+    }
+
+    /**
+     * 传输名额被释放时由传输调度器调用，如果该连接中还有等待的文件传输命令，并且执行任务的数量没有达到上限，就重新提交一个执行任务。
+     */
+    private void slotFreed() {
+        synchronized (this) {
+            this.awaitingSlot = false;
+            if (this.transferQueue.isEmpty() || !isOpen() || this.executing >= ConfigureConstantArea.CONTROLLED_CONNECTION_PARALLELISM) {
+                // 正在执行的任务在取下一个命令的时候会再次尝试获取名额
+                return;
+            }
+            this.executing++;
+        }
+        this.session.submit(this);
+    }
+
+    /**
+     * 由选择器线程调用，尽可能多的将发送队列中的数据写入通道，控制帧排在批量传输的数据帧前面，并根据剩余的数据调整关注的事件。
+     *
+     * @throws IOException 写入数据时发生的异常
+     */
+    void flush() throws IOException {
+        this.flushRequested.set(false);
+        ByteBuffer[] batch = new ByteBuffer[MAX_GATHER];
+        while (!this.writeQueue.isEmpty() || !this.bulkWriteQueue.isEmpty()) {
+            // 使用聚集写入将队列中的多个小帧合并为一次系统调用
+            int count = 0;
+            // 上一次只写出了一部分的数据帧需要先写完，控制帧不能插入到一个帧的中间
+            ByteBuffer partial = this.bulkWriteQueue.peek();
+            if (partial != null && partial.position() > 0) {
+                batch[count++] = partial;
+            } else {
+                partial = null;
+            }
+            count = gather(this.writeQueue, batch, count, null);
+            count = gather(this.bulkWriteQueue, batch, count, partial);
+            this.socketChannel.write(batch, 0, count);
+            while (!this.writeQueue.isEmpty() && !this.writeQueue.peek().hasRemaining()) {
+                this.queuedBytes.addAndGet(-this.writeQueue.poll().capacity());
+            }
+            while (!this.bulkWriteQueue.isEmpty() && !this.bulkWriteQueue.peek().hasRemaining()) {
+                this.bulkWriteQueue.poll();
+            }
+            if (batch[count - 1].hasRemaining()) {
+                // 内核缓冲区已满，等待下一次可写事件
+                break;
+            }
+        }
+        if (this.outputWaiters > 0) {
+            synchronized (this.queuedBytes) {
+                this.queuedBytes.notifyAll();
+            }
+        }
+        if (this.selectionKey.isValid()) {
+            boolean empty = this.writeQueue.isEmpty() && this.bulkWriteQueue.isEmpty();
+            this.selectionKey.interestOps(empty ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private static int gather(Queue<ByteBuffer> queue, ByteBuffer[] batch, int count, ByteBuffer skip) {
+        for (ByteBuffer byteBuffer : queue) {
+            if (count == MAX_GATHER) {
+                break;
+            }
+            if (byteBuffer != skip) {
+                batch[count++] = byteBuffer;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 关闭该连接，并丢弃所有没有发送的数据。
+     * <p>
+     * Close the connection and discard all data that has not been sent.
+     */
+    @Override
+    public void close() {
+        this.selectionKey.cancel();
+        this.writeQueue.clear();
+        this.bulkWriteQueue.clear();
+        IOUtils.close(this.socketChannel);
+        synchronized (this.queuedBytes) {
+            this.queuedBytes.notifyAll();
+        }
+        StreamMultiplexer multiplexer = this.multiplexer;
+        if (multiplexer != null) {
+            multiplexer.closeAll();
+        }
+        ConfigureConstantArea.LOGGER.info("The master connection is closed => " + this.inetAddress);
+    }
+}
@@ -3,6 +3,7 @@ package dialogue.core.controlled;
 import dialogue.ConfigureConstantArea;
 import dialogue.Session;
 import dialogue.core.actuator.*;
+import dialogue.core.channel.TransferScheduler;
 import dialogue.core.exception.SessionRunException;
 import dialogue.utils.ProgressEvent;
 
@@ -32,6 +33,9 @@ public class ControlledFileSession extends ConsoleSession {
     protected ControlledSeeDirNameActuator controlledSeeDirNameActuator;
     protected ControlledRunningProgramActuator controlledRunningProgramActuator;
     protected ControlledSnapActuator controlledSnapActuator;
+    protected ControlledLimitActuator controlledLimitActuator;
+    protected ControlledSearchActuator controlledSearchActuator;
+    protected ControlledFollowActuator controlledFollowActuator;
 
     private final ProgressEvent<Socket, OutputStream, InputStream> INIT_ProgressEvent = new ProgressEvent<Socket, OutputStream, InputStream>() {
         private Socket tempSocket;
@@ -49,6 +53,10 @@ public class ControlledFileSession extends ConsoleSession {
 
         @Override
         public void function3(InputStream type) {
+            if (controlledGetActuator != null && controlledGetActuator.isRunning()) {
+                // 组件已经在之前的连接中注册过了，执行器会通过 ControlledSession.currentConnection() 找到发出命令的主控
+                return;
+            }
             // 注册需要的组件
             controlledGetActuator = new ControlledGetFileActuator(tempSocket, type, tempOut);
             controlledLookFileActuator = new ControlledLookFileActuator(tempSocket, type, tempOut);
@@ -60,6 +68,9 @@ public class ControlledFileSession extends ConsoleSession {
             controlledSeeDirNameActuator = new ControlledSeeDirNameActuator(tempSocket, type, tempOut);
             controlledRunningProgramActuator = new ControlledRunningProgramActuator(tempSocket, type, tempOut);
             controlledSnapActuator = new ControlledSnapActuator(tempSocket, type, tempOut);
+            controlledLimitActuator = new ControlledLimitActuator(tempSocket, type, tempOut);
+            controlledSearchActuator = new ControlledSearchActuator(tempSocket, type, tempOut);
+            controlledFollowActuator = new ControlledFollowActuator(tempSocket, type, tempOut);
             ActuatorManager.registerControlledActuator(controlledGetActuator);
             ActuatorManager.registerControlledActuator(controlledLookFileActuator);
             ActuatorManager.registerControlledActuator(controlledPutFileActuator);
@@ -70,6 +81,9 @@ public class ControlledFileSession extends ConsoleSession {
             ActuatorManager.registerControlledActuator(controlledSeeDirNameActuator);
             ActuatorManager.registerControlledActuator(controlledRunningProgramActuator);
             ActuatorManager.registerControlledActuator(controlledSnapActuator);
+            ActuatorManager.registerControlledActuator(controlledLimitActuator);
+            ActuatorManager.registerControlledActuator(controlledSearchActuator);
+            ActuatorManager.registerControlledActuator(controlledFollowActuator);
         }
     };
 
@@ -114,6 +128,11 @@ public class ControlledFileSession extends ConsoleSession {
         ActuatorManager.unControlledRegister(this.controlledSeeDirNameActuator.getName());
         ActuatorManager.unControlledRegister(this.controlledRunningProgramActuator.getName());
         ActuatorManager.unControlledRegister(this.controlledSnapActuator.getName());
+        ActuatorManager.unControlledRegister(this.controlledLimitActuator.getName());
+        ActuatorManager.unControlledRegister(this.controlledSearchActuator.getName());
+        ActuatorManager.unControlledRegister(this.controlledFollowActuator.getName());
+        // 停止监听缓存中的目录
+        DirectoryCache.clear();
     }
 
     /**
@@ -140,7 +159,8 @@ public class ControlledFileSession extends ConsoleSession {
                     ConfigureConstantArea.LOGGER.info("Extract to file data. => " + command);
                     Actuator controlledActuator = ActuatorManager.getControlledActuatorOrNull(type);
                     if (controlledActuator != null && controlledActuator.getType() == Session.CONTROLLED_FILE_SESSION) {
-                        return controlledActuator.runActuatorCommand(command, matcher);
+                        // 文件传输命令交给传输调度器执行，受到带宽的限制，名额在命令被交给工作线程之前就已经获取到了，这里不会等待
+                        return controlledActuator.isTransfer() ? TransferScheduler.run(() -> controlledActuator.runActuatorCommand(command, matcher)) : controlledActuator.runActuatorCommand(command, matcher);
                     } else {
                         // 如果不是我们的文件会话可以处理的命令，就直接提供给父类处理
                         return super.runCommand(command);
@@ -155,6 +175,28 @@ public class ControlledFileSession extends ConsoleSession {
         return "null";
     }
 
+    /**
+     * 判断一个命令是否为文件传输命令，只有本会话中的文件传输执行器能够处理的命令才是文件传输命令。
+     * <p>
+     * Determine whether a command is a file transfer command. Only the commands handled by the file transfer actuators of this session are file transfer commands.
+     *
+     * @param command 主控发送来的命令
+     *                <p>
+     *                Command sent by the master
+     * @return 如果返回true，代表该命令是文件传输命令
+     * <p>
+     * If true is returned, the command is a file transfer command
+     */
+    @Override
+    protected boolean isTransferCommand(String command) {
+        Matcher matcher = COMMAND_PATTERN.matcher(command);
+        if (matcher.find()) {
+            Actuator controlledActuator = ActuatorManager.getControlledActuatorOrNull(matcher.group(1));
+            return controlledActuator != null && controlledActuator.getType() == Session.CONTROLLED_FILE_SESSION && controlledActuator.isTransfer();
+        }
+        return false;
+    }
+
     /**
      * 将当前会话克隆一个出来，使得一种会话可以提供给多个网络连接使用，需要注意的是，克隆出来的会话将不会被管理者所管理。
      * <p>
@@ -1,14 +1,15 @@
 package dialogue.core.controlled;
 
 import dialogue.ConfigureConstantArea;
+import dialogue.core.channel.DataChannel;
 import dialogue.core.controlled.task.StreamCopyTask;
 import dialogue.core.exception.SessionStartException;
 import dialogue.core.master.MasterPersistentSession;
 import dialogue.utils.ExceptionProgress;
 import dialogue.utils.IOUtils;
+import dialogue.utils.ThreadUtils;
 
 import java.io.*;
-import java.net.Socket;
 import java.util.logging.Level;
 
 /**
@@ -55,16 +56,16 @@ public class ControlledPersistentSession extends ConsoleSession {
         ConfigureConstantArea.LOGGER.log(Level.INFO, "runSession -> " + command);
         try {
             // 打开持久会话连接，尝试与主控持久会话进行通信
-            Socket socket = new Socket(this.accept.getInetAddress().getHostName(), ConfigureConstantArea.PERSISTENT_SESSION_CHANNEL_PORT);
-            DataInputStream masterDataInputStream = new DataInputStream(socket.getInputStream());
-            DataOutputStream masterDataOutputStream = new DataOutputStream(socket.getOutputStream());
+            DataChannel persistentChannel = openPersistentChannel(this.accept);
+            DataInputStream masterDataInputStream = new DataInputStream(persistentChannel.getInputStream());
+            DataOutputStream masterDataOutputStream = new DataOutputStream(persistentChannel.getOutputStream());
             final Process exec = runtime.exec(command);
             DataOutputStream exeOutputStream1 = new DataOutputStream(exec.getOutputStream());
             InputStream execInputStream = exec.getInputStream();
             InputStream execErrorStream = exec.getErrorStream();
             // 线程随时将命令产生的数据发送到主控
-            Thread thread1 = new Thread(new StreamCopyTask(execInputStream, masterDataOutputStream, false, ExceptionProgress.NO_ACTION));
-            Thread thread2 = new Thread(new StreamCopyTask(execErrorStream, masterDataOutputStream, false, ExceptionProgress.NO_ACTION));
+            Thread thread1 = ThreadUtils.unstarted("dialogue-persistent-stdout", new StreamCopyTask(execInputStream, masterDataOutputStream, false, ExceptionProgress.NO_ACTION));
+            Thread thread2 = ThreadUtils.unstarted("dialogue-persistent-stderr", new StreamCopyTask(execErrorStream, masterDataOutputStream, false, ExceptionProgress.NO_ACTION));
             thread2.start();
             thread1.start();
             while (true) {
@@ -99,7 +100,7 @@ public class ControlledPersistentSession extends ConsoleSession {
             masterDataOutputStream.flush();
             IOUtils.close(masterDataInputStream);
             IOUtils.close(masterDataOutputStream);
-            IOUtils.close(socket);
+            IOUtils.close(persistentChannel);
             return SEND_FILE_BYTE;
         } catch (RuntimeException | IOException e) {
             return "ERROR => " + e;
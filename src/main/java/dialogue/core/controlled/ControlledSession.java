@@ -4,19 +4,34 @@ import dialogue.ConfigureConstantArea;
 import dialogue.DialogueManager;
 import dialogue.Host;
 import dialogue.Session;
+import dialogue.core.channel.DataChannel;
+import dialogue.core.channel.MuxStream;
+import dialogue.core.channel.ServerSocketAcceptor;
+import dialogue.core.channel.StreamMultiplexer;
+import dialogue.core.channel.TransferScheduler;
 import dialogue.core.exception.SessionExtractionException;
 import dialogue.core.exception.SessionStartException;
+import dialogue.core.protocol.Frame;
+import dialogue.core.protocol.FrameCodec;
+import dialogue.core.protocol.FrameDecoder;
 import dialogue.utils.IOUtils;
 import dialogue.utils.ProgressEvent;
+import dialogue.utils.ThreadUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetAddress;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.nio.charset.StandardCharsets;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 /**
@@ -24,9 +39,9 @@ import java.util.logging.Level;
  * <p>
  * The server side session object can transfer and parse commands in the session object. Different sessions apply to different operations. The implementation class of each session must be processed by this class.
  * <p>
- * 需要注意的是，一个被控会话只可以提供给一个主控会话使用，当主控会话断开连接之后，被控才会重新准备好新主控的连接。
+ * 从 1.0.6 版本开始，一个被控会话可以同时服务多个主控会话，被控会使用一个选择器线程接收所有主控的连接与命令，并将命令提交到有界的工作线程池中执行，同一个主控连接中的多个命令也会并发执行，并按照完成的顺序返回带有请求编号的结果。
  * <p>
- * It should be noted that a controlled session can only be used by a master session. When the master session is disconnected, the controlled session will prepare a new master connection again.
+ * Starting from version 1.0.6, a controlled session can serve several master sessions at the same time. The controlled end uses one selector thread to accept the connections and commands of all masters, and submits the commands to a bounded worker pool. Several commands of the same master connection are also executed concurrently, and their results are returned in completion order with their request ids.
  *
  * @author 赵凌宇
  */
@@ -44,21 +59,146 @@ public abstract class ControlledSession implements Controlled, Host, Session {
     private final static String INIT_INFO = "Successfully initialized the server";
     private final static String INIT_ERROR = "Controlled initialization failed";
     private final static String STOP_WARN = "The current session has stopped running";
-    private final ServerSocket serverSocket;
+    private final static String BUSY_ERROR = "The controlled host is too busy to accept this command, please try again later.";
+    private final static String SEND_FILE_BYTE_LOG = SEND_FILE_BYTE + " ok!";
+    private final static String SEND_FILE_ERROR_LOG = SEND_FILE_ERROR + " error.....";
+    private final static String SEND_TEXT_LOG = SEND_TEXT + " ok!";
+    private final static String RETURN_TO_TEXT_DATA = "return to text data";
+    /**
+     * 当前工作线程正在服务的主控连接，执行器可以通过它找到发出命令的主控。
+     */
+    private final static ThreadLocal<ControlledConnection> CURRENT_CONNECTION = new ThreadLocal<>();
+    /**
+     * 当前工作线程正在执行的命令帧，数据流会使用它的请求编号，使得主控可以找到数据流对应的命令。
+     */
+    private final static ThreadLocal<Frame> CURRENT_COMMAND = new ThreadLocal<>();
+    private final ServerSocketChannel serverSocketChannel;
+    private final ThreadPoolExecutor workers;
+    private final Queue<ControlledConnection> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger connectionCount = new AtomicInteger();
     protected Date startDate;
-    protected Socket accept = null;
+    /**
+     * 最近一次接收到的主控连接。
+     */
+    protected volatile Socket accept = null;
     protected InputStream inputStream = null;
     protected OutputStream outputStream = null;
-    protected boolean Running = false;
+    protected volatile boolean Running = false;
+    private volatile Selector selector;
 
     protected ControlledSession(int port) {
         try {
-            this.serverSocket = new ServerSocket(port);
+            this.serverSocketChannel = ServerSocketChannel.open();
+            this.serverSocketChannel.bind(new InetSocketAddress(port));
+            this.serverSocketChannel.configureBlocking(false);
             ConfigureConstantArea.LOGGER.log(Level.INFO, INIT_INFO);
         } catch (IOException e) {
             ConfigureConstantArea.LOGGER.log(Level.SEVERE, INIT_ERROR);
             throw new SessionStartException(INIT_ERROR, e);
         }
+        // Java 21 及以上版本中工作线程是虚拟线程，线程池依旧有界，使得繁忙时的拒绝行为保持一致
+        this.workers = new ThreadPoolExecutor(
+                ConfigureConstantArea.CONTROLLED_WORKER_THREADS, ConfigureConstantArea.CONTROLLED_WORKER_THREADS,
+                60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(ConfigureConstantArea.CONTROLLED_WORKER_QUEUE_SIZE),
+                ThreadUtils.factory("dialogue-controlled-worker-" + port + '-')
+        );
+        // 空闲时不保留线程，避免没有主控连接的时候占用资源
+        this.workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 获取到当前线程正在服务的主控连接，执行器在需要与发出命令的主控进行额外通信的时候可以使用该函数。
+     * <p>
+     * Get the master connection that the current thread is serving. Actuators can use this function when they need extra communication with the master that sent the command.
+     *
+     * @return 当前线程正在服务的主控连接，如果当前线程不是被控的工作线程，这里返回 null
+     * <p>
+     * The master connection the current thread is serving. If the current thread is not a controlled worker thread, null is returned here
+     */
+    public static ControlledConnection currentConnection() {
+        return CURRENT_CONNECTION.get();
+    }
+
+    /**
+     * 获取到发出当前命令的主控主机名称，被控在需要反向连接主控的时候使用。
+     * <p>
+     * Get the host name of the master that issued the current command, which is used when the controlled end needs to connect back to the master.
+     *
+     * @param defaultSocket 当前线程没有在服务主控连接时使用的备用套接字
+     *                      <p>
+     *                      The fallback socket used when the current thread is not serving a master connection
+     * @return 主控的主机名称
+     * <p>
+     * Host name of the master
+     */
+    public static String getMasterHostName(Socket defaultSocket) {
+        ControlledConnection controlledConnection = CURRENT_CONNECTION.get();
+        return controlledConnection != null ? controlledConnection.getHostName() : defaultSocket.getInetAddress().getHostName();
+    }
+
+    /**
+     * 打开一个向发出当前命令的主控传输文件数据的通道，如果主控使用了多路复用模式，这里会在控制连接中打开一个逻辑数据流，否则会反向连接主控的文件端口。
+     * <p>
+     * Open a channel that transfers file data to the master that issued the current command. If the master uses the multiplexed mode, a logical stream is opened in the control connection, otherwise the file port of the master is connected back.
+     *
+     * @param defaultSocket 当前线程没有在服务主控连接时使用的备用套接字
+     *                      <p>
+     *                      The fallback socket used when the current thread is not serving a master connection
+     * @return 文件数据通道
+     * <p>
+     * File data channel
+     * @throws IOException 打开通道时发生的异常
+     */
+    public static DataChannel openFileChannel(Socket defaultSocket) throws IOException {
+        // 传输命令打开的数据通道会被调度器限速，并放入低优先级的发送队列
+        return TransferScheduler.shape(openChannel(MuxStream.KIND_FILE, defaultSocket, ConfigureConstantArea.FILE_PORT));
+    }
+
+    /**
+     * 打开一个向发出当前命令的主控传输持久会话数据的通道，如果主控使用了多路复用模式，这里会在控制连接中打开一个逻辑数据流，否则会反向连接主控的持久会话端口。
+     * <p>
+     * Open a channel that transfers persistent session data to the master that issued the current command. If the master uses the multiplexed mode, a logical stream is opened in the control connection, otherwise the persistent session port of the master is connected back.
+     *
+     * @param defaultSocket 当前线程没有在服务主控连接时使用的备用套接字
+     *                      <p>
+     *                      The fallback socket used when the current thread is not serving a master connection
+     * @return 持久会话数据通道
+     * <p>
+     * Persistent session data channel
+     * @throws IOException 打开通道时发生的异常
+     */
+    public static DataChannel openPersistentChannel(Socket defaultSocket) throws IOException {
+        return openChannel(MuxStream.KIND_PERSISTENT, defaultSocket, ConfigureConstantArea.PERSISTENT_SESSION_CHANNEL_PORT);
+    }
+
+    /**
+     * 如果当前命令是流式命令，打开一个将命令输出实时发送给发出该命令的主控的输出流。
+     * <p>
+     * If the current command is a streaming command, open an output stream that sends the command output to the master that issued it in real time.
+     *
+     * @param source 输出的来源，{@link Frame#OUTPUT_STDOUT} 或 {@link Frame#OUTPUT_STDERR}
+     *               <p>
+     *               Source of the output, {@link Frame#OUTPUT_STDOUT} or {@link Frame#OUTPUT_STDERR}
+     * @return 命令输出流，返回的输出流可以在其它线程中使用；如果当前命令不是流式命令，这里返回 null，命令的输出需要放在结果中返回
+     * <p>
+     * The command output stream, which can be used on other threads. If the current command is not a streaming command, null is returned and the output has to be returned in the result
+     */
+    public static OutputStream openCommandOutput(byte source) {
+        ControlledConnection controlledConnection = CURRENT_CONNECTION.get();
+        Frame command = CURRENT_COMMAND.get();
+        if (controlledConnection != null && command != null && command.getType() == Frame.TYPE_STREAM_COMMAND) {
+            return controlledConnection.openOutput(command.getRequestId(), source);
+        }
+        return null;
+    }
+
+    private static DataChannel openChannel(byte kind, Socket defaultSocket, int port) throws IOException {
+        ControlledConnection controlledConnection = CURRENT_CONNECTION.get();
+        Frame command = CURRENT_COMMAND.get();
+        if (controlledConnection != null && command != null && controlledConnection.isMultiplexed()) {
+            return controlledConnection.openStream(kind, command.getRequestId());
+        }
+        return ServerSocketAcceptor.connect(new InetSocketAddress(getMasterHostName(defaultSocket), port), command == null ? Frame.NO_REQUEST_ID : command.getRequestId());
     }
 
     /**
@@ -122,72 +262,236 @@ public abstract class ControlledSession implements Controlled, Host, Session {
      *                      After startup, the additional startup operation event implementation class is required before the service is officially started. This parameter is used for the extension implementation of subclasses.
      */
     protected void start(String[] args, ProgressEvent<Socket, OutputStream, InputStream> progressEvent) {
-        if (!(args.length > 0 && "reboot".equalsIgnoreCase(args[0]))) {
-            if (!this.Running) {
-                this.Running = true;
-            } else {
+        final Selector selector;
+        synchronized (this) {
+            if (this.Running) {
                 ConfigureConstantArea.LOGGER.warning("The accused session has been started, so you do not need to start it!");
                 return;
             }
+            try {
+                selector = Selector.open();
+                this.serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
+            } catch (IOException e) {
+                throw new SessionStartException(INIT_ERROR, e);
+            }
+            this.selector = selector;
+            this.Running = true;
             this.startDate = new Date();
         }
+        ConfigureConstantArea.LOGGER.log(Level.INFO, "The accused is ready to start connection.");
+        // 所有连接共用一个读取缓冲区，只有选择器线程会使用它
+        final ByteBuffer buffer = ByteBuffer.allocate(ConfigureConstantArea.TCP_BUFFER_MAX_SIZE);
         try {
-            ConfigureConstantArea.LOGGER.log(Level.INFO, "The accused is ready to start connection.");
-            this.accept = serverSocket.accept();
-            this.inputStream = accept.getInputStream();
-            this.outputStream = accept.getOutputStream();
-            final String send_file_byte = SEND_FILE_BYTE + " ok!";
-            final String send_file_error = SEND_FILE_ERROR + " error.....";
-            final String send_text = SEND_TEXT + " ok!";
-            final String return_to_text_data = "return to text data";
-            final byte[] buffer = new byte[ConfigureConstantArea.TCP_BUFFER_MAX_SIZE];
-            if (progressEvent != null) {
-                progressEvent.function1(this.accept);
-                progressEvent.function2(this.outputStream);
-                progressEvent.function3(this.inputStream);
-            }
-            while (this.Running && this.inputStream != null) {
-                int offset = this.inputStream.read(buffer);
-                if (offset > 0) {
-                    String s = runCommand(new String(buffer, 0, offset, ConfigureConstantArea.CHARSET));
-                    if (SEND_FILE_BYTE.equals(s)) {
-                        ConfigureConstantArea.LOGGER.info(send_file_byte);
-                    } else if (SEND_FILE_ERROR.equals(s)) {
-                        ConfigureConstantArea.LOGGER.warning(send_file_error);
-                    } else if (SEND_TEXT.equals(s)) {
-                        ConfigureConstantArea.LOGGER.info(send_text);
-                    } else {
-                        ConfigureConstantArea.LOGGER.info(return_to_text_data);
-                        outputStream.write(s.getBytes(ConfigureConstantArea.CHARSET));
-                        outputStream.flush();
+            // 主控断开连接之后不再递归调用 start，而是在这里继续等待下一个事件，使得调用栈不会随着重连而增长
+            while (this.Running && this.selector == selector) {
+                selector.select();
+                ControlledConnection pending;
+                while ((pending = this.pendingWrites.poll()) != null) {
+                    try {
+                        pending.flush();
+                    } catch (IOException | CancelledKeyException e) {
+                        closeConnection(pending);
+                    }
+                }
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        acceptConnection(selector, progressEvent);
+                        continue;
+                    }
+                    ControlledConnection controlledConnection = (ControlledConnection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            readCommand(controlledConnection, (SocketChannel) key.channel(), buffer);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            controlledConnection.flush();
+                        }
+                    } catch (IOException | CancelledKeyException e) {
+                        // 这里是因为主控断开了连接，会有异常出现，关闭该连接即可，其它连接不受影响
+                        closeConnection(controlledConnection);
                     }
-                } else {
-                    outputStream.write("ok!!".getBytes(StandardCharsets.UTF_8));
                 }
             }
-        } catch (IOException | NullPointerException ignored) {
-            // 这里是因为调用了stop或主控断开了连接，会有异常出现，在这里不去捕获，忽略即可
-            // 真正致命的错误在 serverSocket 初始化时就已经进行了处理了！！！
+        } catch (IOException | ClosedSelectorException ignored) {
+            // 这里是因为调用了stop，选择器被关闭了，会有异常出现，在这里不去捕获，忽略即可
+            // 真正致命的错误在 serverSocketChannel 初始化时就已经进行了处理了！！！
         } finally {
-            if (accept != null) {
-                IOUtils.close(this.outputStream);
-                IOUtils.close(this.inputStream);
-                try {
-                    accept.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
+            for (SelectionKey key : selector.keys()) {
+                Object attachment = key.attachment();
+                if (attachment instanceof ControlledConnection) {
+                    closeConnection((ControlledConnection) attachment);
                 }
             }
-            // 如果是外界主动调用的stop，就直接退出，反之是主控断开连接，需要进行重新接受连接操作
-            if (!this.Running) {
-                ConfigureConstantArea.LOGGER.log(Level.INFO, "Accused to actively stop operation...");
+            IOUtils.close(selector);
+            ConfigureConstantArea.LOGGER.log(Level.INFO, "Accused to actively stop operation...");
+        }
+    }
+
+    /**
+     * 接收一个新的主控连接，并将其注册到选择器中。
+     *
+     * @param selector      当前会话使用的选择器
+     * @param progressEvent 子类需要在连接建立之后执行的额外操作
+     * @throws IOException 接收连接时发生的异常
+     */
+    private void acceptConnection(Selector selector, ProgressEvent<Socket, OutputStream, InputStream> progressEvent) throws IOException {
+        SocketChannel socketChannel = this.serverSocketChannel.accept();
+        if (socketChannel == null) {
+            return;
+        }
+        socketChannel.configureBlocking(false);
+        socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        SelectionKey selectionKey = socketChannel.register(selector, SelectionKey.OP_READ);
+        ControlledConnection controlledConnection = new ControlledConnection(this, socketChannel, selectionKey);
+        selectionKey.attach(controlledConnection);
+        this.accept = controlledConnection.getSocket();
+        ConfigureConstantArea.LOGGER.info("Accept the connection of the master => " + controlledConnection.getInetAddress() + ", active connections: " + this.connectionCount.incrementAndGet());
+        if (progressEvent != null) {
+            progressEvent.function1(controlledConnection.getSocket());
+            progressEvent.function2(controlledConnection.getOutputStream());
+            // 控制通道的数据统一由选择器线程读取，因此这里不会再提供输入流
+            progressEvent.function3(null);
+        }
+    }
+
+    /**
+     * 从连接中读取一批数据，将其中所有完整的命令帧提交到工作线程池，不完整的帧会保留在连接的解码器中等待剩余的数据。
+     *
+     * @param controlledConnection 需要读取数据的连接
+     * @param socketChannel        连接对应的通道
+     * @param buffer               选择器线程共用的读取缓冲区
+     * @throws IOException 读取数据或解析帧时发生的异常
+     */
+    private void readCommand(ControlledConnection controlledConnection, SocketChannel socketChannel, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        int offset = socketChannel.read(buffer);
+        if (offset < 0) {
+            ConfigureConstantArea.LOGGER.log(Level.WARNING, "The master controller disconnects this session, and the accused continues to serve other connections.");
+            closeConnection(controlledConnection);
+            return;
+        }
+        buffer.flip();
+        FrameDecoder frameDecoder = controlledConnection.getFrameDecoder();
+        Frame frame;
+        while ((frame = frameDecoder.decode(buffer)) != null) {
+            if (frame.getType() == Frame.TYPE_HELLO) {
+                controlledConnection.enableMultiplex();
+                continue;
+            }
+            StreamMultiplexer multiplexer = controlledConnection.getMultiplexer();
+            if (multiplexer != null && multiplexer.onFrame(frame)) {
+                // 数据流帧只会被放入对应数据流的缓冲中，不会阻塞选择器线程
+                continue;
+            }
+            if (frame.getType() != Frame.TYPE_COMMAND && frame.getType() != Frame.TYPE_STREAM_COMMAND) {
+                // 被控只处理命令帧，其它类型的帧直接忽略
+                continue;
+            }
+            if (controlledConnection.offerCommand(frame, isTransferCommand(frame.getPayloadString()))) {
+                submit(controlledConnection);
+            }
+        }
+    }
+
+    /**
+     * 为一个连接提交一个执行任务，调用者需要已经为该连接占用了一个执行任务的名额，工作线程池繁忙时该连接中所有待执行的命令都会被拒绝。
+     *
+     * @param controlledConnection 需要执行命令的连接
+     */
+    void submit(ControlledConnection controlledConnection) {
+        try {
+            this.workers.execute(controlledConnection::drainCommands);
+        } catch (RejectedExecutionException e) {
+            ConfigureConstantArea.LOGGER.warning(BUSY_ERROR);
+            for (Frame rejected : controlledConnection.rejectCommands()) {
+                controlledConnection.send(FrameCodec.encode(Frame.TYPE_ERROR, rejected.getRequestId(), BUSY_ERROR));
+            }
+        }
+    }
+
+    /**
+     * 在工作线程中执行一个来自主控连接的命令，并将需要返回的结果作为结果帧发送给主控，结果帧会携带命令帧的请求编号。
+     *
+     * @param controlledConnection 发出命令的主控连接
+     * @param frame                需要执行的命令帧
+     */
+    void execute(ControlledConnection controlledConnection, Frame frame) {
+        CURRENT_CONNECTION.set(controlledConnection);
+        CURRENT_COMMAND.set(frame);
+        String command = frame.getPayloadString();
+        try {
+            String s = runCommand(command);
+            if (SEND_FILE_BYTE.equals(s)) {
+                ConfigureConstantArea.LOGGER.info(SEND_FILE_BYTE_LOG);
+            } else if (SEND_FILE_ERROR.equals(s)) {
+                ConfigureConstantArea.LOGGER.warning(SEND_FILE_ERROR_LOG);
+            } else if (SEND_TEXT.equals(s)) {
+                ConfigureConstantArea.LOGGER.info(SEND_TEXT_LOG);
             } else {
-                ConfigureConstantArea.LOGGER.log(Level.WARNING, "The master controller disconnects this session, and the accused prepares to accept a new connection again.");
-                this.start("reboot");
+                ConfigureConstantArea.LOGGER.info(RETURN_TO_TEXT_DATA);
+                controlledConnection.send(FrameCodec.encode(Frame.TYPE_RESULT, frame.getRequestId(), s));
             }
+        } catch (RuntimeException e) {
+            // 命令执行失败不会影响这个连接中的其它命令，错误信息会作为错误帧返回给主控
+            ConfigureConstantArea.LOGGER.log(Level.WARNING, "An error occurred while running the command: " + command, e);
+            controlledConnection.send(FrameCodec.encode(Frame.TYPE_ERROR, frame.getRequestId(), e.toString()));
+        } finally {
+            CURRENT_CONNECTION.remove();
+            CURRENT_COMMAND.remove();
         }
     }
 
+    /**
+     * 判断一个命令是否为文件传输命令，文件传输命令会排在同一个连接中的交互命令后面执行，并且不会占满连接的全部执行任务。
+     * <p>
+     * Determine whether a command is a file transfer command. File transfer commands are executed after the interactive commands of the same connection and never occupy all execution tasks of the connection.
+     *
+     * @param command 主控发送来的命令
+     *                <p>
+     *                Command sent by the master
+     * @return 如果返回true，代表该命令是文件传输命令，这里默认返回false，能够处理文件传输的子类需要重写它
+     * <p>
+     * If true is returned, the command is a file transfer command. False is returned by default, subclasses that handle file transfers need to override it
+     */
+    protected boolean isTransferCommand(String command) {
+        return false;
+    }
+
+    /**
+     * 由工作线程调用，通知选择器线程某一个连接中有需要发送的数据。
+     *
+     * @param controlledConnection 有数据需要发送的连接
+     */
+    void requestWrite(ControlledConnection controlledConnection) {
+        this.pendingWrites.add(controlledConnection);
+        Selector selector = this.selector;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    private void closeConnection(ControlledConnection controlledConnection) {
+        if (controlledConnection.isOpen()) {
+            controlledConnection.close();
+            this.connectionCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return 当前与该被控会话保持连接的主控数量。
+     * <p>
+     * The number of masters currently connected to this controlled session.
+     */
+    public int getConnectionCount() {
+        return this.connectionCount.get();
+    }
+
     /**
      * 终止主机，停止运行中的逻辑与程序，终止该主机对应的所有功能。
      * <p>
@@ -203,8 +507,16 @@ public abstract class ControlledSession implements Controlled, Host, Session {
             ConfigureConstantArea.LOGGER.log(Level.WARNING, STOP_WARN);
             return;
         }
-        ConfigureConstantArea.LOGGER.info("The operation of terminating the controlled session has been completed. You can manually close the current session. Of course, if you do not close the session, the session will be automatically closed when the next master control request is sent.");
-        this.Running = false;
+        ConfigureConstantArea.LOGGER.info("The operation of terminating the controlled session has been completed. All master connections of this session will be closed, and you can start the session again at any time.");
+        Selector selector;
+        synchronized (this) {
+            this.Running = false;
+            selector = this.selector;
+            this.selector = null;
+        }
+        if (selector != null) {
+            selector.wakeup();
+        }
         this.accept = null;
         this.startDate = null;
     }
@@ -217,7 +529,11 @@ public abstract class ControlledSession implements Controlled, Host, Session {
      */
     @Override
     public void shutDown() {
-        IOUtils.close(this.serverSocket);
+        if (isRunning()) {
+            stop();
+        }
+        IOUtils.close(this.serverSocketChannel);
+        this.workers.shutdownNow();
         // 开始清理本类在管理者中的内存占用
         DialogueManager.unRegisterSession(getSessionNum());
     }
@@ -266,9 +582,9 @@ public abstract class ControlledSession implements Controlled, Host, Session {
     public abstract ControlledSession cloneSession(int port);
 
     /**
-     * 获取到连接至该被控会话的主控信息
+     * 获取到连接至该被控会话的主控信息，当有多个主控同时连接的时候，这里返回的是最近一次接入的主控
      * <p>
-     * Obtain the master control information connected to the controlled session
+     * Obtain the master control information connected to the controlled session. When several masters are connected, the most recently connected one is returned here
      *
      * @return 该函数在会话运行时可以获取到该会话建立连接的主控信息，如果返回null，则代表当前被控会话没有运行或没有获取到连接。
      * <p>
@@ -276,12 +592,13 @@ public abstract class ControlledSession implements Controlled, Host, Session {
      */
     @Override
     public InetAddress ConnectedMaster() {
-        if (this.accept == null) return null;
+        Socket accept = this.accept;
+        if (accept == null) return null;
         else {
-            if (this.accept.isClosed()) {
+            if (accept.isClosed()) {
                 return null;
             } else {
-                return this.accept.getInetAddress();
+                return accept.getInetAddress();
             }
         }
     }
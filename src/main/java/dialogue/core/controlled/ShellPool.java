@@ -0,0 +1,263 @@
+package dialogue.core.controlled;
+
+import dialogue.ConfigureConstantArea;
+import dialogue.utils.BufferPool;
+import dialogue.utils.IOUtils;
+import dialogue.utils.ThreadUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+
+/**
+ * 常驻 shell 进程池，命令行会话会将命令写入池中空闲 shell 的标准输入执行，避免每一个命令都通过 JVM 创建一次子进程。
+ * <p>
+ * Pool of long-lived shell processes. The console session writes commands into the standard input of an idle shell of the pool, so a child process does not have to be created through the JVM for every command.
+ * <p>
+ * 每一个命令都在 shell 的子 shell 中通过 eval 执行，标准输入被重定向到 /dev/null，因此命令中修改的目录、变量与环境不会影响之后的命令。
+ * 命令结束之后 shell 会在标准输出与标准错误中分别写入一个随机的结束标记，标准输出的标记后面是命令的退出码。
+ * 读写失败、提前退出或者在结束标记之后还有输出的 shell 会被销毁，下一次需要的时候再重新创建。
+ * <p>
+ * Every command is run through eval in a subshell of the shell with its standard input redirected to /dev/null, so the directory, variables and environment changed by the command do not affect later commands.
+ * After the command finishes, the shell writes a random end marker into both the standard output and the standard error, and the marker in the standard output is followed by the exit code of the command.
+ * Shells that fail to read or write, exit early or produce output after the end marker are destroyed and created again the next time one is needed.
+ *
+ * @author 赵凌宇
+ */
+final class ShellPool {
+
+    private final String shellPath;
+    private final int size;
+    private final ConcurrentLinkedDeque<Shell> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger created = new AtomicInteger();
+
+    private ShellPool(String shellPath, int size) {
+        this.shellPath = shellPath;
+        this.size = size;
+    }
+
+    /**
+     * @return 根据配置创建的进程池，没有启用进程池或者找不到 shell 程序的时候返回 null。
+     * <p>
+     * The pool created according to the configuration. Null is returned when the pool is not enabled or the shell program cannot be found.
+     */
+    static ShellPool create() {
+        if (ConfigureConstantArea.CONSOLE_SHELL_POOL_SIZE <= 0) {
+            return null;
+        }
+        if (!new File(ConfigureConstantArea.CONSOLE_SHELL_PATH).canExecute()) {
+            ConfigureConstantArea.LOGGER.log(Level.WARNING, "The shell [" + ConfigureConstantArea.CONSOLE_SHELL_PATH + "] can not be executed, the shell pool is not used.");
+            return null;
+        }
+        return new ShellPool(ConfigureConstantArea.CONSOLE_SHELL_PATH, ConfigureConstantArea.CONSOLE_SHELL_POOL_SIZE);
+    }
+
+    /**
+     * 使用池中的一个 shell 执行命令，并将命令的两个输出分别写入对应的数据流。
+     * <p>
+     * Run a command with a shell of the pool and write the two outputs of the command into the corresponding streams.
+     *
+     * @param command 需要执行的命令
+     * @param stdout  标准输出需要写入的数据流
+     * @param stderr  标准错误需要写入的数据流
+     * @return 命令的退出码，如果池中的 shell 都在忙并且数量已经达到上限，这里返回 null，调用者需要自己创建进程执行命令
+     * @throws IOException          执行命令或者写入输出时发生的异常，发生异常的 shell 会被销毁
+     * @throws InterruptedException 等待命令结束时被中断的时候抛出的异常
+     */
+    Integer run(String command, OutputStream stdout, OutputStream stderr) throws IOException, InterruptedException {
+        Shell shell = borrow();
+        if (shell == null) {
+            return null;
+        }
+        boolean healthy = false;
+        try {
+            int exitCode = shell.run(command, stdout, stderr);
+            healthy = true;
+            return exitCode;
+        } finally {
+            if (healthy) {
+                this.idle.push(shell);
+            } else {
+                discard(shell);
+            }
+        }
+    }
+
+    /**
+     * 创建一个一次性的 shell 进程执行命令，池中没有可用的 shell 时使用，命令的解析方式与池中的 shell 一致，标准输入同样被重定向到 /dev/null。
+     * <p>
+     * Start a one-off shell process to run a command, used when no shell of the pool is available. The command is parsed the same way as by the shells of the pool, and the standard input is redirected to /dev/null as well.
+     *
+     * @param command 需要执行的命令
+     * @return 执行命令的进程
+     * @throws IOException 创建进程时发生的异常
+     */
+    Process exec(String command) throws IOException {
+        return new ProcessBuilder(this.shellPath, "-c", command).redirectInput(ProcessBuilder.Redirect.from(new File("/dev/null"))).start();
+    }
+
+    /**
+     * 销毁所有空闲的 shell，进程池之后依旧可以使用。
+     * <p>
+     * Destroy all idle shells, the pool can still be used afterwards.
+     */
+    void clear() {
+        Shell shell;
+        while ((shell = this.idle.poll()) != null) {
+            discard(shell);
+        }
+    }
+
+    private Shell borrow() {
+        Shell shell;
+        while ((shell = this.idle.poll()) != null) {
+            if (shell.process.isAlive()) {
+                return shell;
+            }
+            discard(shell);
+        }
+        if (this.created.incrementAndGet() > this.size) {
+            this.created.decrementAndGet();
+            return null;
+        }
+        try {
+            return new Shell(this.shellPath);
+        } catch (IOException e) {
+            this.created.decrementAndGet();
+            ConfigureConstantArea.LOGGER.log(Level.WARNING, "Failed to start the shell [" + this.shellPath + "] => " + e);
+            return null;
+        }
+    }
+
+    private void discard(Shell shell) {
+        this.created.decrementAndGet();
+        shell.process.destroyForcibly();
+        IOUtils.close(shell.stdin);
+        IOUtils.close(shell.stdout);
+        IOUtils.close(shell.stderr);
+    }
+
+    /**
+     * 在数据中查找结束标记。
+     */
+    private static int indexOf(byte[] buffer, int length, byte[] marker) {
+        for (int i = 0, end = length - marker.length; i <= end; i++) {
+            int j = 0;
+            while (j < marker.length && buffer[i + j] == marker[j]) {
+                j++;
+            }
+            if (j == marker.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 将输入流中结束标记之前的数据写入输出流，并返回结束标记所在行剩余的内容，可能是结束标记一部分的数据会被保留到确认之后再写出。
+     */
+    private static String copyUntil(InputStream inputStream, byte[] marker, OutputStream outputStream) throws IOException {
+        byte[] buffer = BufferPool.acquire(ConfigureConstantArea.TCP_BUFFER_MAX_SIZE);
+        try {
+            int length = 0;
+            while (true) {
+                int offset = inputStream.read(buffer, length, buffer.length - length);
+                if (offset < 0) {
+                    throw new EOFException("The shell exited unexpectedly.");
+                }
+                length += offset;
+                int index = indexOf(buffer, length, marker);
+                if (index >= 0) {
+                    outputStream.write(buffer, 0, index);
+                    return readLine(inputStream, buffer, index + marker.length, length);
+                }
+                int keep = Math.min(length, marker.length - 1);
+                if (length > keep) {
+                    outputStream.write(buffer, 0, length - keep);
+                    System.arraycopy(buffer, length - keep, buffer, 0, keep);
+                    length = keep;
+                }
+            }
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
+    private static String readLine(InputStream inputStream, byte[] buffer, int position, int length) throws IOException {
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            for (; position < length; position++) {
+                if (buffer[position] == '\n') {
+                    if (position + 1 != length) {
+                        // 结束标记之后不应该再有输出，例如命令在后台留下了还在输出的进程
+                        throw new IOException("Unexpected output after the end marker of the shell.");
+                    }
+                    return line.toString();
+                }
+                line.append((char) buffer[position]);
+            }
+            length = inputStream.read(buffer, 0, buffer.length);
+            if (length < 0) {
+                throw new EOFException("The shell exited unexpectedly.");
+            }
+            position = 0;
+        }
+    }
+
+    /**
+     * 池中的一个常驻 shell 进程。
+     */
+    private final static class Shell {
+        private final Process process;
+        private final OutputStream stdin;
+        private final InputStream stdout;
+        private final InputStream stderr;
+
+        private Shell(String shellPath) throws IOException {
+            this.process = new ProcessBuilder(shellPath).start();
+            this.stdin = this.process.getOutputStream();
+            this.stdout = this.process.getInputStream();
+            this.stderr = this.process.getErrorStream();
+        }
+
+        private int run(String command, OutputStream out, OutputStream err) throws IOException, InterruptedException {
+            String token = "__dialogue_" + UUID.randomUUID().toString().replace("-", "");
+            byte[] marker = ('\n' + token).getBytes(StandardCharsets.US_ASCII);
+            // 单引号中的内容不会被 shell 解释，命令中的单引号需要先结束引用再转义
+            String script = "( eval '" + command.replace("'", "'\\''") + "' ) </dev/null\n"
+                    + "printf '\\n%s %d\\n' " + token + " $?\n"
+                    + "printf '\\n%s\\n' " + token + " >&2\n";
+            this.stdin.write(script.getBytes(ConfigureConstantArea.getCharset()));
+            this.stdin.flush();
+            AtomicReference<IOException> error = new AtomicReference<>();
+            Thread errorPump = ThreadUtils.start("dialogue-shell-stderr", () -> {
+                try {
+                    copyUntil(this.stderr, marker, err);
+                } catch (IOException e) {
+                    error.set(e);
+                }
+            });
+            String exitCode;
+            try {
+                exitCode = copyUntil(this.stdout, marker, out).trim();
+            } catch (IOException e) {
+                // 标准错误的读取线程会在 shell 被销毁之后结束
+                this.process.destroyForcibly();
+                throw e;
+            }
+            errorPump.join();
+            if (error.get() != null) {
+                throw error.get();
+            }
+            try {
+                return Integer.parseInt(exitCode);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid exit code from the shell: " + exitCode, e);
+            }
+        }
+    }
+}
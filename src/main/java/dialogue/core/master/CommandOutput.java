@@ -0,0 +1,178 @@
+package dialogue.core.master;
+
+import dialogue.ConfigureConstantArea;
+import dialogue.core.exception.SessionRunException;
+import dialogue.core.protocol.Frame;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 流式命令的输出，被控在命令运行期间发送的每一段输出都会按照顺序放入这里，调用者可以在命令结束之前逐段读取。
+ * <p>
+ * Output of a streaming command. Every piece of output sent by the controlled end while the command runs is put here in order, and callers can read it piece by piece before the command finishes.
+ * <p>
+ * 缓存的输出最多只有 console.stream.buffer.size 个字节，读取的速度跟不上的时候最早的输出会被丢弃，丢弃的字节数量可以通过 {@link #getDroppedBytes()} 获取，连接的读取线程因此永远不会被一个输出很多的命令阻塞。
+ * <p>
+ * At most console.stream.buffer.size bytes of output are buffered. When reading does not keep up, the oldest output is dropped and the number of dropped bytes is available through {@link #getDroppedBytes()}, so the reader thread of the connection is never blocked by a chatty command.
+ *
+ * @author 赵凌宇
+ */
+public final class CommandOutput {
+
+    private final ArrayDeque<Chunk> chunks = new ArrayDeque<>();
+    private final CompletableFuture<String> result;
+    private long bufferedBytes = 0;
+    private long droppedBytes = 0;
+    private boolean finished = false;
+
+    CommandOutput(CompletableFuture<String> result) {
+        this.result = result;
+        // 结果帧总是在所有输出帧之后到达，结果到达或者连接断开的时候输出就结束了
+        result.whenComplete((s, e) -> finish());
+    }
+
+    /**
+     * @return 命令的运行结果，流式命令的结果中只包含命令的退出码。
+     * <p>
+     * The result of the command. The result of a streaming command only contains the exit code of the command.
+     */
+    public CompletableFuture<String> getResult() {
+        return this.result;
+    }
+
+    /**
+     * @return 由于读取的速度跟不上而被丢弃的输出字节数量。
+     * <p>
+     * The number of output bytes dropped because reading did not keep up.
+     */
+    public synchronized long getDroppedBytes() {
+        return this.droppedBytes;
+    }
+
+    /**
+     * 取出下一段输出，没有输出的时候会等待。
+     * <p>
+     * Take the next piece of output, waiting when there is none.
+     *
+     * @return 下一段输出，如果命令已经结束并且所有的输出都已经被取出，这里返回 null
+     * <p>
+     * The next piece of output. If the command has finished and all output has been taken, null is returned
+     * @throws InterruptedException 等待时被中断的时候抛出的异常
+     */
+    public synchronized Chunk take() throws InterruptedException {
+        while (this.chunks.isEmpty() && !this.finished) {
+            this.wait();
+        }
+        Chunk chunk = this.chunks.poll();
+        if (chunk != null) {
+            this.bufferedBytes -= chunk.data.length;
+        }
+        return chunk;
+    }
+
+    /**
+     * 将所有的输出按照来源分别写入两个输出流，直到命令结束，并返回命令的运行结果。
+     * <p>
+     * Write all output into two output streams according to its source until the command finishes, and return the result of the command.
+     *
+     * @param out 标准输出需要写入的数据流
+     *            <p>
+     *            Stream the standard output is written to
+     * @param err 标准错误需要写入的数据流，输出被丢弃的时候也会在这里写入提示
+     *            <p>
+     *            Stream the standard error is written to, a notice is also written here when output is dropped
+     * @return 命令的运行结果
+     * <p>
+     * The result of the command
+     * @throws IOException 写入数据流时发生的异常
+     */
+    public String copyTo(OutputStream out, OutputStream err) throws IOException {
+        long reported = 0;
+        try {
+            Chunk chunk;
+            while ((chunk = take()) != null) {
+                long dropped = getDroppedBytes();
+                if (dropped != reported) {
+                    err.write(("\n... " + (dropped - reported) + " bytes of output dropped ...\n").getBytes(ConfigureConstantArea.getCharset()));
+                    reported = dropped;
+                }
+                OutputStream target = chunk.isError() ? err : out;
+                target.write(chunk.data);
+                target.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SessionRunException(e);
+        }
+        return MasterConnection.await(this.result);
+    }
+
+    /**
+     * 由连接的读取线程调用，放入一个输出帧的数据体，超出缓存上限时丢弃最早的输出。
+     */
+    synchronized void offer(byte[] payload) {
+        if (this.finished || payload.length == 0) {
+            return;
+        }
+        byte[] data = new byte[payload.length - 1];
+        System.arraycopy(payload, 1, data, 0, data.length);
+        this.chunks.add(new Chunk(payload[0], data));
+        this.bufferedBytes += data.length;
+        while (this.bufferedBytes > ConfigureConstantArea.CONSOLE_STREAM_BUFFER_SIZE && this.chunks.size() > 1) {
+            Chunk dropped = this.chunks.poll();
+            this.bufferedBytes -= dropped.data.length;
+            this.droppedBytes += dropped.data.length;
+        }
+        this.notifyAll();
+    }
+
+    private synchronized void finish() {
+        this.finished = true;
+        this.notifyAll();
+    }
+
+    /**
+     * 流式命令的一段输出。
+     * <p>
+     * A piece of output of a streaming command.
+     */
+    public final static class Chunk {
+        private final byte source;
+        private final byte[] data;
+
+        private Chunk(byte source, byte[] data) {
+            this.source = source;
+            this.data = data;
+        }
+
+        /**
+         * @return 如果返回true，代表这段输出来自标准错误。
+         * <p>
+         * If true is returned, this piece of output comes from the standard error.
+         */
+        public boolean isError() {
+            return this.source == Frame.OUTPUT_STDERR;
+        }
+
+        /**
+         * @return 这段输出的原始字节。
+         * <p>
+         * The raw bytes of this piece of output.
+         */
+        public byte[] getData() {
+            return this.data;
+        }
+
+        /**
+         * @return 使用通信文字编码解码之后的这段输出，多字节字符可能会被拆分在相邻的两段输出中。
+         * <p>
+         * This piece of output decoded with the communication charset. A multi-byte character may be split between two adjacent pieces.
+         */
+        public String getText() {
+            return new String(this.data, ConfigureConstantArea.getCharset());
+        }
+    }
+}
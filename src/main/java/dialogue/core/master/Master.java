@@ -3,6 +3,7 @@ package dialogue.core.master;
 import dialogue.core.result.StringResult;
 
 import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 主控端服务接口，代表被控端的身份，这里主要用于标记身份
@@ -24,6 +25,30 @@ public interface Master {
      */
     StringResult runCommandGetResult(String command);
 
+    /**
+     * 异步的运行一个命令，命令发送之后会立即返回，不会等待上一个命令的结果，因此可以在一个连接中连续的发送多个命令，被控会并发的执行它们，结果通过请求编号与命令对应。
+     * <p>
+     * Run a command asynchronously. The function returns as soon as the command is sent without waiting for the result of the previous command, so several commands can be sent one after another in one connection. The controlled end executes them concurrently, and the results are matched with the commands by request id.
+     * <p>
+     * 结果对象会在主控的读取线程中完成，请不要在其回调函数中执行耗时的操作，需要时请使用带有 Async 后缀的回调函数。
+     * <p>
+     * The result object is completed on the reading thread of the master, please do not perform time-consuming operations in its callbacks. Use the callbacks with the Async suffix when needed.
+     * <p>
+     * 默认实现会在公共线程池中调用 {@link #runCommandGetResult(String)}，使得在 1.0.6 之前实现了该接口的类依旧可以使用，能够在一个连接中并发发送命令的实现需要重写它。
+     * <p>
+     * The default implementation calls {@link #runCommandGetResult(String)} on the common pool, so classes implementing this interface before 1.0.6 keep working. Implementations that can send commands concurrently over one connection need to override it.
+     *
+     * @param command 需要在主机上运行的命令
+     *                <p>
+     *                Commands that need to be run on the host
+     * @return 运行命令之后的结果数据，与 {@link #runCommandGetResult(String)} 一样，异常信息会被记录在结果对象中，返回的对象不会以异常的方式完成
+     * <p>
+     * The result data after running the command. Like {@link #runCommandGetResult(String)}, exception information is recorded in the result object, and the returned object is never completed exceptionally
+     */
+    default CompletableFuture<StringResult> runCommandAsync(String command) {
+        return CompletableFuture.supplyAsync(() -> runCommandGetResult(command));
+    }
+
     /**
      * 获取到与当前主控会话互相连接的被控信息
      * <p>
@@ -0,0 +1,462 @@
+package dialogue.core.master;
+
+import dialogue.ConfigureConstantArea;
+import dialogue.core.channel.*;
+import dialogue.core.exception.SessionRunException;
+import dialogue.core.protocol.Frame;
+import dialogue.core.protocol.FrameCodec;
+import dialogue.utils.IOUtils;
+import dialogue.utils.ThreadUtils;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * 主控与被控之间的控制连接，其中包含一个读取线程，负责将被控返回的结果帧交给等待它的请求，并在多路复用模式中分发逻辑数据流的数据。
+ * <p>
+ * The control connection between the master and the controlled end. It contains a reading thread that hands the result frames returned by the controlled end to the requests waiting for them, and dispatches the data of logical streams in the multiplexed mode.
+ * <p>
+ * 多路复用模式中，文件数据与持久会话数据都通过这一个连接传输，被控不再需要反向连接主控的文件端口与持久会话端口。
+ * <p>
+ * In the multiplexed mode, file data and persistent session data are all transferred through this connection, and the controlled end no longer needs to connect back to the file port and persistent session port of the master.
+ * <p>
+ * 命令帧与其它控制帧总是优先发送，批量传输的数据帧只会在没有控制帧等待发送的时候写入连接。
+ * <p>
+ * Command frames and other control frames are always sent first, the data frames of bulk transfers are only written to the connection when no control frame is waiting to be sent.
+ *
+ * @author 赵凌宇
+ */
+public final class MasterConnection implements Closeable {
+
+    /**
+     * 最多保留的没有被领取的结果数量，等待数据通道的请求会通过它们得知被控没有打开数据通道的原因。
+     */
+    private final static int UNCLAIMED_RESULT_LIMIT = 64;
+    private final static int READ_BUFFER_SIZE = 8192;
+
+    private final Socket socket;
+    private final InputStream inputStream;
+    private final OutputStream outputStream;
+    private final StreamMultiplexer multiplexer;
+    private final Map<Integer, CompletableFuture<String>> pendingResults = new ConcurrentHashMap<>();
+    /**
+     * 被控已经打开但还没有被接收的数据流，以及没有请求在等待的结果，都由这个对象的锁保护。
+     */
+    private final Map<Integer, CommandOutput> pendingOutputs = new ConcurrentHashMap<>();
+    private final Map<Integer, ArrayDeque<MuxStream>> openedStreams = new HashMap<>();
+    private final LinkedHashMap<Integer, Frame> unclaimedResults = new LinkedHashMap<Integer, Frame>() {
+        private final static long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Frame> eldest) {
+            return size() > UNCLAIMED_RESULT_LIMIT;
+        }
+    };
+    /**
+     * 正在等待或正在发送控制帧的线程数量，批量传输的数据帧会等待它变为 0 之后再发送。
+     */
+    private final AtomicInteger prioritySenders = new AtomicInteger();
+    private final Thread reader;
+    private volatile boolean closed = false;
+
+    /**
+     * @param socket    已经连接到被控的套接字
+     *                  <p>
+     *                  Socket already connected to the controlled end
+     * @param multiplex 如果设置为true，文件与持久会话的数据流会在该连接中传输
+     *                  <p>
+     *                  If set to true, the streams of files and persistent sessions are transferred in this connection
+     * @throws IOException 获取数据流或发送握手帧时发生的异常
+     */
+    public MasterConnection(Socket socket, boolean multiplex) throws IOException {
+        this.socket = socket;
+        this.socket.setTcpNoDelay(true);
+        // 读取线程每一帧都需要先读取帧头，使用缓冲流避免每个帧头都产生一次系统调用，
+        // 缓冲区小于数据帧，较大的数据体会绕过缓冲区直接读取到帧中
+        this.inputStream = new BufferedInputStream(socket.getInputStream(), READ_BUFFER_SIZE);
+        this.outputStream = socket.getOutputStream();
+        if (multiplex) {
+            this.multiplexer = new StreamMultiplexer(new FrameSender() {
+                @Override
+                public void send(byte[] frame) throws IOException {
+                    MasterConnection.this.send(frame);
+                }
+
+                @Override
+                public void sendBulk(byte[] frame) throws IOException {
+                    MasterConnection.this.sendBulk(frame);
+                }
+            }, this::onOpen);
+            send(FrameCodec.encode(Frame.TYPE_HELLO, Frame.NO_REQUEST_ID, new byte[0], 0, 0));
+        } else {
+            this.multiplexer = null;
+        }
+        this.reader = ThreadUtils.start("dialogue-master-reader-" + socket.getInetAddress().getHostAddress() + ':' + socket.getPort(), this::readFrames);
+    }
+
+    /**
+     * @return 如果返回true，代表文件与持久会话的数据流会在该连接中传输。
+     * <p>
+     * If true is returned, the streams of files and persistent sessions are transferred in this connection.
+     */
+    public boolean isMultiplexed() {
+        return this.multiplexer != null;
+    }
+
+    /**
+     * @return 如果返回true，代表该连接仍然可以使用。
+     * <p>
+     * If true is returned, the connection can still be used.
+     */
+    public boolean isOpen() {
+        return !this.closed;
+    }
+
+    /**
+     * 将命令发送给被控，但是不等待它的结果，被控返回的结果会被丢弃。
+     * <p>
+     * Send the command to the controlled end without waiting for its result, the result returned by the controlled end is discarded.
+     *
+     * @param command 需要发送的命令
+     *                <p>
+     *                Command to be sent
+     * @return 命令对应的请求编号，可以使用它接收被控为该命令打开的数据通道
+     * <p>
+     * The request id of the command, which can be used to accept the data channel opened by the controlled end for the command
+     * @throws IOException 发送数据时发生的异常
+     */
+    public int sendCommand(String command) throws IOException {
+        return sendCommand(command, null);
+    }
+
+    /**
+     * 将命令发送给被控，被控返回的结果会被用来完成指定的对象。
+     * <p>
+     * Send the command to the controlled end, and the result returned by the controlled end is used to complete the specified object.
+     *
+     * @param command 需要发送的命令
+     *                <p>
+     *                Command to be sent
+     * @param result  接收命令结果的对象，被控返回错误帧时会以 {@link SessionRunException} 异常完成，如果为 null，结果会被丢弃
+     *                <p>
+     *                Object receiving the command result. It is completed exceptionally with {@link SessionRunException} when the controlled end returns an error frame. If null, the result is discarded
+     * @return 命令对应的请求编号，可以使用它接收被控为该命令打开的数据通道
+     * <p>
+     * The request id of the command, which can be used to accept the data channel opened by the controlled end for the command
+     * @throws IOException 发送数据时发生的异常
+     */
+    public int sendCommand(String command, CompletableFuture<String> result) throws IOException {
+        return sendCommand(Frame.TYPE_COMMAND, command, result, null);
+    }
+
+    private int sendCommand(byte type, String command, CompletableFuture<String> result, CommandOutput commandOutput) throws IOException {
+        int requestId = FrameCodec.nextRequestId();
+        if (commandOutput != null) {
+            this.pendingOutputs.put(requestId, commandOutput);
+            result.whenComplete((s, e) -> this.pendingOutputs.remove(requestId));
+        }
+        if (result != null) {
+            // 在发送之前登记，避免结果比登记先到达
+            this.pendingResults.put(requestId, result);
+        }
+        this.prioritySenders.incrementAndGet();
+        try {
+            checkOpen();
+            FrameCodec.write(this.outputStream, type, requestId, command);
+        } catch (IOException e) {
+            if (result != null) {
+                this.pendingResults.remove(requestId);
+            }
+            if (commandOutput != null) {
+                this.pendingOutputs.remove(requestId);
+            }
+            throw e;
+        } finally {
+            endPriority();
+        }
+        return requestId;
+    }
+
+    /**
+     * 将命令发送给被控，并返回一个在结果帧到达时完成的对象。
+     * <p>
+     * Send the command to the controlled end and return an object that is completed when the result frame arrives.
+     *
+     * @param command 需要发送的命令
+     *                <p>
+     *                Command to be sent
+     * @return 命令结果，被控返回错误帧时会以 {@link SessionRunException} 异常完成
+     * <p>
+     * The command result. It is completed exceptionally with {@link SessionRunException} when the controlled end returns an error frame
+     */
+    public CompletableFuture<String> submit(String command) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        try {
+            sendCommand(command, future);
+        } catch (IOException e) {
+            future.completeExceptionally(new SessionRunException(e));
+        }
+        return future;
+    }
+
+    /**
+     * 将命令作为流式命令发送给被控，被控会在命令运行期间将命令的输出实时发送回来，而不是在命令结束之后一次性返回。
+     * <p>
+     * Send the command to the controlled end as a streaming command. The controlled end sends the output of the command back in real time while it runs instead of returning it all at once after the command finishes.
+     *
+     * @param command 需要发送的命令
+     *                <p>
+     *                Command to be sent
+     * @return 命令的输出，其中的结果在被控返回结果帧的时候完成，发送失败的时候以 {@link SessionRunException} 异常完成
+     * <p>
+     * Output of the command. Its result is completed when the controlled end returns the result frame, and completed exceptionally with {@link SessionRunException} when sending fails
+     */
+    public CommandOutput submitStreaming(String command) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CommandOutput commandOutput = new CommandOutput(future);
+        try {
+            sendCommand(Frame.TYPE_STREAM_COMMAND, command, future, commandOutput);
+        } catch (IOException e) {
+            future.completeExceptionally(new SessionRunException(e));
+        }
+        return commandOutput;
+    }
+
+    /**
+     * 将命令发送给被控，并等待它的结果。
+     * <p>
+     * Send the command to the controlled end and wait for its result.
+     *
+     * @param command 需要发送的命令
+     *                <p>
+     *                Command to be sent
+     * @return 被控返回的结果
+     * <p>
+     * The result returned by the controlled end
+     */
+    public String runCommand(String command) {
+        return await(submit(command));
+    }
+
+    /**
+     * 等待一个命令结果，并将其中的异常转换为会话运行异常。
+     * <p>
+     * Wait for a command result and convert the exception in it into a session run exception.
+     *
+     * @param future 命令结果
+     *               <p>
+     *               The command result
+     * @return 被控返回的结果
+     * <p>
+     * The result returned by the controlled end
+     */
+    public static String await(CompletableFuture<String> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SessionRunException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SessionRunException) {
+                throw (SessionRunException) cause;
+            }
+            throw new SessionRunException(cause);
+        }
+    }
+
+    /**
+     * 接收被控为指定请求打开的文件数据通道。
+     * <p>
+     * Accept the file data channel opened by the controlled end for the specified request.
+     *
+     * @param requestId 打开数据通道的命令对应的请求编号
+     *                  <p>
+     *                  The request id of the command that opens the data channel
+     * @return 文件数据通道
+     * <p>
+     * File data channel
+     * @throws IOException 连接断开或被控返回了错误时抛出的异常
+     */
+    public DataChannel acceptFileChannel(int requestId) throws IOException {
+        // 传输命令打开的数据通道会被调度器限速，并放入低优先级的发送队列
+        return TransferScheduler.shape(isMultiplexed() ? acceptStream(requestId) : ServerSocketAcceptor.of(ConfigureConstantArea.FILE_PORT).accept(requestId));
+    }
+
+    /**
+     * 接收被控为指定请求打开的持久会话数据通道。
+     * <p>
+     * Accept the persistent session data channel opened by the controlled end for the specified request.
+     *
+     * @param requestId 打开数据通道的命令对应的请求编号
+     *                  <p>
+     *                  The request id of the command that opens the data channel
+     * @return 持久会话数据通道
+     * <p>
+     * Persistent session data channel
+     * @throws IOException 连接断开或被控返回了错误时抛出的异常
+     */
+    public DataChannel acceptPersistentChannel(int requestId) throws IOException {
+        return isMultiplexed() ? acceptStream(requestId) : ServerSocketAcceptor.of(ConfigureConstantArea.PERSISTENT_SESSION_CHANNEL_PORT).accept(requestId);
+    }
+
+    private DataChannel acceptStream(int requestId) throws IOException {
+        synchronized (this.openedStreams) {
+            while (true) {
+                ArrayDeque<MuxStream> muxStreams = this.openedStreams.get(requestId);
+                if (muxStreams != null) {
+                    MuxStream muxStream = muxStreams.poll();
+                    if (muxStreams.isEmpty()) {
+                        this.openedStreams.remove(requestId);
+                    }
+                    return muxStream;
+                }
+                // 被控在没有打开数据流的情况下直接返回了结果，说明命令在被控中执行失败了
+                Frame frame = this.unclaimedResults.remove(requestId);
+                if (frame != null) {
+                    throw new IOException(frame.getPayloadString());
+                }
+                checkOpen();
+                try {
+                    this.openedStreams.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the data channel.", e);
+                }
+            }
+        }
+    }
+
+    private void onOpen(MuxStream muxStream) {
+        synchronized (this.openedStreams) {
+            this.openedStreams.computeIfAbsent(muxStream.getRequestId(), k -> new ArrayDeque<>()).add(muxStream);
+            this.openedStreams.notifyAll();
+        }
+    }
+
+    private void send(byte[] frame) throws IOException {
+        this.prioritySenders.incrementAndGet();
+        try {
+            write(frame);
+        } finally {
+            endPriority();
+        }
+    }
+
+    private void sendBulk(byte[] frame) throws IOException {
+        synchronized (this.prioritySenders) {
+            while (this.prioritySenders.get() > 0 && !this.closed) {
+                try {
+                    this.prioritySenders.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting to send.");
+                }
+            }
+        }
+        write(frame);
+    }
+
+    private void endPriority() {
+        if (this.prioritySenders.decrementAndGet() == 0) {
+            synchronized (this.prioritySenders) {
+                this.prioritySenders.notifyAll();
+            }
+        }
+    }
+
+    private void write(byte[] frame) throws IOException {
+        synchronized (this.outputStream) {
+            this.outputStream.write(frame);
+            this.outputStream.flush();
+        }
+    }
+
+    private void readFrames() {
+        try {
+            while (!this.closed) {
+                Frame frame = FrameCodec.read(this.inputStream);
+                if (this.multiplexer != null && this.multiplexer.onFrame(frame)) {
+                    continue;
+                }
+                if (frame.getType() == Frame.TYPE_OUTPUT) {
+                    CommandOutput commandOutput = this.pendingOutputs.get(frame.getRequestId());
+                    if (commandOutput != null) {
+                        commandOutput.offer(frame.getPayload());
+                    }
+                    continue;
+                }
+                if (frame.getType() != Frame.TYPE_RESULT && frame.getType() != Frame.TYPE_ERROR) {
+                    continue;
+                }
+                CompletableFuture<String> future = this.pendingResults.remove(frame.getRequestId());
+                if (future == null) {
+                    if (frame.getRequestId() != Frame.NO_REQUEST_ID) {
+                        synchronized (this.openedStreams) {
+                            this.unclaimedResults.put(frame.getRequestId(), frame);
+                            this.openedStreams.notifyAll();
+                        }
+                    }
+                } else if (frame.getType() == Frame.TYPE_ERROR) {
+                    future.completeExceptionally(new SessionRunException(frame.getPayloadString()));
+                } else {
+                    future.complete(frame.getPayloadString());
+                }
+            }
+        } catch (IOException e) {
+            if (!this.closed) {
+                ConfigureConstantArea.LOGGER.log(Level.WARNING, "The connection to the controlled end is broken => " + e);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (this.closed) {
+            throw new IOException("The connection to the controlled end is closed.");
+        }
+    }
+
+    /**
+     * 关闭连接，所有等待中的请求与数据流都会立即结束。
+     * <p>
+     * Close the connection. All waiting requests and streams end immediately.
+     */
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        IOUtils.close(this.socket);
+        if (this.multiplexer != null) {
+            this.multiplexer.closeAll();
+        }
+        SessionRunException exception = new SessionRunException("The connection to the controlled end is closed.");
+        for (Integer requestId : new ArrayList<>(this.pendingResults.keySet())) {
+            CompletableFuture<String> future = this.pendingResults.remove(requestId);
+            if (future != null) {
+                future.completeExceptionally(exception);
+            }
+        }
+        synchronized (this.openedStreams) {
+            this.openedStreams.clear();
+            this.openedStreams.notifyAll();
+        }
+        synchronized (this.prioritySenders) {
+            this.prioritySenders.notifyAll();
+        }
+    }
+}
@@ -1,14 +1,16 @@
 package dialogue.core.master;
 
-import dialogue.ConfigureConstantArea;
 import dialogue.Session;
 import dialogue.core.actuator.*;
+import dialogue.core.channel.TransferScheduler;
 import dialogue.core.exception.SessionRunException;
+import dialogue.core.result.DirectoryListing;
 import dialogue.core.result.StringResult;
 
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.util.logging.Level;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.regex.Matcher;
 
 /**
@@ -20,21 +22,6 @@ import java.util.regex.Matcher;
  */
 public class MasterFileSession extends TCPSession {
 
-    protected final static ServerSocket fileSocket;
-
-    static {
-        ServerSocket fileSocket1;
-        try {
-            fileSocket1 = new ServerSocket(ConfigureConstantArea.FILE_PORT);
-            ConfigureConstantArea.LOGGER.info("file Socket is ok!");
-        } catch (IOException e) {
-            fileSocket1 = null;
-            ConfigureConstantArea.LOGGER.log(Level.WARNING, "The file transfer channel was not initialized successfully! Therefore, the file transfer command cannot be used!");
-            e.printStackTrace();
-        }
-        fileSocket = fileSocket1;
-    }
-
     protected MasterLookFileActuator masterLookFileActuator;
     protected MasterGetFileActuator masterGetFileActuator;
     protected MasterPutFileActuator masterPutFileActuator;
@@ -45,6 +32,9 @@ public class MasterFileSession extends TCPSession {
     protected MasterSeeDirNameActuator masterSeeDirNameActuator;
     protected MasterRunningProgramActuator masterRunningProgramActuator;
     protected MasterSnapActuator masterSnapActuator;
+    protected MasterLimitActuator masterLimitActuator;
+    protected MasterSearchActuator masterSearchActuator;
+    protected MasterFollowActuator masterFollowActuator;
 
     protected MasterFileSession() {
     }
@@ -64,16 +54,19 @@ public class MasterFileSession extends TCPSession {
     public void start(String... args) {
         super.start(args);
         // 注册需要的组件
-        this.masterLookFileActuator = new MasterLookFileActuator(fileSocket, outputStream);
-        this.masterGetFileActuator = new MasterGetFileActuator(fileSocket, outputStream);
-        this.masterPutFileActuator = new MasterPutFileActuator(fileSocket, outputStream, inputStream);
-        this.masterGetsDirActuator = new MasterGetsDirActuator(fileSocket, outputStream);
-        this.masterPutsDirActuator = new MasterPutsDirActuator(fileSocket, outputStream);
-        this.masterPutsNCActuator = new MasterPutsNCActuator(fileSocket, outputStream);
-        this.masterSeeDirActuator = new MasterSeeDirActuator(fileSocket, outputStream);
-        this.masterSeeDirNameActuator = new MasterSeeDirNameActuator(fileSocket, outputStream);
-        this.masterRunningProgramActuator = new MasterRunningProgramActuator(fileSocket, outputStream, inputStream);
-        masterSnapActuator = new MasterSnapActuator(fileSocket, outputStream, inputStream);
+        this.masterLookFileActuator = new MasterLookFileActuator(masterConnection);
+        this.masterGetFileActuator = new MasterGetFileActuator(masterConnection);
+        this.masterPutFileActuator = new MasterPutFileActuator(masterConnection);
+        this.masterGetsDirActuator = new MasterGetsDirActuator(masterConnection);
+        this.masterPutsDirActuator = new MasterPutsDirActuator(masterConnection);
+        this.masterPutsNCActuator = new MasterPutsNCActuator(masterConnection);
+        this.masterSeeDirActuator = new MasterSeeDirActuator(masterConnection);
+        this.masterSeeDirNameActuator = new MasterSeeDirNameActuator(masterConnection);
+        this.masterRunningProgramActuator = new MasterRunningProgramActuator(masterConnection);
+        masterSnapActuator = new MasterSnapActuator(masterConnection);
+        this.masterLimitActuator = new MasterLimitActuator(masterConnection);
+        this.masterSearchActuator = new MasterSearchActuator(masterConnection);
+        this.masterFollowActuator = new MasterFollowActuator(masterConnection);
         ActuatorManager.registerMasterActuator(masterLookFileActuator);
         ActuatorManager.registerMasterActuator(masterGetFileActuator);
         ActuatorManager.registerMasterActuator(masterPutFileActuator);
@@ -84,6 +77,9 @@ public class MasterFileSession extends TCPSession {
         ActuatorManager.registerMasterActuator(masterSeeDirNameActuator);
         ActuatorManager.registerMasterActuator(masterRunningProgramActuator);
         ActuatorManager.registerMasterActuator(masterSnapActuator);
+        ActuatorManager.registerMasterActuator(masterLimitActuator);
+        ActuatorManager.registerMasterActuator(masterSearchActuator);
+        ActuatorManager.registerMasterActuator(masterFollowActuator);
     }
 
     /**
@@ -106,6 +102,9 @@ public class MasterFileSession extends TCPSession {
         ActuatorManager.unMasterRegister(this.masterSeeDirNameActuator.getName());
         ActuatorManager.unMasterRegister(this.masterRunningProgramActuator.getName());
         ActuatorManager.unMasterRegister(this.masterSnapActuator.getName());
+        ActuatorManager.unMasterRegister(this.masterLimitActuator.getName());
+        ActuatorManager.unMasterRegister(this.masterSearchActuator.getName());
+        ActuatorManager.unMasterRegister(this.masterFollowActuator.getName());
     }
 
     /**
@@ -123,27 +122,34 @@ public class MasterFileSession extends TCPSession {
     @Override
     public String runCommand(String command) {
         if (command.length() != 0) {
-            if (fileSocket != null) {
-                // 首先解析命令运行之后返回的数据格式
-                Matcher matcher = COMMAND_PATTERN.matcher(command);
-                if (matcher.find()) {
-                    String type = matcher.group(1);
-                    try {
-                        // 根据type 处理到对方发送过来的数据
-                        Actuator actuator = ActuatorManager.getMasterActuatorOrNull(type.trim());
-                        if (actuator != null && actuator.getType() == Session.MASTER_FILE_SESSION) {
+            // 首先解析命令运行之后返回的数据格式
+            Matcher matcher = COMMAND_PATTERN.matcher(command);
+            if (matcher.find()) {
+                String type = matcher.group(1);
+                try {
+                    // 根据type 处理到对方发送过来的数据
+                    Actuator actuator = ActuatorManager.getMasterActuatorOrNull(type.trim());
+                    if (actuator != null && actuator.getType() == Session.MASTER_FILE_SESSION) {
+                        if (actuator instanceof MasterSeeDirActuator) {
                             return actuator.runActuatorCommand(command, matcher);
-                        } else {
-                            // 如果不是我们的文件会话可以处理的命令，就直接提供给父类处理
+                        }
+                        try {
+                            // 文件传输命令交给传输调度器执行，受到传输数量与带宽的限制
+                            return actuator.isTransfer() ? TransferScheduler.run(() -> actuator.runActuatorCommand(command, matcher)) : actuator.runActuatorCommand(command, matcher);
+                        } finally {
+                            clearListingCache();
+                        }
+                    } else {
+                        // 如果不是我们的文件会话可以处理的命令，就直接提供给父类处理
+                        try {
                             return super.runCommand(command);
+                        } finally {
+                            clearListingCache();
                         }
-                    } catch (IOException e) {
-                        throw new SessionRunException("An error occurred while running the command: " + command, e);
                     }
+                } catch (IOException e) {
+                    throw new SessionRunException("An error occurred while running the command: " + command, e);
                 }
-            } else {
-                // 如果文件通道没有打开，就直接传递给父类执行
-                return super.runCommand(command);
             }
         }
         return "null";
@@ -170,6 +176,116 @@ public class MasterFileSession extends TCPSession {
         }
     }
 
+    /**
+     * 异步的运行一个命令，文件传输命令会交给传输调度器的线程异步执行，其它文件执行器的命令会在当前线程中执行完毕之后再返回，剩下的命令会直接通过控制连接异步发送。
+     * <p>
+     * Run a command asynchronously. File transfer commands are run asynchronously on the threads of the transfer scheduler, commands of other file actuators are completed on the current thread before returning, and the remaining commands are sent asynchronously through the control connection.
+     *
+     * @param command 需要在主机上运行的命令
+     *                <p>
+     *                Commands that need to be run on the host
+     * @return 运行命令之后的结果数据，异常信息会被记录在结果对象中
+     * <p>
+     * The result data after running the command, exception information is recorded in the result object
+     */
+    @Override
+    public CompletableFuture<StringResult> runCommandAsync(String command) {
+        Matcher matcher = COMMAND_PATTERN.matcher(command);
+        if (matcher.find()) {
+            Actuator actuator = ActuatorManager.getMasterActuatorOrNull(matcher.group(1).trim());
+            if (actuator != null && actuator.getType() == Session.MASTER_FILE_SESSION) {
+                if (!actuator.isTransfer()) {
+                    return CompletableFuture.completedFuture(runCommandGetResult(command));
+                }
+                try {
+                    return CompletableFuture.supplyAsync(() -> runCommandGetResult(command), TransferScheduler.executor());
+                } catch (RejectedExecutionException e) {
+                    // 异步传输的线程与等待队列都已经满了，这个命令直接失败，不在调用者的线程中执行
+                    return CompletableFuture.completedFuture(new StringResult(false, Session.MASTER_FILE_SESSION, e.toString()));
+                }
+            }
+        }
+        return super.runCommandAsync(command).whenComplete((result, e) -> clearListingCache());
+    }
+
+    /**
+     * 以流式命令运行一个命令，文件执行器的命令会在本机执行完毕之后，以只有结果的输出返回，其它命令的输出会在运行期间逐段返回。
+     * <p>
+     * Run a command as a streaming command. Commands of file actuators are completed locally and returned as an output that only has the result, the output of other commands is returned piece by piece while they run.
+     *
+     * @param command 需要在主机上运行的命令
+     *                <p>
+     *                Commands that need to be run on the host
+     * @return 命令的输出
+     * <p>
+     * Output of the command
+     */
+    @Override
+    public CommandOutput runCommandStreaming(String command) {
+        Matcher matcher = COMMAND_PATTERN.matcher(command);
+        if (matcher.find()) {
+            Actuator actuator = ActuatorManager.getMasterActuatorOrNull(matcher.group(1).trim());
+            if (actuator != null && actuator.getType() == Session.MASTER_FILE_SESSION) {
+                CompletableFuture<String> result = new CompletableFuture<>();
+                try {
+                    result.complete(runCommand(command));
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+                return new CommandOutput(result);
+            }
+        }
+        CommandOutput commandOutput = super.runCommandStreaming(command);
+        commandOutput.getResult().whenComplete((result, e) -> clearListingCache());
+        return commandOutput;
+    }
+
+    /**
+     * 查看被控中的一个目录，并以结果对象的形式返回目录中的文件，不需要解析文本。
+     * <p>
+     * View a directory of the controlled end and return the files of the directory as a result object without parsing text.
+     *
+     * @param command 查看目录的命令，支持 see-dir 与 see-dirN，例如 see-dir /home -n 1000
+     *                <p>
+     *                Command viewing a directory, see-dir and see-dirN are supported, for example see-dir /home -n 1000
+     * @return 目录列表，与 runCommandGetResult 一样，异常信息会被记录在结果对象中
+     * <p>
+     * The directory listing. Like runCommandGetResult, exception information is recorded in the result object
+     */
+    public DirectoryListing listDirectory(String command) {
+        Matcher matcher = COMMAND_PATTERN.matcher(command);
+        String error;
+        if (matcher.find()) {
+            Actuator actuator = ActuatorManager.getMasterActuatorOrNull(matcher.group(1).trim());
+            if (actuator instanceof MasterSeeDirActuator) {
+                try {
+                    return ((MasterSeeDirActuator) actuator).listDirectory(command);
+                } catch (IOException | RuntimeException e) {
+                    error = e.toString();
+                }
+            } else {
+                error = "Not a command viewing a directory: " + command;
+            }
+        } else {
+            error = "Not a command viewing a directory: " + command;
+        }
+        return new DirectoryListing(false, Session.MASTER_FILE_SESSION, null, false, new ArrayList<>(), null, 0, error);
+    }
+
+    /**
+     * 清空主控端缓存的目录列表，除查看目录之外的命令都可能修改被控中的文件，因此这些命令执行之后都会调用该函数。
+     * <p>
+     * Clear the directory listings cached by the master. Commands other than viewing directories may change the files of the controlled end, so this function is called after they are run.
+     */
+    protected void clearListingCache() {
+        if (this.masterSeeDirActuator != null) {
+            this.masterSeeDirActuator.clearCache();
+        }
+        if (this.masterSeeDirNameActuator != null) {
+            this.masterSeeDirNameActuator.clearCache();
+        }
+    }
+
     /**
      * 将当前会话克隆一个出来，使得一种会话可以提供给多个网络连接使用，需要注意的是，克隆出来的会话将不会被管理者所管理。
      * <p>
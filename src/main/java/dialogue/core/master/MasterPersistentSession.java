@@ -2,18 +2,19 @@ package dialogue.core.master;
 
 import dialogue.ConfigureConstantArea;
 import dialogue.Session;
+import dialogue.core.channel.DataChannel;
 import dialogue.core.controlled.task.StreamCopyTask;
 import dialogue.core.exception.SessionRunException;
 import dialogue.core.exception.SessionStartException;
 import dialogue.core.result.StringResult;
 import dialogue.utils.ConsoleColor;
 import dialogue.utils.ExceptionProgress;
+import dialogue.utils.ThreadUtils;
 
 import java.io.*;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.util.Date;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 持久会话实现类，在该会话对象中，支持持久运行的命令，使得在终端命令上的灵活性达到最高。
@@ -27,7 +28,6 @@ public class MasterPersistentSession extends TCPSession {
     public static final String MASTER_CLOSE_STRING = "::exit";
 
     protected final static byte[] SESSION_CLOSE_ERROR;
-    protected final static ServerSocket PERSISTENT_SESSION_SOCKET;
 
     static {
         try {
@@ -37,17 +37,6 @@ public class MasterPersistentSession extends TCPSession {
         }
     }
 
-    static {
-        ServerSocket serverSocket;
-        try {
-            serverSocket = new ServerSocket(ConfigureConstantArea.PERSISTENT_SESSION_CHANNEL_PORT);
-            ConfigureConstantArea.LOGGER.info("The persistent session service is ready!!!");
-        } catch (IOException e) {
-            throw new SessionStartException("persistent session service  channel was not initialized successfully! Therefore, the file transfer command cannot be used!", e);
-        }
-        PERSISTENT_SESSION_SOCKET = serverSocket;
-    }
-
     protected OutputStream udfOutputStream;
     protected Scanner udfInputStreamScanner;
 
@@ -66,7 +55,7 @@ public class MasterPersistentSession extends TCPSession {
     /**
      * 内部提取
      *
-     * @param accept                 接收到的文件服务请求
+     * @param accept                 接收到的持久会话数据通道
      * @param masterDataInputStream  文件服务请求对应的数据输入流
      * @param masterDataOutputStream 文件服务请求对应的数据输出流
      * @param command                本次要发送出去的命令
@@ -74,13 +63,13 @@ public class MasterPersistentSession extends TCPSession {
      * @return 新的状态数值
      * @throws IOException 过程中的传输数据异常。
      */
-    private static boolean status(Socket accept, DataInputStream masterDataInputStream, DataOutputStream masterDataOutputStream, String command, OutputStream udfOutputStream) throws IOException {
+    private static boolean status(DataChannel accept, DataInputStream masterDataInputStream, DataOutputStream masterDataOutputStream, String command, OutputStream udfOutputStream) throws IOException {
         boolean status = true;
         masterDataOutputStream.writeUTF(command);
         masterDataOutputStream.flush();
         if (MASTER_CLOSE_STRING.equalsIgnoreCase(command)) {
             // 代表退出持久会话，如果连接没有关闭，代表不能进行关闭操作
-            if (accept.isConnected()) {
+            if (accept.isOpen()) {
                 status = false;
                 masterDataInputStream.close();
                 masterDataOutputStream.close();
@@ -137,10 +126,9 @@ public class MasterPersistentSession extends TCPSession {
     @Override
     public String runCommand(String command) {
         try {
-            outputStream.write(command.getBytes(ConfigureConstantArea.CHARSET));
-            outputStream.flush();
-            // 等待被控连接
-            final Socket accept = PERSISTENT_SESSION_SOCKET.accept();
+            int requestId = masterConnection.sendCommand(command);
+            // 等待被控打开持久会话数据通道
+            final DataChannel accept = masterConnection.acceptPersistentChannel(requestId);
             final DataInputStream masterDataInputStream = new DataInputStream(accept.getInputStream());
             final DataOutputStream masterDataOutputStream = new DataOutputStream(accept.getOutputStream());
             boolean status = true;
@@ -150,7 +138,7 @@ public class MasterPersistentSession extends TCPSession {
             if (ConfigureConstantArea.PROGRESS_COLOR_DISPLAY) {
                 System.out.print(ConsoleColor.COLOR_YELLOW);
                 // 不断的监听输入流，向被控设备传递持久会话的命令，直到持久会话断开
-                new Thread(new StreamCopyTask(masterDataInputStream, udfOutputStream, false, ExceptionProgress.NO_ACTION)).start();
+                ThreadUtils.start("dialogue-persistent-output", new StreamCopyTask(masterDataInputStream, udfOutputStream, false, ExceptionProgress.NO_ACTION));
                 while (status) {
                     // 就等待输入命令，并传递给被控
                     String s = this.udfInputStreamScanner.nextLine();
@@ -160,7 +148,7 @@ public class MasterPersistentSession extends TCPSession {
                 System.out.print(ConsoleColor.COLOR_DEF);
             } else {
                 // 不断的监听输入流，向被控设备传递持久会话的命令，直到持久会话断开
-                new Thread(new StreamCopyTask(masterDataInputStream, udfOutputStream, false, ExceptionProgress.NO_ACTION)).start();
+                ThreadUtils.start("dialogue-persistent-output", new StreamCopyTask(masterDataInputStream, udfOutputStream, false, ExceptionProgress.NO_ACTION));
                 while (status) {
                     // 就等待输入命令，并传递给被控
                     String s = this.udfInputStreamScanner.nextLine();
@@ -199,6 +187,23 @@ public class MasterPersistentSession extends TCPSession {
         }
     }
 
+    /**
+     * 持久会话需要与使用者持续交互，因此这里会在当前线程中执行完毕之后再返回。
+     * <p>
+     * A persistent session needs continuous interaction with the user, so it is completed on the current thread before returning.
+     *
+     * @param command 需要在主机上运行的命令
+     *                <p>
+     *                Commands that need to be run on the host
+     * @return 运行命令之后的结果数据，异常信息会被记录在结果对象中
+     * <p>
+     * The result data after running the command, exception information is recorded in the result object
+     */
+    @Override
+    public CompletableFuture<StringResult> runCommandAsync(String command) {
+        return CompletableFuture.completedFuture(runCommandGetResult(command));
+    }
+
     /**
      * 设置数据输出流，该函数存在是为了设置负责传递本地数据到远程被控设备服务中的数据流，能够实现用户的各种需求。
      * <p>
@@ -32,6 +32,10 @@ public abstract class MasterSession implements Master, Host, Session {
     // 传递命令给客户端
     protected OutputStream outputStream;
     protected InputStream inputStream;
+    /**
+     * 与被控之间的控制连接，命令与结果都通过它传递，多路复用模式中文件与持久会话的数据也通过它传递。
+     */
+    protected MasterConnection masterConnection;
     protected boolean Running = false;
 
     protected MasterSession() {
@@ -101,6 +105,7 @@ public abstract class MasterSession implements Master, Host, Session {
                 }
                 try {
                     outputStream = MasterSocket.getOutputStream();
+                    masterConnection = new MasterConnection(MasterSocket, ConfigureConstantArea.MULTIPLEX_ENABLE);
                 } catch (IOException e) {
                     throw new SessionStartException("Inevitable errors occurred in the start process of the master session", e);
                 }
@@ -129,6 +134,7 @@ public abstract class MasterSession implements Master, Host, Session {
             return;
         }
         if (MasterSocket != null) {
+            IOUtils.close(this.masterConnection);
             IOUtils.close(this.inputStream);
             IOUtils.close(this.outputStream);
             try {
@@ -1,11 +1,9 @@
 package dialogue.core.master;
 
-import dialogue.ConfigureConstantArea;
 import dialogue.Session;
-import dialogue.core.exception.SessionRunException;
 import dialogue.core.result.StringResult;
 
-import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 主控设备的TCP命令执行实现类，该类能够通过TCP将命令传递给远程设备执行。
@@ -38,18 +36,28 @@ public class TCPSession extends MasterSession {
     @Override
     public String runCommand(String command) {
         try {
-            outputStream.write(command.getBytes(ConfigureConstantArea.CHARSET));
-            outputStream.flush();
-            // 获取被控设备的执行结果
-            byte[] buffer = new byte[ConfigureConstantArea.TCP_BUFFER_MAX_SIZE];
-            int read = inputStream.read(buffer);
-            if (read > 0) {
-                return new String(buffer, 0, read, ConfigureConstantArea.CHARSET);
-            } else {
-                return "Connection is unstable!!!";
-            }
-        } catch (IOException e) {
-            throw new SessionRunException(e);
+            // 获取被控设备的执行结果，结果帧的长度没有限制，会被完整的读取
+            return masterConnection.runCommand(command);
+        } catch (NullPointerException e) {
+            throw SESSION_NOT_STARTED;
+        }
+    }
+
+    /**
+     * 以流式命令运行一个命令，命令的标准输出与标准错误会在运行期间逐段返回，适用于运行时间较长或者输出很多的命令。
+     * <p>
+     * Run a command as a streaming command. The standard output and standard error of the command are returned piece by piece while it runs, which suits commands that run for a long time or produce a lot of output.
+     *
+     * @param command 需要在主机上运行的命令
+     *                <p>
+     *                Commands that need to be run on the host
+     * @return 命令的输出，可以通过 {@link CommandOutput#copyTo(java.io.OutputStream, java.io.OutputStream)} 将输出实时打印出来
+     * <p>
+     * Output of the command, which can be printed in real time through {@link CommandOutput#copyTo(java.io.OutputStream, java.io.OutputStream)}
+     */
+    public CommandOutput runCommandStreaming(String command) {
+        try {
+            return masterConnection.submitStreaming(command);
         } catch (NullPointerException e) {
             throw SESSION_NOT_STARTED;
         }
@@ -90,6 +98,29 @@ public class TCPSession extends MasterSession {
         }
     }
 
+    /**
+     * 异步的运行一个命令，命令会直接通过控制连接发送给被控，多个命令之间不需要等待，结果通过请求编号与命令对应。
+     * <p>
+     * Run a command asynchronously. The command is sent to the controlled end directly through the control connection, several commands do not wait for each other, and the results are matched with the commands by request id.
+     *
+     * @param command 需要在主机上运行的命令
+     *                <p>
+     *                Commands that need to be run on the host
+     * @return 运行命令之后的结果数据，异常信息会被记录在结果对象中
+     * <p>
+     * The result data after running the command, exception information is recorded in the result object
+     */
+    @Override
+    public CompletableFuture<StringResult> runCommandAsync(String command) {
+        MasterConnection masterConnection = this.masterConnection;
+        if (masterConnection == null) {
+            return CompletableFuture.completedFuture(new StringResult(false, getSessionNum(), SESSION_NOT_STARTED.toString()));
+        }
+        return masterConnection.submit(command).handle(
+                (result, e) -> e == null ? new StringResult(true, getSessionNum(), result) : new StringResult(false, getSessionNum(), e.toString())
+        );
+    }
+
     /**
      * @return 当前会话对象对应的会话编号，从1.0.1版本开始，该函数支持调用。
      * <p>
@@ -0,0 +1,165 @@
+package dialogue.core.protocol;
+
+import dialogue.ConfigureConstantArea;
+
+/**
+ * 主控与被控之间控制通道中传递的一个数据帧，每一个帧都由固定长度的帧头与任意长度的数据体组成。
+ * <p>
+ * A data frame passed in the control channel between the master and the controlled end. Each frame consists of a fixed length header and a payload of any length.
+ * <p>
+ * 帧头格式：版本号(1字节) + 帧类型(1字节) + 请求编号(4字节) + 数据体长度(4字节)，所有的整数都是大端序。
+ * <p>
+ * Header format: version (1 byte) + frame type (1 byte) + request id (4 bytes) + payload length (4 bytes), all integers are big endian.
+ *
+ * @author 赵凌宇
+ */
+public final class Frame {
+
+    /**
+     * 当前的协议版本号，收到其它版本的帧时，连接会被视为不可用。
+     * <p>
+     * The current protocol version. When a frame of another version is received, the connection is regarded as unusable.
+     */
+    public final static byte VERSION = 1;
+    /**
+     * 帧头的字节数量。
+     * <p>
+     * The number of bytes in the frame header.
+     */
+    public final static int HEADER_SIZE = 10;
+    /**
+     * 主控发送给被控的命令帧。
+     * <p>
+     * Command frame sent by the master to the controlled end.
+     */
+    public final static byte TYPE_COMMAND = 1;
+    /**
+     * 被控返回给主控的命令结果帧。
+     * <p>
+     * Command result frame returned by the controlled end to the master.
+     */
+    public final static byte TYPE_RESULT = 2;
+    /**
+     * 被控无法执行命令时返回给主控的错误帧，数据体是错误信息。
+     * <p>
+     * Error frame returned to the master when the controlled end cannot execute the command, the payload is the error message.
+     */
+    public final static byte TYPE_ERROR = 3;
+    /**
+     * 主控在连接建立之后发送给被控的握手帧，被控收到之后会在该连接中使用多路复用模式。
+     * <p>
+     * Handshake frame sent by the master to the controlled end after the connection is established. After receiving it, the controlled end uses the multiplexed mode in this connection.
+     */
+    public final static byte TYPE_HELLO = 4;
+    /**
+     * 打开一个逻辑数据流，请求编号字段是数据流编号，数据体是数据流类型(1字节)与所属命令的请求编号(4字节)。
+     * <p>
+     * Open a logical stream. The request id field is the stream id, the payload is the stream kind (1 byte) and the request id of the owning command (4 bytes).
+     */
+    public final static byte TYPE_OPEN = 5;
+    /**
+     * 逻辑数据流中的数据，请求编号字段是数据流编号。
+     * <p>
+     * Data in a logical stream, the request id field is the stream id.
+     */
+    public final static byte TYPE_DATA = 6;
+    /**
+     * 逻辑数据流的窗口更新，数据体是接收方新允许发送的字节数量(4字节)。
+     * <p>
+     * Window update of a logical stream, the payload is the number of bytes (4 bytes) the receiver newly allows to be sent.
+     */
+    public final static byte TYPE_WINDOW = 7;
+    /**
+     * 关闭一个逻辑数据流，发送方不会再读写该数据流。
+     * <p>
+     * Close a logical stream, the sender will no longer read or write it.
+     */
+    public final static byte TYPE_CLOSE = 8;
+    /**
+     * 主控发送给被控的流式命令帧，被控会在命令运行期间通过输出帧将命令的输出发送给主控，最后依旧返回结果帧。
+     * <p>
+     * Streaming command frame sent by the master to the controlled end. The controlled end sends the output of the command to the master through output frames while it runs, and still returns a result frame at the end.
+     */
+    public final static byte TYPE_STREAM_COMMAND = 9;
+    /**
+     * 流式命令的一段输出，请求编号字段是命令的请求编号，数据体是输出的来源(1字节)与输出的数据。
+     * <p>
+     * A piece of output of a streaming command. The request id field is the request id of the command, the payload is the source of the output (1 byte) followed by the output data.
+     */
+    public final static byte TYPE_OUTPUT = 10;
+    /**
+     * 数据帧与输出帧中数据体的最大字节数量，数据流与命令输出每一帧最多携带 64KB，输出帧还多一个来源字节，其它类型的帧受 frame.max.size 限制。
+     * <p>
+     * The maximum number of payload bytes of data frames and output frames. Streams and command output carry at most 64KB per frame, and output frames have one extra source byte. Frames of other types are limited by frame.max.size.
+     */
+    public final static int MAX_CHUNK_SIZE = 64 * 1024 + 1;
+    /**
+     * 输出帧中代表标准输出的来源。
+     * <p>
+     * The output frame source that stands for the standard output.
+     */
+    public final static byte OUTPUT_STDOUT = 1;
+    /**
+     * 输出帧中代表标准错误的来源。
+     * <p>
+     * The output frame source that stands for the standard error.
+     */
+    public final static byte OUTPUT_STDERR = 2;
+    /**
+     * 不属于任何请求的帧使用的请求编号，主控在等待结果的时候会直接跳过这类帧。
+     * <p>
+     * The request id used by frames that do not belong to any request. The master skips such frames while waiting for a result.
+     */
+    public final static int NO_REQUEST_ID = 0;
+
+    private final byte type;
+    private final int requestId;
+    private final byte[] payload;
+
+    public Frame(byte type, int requestId, byte[] payload) {
+        this.type = type;
+        this.requestId = requestId;
+        this.payload = payload;
+    }
+
+    /**
+     * @return 帧的类型。
+     * <p>
+     * The type of the frame.
+     */
+    public byte getType() {
+        return this.type;
+    }
+
+    /**
+     * @return 帧所属的请求编号。
+     * <p>
+     * The request id of the frame.
+     */
+    public int getRequestId() {
+        return this.requestId;
+    }
+
+    /**
+     * @return 帧中携带的原始数据体。
+     * <p>
+     * The raw payload carried by the frame.
+     */
+    public byte[] getPayload() {
+        return this.payload;
+    }
+
+    /**
+     * @return 使用当前通信编码集解码之后的数据体字符串。
+     * <p>
+     * The payload string decoded with the current communication charset.
+     */
+    public String getPayloadString() {
+        return new String(this.payload, ConfigureConstantArea.getCharset());
+    }
+
+    @Override
+    public String toString() {
+        return "Frame{type=" + this.type + ", requestId=" + this.requestId + ", length=" + this.payload.length + '}';
+    }
+}
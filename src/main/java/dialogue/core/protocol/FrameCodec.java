@@ -0,0 +1,274 @@
+package dialogue.core.protocol;
+
+import dialogue.ConfigureConstantArea;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 数据帧的编解码工具类，负责在数据流中读写 {@link Frame}，编码时使用线程本地的缓冲区与编码器，不会在每一次调用时重新查找编码集。
+ * <p>
+ * Codec utility class of data frames, responsible for reading and writing {@link Frame} in data streams. Thread local buffers and encoders are used when encoding, and the charset is not looked up again on every call.
+ *
+ * @author 赵凌宇
+ */
+public final class FrameCodec {
+
+    /**
+     * 线程本地编码缓冲区最大保留的字节数量，超过这个大小的缓冲区在使用之后会被丢弃，避免一次大数据传输之后长期占用内存。
+     */
+    private final static int POOL_RETAIN_LIMIT = 1 << 20;
+    private final static AtomicInteger REQUEST_ID = new AtomicInteger();
+    private final static ThreadLocal<ByteBuffer> ENCODE_BUFFER = new ThreadLocal<>();
+    private final static ThreadLocal<CharsetEncoder> ENCODER = new ThreadLocal<>();
+
+    private FrameCodec() {
+    }
+
+    /**
+     * @return 一个新的请求编号，该编号不会是 {@link Frame#NO_REQUEST_ID}。
+     * <p>
+     * A new request id, which is never {@link Frame#NO_REQUEST_ID}.
+     */
+    public static int nextRequestId() {
+        int id;
+        do {
+            id = REQUEST_ID.incrementAndGet();
+        } while (id == Frame.NO_REQUEST_ID);
+        return id;
+    }
+
+    /**
+     * 将一个字符串数据体编码成帧并写入数据流，帧头与数据体会在一次写操作中发送。
+     * <p>
+     * Encode a string payload into a frame and write it to the data stream. The header and payload are sent in one write.
+     *
+     * @param outputStream 目标数据流
+     * @param type         帧类型
+     * @param requestId    请求编号
+     * @param payload      数据体
+     * @throws IOException 写数据时发生的异常
+     */
+    public static void write(OutputStream outputStream, byte type, int requestId, CharSequence payload) throws IOException {
+        ByteBuffer byteBuffer = encodeToBuffer(type, requestId, payload);
+        synchronized (outputStream) {
+            outputStream.write(byteBuffer.array(), 0, byteBuffer.limit());
+            outputStream.flush();
+        }
+    }
+
+    /**
+     * 将一个字符串数据体编码成一个完整帧的字节数组，适用于需要将帧放入发送队列的场景。
+     * <p>
+     * Encode a string payload into the byte array of a complete frame, suitable for scenarios where the frame needs to be queued for sending.
+     *
+     * @param type      帧类型
+     * @param requestId 请求编号
+     * @param payload   数据体
+     * @return 包含帧头与数据体的字节数组
+     * <p>
+     * Byte array containing the header and payload
+     */
+    public static byte[] encode(byte type, int requestId, CharSequence payload) {
+        ByteBuffer byteBuffer;
+        try {
+            byteBuffer = encodeToBuffer(type, requestId, payload);
+        } catch (CharacterCodingException e) {
+            // 编码器使用替换策略，这里不会发生
+            throw new IllegalStateException(e);
+        }
+        byte[] bytes = new byte[byteBuffer.limit()];
+        System.arraycopy(byteBuffer.array(), 0, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    /**
+     * 将一个原始数据体编码成一个完整帧的字节数组。
+     * <p>
+     * Encode a raw payload into the byte array of a complete frame.
+     *
+     * @param type      帧类型
+     * @param requestId 请求编号
+     * @param payload   数据体所在的数组
+     * @param off       数据体的起始索引
+     * @param len       数据体的长度
+     * @return 包含帧头与数据体的字节数组
+     * <p>
+     * Byte array containing the header and payload
+     */
+    public static byte[] encode(byte type, int requestId, byte[] payload, int off, int len) {
+        byte[] bytes = new byte[Frame.HEADER_SIZE + len];
+        ByteBuffer.wrap(bytes)
+                .put(Frame.VERSION).put(type).putInt(requestId).putInt(len)
+                .put(payload, off, len);
+        return bytes;
+    }
+
+    /**
+     * 将流式命令的一段输出编码成一个完整的输出帧，数据体的第一个字节是输出的来源。
+     * <p>
+     * Encode a piece of output of a streaming command into a complete output frame, the first byte of the payload is the source of the output.
+     *
+     * @param requestId 流式命令的请求编号
+     * @param source    输出的来源，{@link Frame#OUTPUT_STDOUT} 或 {@link Frame#OUTPUT_STDERR}
+     * @param output    输出数据所在的数组
+     * @param off       输出数据的起始索引
+     * @param len       输出数据的长度
+     * @return 包含帧头与数据体的字节数组
+     * <p>
+     * Byte array containing the header and payload
+     */
+    public static byte[] encodeOutput(int requestId, byte source, byte[] output, int off, int len) {
+        byte[] bytes = new byte[Frame.HEADER_SIZE + 1 + len];
+        ByteBuffer.wrap(bytes)
+                .put(Frame.VERSION).put(Frame.TYPE_OUTPUT).putInt(requestId).putInt(len + 1)
+                .put(source).put(output, off, len);
+        return bytes;
+    }
+
+    /**
+     * 将文件中的一段数据直接读取到一个完整帧的字节数组中，数据只会从文件中被复制一次，不会经过额外的缓冲区。
+     * <p>
+     * Read a range of a file directly into the byte array of a complete frame. The data is copied from the file only once without passing through an extra buffer.
+     *
+     * @param type      帧类型
+     * @param requestId 请求编号
+     * @param source    数据来源的文件通道
+     * @param position  数据在文件中的起始位置
+     * @param len       需要读取的最大字节数量
+     * @return 包含帧头与数据体的字节数组，文件剩余的数据不足时数据体会更短，如果已经没有可以读取的数据，返回 null
+     * <p>
+     * Byte array containing the header and payload. The payload is shorter when the rest of the file is not enough, and null is returned if there is no data left to read
+     * @throws IOException 读取文件时发生的异常
+     */
+    public static byte[] encode(byte type, int requestId, FileChannel source, long position, int len) throws IOException {
+        byte[] bytes = new byte[Frame.HEADER_SIZE + len];
+        ByteBuffer payload = ByteBuffer.wrap(bytes, Frame.HEADER_SIZE, len);
+        while (payload.hasRemaining()) {
+            int read = source.read(payload, position + payload.position() - Frame.HEADER_SIZE);
+            if (read < 0) {
+                break;
+            }
+        }
+        int read = payload.position() - Frame.HEADER_SIZE;
+        if (read == 0) {
+            return null;
+        }
+        if (read < len) {
+            byte[] shorter = new byte[Frame.HEADER_SIZE + read];
+            System.arraycopy(bytes, 0, shorter, 0, shorter.length);
+            bytes = shorter;
+        }
+        ByteBuffer.wrap(bytes).put(Frame.VERSION).put(type).putInt(requestId).putInt(read);
+        return bytes;
+    }
+
+    /**
+     * 从数据流中读取一个完整的帧。
+     * <p>
+     * Read a complete frame from the data stream.
+     *
+     * @param inputStream 控制通道的数据输入流
+     *                    <p>
+     *                    Data input stream of the control channel
+     * @return 读取到的帧
+     * <p>
+     * The frame read
+     * @throws IOException 对方关闭了连接或帧格式错误时抛出的异常
+     */
+    public static Frame read(InputStream inputStream) throws IOException {
+        byte[] header = new byte[Frame.HEADER_SIZE];
+        readFully(inputStream, header, Frame.HEADER_SIZE);
+        ByteBuffer byteBuffer = ByteBuffer.wrap(header);
+        byte version = byteBuffer.get();
+        byte type = byteBuffer.get();
+        int requestId = byteBuffer.getInt();
+        int length = byteBuffer.getInt();
+        checkHeader(version, type, length);
+        byte[] payload = new byte[length];
+        readFully(inputStream, payload, length);
+        return new Frame(type, requestId, payload);
+    }
+
+    /**
+     * 检查帧头，数据体的长度超出该类型帧的上限时直接拒绝，不会为损坏或者恶意的帧分配内存，抛出的异常只会关闭这一个连接。
+     */
+    static void checkHeader(byte version, byte type, int length) throws IOException {
+        if (version != Frame.VERSION) {
+            throw new IOException("Unsupported frame protocol version: " + version + ", expected: " + Frame.VERSION);
+        }
+        if (length < 0) {
+            throw new IOException("Malformed frame, payload length: " + length);
+        }
+        int maxSize = type == Frame.TYPE_DATA || type == Frame.TYPE_OUTPUT ? Frame.MAX_CHUNK_SIZE : ConfigureConstantArea.MAX_FRAME_SIZE;
+        if (length > maxSize) {
+            throw new IOException("Frame too large, type: " + type + ", payload length: " + length + ", limit: " + maxSize);
+        }
+    }
+
+    private static ByteBuffer encodeToBuffer(byte type, int requestId, CharSequence payload) throws CharacterCodingException {
+        CharsetEncoder encoder = encoder();
+        long maxSize = Frame.HEADER_SIZE + (long) Math.ceil(payload.length() * (double) encoder.maxBytesPerChar());
+        ByteBuffer byteBuffer = ENCODE_BUFFER.get();
+        if (byteBuffer == null || byteBuffer.capacity() < maxSize) {
+            if (maxSize > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("The payload is too large to be encoded into one frame: " + payload.length());
+            }
+            byteBuffer = ByteBuffer.allocate((int) maxSize);
+            if (maxSize <= POOL_RETAIN_LIMIT) {
+                ENCODE_BUFFER.set(byteBuffer);
+            }
+        }
+        byteBuffer.clear();
+        byteBuffer.position(Frame.HEADER_SIZE);
+        encoder.reset();
+        CoderResult coderResult = encoder.encode(CharBuffer.wrap(payload), byteBuffer, true);
+        if (coderResult.isError()) {
+            coderResult.throwException();
+        }
+        encoder.flush(byteBuffer);
+        int length = byteBuffer.position() - Frame.HEADER_SIZE;
+        if (length > ConfigureConstantArea.MAX_FRAME_SIZE) {
+            // 对方会拒绝并关闭连接，因此在发送之前就失败，只影响这一个请求
+            throw new IllegalArgumentException("The payload is too large to be sent in one frame: " + length + " bytes, frame.max.size: " + ConfigureConstantArea.MAX_FRAME_SIZE);
+        }
+        byteBuffer.put(0, Frame.VERSION).put(1, type).putInt(2, requestId).putInt(6, length);
+        byteBuffer.flip();
+        return byteBuffer;
+    }
+
+    private static CharsetEncoder encoder() {
+        Charset charset = ConfigureConstantArea.getCharset();
+        CharsetEncoder encoder = ENCODER.get();
+        if (encoder == null || encoder.charset() != charset) {
+            // 与 String.getBytes 保持一致，无法编码的字符使用替换字符
+            encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            ENCODER.set(encoder);
+        }
+        return encoder;
+    }
+
+    private static void readFully(InputStream inputStream, byte[] bytes, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            int read = inputStream.read(bytes, offset, length - offset);
+            if (read < 0) {
+                throw new EOFException("The connection was closed by the peer while reading a frame.");
+            }
+            offset += read;
+        }
+    }
+}
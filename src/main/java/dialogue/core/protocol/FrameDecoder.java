@@ -0,0 +1,66 @@
+package dialogue.core.protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 增量的帧解码器，适用于非阻塞通道，每一个连接持有一个解码器，通道中每次读取到的数据可以是任意长度，解码器会保存不完整的帧，直到剩余的数据到达。
+ * <p>
+ * Incremental frame decoder for non-blocking channels. Each connection holds one decoder. The data read from the channel each time can be of any length, and the decoder keeps the incomplete frame until the remaining data arrives.
+ * <p>
+ * 数据体的缓冲区只会在帧头被读取完整之后按照帧长度分配，空闲的连接不会占用额外的内存。
+ * <p>
+ * The payload buffer is only allocated according to the frame length after the header is complete, so idle connections take no extra memory.
+ *
+ * @author 赵凌宇
+ */
+public final class FrameDecoder {
+
+    private final ByteBuffer header = ByteBuffer.allocate(Frame.HEADER_SIZE);
+    private byte type;
+    private int requestId;
+    private byte[] payload;
+    private int payloadOffset;
+
+    /**
+     * 从数据源中解码出下一个完整的帧，数据源中的数据会被消耗。
+     * <p>
+     * Decode the next complete frame from the source, the data in the source is consumed.
+     *
+     * @param src 处于读模式的数据源
+     *            <p>
+     *            Source in read mode
+     * @return 下一个完整的帧，如果数据源中的数据不足以组成一个帧，返回 null
+     * <p>
+     * The next complete frame, or null if the data in the source is not enough to form a frame
+     * @throws IOException 帧格式错误时抛出的异常
+     */
+    public Frame decode(ByteBuffer src) throws IOException {
+        if (this.payload == null) {
+            while (this.header.hasRemaining() && src.hasRemaining()) {
+                this.header.put(src.get());
+            }
+            if (this.header.hasRemaining()) {
+                return null;
+            }
+            this.header.flip();
+            byte version = this.header.get();
+            this.type = this.header.get();
+            this.requestId = this.header.getInt();
+            int length = this.header.getInt();
+            this.header.clear();
+            FrameCodec.checkHeader(version, this.type, length);
+            this.payload = new byte[length];
+            this.payloadOffset = 0;
+        }
+        int n = Math.min(this.payload.length - this.payloadOffset, src.remaining());
+        src.get(this.payload, this.payloadOffset, n);
+        this.payloadOffset += n;
+        if (this.payloadOffset < this.payload.length) {
+            return null;
+        }
+        Frame frame = new Frame(this.type, this.requestId, this.payload);
+        this.payload = null;
+        return frame;
+    }
+}
@@ -0,0 +1,183 @@
+package dialogue.core.result;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 目录列表结果数据封装类，其中存储着被控目录中一页文件的信息，能够直接获取到每一个文件的名称、类型、大小等属性，不需要再解析文本。
+ * <p>
+ * Directory listing result data encapsulation class, which stores the information of a page of files of a controlled directory. The name, type, size and other attributes of each file can be obtained directly without parsing text.
+ *
+ * @author 赵凌宇
+ */
+public class DirectoryListing extends StatefulResults<List<DirectoryListing.Entry>> {
+
+    protected final String path;
+    protected final boolean namesOnly;
+    protected final List<Entry> entries;
+    protected final String nextToken;
+    protected final int pageSize;
+    protected final String error;
+
+    /**
+     * @param successful    目录是否读取成功
+     *                      <p>
+     *                      Whether the directory was read successfully
+     * @param sourceSession 结果来源的会话编号
+     *                      <p>
+     *                      Number of the session the result comes from
+     * @param path          被控端显示的目录路径
+     *                      <p>
+     *                      Directory path displayed by the controlled end
+     * @param namesOnly     如果为true，代表文件中只有名称与类型，没有其它属性
+     *                      <p>
+     *                      If true, the files only have names and types without other attributes
+     * @param entries       本页中的文件
+     *                      <p>
+     *                      Files of this page
+     * @param nextToken     读取下一页的继续标记，为 null 代表没有下一页
+     *                      <p>
+     *                      Continuation token for reading the next page, null means there is no next page
+     * @param pageSize      本页使用的每页数量
+     *                      <p>
+     *                      Page size used by this page
+     * @param error         读取失败时的错误信息，成功时为 null
+     *                      <p>
+     *                      Error message when reading failed, null when successful
+     */
+    public DirectoryListing(boolean successful, short sourceSession, String path, boolean namesOnly, List<Entry> entries, String nextToken, int pageSize, String error) {
+        super(successful, sourceSession);
+        this.path = path;
+        this.namesOnly = namesOnly;
+        this.entries = Collections.unmodifiableList(entries);
+        this.nextToken = nextToken;
+        this.pageSize = pageSize;
+        this.error = error;
+    }
+
+    /**
+     * @return 被控端显示的目录路径，被控无法读取目录时为 null。
+     * <p>
+     * Directory path displayed by the controlled end, null when the controlled end could not read the directory.
+     */
+    public String getPath() {
+        return this.path;
+    }
+
+    /**
+     * @return 如果返回true，代表文件中只有名称与类型，大小、修改时间与可写状态都没有被读取。
+     * <p>
+     * If true is returned, the files only have names and types, the size, modification time and writable state were not read.
+     */
+    public boolean isNamesOnly() {
+        return this.namesOnly;
+    }
+
+    /**
+     * @return 读取下一页的继续标记，为 null 代表没有下一页。
+     * <p>
+     * Continuation token for reading the next page, null means there is no next page.
+     */
+    public String getNextToken() {
+        return this.nextToken;
+    }
+
+    /**
+     * @return 本页使用的每页数量，0 代表没有分页。
+     * <p>
+     * Page size used by this page, 0 means no paging.
+     */
+    public int getPageSize() {
+        return this.pageSize;
+    }
+
+    /**
+     * @return 读取失败时的错误信息，成功时为 null，读取到一半失败时本页中依旧包含已经读取到的文件。
+     * <p>
+     * Error message when reading failed, null when successful. When reading failed halfway, this page still contains the files already read.
+     */
+    public String getError() {
+        return this.error;
+    }
+
+    /**
+     * @return 本页中的文件，该列表不可修改。
+     * <p>
+     * Files of this page, the list is unmodifiable.
+     */
+    @Override
+    public List<Entry> getDataOrError() {
+        return this.entries;
+    }
+
+    /**
+     * 目录中的一个文件。
+     * <p>
+     * A file of the directory.
+     */
+    public final static class Entry {
+        private final String name;
+        private final boolean directory;
+        private final boolean writable;
+        private final long size;
+        private final long lastModified;
+
+        public Entry(String name, boolean directory, boolean writable, long size, long lastModified) {
+            this.name = name;
+            this.directory = directory;
+            this.writable = writable;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * @return 文件名称。
+         * <p>
+         * File name.
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * @return 如果返回true，代表这是一个目录。
+         * <p>
+         * If true is returned, this is a directory.
+         */
+        public boolean isDirectory() {
+            return this.directory;
+        }
+
+        /**
+         * @return 如果返回true，代表被控可以写入这个文件，只有名称的列表中总是返回false。
+         * <p>
+         * If true is returned, the controlled end can write the file. Always false in listings with names only.
+         */
+        public boolean isWritable() {
+            return this.writable;
+        }
+
+        /**
+         * @return 文件字节数量，只有名称的列表中为 -1。
+         * <p>
+         * Number of bytes of the file, -1 in listings with names only.
+         */
+        public long getSize() {
+            return this.size;
+        }
+
+        /**
+         * @return 文件最后修改时间的毫秒值，只有名称的列表中为 -1。
+         * <p>
+         * Last modification time of the file in milliseconds, -1 in listings with names only.
+         */
+        public long getLastModified() {
+            return this.lastModified;
+        }
+
+        @Override
+        public String toString() {
+            return (this.directory ? "dir\t" : "file\t") + this.name;
+        }
+    }
+}
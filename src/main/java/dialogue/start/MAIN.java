@@ -4,11 +4,13 @@ import dialogue.ConfigureConstantArea;
 import dialogue.core.controlled.ControlledFileSession;
 import dialogue.core.controlled.ControlledPersistentSession;
 import dialogue.core.controlled.ControlledSession;
+import dialogue.core.exception.SessionRunException;
 import dialogue.core.master.MasterFileSession;
 import dialogue.core.master.MasterPersistentSession;
 import dialogue.core.master.MasterSession;
 import dialogue.utils.ConsoleColor;
 
+import java.io.IOException;
 import java.net.InetAddress;
 import java.util.Scanner;
 import java.util.logging.Level;
@@ -105,7 +107,16 @@ public final class MAIN {
             }
             return;
         }
-        System.out.println(instance.runCommand(command));
+        if (instance instanceof MasterFileSession) {
+            // 命令的输出在运行期间就会逐段打印出来
+            try {
+                System.out.println(((MasterFileSession) instance).runCommandStreaming(command).copyTo(System.out, System.err));
+            } catch (IOException e) {
+                throw new SessionRunException(e);
+            }
+        } else {
+            System.out.println(instance.runCommand(command));
+        }
         Thread.sleep(512);
     }
 }
@@ -0,0 +1,219 @@
+package dialogue.utils;
+
+import dialogue.ConfigureConstantArea;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 缓冲区池，所有的数据流拷贝、文件传输与命令结果读取都从这里借用缓冲区，使用完毕之后归还，避免每一次调用都分配新的缓冲区。
+ * <p>
+ * Buffer pool. All stream copies, file transfers and command result reads borrow their buffers from here and give them back afterwards, so no call needs to allocate a new buffer.
+ * <p>
+ * 缓冲区按照长度分别存放，借用到的缓冲区长度与请求的长度完全一致。每一个线程会先在自己的缓存中查找最近归还的缓冲区，找不到的时候才会访问共享的池；
+ * 共享的池中存放的字节总数不会超过 {@link ConfigureConstantArea#BUFFER_POOL_MAX_SIZE}，超出的缓冲区会直接交给垃圾回收。
+ * 线程缓存不计入这个限制，因此只存放不超过 {@link #LOCAL_MAX_LENGTH} 的缓冲区，每一个线程最多缓存 {@code LOCAL_SLOTS * LOCAL_MAX_LENGTH} 字节；
+ * 使用虚拟线程或者关闭缓冲区池的时候不使用线程缓存，虚拟线程的数量没有上限，而且每一个任务都是一个新的线程，线程缓存只会占用内存。
+ * <p>
+ * Buffers are kept by length, and a borrowed buffer has exactly the requested length. Each thread first looks for recently returned buffers in its own cache and only visits the shared pool when none is found.
+ * The shared pool never keeps more than {@link ConfigureConstantArea#BUFFER_POOL_MAX_SIZE} bytes in total, buffers beyond that are left to the garbage collector.
+ * Thread caches are not counted against that limit, so they only keep buffers not longer than {@link #LOCAL_MAX_LENGTH}, and each thread caches at most {@code LOCAL_SLOTS * LOCAL_MAX_LENGTH} bytes.
+ * Thread caches are not used with virtual threads or when the pool is disabled: virtual threads are unbounded in number and every task runs in a new thread, so a thread cache would only hold memory.
+ *
+ * @author 赵凌宇
+ */
+public final class BufferPool {
+
+    private final static int LOCAL_SLOTS = 4;
+    /**
+     * 线程缓存中单个缓冲区的最大长度，覆盖网络读写与小文件拷贝使用的缓冲区。
+     * <p>
+     * The maximum length of a single buffer in a thread cache, covering the buffers of socket reads and writes and of small file copies.
+     */
+    public final static int LOCAL_MAX_LENGTH = 64 << 10;
+    private final static boolean LOCAL_ENABLED = !ThreadUtils.isVirtual() && ConfigureConstantArea.BUFFER_POOL_MAX_SIZE > 0;
+
+    private final static ThreadLocal<byte[][]> LOCAL_ARRAYS = ThreadLocal.withInitial(() -> new byte[LOCAL_SLOTS][]);
+    private final static Map<Integer, Queue<byte[]>> ARRAYS = new ConcurrentHashMap<>();
+    private final static Map<Integer, Queue<ByteBuffer>> DIRECT_BUFFERS = new ConcurrentHashMap<>();
+    private final static AtomicLong POOLED_BYTES = new AtomicLong();
+    private final static AtomicLong HITS = new AtomicLong();
+    private final static AtomicLong MISSES = new AtomicLong();
+    private final static AtomicLong OUTSTANDING = new AtomicLong();
+
+    private BufferPool() {
+    }
+
+    /**
+     * 借用一个字节数组，使用完毕之后需要通过 {@link #release(byte[])} 归还。
+     * <p>
+     * Borrow a byte array, it must be given back through {@link #release(byte[])} afterwards.
+     *
+     * @param size 字节数组的长度
+     *             <p>
+     *             Length of the byte array
+     * @return 长度为 size 的字节数组，其中可能残留上一次使用的数据
+     * <p>
+     * A byte array of the given length, it may contain data left by its previous use
+     */
+    public static byte[] acquire(int size) {
+        OUTSTANDING.incrementAndGet();
+        if (LOCAL_ENABLED && size <= LOCAL_MAX_LENGTH) {
+            byte[][] local = LOCAL_ARRAYS.get();
+            for (int i = 0; i < LOCAL_SLOTS; i++) {
+                byte[] buffer = local[i];
+                if (buffer != null && buffer.length == size) {
+                    local[i] = null;
+                    HITS.incrementAndGet();
+                    return buffer;
+                }
+            }
+        }
+        Queue<byte[]> queue = ARRAYS.get(size);
+        byte[] buffer = queue == null ? null : queue.poll();
+        if (buffer != null) {
+            POOLED_BYTES.addAndGet(-size);
+            HITS.incrementAndGet();
+            return buffer;
+        }
+        MISSES.incrementAndGet();
+        return new byte[size];
+    }
+
+    /**
+     * 归还一个通过 {@link #acquire(int)} 借用的字节数组，归还之后不能再使用它。
+     * <p>
+     * Give back a byte array borrowed through {@link #acquire(int)}, it must not be used afterwards.
+     *
+     * @param buffer 需要归还的字节数组，为 null 的时候不做任何事情
+     *               <p>
+     *               The byte array to give back, nothing happens if it is null
+     */
+    public static void release(byte[] buffer) {
+        if (buffer == null) {
+            return;
+        }
+        OUTSTANDING.decrementAndGet();
+        if (LOCAL_ENABLED && buffer.length <= LOCAL_MAX_LENGTH) {
+            byte[][] local = LOCAL_ARRAYS.get();
+            for (int i = 0; i < LOCAL_SLOTS; i++) {
+                if (local[i] == null) {
+                    local[i] = buffer;
+                    return;
+                }
+            }
+        }
+        if (reserve(buffer.length)) {
+            ARRAYS.computeIfAbsent(buffer.length, k -> new ConcurrentLinkedQueue<>()).add(buffer);
+        }
+    }
+
+    /**
+     * 借用一个字节缓冲区，使用完毕之后需要通过 {@link #release(ByteBuffer)} 归还。
+     * <p>
+     * Borrow a byte buffer, it must be given back through {@link #release(ByteBuffer)} afterwards.
+     *
+     * @param size   字节缓冲区的容量
+     *               <p>
+     *               Capacity of the byte buffer
+     * @param direct 是否需要直接缓冲区，直接缓冲区适用于文件通道与网络通道的读写
+     *               <p>
+     *               Whether a direct buffer is needed, direct buffers suit reads and writes of file channels and socket channels
+     * @return 已经被清空的字节缓冲区，位置为 0，界限为容量
+     * <p>
+     * A cleared byte buffer, its position is 0 and its limit is its capacity
+     */
+    public static ByteBuffer acquireBuffer(int size, boolean direct) {
+        if (!direct) {
+            return ByteBuffer.wrap(acquire(size));
+        }
+        OUTSTANDING.incrementAndGet();
+        Queue<ByteBuffer> queue = DIRECT_BUFFERS.get(size);
+        ByteBuffer buffer = queue == null ? null : queue.poll();
+        if (buffer != null) {
+            POOLED_BYTES.addAndGet(-size);
+            HITS.incrementAndGet();
+            buffer.clear();
+            return buffer;
+        }
+        MISSES.incrementAndGet();
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    /**
+     * 归还一个通过 {@link #acquireBuffer(int, boolean)} 借用的字节缓冲区，归还之后不能再使用它。
+     * <p>
+     * Give back a byte buffer borrowed through {@link #acquireBuffer(int, boolean)}, it must not be used afterwards.
+     *
+     * @param buffer 需要归还的字节缓冲区，为 null 的时候不做任何事情
+     *               <p>
+     *               The byte buffer to give back, nothing happens if it is null
+     */
+    public static void release(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        if (!buffer.isDirect()) {
+            release(buffer.array());
+            return;
+        }
+        OUTSTANDING.decrementAndGet();
+        if (reserve(buffer.capacity())) {
+            DIRECT_BUFFERS.computeIfAbsent(buffer.capacity(), k -> new ConcurrentLinkedQueue<>()).add(buffer);
+        }
+    }
+
+    /**
+     * @return 借用时直接从线程缓存或共享的池中取得缓冲区的次数。
+     * <p>
+     * The number of borrows served from a thread cache or the shared pool.
+     */
+    public static long getHitCount() {
+        return HITS.get();
+    }
+
+    /**
+     * @return 借用时需要分配新缓冲区的次数。
+     * <p>
+     * The number of borrows that had to allocate a new buffer.
+     */
+    public static long getMissCount() {
+        return MISSES.get();
+    }
+
+    /**
+     * @return 已经借出但还没有归还的缓冲区数量。
+     * <p>
+     * The number of buffers borrowed but not given back yet.
+     */
+    public static long getOutstandingCount() {
+        return OUTSTANDING.get();
+    }
+
+    /**
+     * @return 共享的池中当前存放的字节总数，不包含线程缓存。
+     * <p>
+     * The total number of bytes currently kept in the shared pool, thread caches excluded.
+     */
+    public static long getPooledBytes() {
+        return POOLED_BYTES.get();
+    }
+
+    /**
+     * 在共享的池中为一个缓冲区预留空间，超出大小限制的时候返回 false。
+     */
+    private static boolean reserve(int size) {
+        long pooled;
+        do {
+            pooled = POOLED_BYTES.get();
+            if (pooled + size > ConfigureConstantArea.BUFFER_POOL_MAX_SIZE) {
+                return false;
+            }
+        } while (!POOLED_BYTES.compareAndSet(pooled, pooled + size));
+        return true;
+    }
+}
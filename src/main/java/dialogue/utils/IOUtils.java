@@ -4,6 +4,9 @@ import dialogue.ConfigureConstantArea;
 import dialogue.utils.progressEvent.ProgressFileNumber;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.Checksum;
 
 /**
  * IO工具包
@@ -12,6 +15,11 @@ import java.io.*;
  */
 public final class IOUtils {
 
+    /**
+     * 不超过这个大小的文件数据会被写入数据通道之上的缓冲流中，与相邻的数据一起发送，更大的文件由数据通道直接发送。
+     */
+    public final static int SMALL_FILE_SIZE = 64 * 1024;
+
     /**
      * 获取到输入流中的所有字符串数据
      *
@@ -21,10 +29,14 @@ public final class IOUtils {
      */
     public static String getStringByStream(InputStream inputStream) throws IOException {
         ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        byte[] buffer = new byte[65535];
-        int offset;
-        while ((offset = inputStream.read(buffer)) > 0) {
-            byteArrayOutputStream.write(buffer, 0, offset);
+        byte[] buffer = BufferPool.acquire(ConfigureConstantArea.TCP_BUFFER_MAX_SIZE);
+        try {
+            int offset;
+            while ((offset = inputStream.read(buffer)) > 0) {
+                byteArrayOutputStream.write(buffer, 0, offset);
+            }
+        } finally {
+            BufferPool.release(buffer);
         }
         return byteArrayOutputStream.toString(ConfigureConstantArea.CHARSET);
     }
@@ -56,6 +68,54 @@ public final class IOUtils {
         copy(inputStream, outputStream, CloseStream, null);
     }
 
+    /**
+     * 将文件通道中的一段数据拷贝到数据流中，适用于无法直接由内核发送文件的数据流。
+     *
+     * @param fileChannel  源文件通道
+     * @param position     数据在文件中的起始位置
+     * @param count        需要拷贝的字节数量
+     * @param outputStream 目标数据流
+     * @return 实际拷贝的字节数量，只有文件提前结束的时候才会小于 count
+     * @throws IOException 数据拷贝异常！
+     */
+    public static long copy(FileChannel fileChannel, long position, long count, OutputStream outputStream) throws IOException {
+        return copy(fileChannel, position, count, outputStream, null);
+    }
+
+    /**
+     * 将文件通道中的一段数据拷贝到数据流中，同时计算拷贝数据的校验和。
+     *
+     * @param fileChannel  源文件通道
+     * @param position     数据在文件中的起始位置
+     * @param count        需要拷贝的字节数量
+     * @param outputStream 目标数据流
+     * @param checksum     需要更新的校验和对象，如果为 null 代表不计算校验和
+     * @return 实际拷贝的字节数量，只有文件提前结束的时候才会小于 count
+     * @throws IOException 数据拷贝异常！
+     */
+    public static long copy(FileChannel fileChannel, long position, long count, OutputStream outputStream, Checksum checksum) throws IOException {
+        byte[] buffer = BufferPool.acquire(ConfigureConstantArea.TCP_BUFFER_MAX_SIZE);
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        long copied = 0;
+        try {
+            while (copied < count) {
+                byteBuffer.clear().limit((int) Math.min(buffer.length, count - copied));
+                int offset = fileChannel.read(byteBuffer, position + copied);
+                if (offset <= 0) {
+                    break;
+                }
+                outputStream.write(buffer, 0, offset);
+                if (checksum != null) {
+                    checksum.update(buffer, 0, offset);
+                }
+                copied += offset;
+            }
+        } finally {
+            BufferPool.release(buffer);
+        }
+        return copied;
+    }
+
     /**
      * 指定数据量通知具备进度条展示的方式进行数据流的拷贝，的放肆将两个数据流中的数据进行拷贝
      *
@@ -66,27 +126,27 @@ public final class IOUtils {
      * @throws IOException 数据里拷贝是出现异常的异常对象抛出
      */
     public static void copy(long localFileSize, InputStream bufferedInputStream, OutputStream dataOutputStream, ProgressFileNumber fileProgress) throws IOException {
-        if (fileProgress != null) {
-            fileProgress.function1(0);
-            byte[] buffer = new byte[ConfigureConstantArea.TCP_BUFFER_MAX_SIZE];
-            int offset;
-            while ((offset = bufferedInputStream.read(buffer)) > 0) {
-                fileProgress.function2(offset);
-                dataOutputStream.write(buffer, 0, offset);
-                if ((localFileSize -= offset) <= 0) {
-                    break;
+        byte[] buffer = BufferPool.acquire(ConfigureConstantArea.TCP_BUFFER_MAX_SIZE);
+        try {
+            if (fileProgress != null) {
+                fileProgress.function1(0);
+                int offset;
+                // 只读取本次的数据量，空文件不会等待数据
+                while (localFileSize > 0 && (offset = bufferedInputStream.read(buffer, 0, (int) Math.min(buffer.length, localFileSize))) > 0) {
+                    fileProgress.function2(offset);
+                    dataOutputStream.write(buffer, 0, offset);
+                    localFileSize -= offset;
                 }
-            }
-            fileProgress.function3(0);
-        } else {
-            byte[] buffer = new byte[ConfigureConstantArea.TCP_BUFFER_MAX_SIZE];
-            int offset;
-            while ((offset = bufferedInputStream.read(buffer)) > 0) {
-                dataOutputStream.write(buffer, 0, offset);
-                if ((localFileSize -= offset) <= 0) {
-                    break;
+                fileProgress.function3(0);
+            } else {
+                int offset;
+                while (localFileSize > 0 && (offset = bufferedInputStream.read(buffer, 0, (int) Math.min(buffer.length, localFileSize))) > 0) {
+                    dataOutputStream.write(buffer, 0, offset);
+                    localFileSize -= offset;
                 }
             }
+        } finally {
+            BufferPool.release(buffer);
         }
     }
 
@@ -99,8 +159,8 @@ public final class IOUtils {
      * @param exceptionProgress 出错逻辑实现，当数据流操作时出现了异常，异常将会传递给事件类中对应的函数内进行处理
      */
     public static void copy(InputStream inputStream, OutputStream outputStream, boolean CloseStream, ExceptionProgress exceptionProgress) {
+        byte[] buffer = BufferPool.acquire(ConfigureConstantArea.TCP_BUFFER_MAX_SIZE);
         try {
-            byte[] buffer = new byte[ConfigureConstantArea.TCP_BUFFER_MAX_SIZE];
             int offset;
             while ((offset = inputStream.read(buffer)) > 0) {
                 outputStream.write(buffer, 0, offset);
@@ -116,6 +176,8 @@ public final class IOUtils {
             } else {
                 e.printStackTrace();
             }
+        } finally {
+            BufferPool.release(buffer);
         }
     }
 
@@ -130,8 +192,8 @@ public final class IOUtils {
      * @param EndColor          每一批数据的ANSI结束颜色
      */
     public static void copy(InputStream inputStream, OutputStream outputStream, boolean CloseStream, ExceptionProgress exceptionProgress, String StartColor, String EndColor) {
+        byte[] buffer = BufferPool.acquire(ConfigureConstantArea.TCP_BUFFER_MAX_SIZE);
         try {
-            byte[] buffer = new byte[ConfigureConstantArea.TCP_BUFFER_MAX_SIZE];
             byte[] bytes1 = StartColor.getBytes(ConfigureConstantArea.CHARSET);
             byte[] bytes2 = EndColor.getBytes(ConfigureConstantArea.CHARSET);
             int offset;
@@ -151,6 +213,8 @@ public final class IOUtils {
             } else {
                 e.printStackTrace();
             }
+        } finally {
+            BufferPool.release(buffer);
         }
     }
 }
@@ -0,0 +1,117 @@
+package dialogue.utils;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 线程工具类，框架中所有的工作线程、数据流转发线程与传输线程都通过它创建。
+ * <p>
+ * Thread utility class. All worker threads, stream pump threads and transfer threads of the framework are created through it.
+ * <p>
+ * 这是 Java 8 中使用的实现，创建的都是守护平台线程；在 Java 21 及以上的版本中，多版本 jar 包会使用 src/main/java21 中的同名实现，创建的是虚拟线程，两个实现的函数必须保持一致。
+ * <p>
+ * This is the implementation used on Java 8, it creates daemon platform threads. On Java 21 and above the multi-release jar uses the implementation of the same name in src/main/java21, which creates virtual threads. The functions of the two implementations must stay the same.
+ *
+ * @author 赵凌宇
+ */
+public final class ThreadUtils {
+
+    private ThreadUtils() {
+    }
+
+    /**
+     * @return 如果返回true，代表本工具类创建的是虚拟线程，在这个实现中总是返回false。
+     * <p>
+     * If true is returned, this utility class creates virtual threads. This implementation always returns false.
+     */
+    public static boolean isVirtual() {
+        return false;
+    }
+
+    /**
+     * 创建一个还没有启动的守护线程。
+     * <p>
+     * Create a daemon thread that has not been started yet.
+     *
+     * @param name 线程的名称
+     *             <p>
+     *             Name of the thread
+     * @param task 线程需要执行的任务
+     *             <p>
+     *             The task the thread runs
+     * @return 还没有启动的线程
+     * <p>
+     * The thread that has not been started yet
+     */
+    public static Thread unstarted(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * 创建并启动一个守护线程。
+     * <p>
+     * Create and start a daemon thread.
+     *
+     * @param name 线程的名称
+     *             <p>
+     *             Name of the thread
+     * @param task 线程需要执行的任务
+     *             <p>
+     *             The task the thread runs
+     * @return 已经启动的线程
+     * <p>
+     * The thread that has been started
+     */
+    public static Thread start(String name, Runnable task) {
+        Thread thread = unstarted(name, task);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * 创建一个线程工厂，工厂创建的线程名称为前缀加上从 1 开始的编号。
+     * <p>
+     * Create a thread factory. The threads it creates are named with the prefix followed by a number starting from 1.
+     *
+     * @param prefix 线程名称的前缀
+     *               <p>
+     *               Prefix of the thread names
+     * @return 线程工厂
+     * <p>
+     * Thread factory
+     */
+    public static ThreadFactory factory(String prefix) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        return r -> unstarted(prefix + threadNumber.incrementAndGet(), r);
+    }
+
+    /**
+     * 创建一个有界的任务线程池，平台线程在空闲之后会被复用，空闲超过 60 秒之后会被回收，线程与等待队列都满的时候新的任务会被拒绝。
+     * <p>
+     * Create a bounded task thread pool. Platform threads are reused after becoming idle and are reclaimed after being idle for 60 seconds. New tasks are rejected when both the threads and the waiting queue are full.
+     *
+     * @param prefix     线程名称的前缀
+     *                   <p>
+     *                   Prefix of the thread names
+     * @param maxThreads 最多同时存在的线程数量
+     *                   <p>
+     *                   The maximum number of threads existing at the same time
+     * @param queueSize  等待队列的长度，为 0 代表没有等待队列
+     *                   <p>
+     *                   Length of the waiting queue, 0 means there is no waiting queue
+     * @return 线程池，任务被拒绝时抛出 {@link RejectedExecutionException}
+     * <p>
+     * Thread pool, which throws {@link RejectedExecutionException} when a task is rejected
+     */
+    public static ExecutorService newTaskExecutor(String prefix, int maxThreads, int queueSize) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                maxThreads, maxThreads, 60L, TimeUnit.SECONDS,
+                queueSize > 0 ? new ArrayBlockingQueue<>(queueSize) : new SynchronousQueue<>(),
+                factory(prefix)
+        );
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,119 @@
+package dialogue.utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 令牌桶限速器，每秒钟补充固定数量的令牌，每发送或接收一个字节需要消耗一个令牌，令牌不足的时候调用者会等待。
+ * <p>
+ * Token bucket rate limiter. A fixed number of tokens is added every second and every byte sent or received consumes one token. Callers wait when there are not enough tokens.
+ * <p>
+ * 桶的容量是一秒钟的令牌数量，因此空闲之后最多允许一秒钟的突发流量；速率可以在运行中随时修改，速率为 0 代表不限速。
+ * <p>
+ * The capacity of the bucket is one second worth of tokens, so at most one second of burst is allowed after being idle. The rate can be changed at any time while running, and a rate of 0 means unlimited.
+ * <p>
+ * 等待使用的是显式锁而不是对象监视器，使得虚拟线程在等待令牌的时候不会占用载体线程。
+ * <p>
+ * Waiting uses an explicit lock instead of the object monitor, so virtual threads waiting for tokens do not hold on to their carrier threads.
+ *
+ * @author 赵凌宇
+ */
+public final class TokenBucket {
+
+    private final static long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private long rate;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    /**
+     * @param rate 每秒钟允许通过的字节数量，0 代表不限速
+     *             <p>
+     *             The number of bytes allowed per second, 0 means unlimited
+     */
+    public TokenBucket(long rate) {
+        setRate(rate);
+    }
+
+    /**
+     * @return 每秒钟允许通过的字节数量，0 代表不限速。
+     * <p>
+     * The number of bytes allowed per second, 0 means unlimited.
+     */
+    public long getRate() {
+        lock.lock();
+        try {
+            return this.rate;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 修改速率，正在等待的调用者会按照新的速率重新计算等待时间。
+     * <p>
+     * Change the rate. Waiting callers recalculate their waiting time according to the new rate.
+     *
+     * @param rate 每秒钟允许通过的字节数量，0 代表不限速
+     *             <p>
+     *             The number of bytes allowed per second, 0 means unlimited
+     */
+    public void setRate(long rate) {
+        lock.lock();
+        try {
+            refill();
+            this.rate = Math.max(0, rate);
+            this.tokens = Math.min(this.tokens, this.rate);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 取出指定数量的令牌，令牌不足的时候会等待，单次取出的数量可以超过桶的容量，超出的部分会使得之后的调用者等待更久。
+     * <p>
+     * Take the given number of tokens and wait when there are not enough. A single call may take more than the capacity of the bucket, the excess makes later callers wait longer.
+     *
+     * @param count 需要的令牌数量，也就是即将发送或接收的字节数量
+     *              <p>
+     *              The number of tokens needed, that is the number of bytes about to be sent or received
+     * @throws IOException 等待时被中断的时候抛出的异常
+     */
+    public void acquire(long count) throws IOException {
+        if (count <= 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            while (this.rate > 0) {
+                refill();
+                if (this.tokens > 0) {
+                    // 令牌可以被透支，透支的部分由之后的调用者等待补充
+                    this.tokens -= count;
+                    return;
+                }
+                long waitNanos = (long) Math.ceil(-this.tokens * NANOS_PER_SECOND / this.rate);
+                changed.await(Math.max(1_000_000L, waitNanos), TimeUnit.NANOSECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for bandwidth.");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        if (this.rate > 0) {
+            this.tokens = Math.min(this.rate, this.tokens + (double) (now - this.lastRefill) * this.rate / NANOS_PER_SECOND);
+        }
+        this.lastRefill = now;
+    }
+}
@@ -52,6 +52,16 @@ public class ProgressFileLog extends ProgressPercentage {
         clear();
     }
 
+    /**
+     * 压缩传输结束之后的事件函数，压缩率与有效吞吐量会通过日志展示。
+     * <p>
+     * Event function called after a compressed transfer, the compression ratio and effective throughput are shown through the log.
+     */
+    @Override
+    public void compression(String codec, long rawBytes, long wireBytes, long nanos) {
+        ConfigureConstantArea.LOGGER.info(compressionString(codec, rawBytes, wireBytes, nanos));
+    }
+
     /**
      * 获取到进度条数据
      *
@@ -72,6 +72,45 @@ public class ProgressFileNumber implements ProgressEvent<Integer, Integer, Integ
         clear();
     }
 
+    /**
+     * 压缩传输结束之后的事件函数，展示本次传输的压缩率与有效吞吐量。
+     * <p>
+     * Event function called after a compressed transfer, showing the compression ratio and effective throughput of the transfer.
+     *
+     * @param codec     使用的压缩算法名称
+     *                  <p>
+     *                  Name of the codec used
+     * @param rawBytes  原始数据的字节数量
+     *                  <p>
+     *                  Number of raw bytes
+     * @param wireBytes 实际传输的字节数量
+     *                  <p>
+     *                  Number of bytes actually transferred
+     * @param nanos     传输所用的纳秒数
+     *                  <p>
+     *                  Nanoseconds taken by the transfer
+     */
+    public void compression(String codec, long rawBytes, long wireBytes, long nanos) {
+        String s = compressionString(codec, rawBytes, wireBytes, nanos);
+        if (ConfigureConstantArea.PROGRESS_COLOR_DISPLAY) {
+            System.out.println(COLOR_GREEN + s + COLOR_DEF);
+        } else {
+            System.out.println(s);
+        }
+    }
+
+    /**
+     * @return 压缩率与有效吞吐量的描述，有效吞吐量按照原始数据的字节数量计算。
+     * <p>
+     * Description of the compression ratio and effective throughput, the effective throughput is calculated from the number of raw bytes.
+     */
+    protected static String compressionString(String codec, long rawBytes, long wireBytes, long nanos) {
+        double ratio = wireBytes == 0 ? 1 : (double) rawBytes / wireBytes;
+        double seconds = Math.max(nanos, 1) / 1e9;
+        return String.format("Compression [%s]: %d -> %d bytes, ratio %.2fx, effective throughput %.2f MB/s",
+                codec, rawBytes, wireBytes, ratio, rawBytes / seconds / (1024 * 1024));
+    }
+
     protected void clear() {
         count = 0;
         count_Str_Size = 0;
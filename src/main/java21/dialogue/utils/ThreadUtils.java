@@ -0,0 +1,111 @@
+package dialogue.utils;
+
+import java.util.concurrent.*;
+
+/**
+ * 线程工具类，框架中所有的工作线程、数据流转发线程与传输线程都通过它创建。
+ * <p>
+ * Thread utility class. All worker threads, stream pump threads and transfer threads of the framework are created through it.
+ * <p>
+ * 这是 Java 21 及以上的版本中使用的实现，位于多版本 jar 包的 META-INF/versions/21 中，创建的都是虚拟线程，函数必须与 src/main/java 中的同名实现保持一致。
+ * <p>
+ * This is the implementation used on Java 21 and above. It lives in META-INF/versions/21 of the multi-release jar and creates virtual threads. Its functions must stay the same as the implementation of the same name in src/main/java.
+ *
+ * @author 赵凌宇
+ */
+public final class ThreadUtils {
+
+    private ThreadUtils() {
+    }
+
+    /**
+     * @return 如果返回true，代表本工具类创建的是虚拟线程，在这个实现中总是返回true。
+     * <p>
+     * If true is returned, this utility class creates virtual threads. This implementation always returns true.
+     */
+    public static boolean isVirtual() {
+        return true;
+    }
+
+    /**
+     * 创建一个还没有启动的虚拟线程，虚拟线程总是守护线程。
+     * <p>
+     * Create a virtual thread that has not been started yet. Virtual threads are always daemon threads.
+     *
+     * @param name 线程的名称
+     *             <p>
+     *             Name of the thread
+     * @param task 线程需要执行的任务
+     *             <p>
+     *             The task the thread runs
+     * @return 还没有启动的线程
+     * <p>
+     * The thread that has not been started yet
+     */
+    public static Thread unstarted(String name, Runnable task) {
+        return Thread.ofVirtual().name(name).unstarted(task);
+    }
+
+    /**
+     * 创建并启动一个虚拟线程。
+     * <p>
+     * Create and start a virtual thread.
+     *
+     * @param name 线程的名称
+     *             <p>
+     *             Name of the thread
+     * @param task 线程需要执行的任务
+     *             <p>
+     *             The task the thread runs
+     * @return 已经启动的线程
+     * <p>
+     * The thread that has been started
+     */
+    public static Thread start(String name, Runnable task) {
+        return Thread.ofVirtual().name(name).start(task);
+    }
+
+    /**
+     * 创建一个虚拟线程工厂，工厂创建的线程名称为前缀加上从 1 开始的编号。
+     * <p>
+     * Create a virtual thread factory. The threads it creates are named with the prefix followed by a number starting from 1.
+     *
+     * @param prefix 线程名称的前缀
+     *               <p>
+     *               Prefix of the thread names
+     * @return 线程工厂
+     * <p>
+     * Thread factory
+     */
+    public static ThreadFactory factory(String prefix) {
+        return Thread.ofVirtual().name(prefix, 1).factory();
+    }
+
+    /**
+     * 创建一个有界的任务线程池，每一个任务都运行在一个虚拟线程中，线程池依旧有界，使得繁忙时的拒绝行为与 Java 8 中的实现保持一致。
+     * <p>
+     * Create a bounded task thread pool in which every task runs on a virtual thread. The pool is still bounded, so that the rejection behavior under load is the same as in the Java 8 implementation.
+     *
+     * @param prefix     线程名称的前缀
+     *                   <p>
+     *                   Prefix of the thread names
+     * @param maxThreads 最多同时存在的线程数量
+     *                   <p>
+     *                   The maximum number of threads existing at the same time
+     * @param queueSize  等待队列的长度，为 0 代表没有等待队列
+     *                   <p>
+     *                   Length of the waiting queue, 0 means there is no waiting queue
+     * @return 线程池，任务被拒绝时抛出 {@link RejectedExecutionException}
+     * <p>
+     * Thread pool, which throws {@link RejectedExecutionException} when a task is rejected
+     */
+    public static ExecutorService newTaskExecutor(String prefix, int maxThreads, int queueSize) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                maxThreads, maxThreads, 60L, TimeUnit.SECONDS,
+                queueSize > 0 ? new ArrayBlockingQueue<>(queueSize) : new SynchronousQueue<>(),
+                factory(prefix)
+        );
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}